@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013. 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib;
+
+import com.google.common.base.Joiner;
+import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.MrdExport;
+import com.mrd.bitlib.util.HexUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decrypts all keys of a backup that are protected by the same password.
+ * <p>
+ * The AES key only depends on the password, the salt and the scrypt parameters in the header. Keys that share
+ * those are grouped, so the expensive key stretching happens once per group instead of once per key. The groups are
+ * stretched in parallel, then all keys are decrypted in parallel.
+ */
+public class BackupBatch {
+   private final String password;
+   private final int threads;
+   private int keyDerivations;
+
+   public BackupBatch(String password) {
+      this(password, Runtime.getRuntime().availableProcessors());
+   }
+
+   public BackupBatch(String password, int threads) {
+      this.password = password;
+      this.threads = threads;
+   }
+
+   /**
+    * Read encrypted keys from a reader, one per line. Empty lines and lines starting with # are skipped.
+    */
+   public static List<String> readEncryptedKeys(Reader reader) throws IOException {
+      List<String> keys = new ArrayList<String>();
+      BufferedReader in = new BufferedReader(reader);
+      String line;
+      while ((line = in.readLine()) != null) {
+         line = line.trim();
+         if (!line.isEmpty() && !line.startsWith("#")) {
+            keys.add(line);
+         }
+      }
+      return keys;
+   }
+
+   /**
+    * Decrypt the keys and return a report with one entry per key, in the order of the keys
+    */
+   public List<String> decrypt(List<String> encryptedKeys) throws InterruptedException {
+      List<String> report = new ArrayList<String>(encryptedKeys.size());
+      String passwordError = BackupUtil.checkPassword(password);
+      if (passwordError != null) {
+         report.add(passwordError);
+         return report;
+      }
+      final String realPassword = password.substring(0, MrdExport.V1.V1_PASSPHRASE_LENGTH);
+
+      // Group the keys by what goes into the key stretching
+      Map<String, MrdExport.V1.Header> groups = new LinkedHashMap<String, MrdExport.V1.Header>();
+      List<MrdExport.V1.Header> headers = new ArrayList<MrdExport.V1.Header>(encryptedKeys.size());
+      for (String encryptedKey : encryptedKeys) {
+         MrdExport.V1.Header header;
+         try {
+            header = MrdExport.V1.extractHeader(encryptedKey);
+         } catch (MrdExport.DecodingException e) {
+            header = null;
+         } catch (RuntimeException e) {
+            // unsupported version or parameters out of range
+            header = null;
+         }
+         headers.add(header);
+         if (header != null && !groups.containsKey(getGroupKey(header))) {
+            groups.put(getGroupKey(header), header);
+         }
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         // Stretch once per group
+         Map<String, Future<MrdExport.V1.EncryptionParameters>> parameters =
+               new LinkedHashMap<String, Future<MrdExport.V1.EncryptionParameters>>();
+         for (Map.Entry<String, MrdExport.V1.Header> group : groups.entrySet()) {
+            final MrdExport.V1.Header header = group.getValue();
+            parameters.put(group.getKey(), executor.submit(new Callable<MrdExport.V1.EncryptionParameters>() {
+               @Override
+               public MrdExport.V1.EncryptionParameters call() throws InterruptedException {
+                  return MrdExport.V1.EncryptionParameters.generate(
+                        MrdExport.V1.KdfParameters.fromPassphraseAndHeader(realPassword, header));
+               }
+            }));
+         }
+         keyDerivations = groups.size();
+
+         // Decrypt all keys, the stretching has been queued before, so waiting for it can't block the pool
+         List<Future<String>> results = new ArrayList<Future<String>>(encryptedKeys.size());
+         for (int i = 0; i < encryptedKeys.size(); i++) {
+            final String encryptedKey = encryptedKeys.get(i);
+            final MrdExport.V1.Header header = headers.get(i);
+            final Future<MrdExport.V1.EncryptionParameters> keyParameters =
+                  header == null ? null : parameters.get(getGroupKey(header));
+            results.add(executor.submit(new Callable<String>() {
+               @Override
+               public String call() throws Exception {
+                  if (header == null) {
+                     return "Error: this is not a valid encrypted key";
+                  }
+                  return decrypt(keyParameters.get(), header, encryptedKey);
+               }
+            }));
+         }
+
+         for (int i = 0; i < results.size(); i++) {
+            report.add(encryptedKeys.get(i) + "\n" + results.get(i).get());
+         }
+         return report;
+      } catch (ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * @return how many times the key stretching ran for the last batch
+    */
+   public int getKeyDerivations() {
+      return keyDerivations;
+   }
+
+   private static String getGroupKey(MrdExport.V1.Header header) {
+      return HexUtils.toHex(header.salt) + "/" + header.n + "/" + header.r + "/" + header.p;
+   }
+
+   private static String decrypt(MrdExport.V1.EncryptionParameters parameters, MrdExport.V1.Header header,
+                                 String encryptedKey) {
+      try {
+         if (header.type == MrdExport.V1.Header.Type.MASTER_SEED) {
+            Bip39.MasterSeed masterSeed = MrdExport.V1.decryptMasterSeed(parameters, encryptedKey, header.network);
+            return "Master seed words: " + Joiner.on(' ').join(masterSeed.getBip39WordList());
+         }
+         String privateKey = MrdExport.V1.decryptPrivateKey(parameters, encryptedKey, header.network);
+         return BackupUtil.formatKey(new InMemoryPrivateKey(privateKey, header.network), header.network);
+      } catch (MrdExport.V1.InvalidChecksumException e) {
+         return "Error: the supplied password did not match the checksum of the encrypted key";
+      } catch (MrdExport.DecodingException e) {
+         return "Error: this is not a valid encrypted key";
+      }
+   }
+}
@@ -16,12 +16,19 @@
 
 package com.mrd.bitlib;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
 
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.MrdExport;
+import com.mrd.bitlib.model.NetworkParameters;
 
 public class BackupUtil {
+   private static final String BATCH_OPTION = "--batch";
+
    private final String encryptedPrivateKey;
    private final String password;
 
@@ -31,6 +38,10 @@ public class BackupUtil {
    }
 
    public static void main(String[] args) throws IOException, MrdExport.DecodingException, InterruptedException {
+      if ((args.length == 2 || args.length == 3) && BATCH_OPTION.equals(args[0])) {
+         batch(args[1], args.length == 3 ? args[2] : "-");
+         return;
+      }
       if (args.length != 2) {
          printHelp();
          return;
@@ -39,29 +50,53 @@ public class BackupUtil {
       System.out.println(backupUtil.getKey());
    }
 
-   public String getKey() {
-      final String realpassword;
+   private static void batch(String password, String fileName) throws IOException, InterruptedException {
+      InputStream in = "-".equals(fileName) ? System.in : new FileInputStream(fileName);
+      List<String> encryptedKeys;
+      try {
+         encryptedKeys = BackupBatch.readEncryptedKeys(new InputStreamReader(in, "US-ASCII"));
+      } finally {
+         in.close();
+      }
+      for (String entry : new BackupBatch(password).decrypt(encryptedKeys)) {
+         System.out.println(entry);
+         System.out.println();
+      }
+   }
+
+   /**
+    * Check the password as entered, with or without the checksum character
+    *
+    * @return an error message or null if the password is fine
+    */
+   static String checkPassword(String password) {
       if (password.length() == 16) {
-         boolean checksumValid = MrdExport.isChecksumValid(password);
-         if (!checksumValid) {
+         if (!MrdExport.isChecksumValid(password)) {
             return "Error: the last character of the password was not matching the checksum";
-         } else {
-            realpassword = password.substring(0, 15);
-         }
-      } else {
-         if (password.length() != 15) {
-            return "Error: the supplied password did not match the expected length";
          }
-         realpassword = password;
+      } else if (password.length() != 15) {
+         return "Error: the supplied password did not match the expected length";
+      }
+      return null;
+   }
+
+   static String formatKey(InMemoryPrivateKey key, NetworkParameters network) {
+      return "Private key (Wallet Import Format): " + key.getBase58EncodedPrivateKey(network) +
+            "\n                   Bitcoin Address: " + key.getPublicKey().toAddress(network);
+   }
+
+   public String getKey() {
+      String passwordError = checkPassword(password);
+      if (passwordError != null) {
+         return passwordError;
       }
+      final String realpassword = password.substring(0, 15);
       try {
          MrdExport.V1.Header header = MrdExport.V1.extractHeader(encryptedPrivateKey);
          MrdExport.V1.KdfParameters kdfParameters = MrdExport.V1.KdfParameters.fromPassphraseAndHeader(realpassword, header);
          MrdExport.V1.EncryptionParameters parameters = MrdExport.V1.EncryptionParameters.generate(kdfParameters);
          String privateKey = MrdExport.V1.decryptPrivateKey(parameters, encryptedPrivateKey, header.network);
-         InMemoryPrivateKey key = new InMemoryPrivateKey(privateKey, header.network);
-         return "Private key (Wallet Import Format): " + key.getBase58EncodedPrivateKey(header.network) +
-               "\n                   Bitcoin Address: " + key.getPublicKey().toAddress(header.network);
+         return formatKey(new InMemoryPrivateKey(privateKey, header.network), header.network);
       } catch (InterruptedException e) {
          throw new RuntimeException(e);
       } catch (MrdExport.V1.WrongNetworkException e) {
@@ -78,6 +113,10 @@ public class BackupUtil {
             "Usage of this restore utility:\n" +
             "java -jar backuputil.jar encryptedKey PASSWORD\n" +
             "EXAMPLE:\n" +
-            "java -jar backuputil.jar xEncGXICZE1_eVYfGWDioNu_8hA6RZzep4XqwPGRtcKb01MDg3s1XFntJYI9Dw QDTDXOYFBXBKKMKR");
+            "java -jar backuputil.jar xEncGXICZE1_eVYfGWDioNu_8hA6RZzep4XqwPGRtcKb01MDg3s1XFntJYI9Dw QDTDXOYFBXBKKMKR\n" +
+            "\n" +
+            "To restore all keys of a backup protected by the same password, one encrypted key per line:\n" +
+            "java -jar backuputil.jar --batch PASSWORD [FILE]\n" +
+            "Without FILE, or with -, the keys are read from standard input.");
    }
 }
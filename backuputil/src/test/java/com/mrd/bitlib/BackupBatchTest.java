@@ -0,0 +1,67 @@
+package com.mrd.bitlib;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.MrdExport;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackupBatchTest {
+   private static final String ENCRYPTED_KEY = "xEncGXICZE1_eVYfGWDioNu_8hA6RZzep4XqwPGRtcKb01MDg3s1XFntJYI9Dw";
+   private static final String EXPECTED_KEY = "Private key (Wallet Import Format): cRS3zDecX6c8UF9mtmh5vkB8CQ4nCNn1bjPQayXpt3fSLwSPi1LF\n" +
+         "                   Bitcoin Address: n4J5FqC89EnV8hikctDs6njmG2cwxS8cM5";
+   private static final String PASSWORD = "QDTDXOYFBXBKKMKR";
+   private static final String OTHER_WIF = new InMemoryPrivateKey(HexUtils.toBytes(
+         "0101010101010101010101010101010101010101010101010101010101010101"), true)
+         .getBase58EncodedPrivateKey(NetworkParameters.testNetwork);
+
+   @Test
+   public void testKeysWithSameHeaderAreStretchedOnce() throws InterruptedException {
+      String otherKey = encryptWithOtherSalt(OTHER_WIF);
+      BackupBatch batch = new BackupBatch(PASSWORD, 2);
+      List<String> report = batch.decrypt(Arrays.asList(ENCRYPTED_KEY, otherKey, ENCRYPTED_KEY, "garbage"));
+      assertEquals(4, report.size());
+      assertEquals(ENCRYPTED_KEY + "\n" + EXPECTED_KEY, report.get(0));
+      assertTrue(report.get(1).contains(OTHER_WIF));
+      assertEquals(report.get(0), report.get(2));
+      assertEquals("garbage\nError: this is not a valid encrypted key", report.get(3));
+      // two different salts, the third key shares the header of the first
+      assertEquals(2, batch.getKeyDerivations());
+   }
+
+   @Test
+   public void testWrongPassword() throws InterruptedException {
+      List<String> report = new BackupBatch("QDTDXOYFBXBKKAA").decrypt(Arrays.asList(ENCRYPTED_KEY));
+      assertTrue(report.get(0).contains("Error: the supplied password did not match the checksum"));
+      report = new BackupBatch("QDTDXOYFBXBKKAAA").decrypt(Arrays.asList(ENCRYPTED_KEY));
+      assertEquals(1, report.size());
+      assertTrue(report.get(0).startsWith("Error: "));
+   }
+
+   @Test
+   public void testReadEncryptedKeys() throws IOException {
+      List<String> keys = BackupBatch.readEncryptedKeys(new StringReader("# my backup\n\n " + ENCRYPTED_KEY + " \nxEnc2\n"));
+      assertEquals(Arrays.asList(ENCRYPTED_KEY, "xEnc2"), keys);
+   }
+
+   private static String encryptWithOtherSalt(String wif) throws InterruptedException {
+      MrdExport.V1.KdfParameters kdfParameters = MrdExport.V1.KdfParameters.createNewFromPassphrase(
+            PASSWORD.substring(0, 15), new RandomSource() {
+               @Override
+               public void nextBytes(byte[] bytes) {
+                  Arrays.fill(bytes, (byte) 42);
+               }
+            }, new MrdExport.V1.ScryptParameters(10, 1, 1));
+      MrdExport.V1.EncryptionParameters parameters = MrdExport.V1.EncryptionParameters.generate(kdfParameters);
+      return MrdExport.V1.encryptPrivateKey(parameters, wif, NetworkParameters.testNetwork);
+   }
+}
@@ -35,7 +35,6 @@ import java.util.List;
  * Implementation of Bip39
  */
 public class Bip39 {
-   private static final String ALGORITHM = "HmacSHA512";
    private static final int REPETITIONS = 2048;
    private static final int BIP32_SEED_LENGTH = 64;
    private static final String BASE_SALT = "mnemonic";
@@ -280,13 +279,24 @@ public class Bip39 {
       buf[bitIndex / 8] = (byte) value;
    }
 
-   private static int getWordIndex(String word) {
-      for (int i = 0; i < ENGLISH_WORD_LIST.length; i++) {
-         if (ENGLISH_WORD_LIST[i].equals(word)) {
-            return i;
-         }
+   /**
+    * @return the index of the word in the English word list or -1 if it is not in the list
+    */
+   static int getWordIndex(String word) {
+      return Bip39WordIndex.ENGLISH.indexOf(word);
+   }
+
+   /**
+    * Verify the checksum of a word list given as indexes into the English word list. This is cheaper than
+    * {@link #isValidWordList(String[])} for callers that check many candidate word lists.
+    */
+   static boolean isValidChecksum(int[] wordIndexes) {
+      int bitLength = wordIndexes.length * 11;
+      byte[] buf = new byte[bitLength / 8 + ((bitLength % 8) > 0 ? 1 : 0)];
+      for (int i = 0; i < wordIndexes.length; i++) {
+         integerTo11Bits(buf, i * 11, wordIndexes[i]);
       }
-      return -1;
+      return verifyChecksum(buf);
    }
 
    /**
@@ -415,7 +425,8 @@ public class Bip39 {
       byte[] seed;
       try {
          byte[] saltBytes = Normalizer.normalize(salt, Normalizer.Form.NFKD).getBytes(UTF8);
-         seed = PBKDF.pbkdf2(ALGORITHM, mnemonic.getBytes(UTF8), saltBytes, REPETITIONS, BIP32_SEED_LENGTH);
+         seed = new byte[BIP32_SEED_LENGTH];
+         PBKDF.pbkdf2(Hmac.sha512(mnemonic.getBytes(UTF8)), saltBytes, REPETITIONS, seed, BIP32_SEED_LENGTH);
       } catch (UnsupportedEncodingException | GeneralSecurityException e) {
          // UTF-8 should be supported by every system we run on
          throw new RuntimeException(e);
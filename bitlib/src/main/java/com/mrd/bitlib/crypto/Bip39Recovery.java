@@ -0,0 +1,481 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.hdpath.Bip44Account;
+import com.mrd.bitlib.model.hdpath.Bip44Chain;
+import com.mrd.bitlib.model.hdpath.Bip44CoinType;
+import com.mrd.bitlib.model.hdpath.HdKeyPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Recovers a BIP39 word list when a word got lost, two words got mixed up or the passphrase is not known exactly.
+ * <p>
+ * Candidate word lists are enumerated and filtered on their checksum first, which is cheap and rules out all but one
+ * in 16 (for 12 words) candidates. For the remaining ones the seed gets stretched and the first BIP44 addresses get
+ * derived on all cores, until one of them is in the set of target addresses. Everything happens offline.
+ * <p>
+ * Progress can be polled with {@link #getProgress()} and a run can be stopped with {@link #cancel()}. Cancelling is
+ * final: it also stops runs that have not started yet, so it cannot get lost when it comes before the run starts.
+ * Use a new instance to search again.
+ */
+public class Bip39Recovery {
+   /**
+    * Marks an unknown word in the word list passed to {@link #recoverUnknownWords(String[], List)}
+    */
+   public static final String UNKNOWN_WORD = "?";
+   private static final int WORD_COUNT = Bip39.ENGLISH_WORD_LIST.length;
+
+   public static class Match {
+      public final String[] words;
+      public final String passphrase;
+      public final Address address;
+      public final HdKeyPath path;
+
+      private Match(String[] words, String passphrase, Address address, HdKeyPath path) {
+         this.words = words;
+         this.passphrase = passphrase;
+         this.address = address;
+         this.path = path;
+      }
+
+      @Override
+      public String toString() {
+         return Arrays.toString(words) + " " + path + " " + address;
+      }
+   }
+
+   private final NetworkParameters _network;
+   private final Set<Address> _targets;
+   private final int _accounts;
+   private final int _addressesPerChain;
+   private final int _threads;
+   private final AtomicLong _candidatesChecked = new AtomicLong();
+   private final AtomicLong _seedsDerived = new AtomicLong();
+   private volatile long _candidatesTotal;
+   private volatile long _startTime;
+   private volatile boolean _cancelled;
+
+   /**
+    * @param network           the network of the target addresses
+    * @param targets           the addresses to look for, one of them is enough for a match
+    * @param accounts          how many BIP44 accounts to look at for every candidate
+    * @param addressesPerChain how many external and internal addresses to look at for every account
+    */
+   public Bip39Recovery(NetworkParameters network, Collection<Address> targets, int accounts, int addressesPerChain) {
+      this(network, targets, accounts, addressesPerChain, Runtime.getRuntime().availableProcessors());
+   }
+
+   public Bip39Recovery(NetworkParameters network, Collection<Address> targets, int accounts, int addressesPerChain,
+                        int threads) {
+      Preconditions.checkArgument(threads > 0);
+      _network = network;
+      _targets = ImmutableSet.copyOf(targets);
+      _accounts = accounts;
+      _addressesPerChain = addressesPerChain;
+      _threads = threads;
+   }
+
+   /**
+    * Try every word at the positions marked with {@link #UNKNOWN_WORD}. Every unknown word multiplies the work by
+    * 2048, so more than two are not practical.
+    *
+    * @return the match or null if none of the candidates matched
+    * @throws InterruptedException if the recovery got cancelled
+    */
+   public Match recoverUnknownWords(String[] words, List<String> passphrases) throws InterruptedException {
+      return run(new UnknownWords(toIndexes(words)), passphrases);
+   }
+
+   /**
+    * Try to insert every word at every position, for a word list where one word is missing and it is not known
+    * which.
+    */
+   public Match recoverOmittedWord(String[] words, List<String> passphrases) throws InterruptedException {
+      return run(new OmittedWord(toIndexes(words)), passphrases);
+   }
+
+   /**
+    * Try all word lists where two of the given words are swapped, and the given one.
+    */
+   public Match recoverSwappedWords(String[] words, List<String> passphrases) throws InterruptedException {
+      return run(new SwappedWords(toIndexes(words)), passphrases);
+   }
+
+   /**
+    * Get the common variations of a passphrase: as typed, trimmed, in lower and upper case, and with the first letter
+    * in upper and lower case, as phone keyboards like to capitalize it.
+    */
+   public static List<String> getPassphraseVariants(String passphrase) {
+      Set<String> variants = new LinkedHashSet<>();
+      variants.add(passphrase);
+      variants.add(passphrase.trim());
+      variants.add(passphrase.toLowerCase(Locale.US));
+      variants.add(passphrase.toUpperCase(Locale.US));
+      if (!passphrase.isEmpty()) {
+         String rest = passphrase.substring(1);
+         variants.add(passphrase.substring(0, 1).toUpperCase(Locale.US) + rest);
+         variants.add(passphrase.substring(0, 1).toLowerCase(Locale.US) + rest);
+      }
+      return ImmutableList.copyOf(variants);
+   }
+
+   /**
+    * Measure how many seeds per second can be stretched and scanned on this machine, with the current settings.
+    *
+    * @param seeds the number of seeds to derive
+    * @return seeds per second
+    */
+   public double benchmark(int seeds) throws InterruptedException {
+      String[] words = Bip39.rawEntropyToWords(new byte[16]);
+      run(new RepeatedWords(toIndexes(words), seeds), ImmutableList.of(""));
+      return getSeedsPerSecond();
+   }
+
+   /**
+    * Stop the current run and all later ones of this instance
+    */
+   public void cancel() {
+      _cancelled = true;
+   }
+
+   public boolean isCancelled() {
+      return _cancelled;
+   }
+
+   /**
+    * @return the share of candidates of the current run that have been checked, from 0 to 1
+    */
+   public double getProgress() {
+      long total = _candidatesTotal;
+      return total == 0 ? 0 : (double) Math.min(_candidatesChecked.get(), total) / total;
+   }
+
+   /**
+    * @return the number of candidate word lists checked so far, including those with an invalid checksum
+    */
+   public long getCandidatesChecked() {
+      return _candidatesChecked.get();
+   }
+
+   /**
+    * @return the number of seeds which passed the checksum and were derived so far
+    */
+   public long getSeedsDerived() {
+      return _seedsDerived.get();
+   }
+
+   public double getSeedsPerSecond() {
+      long elapsed = System.currentTimeMillis() - _startTime;
+      return elapsed <= 0 ? 0 : _seedsDerived.get() * 1000d / elapsed;
+   }
+
+   private Match run(final Candidates candidates, List<String> passphrases) throws InterruptedException {
+      final List<String> passphraseList = ImmutableList.copyOf(passphrases);
+      Preconditions.checkArgument(!passphraseList.isEmpty());
+      _candidatesChecked.set(0);
+      _seedsDerived.set(0);
+      _candidatesTotal = candidates.size();
+      _startTime = System.currentTimeMillis();
+      if (_cancelled) {
+         throw new InterruptedException();
+      }
+
+      final AtomicLong next = new AtomicLong();
+      final AtomicReference<Match> match = new AtomicReference<>();
+      ExecutorService executor = Executors.newFixedThreadPool(_threads);
+      List<Future<Void>> futures = new ArrayList<>();
+      try {
+         for (int i = 0; i < _threads; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+               @Override
+               public Void call() {
+                  work(candidates, passphraseList, next, match);
+                  return null;
+               }
+            }));
+         }
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } catch (ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      } catch (InterruptedException e) {
+         _cancelled = true;
+         throw e;
+      } finally {
+         executor.shutdownNow();
+      }
+      if (match.get() == null && _cancelled) {
+         throw new InterruptedException();
+      }
+      return match.get();
+   }
+
+   private void work(Candidates candidates, List<String> passphrases, AtomicLong next, AtomicReference<Match> match) {
+      int[] indexes = new int[candidates.length()];
+      String[] words = new String[candidates.length()];
+      long size = candidates.size();
+      long n;
+      while (!_cancelled && match.get() == null && (n = next.getAndIncrement()) < size) {
+         candidates.get(n, indexes);
+         _candidatesChecked.incrementAndGet();
+         if (!Bip39.isValidChecksum(indexes)) {
+            continue;
+         }
+         for (int i = 0; i < indexes.length; i++) {
+            words[i] = Bip39.ENGLISH_WORD_LIST[indexes[i]];
+         }
+         for (String passphrase : passphrases) {
+            byte[] seed = Bip39.generateSeedFromWordList(words, passphrase).getBip32Seed();
+            _seedsDerived.incrementAndGet();
+            Match found = findTarget(seed, words, passphrase);
+            if (found != null) {
+               match.compareAndSet(null, found);
+               return;
+            }
+            if (_cancelled) {
+               return;
+            }
+         }
+      }
+   }
+
+   private Match findTarget(byte[] seed, String[] words, String passphrase) {
+      HdKeyNode root;
+      try {
+         root = HdKeyNode.fromSeed(seed);
+      } catch (HdKeyNode.KeyGenerationException e) {
+         // Extremely unlikely, and such a seed could not have been used either
+         return null;
+      }
+      Bip44CoinType coinType = _network.isProdnet() ? HdKeyPath.BIP44_PRODNET : HdKeyPath.BIP44_TESTNET;
+      for (int account = 0; account < _accounts; account++) {
+         Bip44Account accountPath = coinType.getAccount(account);
+         // Only the account level needs private derivation, everything below works on public keys
+         HdKeyNode accountNode = root.createChildNode(accountPath).getPublicNode();
+         for (boolean external : new boolean[]{true, false}) {
+            Bip44Chain chainPath = accountPath.getChain(external);
+            HdKeyNode chainNode = accountNode.createChildNode(chainPath.getLastRawIndex());
+            for (int i = 0; i < _addressesPerChain; i++) {
+               Address address = chainNode.createChildPublicKey(i).toAddress(_network);
+               if (_targets.contains(address)) {
+                  return new Match(words.clone(), passphrase, address, chainPath.getAddress(i));
+               }
+            }
+         }
+      }
+      return null;
+   }
+
+   private static int[] toIndexes(String[] words) {
+      int[] indexes = new int[words.length];
+      for (int i = 0; i < words.length; i++) {
+         if (UNKNOWN_WORD.equals(words[i])) {
+            indexes[i] = -1;
+            continue;
+         }
+         indexes[i] = Bip39.getWordIndex(words[i]);
+         Preconditions.checkArgument(indexes[i] != -1, "The word '%s' is not valid", words[i]);
+      }
+      return indexes;
+   }
+
+   /**
+    * A numbered set of candidate word lists, so that workers can take them by a shared counter
+    */
+   interface Candidates {
+      long size();
+
+      int length();
+
+      /**
+       * Write the word indexes of candidate n into the buffer
+       */
+      void get(long n, int[] indexes);
+   }
+
+   private static class UnknownWords implements Candidates {
+      private final int[] template;
+      private final int[] unknown;
+
+      UnknownWords(int[] template) {
+         this.template = template;
+         int count = 0;
+         for (int index : template) {
+            if (index == -1) {
+               count++;
+            }
+         }
+         Preconditions.checkArgument(count <= 5, "Too many unknown words");
+         unknown = new int[count];
+         for (int i = 0, j = 0; i < template.length; i++) {
+            if (template[i] == -1) {
+               unknown[j++] = i;
+            }
+         }
+      }
+
+      @Override
+      public long size() {
+         long size = 1;
+         for (int i = 0; i < unknown.length; i++) {
+            size *= WORD_COUNT;
+         }
+         return size;
+      }
+
+      @Override
+      public int length() {
+         return template.length;
+      }
+
+      @Override
+      public void get(long n, int[] indexes) {
+         System.arraycopy(template, 0, indexes, 0, template.length);
+         for (int position : unknown) {
+            indexes[position] = (int) (n % WORD_COUNT);
+            n /= WORD_COUNT;
+         }
+      }
+   }
+
+   /**
+    * Inserting a word right behind the same word gives the same list as inserting it in front of it. Those
+    * insertions are left out, so every list comes up once: position 0 takes all words, every later position all but
+    * the word in front of it.
+    */
+   static class OmittedWord implements Candidates {
+      private final int[] words;
+
+      OmittedWord(int[] words) {
+         this.words = words;
+      }
+
+      @Override
+      public long size() {
+         return WORD_COUNT + (long) words.length * (WORD_COUNT - 1);
+      }
+
+      @Override
+      public int length() {
+         return words.length + 1;
+      }
+
+      @Override
+      public void get(long n, int[] indexes) {
+         int position;
+         int word;
+         if (n < WORD_COUNT) {
+            position = 0;
+            word = (int) n;
+         } else {
+            n -= WORD_COUNT;
+            position = 1 + (int) (n / (WORD_COUNT - 1));
+            word = (int) (n % (WORD_COUNT - 1));
+            if (word >= words[position - 1]) {
+               // skip the word in front of this position
+               word++;
+            }
+         }
+         System.arraycopy(words, 0, indexes, 0, position);
+         indexes[position] = word;
+         System.arraycopy(words, position, indexes, position + 1, words.length - position);
+      }
+   }
+
+   private static class SwappedWords implements Candidates {
+      private final int[] words;
+
+      SwappedWords(int[] words) {
+         this.words = words;
+      }
+
+      @Override
+      public long size() {
+         // all pairs, plus the word list as given
+         return (long) words.length * (words.length - 1) / 2 + 1;
+      }
+
+      @Override
+      public int length() {
+         return words.length;
+      }
+
+      @Override
+      public void get(long n, int[] indexes) {
+         System.arraycopy(words, 0, indexes, 0, words.length);
+         if (n == 0) {
+            return;
+         }
+         n--;
+         int i = 0;
+         // find the pair (i, j) with i < j which has number n
+         while (n >= words.length - 1 - i) {
+            n -= words.length - 1 - i;
+            i++;
+         }
+         int j = i + 1 + (int) n;
+         indexes[i] = words[j];
+         indexes[j] = words[i];
+      }
+   }
+
+   private static class RepeatedWords implements Candidates {
+      private final int[] words;
+      private final long count;
+
+      RepeatedWords(int[] words, long count) {
+         this.words = words;
+         this.count = count;
+      }
+
+      @Override
+      public long size() {
+         return count;
+      }
+
+      @Override
+      public int length() {
+         return words.length;
+      }
+
+      @Override
+      public void get(long n, int[] indexes) {
+         System.arraycopy(words, 0, indexes, 0, words.length);
+      }
+   }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable index of a BIP39 word list for exact lookup, completion of partially entered words and validation of
+ * many word lists.
+ * <p>
+ * BIP39 word lists are chosen so that the first four letters identify a word. Every word is packed into an int of
+ * its first four letters, five bits each with 0 for "no more letters", which sorts the same way as the words. The
+ * sorted keys form a flat trie of depth four: all words starting with a prefix are one contiguous range, found by
+ * two binary searches, and a lookup compares a single word at the end. The whole index is 8KB for 2048 words.
+ */
+public final class Bip39WordIndex {
+   /**
+    * Number of letters that identify a word in a BIP39 word list
+    */
+   public static final int UNIQUE_PREFIX_LENGTH = 4;
+   private static final int BITS_PER_LETTER = 5;
+   private static final int LETTER_MASK = (1 << BITS_PER_LETTER) - 1;
+
+   public static final Bip39WordIndex ENGLISH = new Bip39WordIndex(Bip39.ENGLISH_WORD_LIST);
+
+   private final String[] _words;
+   // packed prefix of every word, in ascending order
+   private final int[] _keys;
+   // position of the word of every key in the original word list
+   private final short[] _wordIndexes;
+
+   /**
+    * @param words the word list, lower case letters a to z, unique in the first {@link #UNIQUE_PREFIX_LENGTH} letters
+    */
+   public Bip39WordIndex(String[] words) {
+      Preconditions.checkArgument(words.length <= Short.MAX_VALUE, "Too many words");
+      _words = words.clone();
+      long[] sorted = new long[_words.length];
+      for (int i = 0; i < _words.length; i++) {
+         int key = pack(_words[i], 0);
+         Preconditions.checkArgument(key != -1 && !_words[i].isEmpty(), "Invalid word '%s'", _words[i]);
+         sorted[i] = ((long) key << 32) | i;
+      }
+      Arrays.sort(sorted);
+      _keys = new int[sorted.length];
+      _wordIndexes = new short[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+         _keys[i] = (int) (sorted[i] >>> 32);
+         _wordIndexes[i] = (short) sorted[i];
+         if (i > 0 && _keys[i] == _keys[i - 1]) {
+            throw new IllegalArgumentException("The words '" + _words[_wordIndexes[i - 1]] + "' and '"
+                  + _words[_wordIndexes[i]] + "' share their first letters");
+         }
+      }
+   }
+
+   public int size() {
+      return _words.length;
+   }
+
+   public String getWord(int index) {
+      return _words[index];
+   }
+
+   /**
+    * @return the index of the word in the word list or -1 if it is not in the list
+    */
+   public int indexOf(String word) {
+      int key = pack(word, 0);
+      if (key == -1) {
+         return -1;
+      }
+      int position = Arrays.binarySearch(_keys, key);
+      if (position < 0) {
+         return -1;
+      }
+      int index = _wordIndexes[position];
+      return _words[index].equals(word) ? index : -1;
+   }
+
+   /**
+    * Resolve a partially entered word to the only word that starts with it. Once the first
+    * {@link #UNIQUE_PREFIX_LENGTH} letters are entered there is at most one such word. A complete word that other
+    * words start with, like "act" and "action", resolves to itself.
+    *
+    * @return the index of the word in the word list or -1 if no word or more than one word starts with the prefix
+    */
+   public int resolvePrefix(String prefix) {
+      int exact = indexOf(prefix);
+      if (exact != -1) {
+         return exact;
+      }
+      int from = getRangeStart(prefix);
+      if (from == -1 || getRangeEnd(prefix) - from != 1) {
+         return -1;
+      }
+      int index = _wordIndexes[from];
+      return _words[index].startsWith(prefix) ? index : -1;
+   }
+
+   /**
+    * @return the number of words starting with the prefix
+    */
+   public int getCompletionCount(String prefix) {
+      int from = getRangeStart(prefix);
+      if (from == -1) {
+         return 0;
+      }
+      if (prefix.length() <= UNIQUE_PREFIX_LENGTH) {
+         return getRangeEnd(prefix) - from;
+      }
+      // longer prefixes have one candidate, which may still differ after the first letters
+      return from < _keys.length && _words[_wordIndexes[from]].startsWith(prefix) ? 1 : 0;
+   }
+
+   /**
+    * @return up to maxCompletions words starting with the prefix, in alphabetical order
+    */
+   public List<String> getCompletions(String prefix, int maxCompletions) {
+      List<String> completions = new ArrayList<String>(Math.min(maxCompletions, 16));
+      int from = getRangeStart(prefix);
+      if (from == -1) {
+         return completions;
+      }
+      int to = getRangeEnd(prefix);
+      for (int i = from; i < to && completions.size() < maxCompletions; i++) {
+         String word = _words[_wordIndexes[i]];
+         if (word.startsWith(prefix)) {
+            completions.add(word);
+         }
+      }
+      return completions;
+   }
+
+   /**
+    * @return the indexes of the words or null if one of them is not in the word list
+    */
+   public int[] toIndexes(String[] words) {
+      int[] indexes = new int[words.length];
+      for (int i = 0; i < words.length; i++) {
+         indexes[i] = indexOf(words[i]);
+         if (indexes[i] == -1) {
+            return null;
+         }
+      }
+      return indexes;
+   }
+
+   /**
+    * Same as {@link Bip39#isValidWordList(String[])} for lists of this index
+    */
+   public boolean isValidWordList(String[] words) {
+      if (words.length != 12 && words.length != 15 && words.length != 18 && words.length != 21
+            && words.length != 24) {
+         return false;
+      }
+      int[] indexes = toIndexes(words);
+      return indexes != null && Bip39.isValidChecksum(indexes);
+   }
+
+   /**
+    * Validate many word lists, for instance when sorting out candidates of a recovery.
+    *
+    * @return for every word list whether it is valid
+    */
+   public boolean[] validate(List<String[]> wordLists) {
+      boolean[] valid = new boolean[wordLists.size()];
+      for (int i = 0; i < valid.length; i++) {
+         valid[i] = isValidWordList(wordLists.get(i));
+      }
+      return valid;
+   }
+
+   /**
+    * @return the position of the first key for the prefix, or -1 if the prefix can't be part of a word
+    */
+   private int getRangeStart(String prefix) {
+      int key = pack(prefix, 0);
+      if (key == -1) {
+         return -1;
+      }
+      int position = Arrays.binarySearch(_keys, key);
+      return position < 0 ? -position - 1 : position;
+   }
+
+   /**
+    * @return the position after the last key for the prefix
+    */
+   private int getRangeEnd(String prefix) {
+      // pad with the highest letter value instead of "no more letters"
+      int key = pack(prefix, LETTER_MASK);
+      int position = Arrays.binarySearch(_keys, key);
+      return position < 0 ? -position - 1 : position + 1;
+   }
+
+   /**
+    * Pack the first letters of a word into an int, letters a to z become 1 to 26 and missing letters become padding
+    *
+    * @return the packed letters or -1 if they are not all lower case letters a to z
+    */
+   private static int pack(String word, int padding) {
+      int key = 0;
+      for (int i = 0; i < UNIQUE_PREFIX_LENGTH; i++) {
+         int letter;
+         if (i < word.length()) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') {
+               return -1;
+            }
+            letter = c - 'a' + 1;
+         } else {
+            letter = padding;
+         }
+         key = (key << BITS_PER_LETTER) | letter;
+      }
+      return key;
+   }
+}
@@ -21,6 +21,7 @@ import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
 import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
 
 import java.io.Serializable;
 import java.util.*;
@@ -41,6 +42,8 @@ import java.util.*;
 public class BipSss {
 
    private static final int TYPE_BASE_58_STRING = 19;
+   private static final int MAX_SHARES = 16;
+   private static final Gf256 GF = new Gf256();
 
    public static class NotEnoughSharesException extends Exception {
       public int needed;
@@ -68,6 +71,43 @@ public class BipSss {
     */
    public static String combine(Collection<Share> shares) throws IncompatibleSharesException,
          NotEnoughSharesException, InvalidContentTypeException {
+      return combineAll(Collections.singletonList(shares)).get(0);
+   }
+
+   /**
+    * Combine the shares of many secrets. Secrets that were split the same way and are restored from shares with the
+    * same numbers share the expensive part of the combination.
+    *
+    * @param shareSets for every secret the list of shares to combine
+    * @return the base58 encoded secrets, in the same order
+    * @throws IncompatibleSharesException if there are shares not belonging to the same secret
+    * @throws NotEnoughSharesException if more shares are needed to get one of the secrets
+    * @throws InvalidContentTypeException if the content type is not 19 (for base58 encoded secret)
+    */
+   public static List<String> combineAll(List<? extends Collection<Share>> shareSets)
+         throws IncompatibleSharesException, NotEnoughSharesException, InvalidContentTypeException {
+      List<List<Gf256.Share>> gfShareSets = new ArrayList<List<Gf256.Share>>(shareSets.size());
+      for (Collection<Share> shares : shareSets) {
+         List<Gf256.Share> gfShares = new ArrayList<Gf256.Share>();
+         for (Share s : select(shares)) {
+            gfShares.add(new Gf256.Share((byte) s.shareNumber, s.shareData));
+         }
+         gfShareSets.add(gfShares);
+      }
+
+      // Combine
+      List<String> secrets = new ArrayList<String>(shareSets.size());
+      for (byte[] content : GF.combineShares(gfShareSets)) {
+         secrets.add(Base58.encodeWithChecksum(content));
+      }
+      return secrets;
+   }
+
+   /**
+    * Check that the shares belong together and select as many as needed to combine the secret
+    */
+   private static List<Share> select(Collection<Share> shares) throws IncompatibleSharesException,
+         NotEnoughSharesException, InvalidContentTypeException {
 
       // Need at least one share
       if (shares.size() == 0) {
@@ -108,15 +148,50 @@ public class BipSss {
             break;
          }
       }
+      return selection;
+   }
 
-      // Combine
-      Gf256 gf = new Gf256();
-      List<Gf256.Share> gfShares = new ArrayList<Gf256.Share>();
-      for (Share s : selection) {
-         gfShares.add(new Gf256.Share((byte) s.shareNumber, s.shareData));
+   /**
+    * Split a base58 encoded secret like a private key into shares.
+    *
+    * @param base58Secret the secret with a base58 checksum
+    * @param threshold    the number of shares needed to combine the secret
+    * @param shares       the number of shares to create, at most 16
+    * @return the shares, numbered from 1
+    */
+   public static List<Share> split(String base58Secret, int threshold, int shares) {
+      return splitAll(Collections.singletonList(base58Secret), threshold, shares).get(0);
+   }
+
+   /**
+    * Split many base58 encoded secrets with the same threshold and number of shares.
+    *
+    * @return for every secret its shares, in the same order as the secrets
+    */
+   public static List<List<Share>> splitAll(List<String> base58Secrets, int threshold, int shares) {
+      if (threshold < 1 || shares > MAX_SHARES) {
+         throw new IllegalArgumentException("Threshold must be at least 1 and shares at most " + MAX_SHARES);
+      }
+      List<byte[]> contents = new ArrayList<byte[]>(base58Secrets.size());
+      for (String secret : base58Secrets) {
+         byte[] content = Base58.decodeChecked(secret);
+         if (content == null) {
+            throw new IllegalArgumentException("Invalid base58 secret");
+         }
+         contents.add(content);
+      }
+      List<List<Gf256.Share>> gfShareLists = GF.makeShares(contents, threshold, shares);
+      List<List<Share>> shareLists = new ArrayList<List<Share>>(contents.size());
+      for (int i = 0; i < contents.size(); i++) {
+         // The share set id is the beginning of the hash of the secret
+         byte[] id = BitUtils.copyOf(HashUtils.doubleSha256(contents.get(i)).getBytes(), 2);
+         List<Share> shareList = new ArrayList<Share>(shares);
+         for (Gf256.Share gfShare : gfShareLists.get(i)) {
+            shareList.add(new Share(TYPE_BASE_58_STRING, id, gfShare.index, threshold, gfShare.data));
+         }
+         shareLists.add(shareList);
       }
-      byte[] content = gf.combineShares(gfShares);
-      return Base58.encodeWithChecksum(content);
+      return shareLists;
    }
 
    public static class Share implements Serializable {
@@ -165,7 +240,8 @@ public class BipSss {
       }
 
       private byte getByteForNumberAndThreshold(int shareNumber, int threshold) {
-         int number = (shareNumber - 1) * 16 + (threshold - 1);
+         // the threshold goes into the high nibble, as read by fromString
+         int number = (threshold - 1) * 16 + (shareNumber - 1);
          return  (byte) number;
       }
 
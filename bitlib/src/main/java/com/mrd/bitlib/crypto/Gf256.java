@@ -17,15 +17,21 @@
 package com.mrd.bitlib.crypto;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.HexUtils;
 
 /**
  * Implementation of a Galois Field (2^8)
+ * <p>
+ * Shares are computed and combined a whole byte array at a time with a 64KB multiplication table, where row c holds
+ * the products of c with all 256 bytes. Instances are immutable and can be shared between threads.
  */
 public class Gf256 {
 
@@ -54,6 +60,7 @@ public class Gf256 {
 
    private int[] _logTable = new int[256];
    private int[] _expTable = new int[256];
+   private final byte[] _mulTable = new byte[256 * 256];
 
    private static final int INFINITY = 255;
 
@@ -86,6 +93,11 @@ public class Gf256 {
       // Check that this polynomial really generates a GF by checking that we
       // are back to square one
       Preconditions.checkState(b == 1);
+      for (int x = 1; x < 256; x++) {
+         for (int y = 1; y < 256; y++) {
+            _mulTable[(x << 8) | y] = (byte) exp(mod255(log(x) + log(y)));
+         }
+      }
    }
 
    private final int log(int n) {
@@ -96,18 +108,6 @@ public class Gf256 {
       return _expTable[n];
    }
 
-   /**
-    * Addition. This is a simple X-or of two byte arrays
-    */
-   private final byte[] add(byte[] a, byte[] b) {
-      Preconditions.checkState(a.length == b.length);
-      byte[] c = new byte[a.length];
-      for (int i = 0; i < a.length; i++) {
-         c[i] = add(a[i], b[i]);
-      }
-      return c;
-   }
-
    /**
     * Addition. This is a simple X-or of two bytes
     */
@@ -125,26 +125,22 @@ public class Gf256 {
    /**
     * Multiplication.
     */
-   private byte[] mul(byte[] a, byte[] b) {
-      Preconditions.checkState(a.length == b.length);
-      byte[] c = new byte[a.length];
-      for (int i = 0; i < a.length; i++) {
-         c[i] = mul(a[i], b[i]);
-      }
-      return c;
+   private final byte mul(byte a, byte b) {
+      return _mulTable[(b2i(a) << 8) | b2i(b)];
    }
 
    /**
-    * Multiplication.
+    * Multiply a byte array with a constant and add it to another: dst = dst + c * src
     */
-   private final byte mul(byte a, byte b) {
-      if (a == 0 || b == 0) {
-         return 0;
-      } else {
-         // The log of the product is the sum of the log of the multiplicands
-         // modulo 255
-         int lp = mod255(log(b2i(a)) + log(b2i(b)));
-         return (byte) exp(lp);
+   private void mulAdd(byte[] dst, byte[] src, byte c) {
+      Preconditions.checkState(dst.length == src.length);
+      if (c == 0) {
+         return;
+      }
+      byte[] table = _mulTable;
+      int row = b2i(c) << 8;
+      for (int i = 0; i < dst.length; i++) {
+         dst[i] ^= table[row | (src[i] & 0xFF)];
       }
    }
 
@@ -189,16 +185,17 @@ public class Gf256 {
 
    private Share makeShare(byte x, byte[][] coeff) {
       Preconditions.checkArgument(x != 0);
-      int q = coeff[0].length;
-      byte[] s = coeff[0];
-
-      byte xpow = 1;
-
-      for (int i = 1; i < coeff.length; i++) {
-         xpow = mul(xpow, x);
-         s = add(s, mul(byteArrayOf(xpow, q), coeff[i]));
+      // Evaluate the polynomial at x with Horner's rule: ((c[m-1] * x + c[m-2]) * x + ...) * x + c[0]
+      byte[] s = BitUtils.copyByteArray(coeff[coeff.length - 1]);
+      byte[] table = _mulTable;
+      int row = b2i(x) << 8;
+      for (int i = coeff.length - 2; i >= 0; i--) {
+         byte[] c = coeff[i];
+         for (int j = 0; j < s.length; j++) {
+            s[j] = (byte) (table[row | (s[j] & 0xFF)] ^ c[j]);
+         }
       }
-      return new Share((byte) x, s);
+      return new Share(x, s);
    }
 
    /**
@@ -212,35 +209,70 @@ public class Gf256 {
     * @return the combined secret
     */
    public byte[] combineShares(List<Share> shares) {
-      int m = shares.size();
-      Preconditions.checkArgument(m > 0);
-      int q = shares.get(0).data.length;
-
-      byte n = 1;
+      Preconditions.checkArgument(shares.size() > 0);
+      return combineShares(shares, getLagrangeCoefficients(getIndexes(shares)));
+   }
 
-      for (Share share : shares) {
-         n = mul(n, share.index);
+   /**
+    * Combine many secrets. The Lagrange coefficients only depend on the indexes of the shares, so they are computed
+    * once for every set of indexes and applied to all secrets shared with it.
+    *
+    * @param shareSets
+    *           for every secret the shares to combine
+    * @return the combined secrets in the same order
+    */
+   public List<byte[]> combineShares(Iterable<? extends List<Share>> shareSets) {
+      Map<String, byte[]> coefficientsByIndexes = new HashMap<String, byte[]>();
+      List<byte[]> secrets = new ArrayList<byte[]>();
+      for (List<Share> shares : shareSets) {
+         Preconditions.checkArgument(shares.size() > 0);
+         byte[] indexes = getIndexes(shares);
+         String key = HexUtils.toHex(indexes);
+         byte[] coefficients = coefficientsByIndexes.get(key);
+         if (coefficients == null) {
+            coefficients = getLagrangeCoefficients(indexes);
+            coefficientsByIndexes.put(key, coefficients);
+         }
+         secrets.add(combineShares(shares, coefficients));
       }
+      return secrets;
+   }
 
-      byte[] a = new byte[q];
-      for (Share share : shares) {
-         byte lc = div(n, share.index);
-         for (Share otherShare : shares) {
-            if (otherShare.index != share.index) {
-               lc = div(lc, sub(otherShare.index, share.index));
-            }
-         }
-         a = add(a, mul(share.data, byteArrayOf(lc, q)));
+   private byte[] combineShares(List<Share> shares, byte[] coefficients) {
+      byte[] a = new byte[shares.get(0).data.length];
+      for (int i = 0; i < coefficients.length; i++) {
+         mulAdd(a, shares.get(i).data, coefficients[i]);
       }
       return a;
    }
 
-   private static final byte[] byteArrayOf(byte b, int length) {
-      byte[] result = new byte[length];
-      for (int i = 0; i < length; i++) {
-         result[i] = b;
+   private static byte[] getIndexes(List<Share> shares) {
+      byte[] indexes = new byte[shares.size()];
+      for (int i = 0; i < indexes.length; i++) {
+         indexes[i] = shares.get(i).index;
+      }
+      return indexes;
+   }
+
+   /**
+    * The Lagrange basis polynomials of the share indexes evaluated at zero
+    */
+   private byte[] getLagrangeCoefficients(byte[] indexes) {
+      byte n = 1;
+      for (byte index : indexes) {
+         n = mul(n, index);
+      }
+      byte[] coefficients = new byte[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+         byte lc = div(n, indexes[i]);
+         for (byte other : indexes) {
+            if (other != indexes[i]) {
+               lc = div(lc, sub(other, indexes[i]));
+            }
+         }
+         coefficients[i] = lc;
       }
-      return result;
+      return coefficients;
    }
 
    /**
@@ -268,4 +300,17 @@ public class Gf256 {
       return shareList;
    }
 
+   /**
+    * Shard many secrets with the same threshold and number of shares.
+    *
+    * @return for every secret the list of shares, in the same order as the secrets
+    */
+   public List<List<Share>> makeShares(List<byte[]> secrets, int threshold, int shares) {
+      List<List<Share>> shareLists = new ArrayList<List<Share>>(secrets.size());
+      for (byte[] secret : secrets) {
+         shareLists.add(makeShares(secret, threshold, shares));
+      }
+      return shareLists;
+   }
+
 }
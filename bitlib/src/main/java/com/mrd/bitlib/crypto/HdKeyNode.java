@@ -59,6 +59,8 @@ public class HdKeyNode implements Serializable {
    private final int _depth;
    private final int _parentFingerprint;
    private final int _index;
+   // HMAC keyed with the chain code, kept for deriving further children of this node
+   private transient Hmac _chainCodeHmac;
 
    /**
     * Convert to custom fast parsable byte format. XXX This is very much
@@ -260,26 +262,29 @@ public class HdKeyNode implements Serializable {
     *            can be created for this index (extremely unlikely)
     */
    public HdKeyNode createChildNode(int index) throws KeyGenerationException {
-      byte[] data;
-      byte[] publicKeyBytes = _publicKey.getPublicKeyBytes();
-      if (0 == (index & HARDENED_MARKER)) {
-         // Not hardened key
-         ByteWriter writer = new ByteWriter(publicKeyBytes.length + 4);
-         writer.putBytes(publicKeyBytes);
-         writer.putIntBE(index);
-         data = writer.toBytes();
-      } else {
-         // Hardened key
-         if (!isPrivateHdKeyNode()) {
-            throw new KeyGenerationException("Cannot generate hardened HD key node from pubic HD key node");
+      boolean hardened = 0 != (index & HARDENED_MARKER);
+      if (hardened && !isPrivateHdKeyNode()) {
+         throw new KeyGenerationException("Cannot generate hardened HD key node from pubic HD key node");
+      }
+      byte[] l = new byte[64];
+      synchronized (this) {
+         if (_chainCodeHmac == null) {
+            _chainCodeHmac = Hmac.sha512(_chainCode);
          }
-         ByteWriter writer = new ByteWriter(33 + 4);
-         writer.put((byte) 0);
-         writer.putBytes(_privateKey.getPrivateKeyBytes());
-         writer.putIntBE(index);
-         data = writer.toBytes();
+         if (!hardened) {
+            // Not hardened key
+            _chainCodeHmac.update(_publicKey.getPublicKeyBytes());
+         } else {
+            // Hardened key
+            _chainCodeHmac.update((byte) 0);
+            _chainCodeHmac.update(_privateKey.getPrivateKeyBytes());
+         }
+         _chainCodeHmac.update((byte) (index >>> 24));
+         _chainCodeHmac.update((byte) (index >>> 16));
+         _chainCodeHmac.update((byte) (index >>> 8));
+         _chainCodeHmac.update((byte) index);
+         _chainCodeHmac.doFinal(l, 0);
       }
-      byte[] l = Hmac.hmacSha512(_chainCode, data);
       byte[] lL = BitUtils.copyOfRange(l, 0, 32);
       byte[] lR = BitUtils.copyOfRange(l, 32, 64);
 
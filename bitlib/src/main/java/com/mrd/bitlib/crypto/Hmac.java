@@ -16,12 +16,20 @@
 
 package com.mrd.bitlib.crypto;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.HexUtils;
 
+/**
+ * HMAC with SHA-256 or SHA-512.
+ * <p>
+ * Besides the static one-shot methods, an instance can be used to calculate many MACs with the same key: the inner and
+ * outer digest states after hashing the key pads are kept and cloned for every MAC, instead of padding and hashing the
+ * key again. Results can be written into caller provided buffers. Instances are not thread safe.
+ */
 public class Hmac {
 
    private static final String SHA256 = "SHA-256";
@@ -29,67 +37,150 @@ public class Hmac {
    private static final int SHA256_BLOCK_SIZE = 64;
    private static final int SHA512_BLOCK_SIZE = 128;
 
+   private final int _blockSize;
+   private final byte[] _innerHash;
+   private final byte[] _iKeyPad;
+   private final byte[] _oKeyPad;
+   private MessageDigest _inner;
+   private MessageDigest _outer;
+   // The digest states after hashing the key pads, or null if the digest implementation can not be cloned
+   private MessageDigest _innerKeyed;
+   private MessageDigest _outerKeyed;
+
    public static byte[] hmacSha256(byte[] key, byte[] message) {
-      MessageDigest digest;
-      try {
-         digest = MessageDigest.getInstance(SHA256);
-      } catch (NoSuchAlgorithmException e) {
-         // Only happens if the platform does not support SHA-256
-         throw new RuntimeException(e);
-      }
-      return hmac(digest, SHA256_BLOCK_SIZE, key, message);
+      return sha256(key).doFinal(message);
    }
 
    public static byte[] hmacSha512(byte[] key, byte[] message) {
-      MessageDigest digest;
-      try {
-         digest = MessageDigest.getInstance(SHA512);
-      } catch (NoSuchAlgorithmException e) {
-         // Only happens if the platform does not support SHA-512
-         throw new RuntimeException(e);
-      }
-      return hmac(digest, SHA512_BLOCK_SIZE, key, message);
+      return sha512(key).doFinal(message);
+   }
+
+   /**
+    * Create a reusable HMAC SHA-256 instance for a key
+    */
+   public static Hmac sha256(byte[] key) {
+      return new Hmac(SHA256, SHA256_BLOCK_SIZE, key);
    }
 
-   private static byte[] hmac(MessageDigest digest, int blockSize, byte[] key, byte[] message) {
+   /**
+    * Create a reusable HMAC SHA-512 instance for a key
+    */
+   public static Hmac sha512(byte[] key) {
+      return new Hmac(SHA512, SHA512_BLOCK_SIZE, key);
+   }
 
+   private Hmac(String algorithm, int blockSize, byte[] key) {
+      _blockSize = blockSize;
+      _inner = getDigest(algorithm);
+      _outer = getDigest(algorithm);
+      _innerHash = new byte[_inner.getDigestLength()];
+      _iKeyPad = new byte[blockSize];
+      _oKeyPad = new byte[blockSize];
+      init(key);
+   }
+
+   /**
+    * Use a new key for the following MACs. Any data added since the last MAC is discarded.
+    */
+   public void init(byte[] key) {
       // Ensure sufficient key length
-      if (key.length > blockSize) {
-         key = hash(digest, key);
-      }
-      if (key.length < blockSize) {
-         // Zero pad
-         byte[] temp = new byte[blockSize];
-         System.arraycopy(key, 0, temp, 0, key.length);
-         key = temp;
+      if (key.length > _blockSize) {
+         _inner.reset();
+         key = _inner.digest(key);
       }
 
-      // Prepare o key pad
-      byte[] o_key_pad = new byte[blockSize];
-      for (int i = 0; i < blockSize; i++) {
-         o_key_pad[i] = (byte) (0x5c ^ key[i]);
+      // Prepare the key pads, the key is zero padded
+      for (int i = 0; i < _blockSize; i++) {
+         byte b = i < key.length ? key[i] : 0;
+         _iKeyPad[i] = (byte) (0x36 ^ b);
+         _oKeyPad[i] = (byte) (0x5c ^ b);
       }
 
-      // Prepare i key pad
-      byte[] i_key_pad = new byte[blockSize];
-      for (int i = 0; i < blockSize; i++) {
-         i_key_pad[i] = (byte) (0x36 ^ key[i]);
+      _inner.reset();
+      _inner.update(_iKeyPad);
+      _outer.reset();
+      _outer.update(_oKeyPad);
+      _innerKeyed = copy(_inner);
+      _outerKeyed = copy(_outer);
+   }
+
+   public int getMacLength() {
+      return _innerHash.length;
+   }
+
+   public void update(byte data) {
+      _inner.update(data);
+   }
+
+   public void update(byte[] data) {
+      _inner.update(data, 0, data.length);
+   }
+
+   public void update(byte[] data, int offset, int length) {
+      _inner.update(data, offset, length);
+   }
+
+   /**
+    * Add the message, calculate the MAC and return it. The instance is ready for the next MAC with the same key.
+    */
+   public byte[] doFinal(byte[] message) {
+      update(message);
+      return doFinal();
+   }
+
+   /**
+    * Calculate the MAC of the data added so far and return it. The instance is ready for the next MAC with the same
+    * key.
+    */
+   public byte[] doFinal() {
+      byte[] result = new byte[getMacLength()];
+      doFinal(result, 0);
+      return result;
+   }
+
+   /**
+    * Calculate the MAC of the data added so far and write it into the output buffer. The instance is ready for the
+    * next MAC with the same key.
+    */
+   public void doFinal(byte[] output, int offset) {
+      try {
+         _inner.digest(_innerHash, 0, _innerHash.length);
+         _outer.update(_innerHash);
+         _outer.digest(output, offset, _innerHash.length);
+      } catch (DigestException e) {
+         throw new IllegalArgumentException(e);
       }
+      resetToKey();
+   }
 
-      return hash(digest, o_key_pad, hash(digest, i_key_pad, message));
+   private void resetToKey() {
+      if (_innerKeyed != null && _outerKeyed != null) {
+         _inner = copy(_innerKeyed);
+         _outer = copy(_outerKeyed);
+      } else {
+         // Cloning is not supported, hash the key pads again
+         _inner.reset();
+         _inner.update(_iKeyPad);
+         _outer.reset();
+         _outer.update(_oKeyPad);
+      }
    }
 
-   private static byte[] hash(MessageDigest digest, byte[] data) {
-      digest.reset();
-      digest.update(data, 0, data.length);
-      return digest.digest();
+   private static MessageDigest copy(MessageDigest digest) {
+      try {
+         return (MessageDigest) digest.clone();
+      } catch (CloneNotSupportedException e) {
+         return null;
+      }
    }
 
-   private static byte[] hash(MessageDigest digest, byte[] data1, byte[] data2) {
-      digest.reset();
-      digest.update(data1, 0, data1.length);
-      digest.update(data2, 0, data2.length);
-      return digest.digest();
+   private static MessageDigest getDigest(String algorithm) {
+      try {
+         return MessageDigest.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+         // Only happens if the platform does not support SHA-256 or SHA-512
+         throw new RuntimeException(e);
+      }
    }
 
    /**
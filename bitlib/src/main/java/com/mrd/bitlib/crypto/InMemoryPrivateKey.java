@@ -26,7 +26,6 @@ import com.mrd.bitlib.crypto.ec.EcTools;
 import com.mrd.bitlib.crypto.ec.Parameters;
 import com.mrd.bitlib.crypto.ec.Point;
 import com.mrd.bitlib.model.NetworkParameters;
-import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
@@ -285,40 +284,49 @@ public class InMemoryPrivateKey extends PrivateKey implements KeyExporter, Seria
          byte [] k = new byte[32];
          Arrays.fill(k, (byte)0x00);
 
+         // All steps use the same HMAC instance and write into v and k directly
+         Hmac hmac = Hmac.sha256(k);
+         byte[] privateKeyBytes = privateKey.getPrivateKeyBytes();
+         byte[] messageHashBytes = messageHash.getBytes();
+
          // Step d
-         ByteWriter bwD = new ByteWriter(32 + 1 + 32 + 32);
-         bwD.putBytes(v);
-         bwD.put((byte) 0x00 );
-         bwD.putBytes(privateKey.getPrivateKeyBytes());
-         bwD.putBytes(messageHash.getBytes());
-         k = Hmac.hmacSha256(k, bwD.toBytes());
+         hmac.update(v);
+         hmac.update((byte) 0x00);
+         hmac.update(privateKeyBytes);
+         hmac.update(messageHashBytes);
+         hmac.doFinal(k, 0);
+         hmac.init(k);
 
          // Step e
-         v = Hmac.hmacSha256(k, v);
+         hmac.update(v);
+         hmac.doFinal(v, 0);
 
          // Step f
-         ByteWriter bwF = new ByteWriter(32 + 1 + 32 + 32);
-         bwF.putBytes(v);
-         bwF.put((byte) 0x01 );
-         bwF.putBytes(privateKey.getPrivateKeyBytes());
-         bwF.putBytes(messageHash.getBytes());
-         k = Hmac.hmacSha256(k, bwF.toBytes());
+         hmac.update(v);
+         hmac.update((byte) 0x01);
+         hmac.update(privateKeyBytes);
+         hmac.update(messageHashBytes);
+         hmac.doFinal(k, 0);
+         hmac.init(k);
 
          // Step g
-         v = Hmac.hmacSha256(k, v);
+         hmac.update(v);
+         hmac.doFinal(v, 0);
 
          // Step H2b
-         v = Hmac.hmacSha256(k, v);
+         hmac.update(v);
+         hmac.doFinal(v, 0);
 
          BigInteger t = bits2int(v);
 
          // Step H3, repeat until T is within the interval [1, Parameters.n - 1]
          while ((t.signum() <= 0) || (t.compareTo(Parameters.n) >= 0)) {
-            ByteWriter bwH = new ByteWriter(32 + 1);
-            bwH.putBytes(v);
-            bwH.put((byte) 0x00);
-            k = Hmac.hmacSha256(k, bwH.toBytes());
-            v = Hmac.hmacSha256(k, v);
+            hmac.update(v);
+            hmac.update((byte) 0x00);
+            hmac.doFinal(k, 0);
+            hmac.init(k);
+            hmac.update(v);
+            hmac.doFinal(v, 0);
 
             t = new BigInteger(v);
          }
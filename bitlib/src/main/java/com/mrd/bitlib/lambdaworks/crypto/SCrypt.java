@@ -5,10 +5,18 @@ package com.mrd.bitlib.lambdaworks.crypto;
 import static java.lang.Integer.MAX_VALUE;
 import static java.lang.System.arraycopy;
 
-import java.security.GeneralSecurityException;
+import com.mrd.bitlib.crypto.Hmac;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of the <a
@@ -18,8 +26,29 @@ import javax.crypto.spec.SecretKeySpec;
  * @author Will Glozer
  * Note: Removed native JNI calls for native implementation
  *         for use with BCCAPI
+ * <p>
+ * The p independent smix lanes run in parallel, each worker with its own V
+ * buffer, as far as the number of cores and the available memory allow.
+ * Salsa20/8 works on int[] state and blockmix does not allocate per block.
  */
 public class SCrypt {
+   private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * Runs lanes in addition to the calling thread, which always takes part
+    */
+   private static final ExecutorService LANE_EXECUTOR = Executors.newFixedThreadPool(Math.max(1, CORES - 1),
+         new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "SCrypt lane " + count.incrementAndGet());
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+
    /**
     * Pure Java implementation of the <a
     * href="http://www.tarsnap.com/scrypt/scrypt.pdf"/>scrypt KDF</a>.
@@ -53,30 +82,41 @@ public class SCrypt {
       if (r > MAX_VALUE / 128 / p)
          throw new IllegalArgumentException("Parameter r is too large");
 
-      Mac mac = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(passwd, "HmacSHA256"));
+      Hmac mac = Hmac.sha256(passwd);
 
       byte[] DK = new byte[dkLen];
 
       byte[] B = new byte[128 * r * p];
-      byte[] XY = new byte[256 * r];
-      // The original SCrypt implementation uses one big V array with N * 128 *
-      // r bytes. We have observed that this may cause problems on some android
-      // devices due to memory fragmentation. Instead we allocate N arrays of
-      // size 128 * r.
-      byte[][] V = new byte[N][];
-      for (int i = 0; i < N; i++) {
-         V[i] = new byte[128 * r];
-      }
-      
-      int i;
 
       PBKDF.pbkdf2(mac, salt, 1, B, p * 128 * r);
 
-      for (i = 0; i < p; i++) {
-         smix(B, i * 128 * r, r, N, V, XY, progressTracker);
-         if (progressTracker != null) {
-            progressTracker.setProgressP(i+1);
+      AtomicInteger nextLane = new AtomicInteger();
+      int workers = Math.min(Math.min(p, CORES), getMaxWorkersForMemory(N, r));
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(workers - 1);
+      try {
+         for (int i = 1; i < workers; i++) {
+            futures.add(LANE_EXECUTOR.submit(new LaneWorker(B, r, N, p, nextLane, progressTracker)));
+         }
+         // The calling thread works on lanes too
+         new LaneWorker(B, r, N, p, nextLane, progressTracker).call();
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+         }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      } finally {
+         for (Future<Void> future : futures) {
+            future.cancel(true);
          }
       }
       PBKDF.pbkdf2(mac, B, 1, DK, dkLen);
@@ -84,130 +124,196 @@ public class SCrypt {
       return DK;
    }
 
-   private static void smix(byte[] B, int Bi, int r, int N, byte[][] V, byte[] XY, SCryptProgress progressTracker)
-         throws InterruptedException {
-      int Xi = 0;
-      int Yi = 128 * r;
-      int i;
-
-      arraycopy(B, Bi, XY, Xi, 128 * r);
+   /**
+    * Each worker needs its own V buffer of N * 128 * r bytes, don't let them
+    * take more than half of the memory that is left
+    */
+   private static int getMaxWorkersForMemory(int N, int r) {
+      Runtime runtime = Runtime.getRuntime();
+      long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+      long perWorker = 128L * r * N;
+      return (int) Math.max(1, Math.min(Integer.MAX_VALUE, available / 2 / perWorker));
+   }
 
-      for (i = 0; i < N; i++) {
-         arraycopy(XY, Xi, V[i], 0, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
-         if (progressTracker != null) {
-            progressTracker.setProgressN1(i);
-         }
+   /**
+    * Takes lanes until all p lanes are taken, reusing its buffers for every
+    * lane
+    */
+   private static class LaneWorker implements Callable<Void> {
+      private final byte[] B;
+      private final int r;
+      private final int N;
+      private final int p;
+      private final AtomicInteger nextLane;
+      private final SCryptProgress progressTracker;
+
+      LaneWorker(byte[] B, int r, int N, int p, AtomicInteger nextLane, SCryptProgress progressTracker) {
+         this.B = B;
+         this.r = r;
+         this.N = N;
+         this.p = p;
+         this.nextLane = nextLane;
+         this.progressTracker = progressTracker;
       }
 
-      for (i = 0; i < N; i++) {
-         int j = integerify(XY, Xi, r) & (N - 1);
-         blockxor(V[j], 0, XY, Xi, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
-         if (progressTracker != null) {
-            progressTracker.setProgressN2(i);
+      @Override
+      public Void call() throws InterruptedException {
+         // The original SCrypt implementation uses one big V array with N * 128 *
+         // r bytes. We have observed that this may cause problems on some android
+         // devices due to memory fragmentation. Instead we allocate N arrays of
+         // size 128 * r.
+         int[][] V = null;
+         int[] X = new int[32 * r];
+         int[] Y = new int[32 * r];
+         int[] T = new int[16];
+         try {
+            int lane;
+            while ((lane = nextLane.getAndIncrement()) < p) {
+               if (V == null) {
+                  V = new int[N][32 * r];
+               }
+               smix(B, lane * 128 * r, r, N, V, X, Y, T, progressTracker, lane);
+            }
+            return null;
+         } finally {
+            // Make the other workers stop taking lanes if we failed
+            nextLane.set(p);
          }
       }
-
-      arraycopy(XY, Xi, B, Bi, 128 * r);
    }
 
-   private static void blockmix_salsa8(byte[] BY, int Bi, int Yi, int r) {
-      byte[] X = new byte[64];
+   private static void smix(byte[] B, int Bi, int r, int N, int[][] V, int[] X, int[] Y, int[] T,
+                            SCryptProgress progressTracker, int lane) throws InterruptedException {
+      int blockInts = 32 * r;
       int i;
 
-      arraycopy(BY, Bi + (2 * r - 1) * 64, X, 0, 64);
+      for (i = 0; i < blockInts; i++) {
+         X[i] = littleEndianToInt(B, Bi + i * 4);
+      }
 
-      for (i = 0; i < 2 * r; i++) {
-         blockxor(BY, i * 64, X, 0, 64);
-         salsa20_8(X);
-         arraycopy(X, 0, BY, Yi + (i * 64), 64);
+      for (i = 0; i < N; i++) {
+         arraycopy(X, 0, V[i], 0, blockInts);
+         blockmix_salsa8(X, Y, T, r);
+         // the result is in Y, swap the roles of the buffers
+         int[] tmp = X;
+         X = Y;
+         Y = tmp;
+         checkProgress(progressTracker, lane, i + 1);
       }
 
-      for (i = 0; i < r; i++) {
-         arraycopy(BY, Yi + (i * 2) * 64, BY, Bi + (i * 64), 64);
+      for (i = 0; i < N; i++) {
+         int j = X[(2 * r - 1) * 16] & (N - 1);
+         blockxor(V[j], X, blockInts);
+         blockmix_salsa8(X, Y, T, r);
+         int[] tmp = X;
+         X = Y;
+         Y = tmp;
+         checkProgress(progressTracker, lane, N + i + 1);
       }
 
-      for (i = 0; i < r; i++) {
-         arraycopy(BY, Yi + (i * 2 + 1) * 64, BY, Bi + (i + r) * 64, 64);
+      for (i = 0; i < blockInts; i++) {
+         intToLittleEndian(X[i], B, Bi + i * 4);
       }
    }
 
-   public static int R(int a, int b) {
-      return (a << b) | (a >>> (32 - b));
+   private static void checkProgress(SCryptProgress progressTracker, int lane, int work) throws InterruptedException {
+      if (progressTracker != null) {
+         progressTracker.setLaneProgress(lane, work);
+      }
+      // Cheap enough to do on every block, and lets us cancel the other lanes
+      if (Thread.interrupted()) {
+         throw new InterruptedException();
+      }
    }
 
-   private static void salsa20_8(byte[] B) {
-      int[] B32 = new int[16];
-      int[] x = new int[16];
+   /**
+    * BlockMix with salsa20/8 from B into Y, using T as scratch space
+    */
+   private static void blockmix_salsa8(int[] B, int[] Y, int[] T, int r) {
       int i;
 
-      for (i = 0; i < 16; i++) {
-         B32[i] = (B[i * 4 + 0] & 0xff) << 0;
-         B32[i] |= (B[i * 4 + 1] & 0xff) << 8;
-         B32[i] |= (B[i * 4 + 2] & 0xff) << 16;
-         B32[i] |= (B[i * 4 + 3] & 0xff) << 24;
-      }
+      arraycopy(B, (2 * r - 1) * 16, T, 0, 16);
 
-      arraycopy(B32, 0, x, 0, 16);
-
-      for (i = 8; i > 0; i -= 2) {
-         x[4] ^= R(x[0] + x[12], 7);
-         x[8] ^= R(x[4] + x[0], 9);
-         x[12] ^= R(x[8] + x[4], 13);
-         x[0] ^= R(x[12] + x[8], 18);
-         x[9] ^= R(x[5] + x[1], 7);
-         x[13] ^= R(x[9] + x[5], 9);
-         x[1] ^= R(x[13] + x[9], 13);
-         x[5] ^= R(x[1] + x[13], 18);
-         x[14] ^= R(x[10] + x[6], 7);
-         x[2] ^= R(x[14] + x[10], 9);
-         x[6] ^= R(x[2] + x[14], 13);
-         x[10] ^= R(x[6] + x[2], 18);
-         x[3] ^= R(x[15] + x[11], 7);
-         x[7] ^= R(x[3] + x[15], 9);
-         x[11] ^= R(x[7] + x[3], 13);
-         x[15] ^= R(x[11] + x[7], 18);
-         x[1] ^= R(x[0] + x[3], 7);
-         x[2] ^= R(x[1] + x[0], 9);
-         x[3] ^= R(x[2] + x[1], 13);
-         x[0] ^= R(x[3] + x[2], 18);
-         x[6] ^= R(x[5] + x[4], 7);
-         x[7] ^= R(x[6] + x[5], 9);
-         x[4] ^= R(x[7] + x[6], 13);
-         x[5] ^= R(x[4] + x[7], 18);
-         x[11] ^= R(x[10] + x[9], 7);
-         x[8] ^= R(x[11] + x[10], 9);
-         x[9] ^= R(x[8] + x[11], 13);
-         x[10] ^= R(x[9] + x[8], 18);
-         x[12] ^= R(x[15] + x[14], 7);
-         x[13] ^= R(x[12] + x[15], 9);
-         x[14] ^= R(x[13] + x[12], 13);
-         x[15] ^= R(x[14] + x[13], 18);
+      for (i = 0; i < 2 * r; i++) {
+         for (int k = 0; k < 16; k++) {
+            T[k] ^= B[i * 16 + k];
+         }
+         salsa20_8(T);
+         // Even blocks go to the first half of Y, odd blocks to the second half
+         arraycopy(T, 0, Y, ((i >> 1) + (i & 1) * r) * 16, 16);
       }
+   }
 
-      for (i = 0; i < 16; ++i)
-         B32[i] = x[i] + B32[i];
+   public static int R(int a, int b) {
+      return (a << b) | (a >>> (32 - b));
+   }
 
-      for (i = 0; i < 16; i++) {
-         B[i * 4 + 0] = (byte) (B32[i] >> 0 & 0xff);
-         B[i * 4 + 1] = (byte) (B32[i] >> 8 & 0xff);
-         B[i * 4 + 2] = (byte) (B32[i] >> 16 & 0xff);
-         B[i * 4 + 3] = (byte) (B32[i] >> 24 & 0xff);
+   private static void salsa20_8(int[] B) {
+      int x0 = B[0], x1 = B[1], x2 = B[2], x3 = B[3], x4 = B[4], x5 = B[5], x6 = B[6], x7 = B[7];
+      int x8 = B[8], x9 = B[9], x10 = B[10], x11 = B[11], x12 = B[12], x13 = B[13], x14 = B[14], x15 = B[15];
+
+      for (int i = 8; i > 0; i -= 2) {
+         x4 ^= R(x0 + x12, 7);
+         x8 ^= R(x4 + x0, 9);
+         x12 ^= R(x8 + x4, 13);
+         x0 ^= R(x12 + x8, 18);
+         x9 ^= R(x5 + x1, 7);
+         x13 ^= R(x9 + x5, 9);
+         x1 ^= R(x13 + x9, 13);
+         x5 ^= R(x1 + x13, 18);
+         x14 ^= R(x10 + x6, 7);
+         x2 ^= R(x14 + x10, 9);
+         x6 ^= R(x2 + x14, 13);
+         x10 ^= R(x6 + x2, 18);
+         x3 ^= R(x15 + x11, 7);
+         x7 ^= R(x3 + x15, 9);
+         x11 ^= R(x7 + x3, 13);
+         x15 ^= R(x11 + x7, 18);
+         x1 ^= R(x0 + x3, 7);
+         x2 ^= R(x1 + x0, 9);
+         x3 ^= R(x2 + x1, 13);
+         x0 ^= R(x3 + x2, 18);
+         x6 ^= R(x5 + x4, 7);
+         x7 ^= R(x6 + x5, 9);
+         x4 ^= R(x7 + x6, 13);
+         x5 ^= R(x4 + x7, 18);
+         x11 ^= R(x10 + x9, 7);
+         x8 ^= R(x11 + x10, 9);
+         x9 ^= R(x8 + x11, 13);
+         x10 ^= R(x9 + x8, 18);
+         x12 ^= R(x15 + x14, 7);
+         x13 ^= R(x12 + x15, 9);
+         x14 ^= R(x13 + x12, 13);
+         x15 ^= R(x14 + x13, 18);
       }
+
+      B[0] += x0;
+      B[1] += x1;
+      B[2] += x2;
+      B[3] += x3;
+      B[4] += x4;
+      B[5] += x5;
+      B[6] += x6;
+      B[7] += x7;
+      B[8] += x8;
+      B[9] += x9;
+      B[10] += x10;
+      B[11] += x11;
+      B[12] += x12;
+      B[13] += x13;
+      B[14] += x14;
+      B[15] += x15;
    }
 
-   private static void blockxor(byte[] S, int Si, byte[] D, int Di, int len) {
+   private static void blockxor(int[] S, int[] D, int len) {
       for (int i = 0; i < len; i++) {
-         D[Di + i] ^= S[Si + i];
+         D[i] ^= S[i];
       }
    }
 
-   private static int integerify(byte[] B, int Bi, int r) {
+   private static int littleEndianToInt(byte[] B, int Bi) {
       int n;
 
-      Bi += (2 * r - 1) * 64;
-
       n = (B[Bi + 0] & 0xff) << 0;
       n |= (B[Bi + 1] & 0xff) << 8;
       n |= (B[Bi + 2] & 0xff) << 16;
@@ -215,4 +321,11 @@ public class SCrypt {
 
       return n;
    }
+
+   private static void intToLittleEndian(int n, byte[] B, int Bi) {
+      B[Bi + 0] = (byte) (n >> 0 & 0xff);
+      B[Bi + 1] = (byte) (n >> 8 & 0xff);
+      B[Bi + 2] = (byte) (n >> 16 & 0xff);
+      B[Bi + 3] = (byte) (n >> 24 & 0xff);
+   }
 }
@@ -16,6 +16,8 @@
 
 package com.mrd.bitlib.model;
 
+import com.mrd.bitlib.util.HashUtils;
+
 public abstract class ScriptOutput extends Script {
    private static final long serialVersionUID = 1L;
 
@@ -44,6 +46,35 @@ public abstract class ScriptOutput extends Script {
       }
    }
 
+   /**
+    * Get the 20 byte hash of the address a script pays to, without needing to know the network. This is what
+    * {@link Address#getTypeSpecificBytes()} returns for that address.
+    *
+    * @return the address hash or null if the script does not pay to an address
+    */
+   public static byte[] getAddressHash(byte[] scriptBytes) {
+      ScriptOutput script = fromScriptBytes(scriptBytes);
+      if (script instanceof ScriptOutputStandard) {
+         return ((ScriptOutputStandard) script).getAddressBytes();
+      } else if (script instanceof ScriptOutputP2SH) {
+         return ((ScriptOutputP2SH) script).getP2SHAddressBytes();
+      } else if (script instanceof ScriptOutputPubkey) {
+         return HashUtils.addressHash(((ScriptOutputPubkey) script).getPublicKeyBytes());
+      } else if (script instanceof ScriptOutputMsg) {
+         return HashUtils.addressHash(((ScriptOutputMsg) script).getPublicKeyBytes());
+      }
+      return null;
+   }
+
+   /**
+    * Get the hash to index an output by: the address hash, or for scripts that do not pay to an address the 20 zero
+    * bytes of {@link Address#getNullAddress(NetworkParameters)}. This way all outputs can be looked up by an address.
+    */
+   public static byte[] getIndexAddressHash(byte[] scriptBytes) {
+      byte[] addressHash = getAddressHash(scriptBytes);
+      return addressHash == null ? new byte[Address.NUM_ADDRESS_BYTES - 1] : addressHash;
+   }
+
    protected ScriptOutput(byte[] scriptBytes) {
       super(scriptBytes, false);
    }
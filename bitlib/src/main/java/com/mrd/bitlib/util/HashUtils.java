@@ -18,39 +18,55 @@ package com.mrd.bitlib.util;
 
 import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Various hashing utilities used in the Bitcoin system.
+ * <p>
+ * Every thread has its own digest engines and scratch buffer, which are reused for every hash instead of looking up
+ * and allocating new engines. The engines are reset before each use.
  */
 public class HashUtils {
 
    private static final String SHA256 = "SHA-256";
    private static final String SHA512 = "SHA-512";
+   private static final int SHA256_LENGTH = 32;
+   private static final int RIPEMD160_LENGTH = 20;
+
+   private static final ThreadLocal<Engines> ENGINES = new ThreadLocal<Engines>() {
+      @Override
+      protected Engines initialValue() {
+         return new Engines();
+      }
+   };
 
    public static Sha256Hash sha256(byte[] data) {
-      MessageDigest digest;
-      digest = getSha256Digest();
-      digest.update(data, 0, data.length);
-      return Sha256Hash.of(digest.digest());
+      return sha256(data, 0, data.length);
    }
 
    public static Sha256Hash sha256(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      MessageDigest digest = getSha256Digest();
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
       return new Sha256Hash(digest.digest());
+   }
 
+   public static Sha256Hash sha256(byte[] data, int offset, int length) {
+      MessageDigest digest = getSha256Digest();
+      digest.update(data, offset, length);
+      return new Sha256Hash(digest.digest());
    }
 
-   private static MessageDigest getSha256Digest() {
-      try {
-         return MessageDigest.getInstance(SHA256);
-      } catch (NoSuchAlgorithmException e) {
-         throw new RuntimeException(e); //cannot happen
-      }
+   /**
+    * Hash the remaining bytes of the buffer, leaving its position at the limit
+    */
+   public static Sha256Hash sha256(ByteBuffer data) {
+      MessageDigest digest = getSha256Digest();
+      digest.update(data);
+      return new Sha256Hash(digest.digest());
    }
 
    public static Sha256Hash doubleSha256(byte[] data) {
@@ -58,50 +74,39 @@ public class HashUtils {
    }
 
    public static Sha256Hash doubleSha256TwoBuffers(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      Engines engines = ENGINES.get();
+      MessageDigest digest = engines.sha256();
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
-      return new Sha256Hash(digest.digest(digest.digest()));
-
+      return new Sha256Hash(engines.secondSha256());
    }
 
    public static Sha256Hash doubleSha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
-      digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest(digest.digest()));
+      Engines engines = ENGINES.get();
+      engines.sha256().update(data, offset, length);
+      return new Sha256Hash(engines.secondSha256());
+   }
+
+   /**
+    * Hash the remaining bytes of the buffer twice, leaving its position at the limit
+    */
+   public static Sha256Hash doubleSha256(ByteBuffer data) {
+      Engines engines = ENGINES.get();
+      engines.sha256().update(data);
+      return new Sha256Hash(engines.secondSha256());
    }
 
    public static Sha512Hash sha512(byte[] data) {
-      MessageDigest digest;
-      digest = getSha512Digest();
+      MessageDigest digest = getSha512Digest();
       digest.update(data, 0, data.length);
       return Sha512Hash.of(digest.digest());
    }
 
-   public static Sha256Hash sha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
-      digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest());
-   }
-
    public static Sha512Hash sha512(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha512Digest();
+      MessageDigest digest = getSha512Digest();
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
       return new Sha512Hash(digest.digest());
-
-   }
-
-   private static MessageDigest getSha512Digest() {
-      try {
-         return MessageDigest.getInstance(SHA512);
-      } catch (NoSuchAlgorithmException e) {
-         throw new RuntimeException(e); //cannot happen
-      }
    }
 
    /**
@@ -112,12 +117,80 @@ public class HashUtils {
     * @return The Bitcoin address as an array of bytes.
     */
    public static byte[] addressHash(byte[] pubkeyBytes) {
-      byte[] sha256 = getSha256Digest().digest(pubkeyBytes);
-      byte[] out = new byte[20];
-      RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
-      ripeMD160.update(sha256, 0, sha256.length);
-      ripeMD160.doFinal(out, 0); // This also resets the hash function for
-      // next use
+      return hash160(pubkeyBytes, 0, pubkeyBytes.length);
+   }
+
+   /**
+    * @return RIPEMD-160 of the SHA-256 of the bytes, the SHA-256 is not allocated
+    */
+   public static byte[] hash160(byte[] data, int offset, int length) {
+      Engines engines = ENGINES.get();
+      MessageDigest sha256 = engines.sha256();
+      sha256.update(data, offset, length);
+      engines.digestInto(sha256, engines.scratch);
+      RIPEMD160Digest ripeMD160 = engines.ripeMD160;
+      ripeMD160.reset();
+      ripeMD160.update(engines.scratch, 0, SHA256_LENGTH);
+      byte[] out = new byte[RIPEMD160_LENGTH];
+      ripeMD160.doFinal(out, 0); // This also resets the hash function for next use
       return out;
    }
+
+   private static MessageDigest getSha256Digest() {
+      return ENGINES.get().sha256();
+   }
+
+   private static MessageDigest getSha512Digest() {
+      return ENGINES.get().sha512();
+   }
+
+   private static MessageDigest newDigest(String algorithm) {
+      try {
+         return MessageDigest.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e); //cannot happen
+      }
+   }
+
+   // the digest engines of one thread
+   private static class Engines {
+      final MessageDigest sha256 = newDigest(SHA256);
+      final RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
+      // for the intermediate hash of double hashes
+      final byte[] scratch = new byte[SHA256_LENGTH];
+      MessageDigest sha512;
+
+      MessageDigest sha256() {
+         // in case a previous use did not finish
+         sha256.reset();
+         return sha256;
+      }
+
+      MessageDigest sha512() {
+         if (sha512 == null) {
+            sha512 = newDigest(SHA512);
+         }
+         sha512.reset();
+         return sha512;
+      }
+
+      /**
+       * Finish the first hash of the SHA-256 digest into the scratch buffer and return the hash of it
+       */
+      byte[] secondSha256() {
+         digestInto(sha256, scratch);
+         sha256.update(scratch, 0, SHA256_LENGTH);
+         byte[] out = new byte[SHA256_LENGTH];
+         digestInto(sha256, out);
+         return out;
+      }
+
+      void digestInto(MessageDigest digest, byte[] out) {
+         try {
+            digest.digest(out, 0, SHA256_LENGTH);
+         } catch (DigestException e) {
+            throw new RuntimeException(e); //cannot happen, the buffer is large enough
+         }
+      }
+   }
 }
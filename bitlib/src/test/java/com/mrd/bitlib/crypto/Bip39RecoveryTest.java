@@ -0,0 +1,159 @@
+package com.mrd.bitlib.crypto;
+
+import com.google.common.collect.ImmutableList;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Bip39RecoveryTest {
+   private static final String[] WORDS = ("legal winner thank year wave sausage worth useful legal winner thank "
+         + "yellow").split(" ");
+   // m/44'/0'/0'/0/0 of the words above with the passphrase "TREZOR"
+   private static final Address TARGET = firstAddress(WORDS, "TREZOR");
+   private static final List<String> PASSPHRASES = Bip39Recovery.getPassphraseVariants("trezor");
+
+   @Test
+   public void testUnknownWord() throws InterruptedException {
+      String[] words = WORDS.clone();
+      words[4] = Bip39Recovery.UNKNOWN_WORD;
+      Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      Bip39Recovery.Match match = recovery.recoverUnknownWords(words, ImmutableList.of("TREZOR"));
+      assertArrayEquals(WORDS, match.words);
+      assertEquals("TREZOR", match.passphrase);
+      assertEquals(TARGET, match.address);
+      assertEquals("m/44'/0'/0'/0/0", match.path.toString());
+      // most candidates fail the checksum and never get derived
+      assertTrue(recovery.getSeedsDerived() < recovery.getCandidatesChecked());
+   }
+
+   @Test
+   public void testSwappedWords() throws InterruptedException {
+      String[] words = WORDS.clone();
+      words[2] = WORDS[9];
+      words[9] = WORDS[2];
+      Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      assertArrayEquals(WORDS, recovery.recoverSwappedWords(words, PASSPHRASES).words);
+   }
+
+   @Test
+   public void testOmittedWord() throws InterruptedException {
+      String[] words = Arrays.copyOfRange(WORDS, 1, WORDS.length);
+      Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      assertArrayEquals(WORDS, recovery.recoverOmittedWord(words, ImmutableList.of("TREZOR")).words);
+   }
+
+   @Test
+   public void testOmittedWordCandidatesAreUnique() {
+      // runs of the same word give the same list for every insertion point within the run
+      int[] words = {0, 0, 0, 5, 5, 2047, 0};
+      Bip39Recovery.OmittedWord candidates = new Bip39Recovery.OmittedWord(words);
+      Set<List<Integer>> expected = new HashSet<>();
+      for (int position = 0; position <= words.length; position++) {
+         for (int word = 0; word < 2048; word++) {
+            int[] inserted = new int[words.length + 1];
+            System.arraycopy(words, 0, inserted, 0, position);
+            inserted[position] = word;
+            System.arraycopy(words, position, inserted, position + 1, words.length - position);
+            expected.add(asList(inserted));
+         }
+      }
+      Set<List<Integer>> seen = new HashSet<>();
+      int[] indexes = new int[candidates.length()];
+      for (long n = 0; n < candidates.size(); n++) {
+         candidates.get(n, indexes);
+         assertFalse(Arrays.toString(indexes), seen.contains(asList(indexes)));
+         seen.add(asList(indexes));
+      }
+      assertEquals(expected, seen);
+   }
+
+   @Test
+   public void testNoMatch() throws InterruptedException {
+      Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      assertNull(recovery.recoverSwappedWords(WORDS, ImmutableList.of("")));
+      assertEquals(1, recovery.getProgress(), 0);
+   }
+
+   @Test
+   public void testCancel() {
+      final Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      String[] words = WORDS.clone();
+      words[0] = Bip39Recovery.UNKNOWN_WORD;
+      words[1] = Bip39Recovery.UNKNOWN_WORD;
+      try {
+         new Thread() {
+            @Override
+            public void run() {
+               try {
+                  Thread.sleep(200);
+               } catch (InterruptedException ignore) {
+               }
+               recovery.cancel();
+            }
+         }.start();
+         recovery.recoverUnknownWords(words, PASSPHRASES);
+         fail();
+      } catch (InterruptedException expected) {
+      }
+      assertTrue(recovery.getProgress() < 1);
+   }
+
+   @Test
+   public void testCancelBeforeRun() {
+      Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      recovery.cancel();
+      try {
+         recovery.recoverSwappedWords(WORDS, PASSPHRASES);
+         fail();
+      } catch (InterruptedException expected) {
+      }
+      assertEquals(0, recovery.getCandidatesChecked());
+   }
+
+   @Test
+   public void testBenchmark() throws InterruptedException {
+      Bip39Recovery recovery = new Bip39Recovery(NetworkParameters.productionNetwork,
+            Collections.singletonList(TARGET), 1, 1);
+      assertTrue(recovery.benchmark(10) > 0);
+      assertEquals(10, recovery.getSeedsDerived());
+   }
+
+   @Test
+   public void testPassphraseVariants() {
+      assertEquals(ImmutableList.of(" Foo", "Foo", " foo", " FOO"), Bip39Recovery.getPassphraseVariants(" Foo"));
+      assertEquals(ImmutableList.of(""), Bip39Recovery.getPassphraseVariants(""));
+   }
+
+   private static List<Integer> asList(int[] indexes) {
+      Integer[] boxed = new Integer[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+         boxed[i] = indexes[i];
+      }
+      return Arrays.asList(boxed);
+   }
+
+   private static Address firstAddress(String[] words, String passphrase) {
+      HdKeyNode root = HdKeyNode.fromSeed(Bip39.generateSeedFromWordList(words, passphrase).getBip32Seed());
+      return root.createHardenedChildNode(44).createHardenedChildNode(0).createHardenedChildNode(0)
+            .createChildNode(0).createChildPublicKey(0).toAddress(NetworkParameters.productionNetwork);
+   }
+}
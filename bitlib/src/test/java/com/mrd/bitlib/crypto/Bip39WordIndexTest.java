@@ -0,0 +1,87 @@
+package com.mrd.bitlib.crypto;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Bip39WordIndexTest {
+   private static final Bip39WordIndex INDEX = Bip39WordIndex.ENGLISH;
+   private static final String[] VALID = ("legal winner thank year wave sausage worth useful legal winner thank "
+         + "yellow").split(" ");
+
+   @Test
+   public void testIndexOfEveryWord() {
+      String[] words = Bip39.ENGLISH_WORD_LIST;
+      assertEquals(words.length, INDEX.size());
+      for (int i = 0; i < words.length; i++) {
+         assertEquals(i, INDEX.indexOf(words[i]));
+      }
+      assertEquals(-1, INDEX.indexOf("abandoned"));
+      assertEquals(-1, INDEX.indexOf("aband"));
+      assertEquals(-1, INDEX.indexOf("Abandon"));
+      assertEquals(-1, INDEX.indexOf(""));
+      assertEquals(-1, INDEX.indexOf("zzzz"));
+   }
+
+   @Test
+   public void testCompletionsMatchLinearScan() {
+      String[] prefixes = {"", "a", "ab", "act", "acti", "actio", "actress", "sea", "seat", "zo", "zz", "x", "q"};
+      for (String prefix : prefixes) {
+         List<String> expected = new ArrayList<String>();
+         for (String word : Bip39.ENGLISH_WORD_LIST) {
+            if (word.startsWith(prefix)) {
+               expected.add(word);
+            }
+         }
+         assertEquals(prefix, expected.size(), INDEX.getCompletionCount(prefix));
+         assertEquals(prefix, expected, INDEX.getCompletions(prefix, Integer.MAX_VALUE));
+         assertEquals(prefix, expected.subList(0, Math.min(3, expected.size())), INDEX.getCompletions(prefix, 3));
+      }
+   }
+
+   @Test
+   public void testResolvePrefix() {
+      // the first four letters are enough
+      assertEquals(INDEX.indexOf("abandon"), INDEX.resolvePrefix("aban"));
+      assertEquals(INDEX.indexOf("abandon"), INDEX.resolvePrefix("abando"));
+      // a complete word wins over longer words starting with it
+      assertEquals(INDEX.indexOf("sea"), INDEX.resolvePrefix("sea"));
+      assertEquals(INDEX.indexOf("season"), INDEX.resolvePrefix("seas"));
+      // ambiguous, unknown or mistyped after the unique prefix
+      assertEquals(-1, INDEX.resolvePrefix("ab"));
+      assertEquals(-1, INDEX.resolvePrefix("qq"));
+      assertEquals(-1, INDEX.resolvePrefix("abanx"));
+      String[] words = Bip39.ENGLISH_WORD_LIST;
+      for (int i = 0; i < words.length; i++) {
+         String prefix = words[i].substring(0, Math.min(words[i].length(), Bip39WordIndex.UNIQUE_PREFIX_LENGTH));
+         assertEquals(i, INDEX.resolvePrefix(prefix));
+      }
+   }
+
+   @Test
+   public void testValidate() {
+      String[] badChecksum = VALID.clone();
+      badChecksum[11] = "year";
+      String[] unknownWord = VALID.clone();
+      unknownWord[3] = "yaer";
+      String[] shortList = Arrays.copyOf(VALID, 11);
+      List<String[]> lists = ImmutableList.of(VALID, badChecksum, unknownWord, shortList);
+      assertArrayEquals(new boolean[]{true, false, false, false}, INDEX.validate(lists));
+      for (String[] list : lists) {
+         assertEquals(Bip39.isValidWordList(list), INDEX.isValidWordList(list));
+      }
+      assertNull(INDEX.toIndexes(unknownWord));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testRejectsAmbiguousWordList() {
+      new Bip39WordIndex(new String[]{"abandon", "abandoned"});
+   }
+}
@@ -9,7 +9,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 
@@ -203,6 +205,30 @@ public class BipSssTest {
    }
 
 
+   @Test
+   public void splitAndCombineAll() throws BipSss.NotEnoughSharesException, BipSss.InvalidContentTypeException, BipSss.IncompatibleSharesException {
+      List<String> secrets = Arrays.asList("5KG12Hn1g33JEFwdFsbjW4Hzi2fqdsEKZTtcJ3q9L6QFLvL1UJS",
+            "L2AW1Gz2962jcDY5gY1xjuep3fEbkpr3pLody77hUVm3x2MsTBPw");
+      List<List<Share>> shareLists = BipSss.splitAll(secrets, 2, 3);
+      List<Collection<Share>> selections = new ArrayList<Collection<Share>>();
+      for (List<Share> shares : shareLists) {
+         assertEquals(3, shares.size());
+         // through the string encoding and back, the way shares are handed out
+         Collection<Share> decoded = new ArrayList<Share>();
+         for (Share share : shares.subList(1, 3)) {
+            Share copy = Share.fromString(share.toString());
+            assertEquals(share.shareNumber, copy.shareNumber);
+            assertEquals(2, copy.threshold);
+            decoded.add(copy);
+         }
+         selections.add(decoded);
+      }
+      // the share set id is the beginning of the hash of the secret, like in the test vector
+      Assert.assertArrayEquals(HexUtils.toBytes("20ba"), shareLists.get(0).get(0).id);
+      assertEquals(secrets, BipSss.combineAll(selections));
+      assertEquals(secrets.get(1), BipSss.combine(BipSss.split(secrets.get(1), 4, 4)));
+   }
+
    private Collection<Share> addShareWithId(String shareString, String shareId, Collection<Share> shares) {
       Share share = BipSss.Share.fromString(shareString);
       Assert.assertTrue(BitUtils.areEqual(share.id, HexUtils.toBytes(shareId)));
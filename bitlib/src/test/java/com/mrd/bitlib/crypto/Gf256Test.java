@@ -1,5 +1,6 @@
 package com.mrd.bitlib.crypto;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -51,6 +52,39 @@ public class Gf256Test {
       testAllShareCombinations(secret, 5);
    }
 
+   /**
+    * Combine many secrets at once, from shares with different numbers
+    */
+   @Test
+   public void batchCombine() {
+      Gf256 gf = new Gf256();
+      List<byte[]> secrets = new LinkedList<byte[]>();
+      for (int i = 0; i < 20; i++) {
+         byte[] secret = new byte[33];
+         for (int j = 0; j < secret.length; j++) {
+            secret[j] = (byte) (i * 31 + j * 7);
+         }
+         secrets.add(secret);
+      }
+      List<List<Share>> shareLists = gf.makeShares(secrets, 3, 5);
+      List<List<Share>> selections = new LinkedList<List<Share>>();
+      for (int i = 0; i < shareLists.size(); i++) {
+         List<Share> shares = shareLists.get(i);
+         // half of the secrets are restored from shares 1, 2 and 3, the others from 5, 4 and 2
+         if (i % 2 == 0) {
+            selections.add(shares.subList(0, 3));
+         } else {
+            selections.add(Arrays.asList(shares.get(4), shares.get(3), shares.get(1)));
+         }
+      }
+      List<byte[]> combined = gf.combineShares(selections);
+      Assert.assertEquals(secrets.size(), combined.size());
+      for (int i = 0; i < secrets.size(); i++) {
+         Assert.assertArrayEquals(secrets.get(i), combined.get(i));
+         Assert.assertArrayEquals(secrets.get(i), gf.combineShares(selections.get(i)));
+      }
+   }
+
    private int testAllShareCombinations(byte[] secret, int maxN) {
       int tests = 0;
       for (int n = 1; n <= maxN; n++) {
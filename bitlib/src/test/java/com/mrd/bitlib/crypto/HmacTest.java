@@ -34,6 +34,7 @@
 
 package com.mrd.bitlib.crypto;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -71,4 +72,33 @@ public class HmacTest {
       assertTrue(Arrays.equals(TEST_3_RESULT, Hmac.hmacSha512(TEST_3_KEY, TEST_3_DATA)));
    }
 
+   @Test
+   public void reusedHmacTest() {
+      Hmac hmac = Hmac.sha512(TEST_1_KEY);
+      assertArrayEquals(TEST_1_RESULT, hmac.doFinal(TEST_1_DATA));
+      // Same key again, fed in pieces and written into a buffer
+      byte[] buffer = new byte[70];
+      hmac.update(TEST_1_DATA, 0, 3);
+      hmac.update(TEST_1_DATA[3]);
+      hmac.update(TEST_1_DATA, 4, TEST_1_DATA.length - 4);
+      hmac.doFinal(buffer, 3);
+      assertArrayEquals(TEST_1_RESULT, Arrays.copyOfRange(buffer, 3, 67));
+      // And with new keys
+      hmac.init(TEST_2_KEY);
+      assertArrayEquals(TEST_2_RESULT, hmac.doFinal(TEST_2_DATA));
+      hmac.init(TEST_3_KEY);
+      assertArrayEquals(TEST_3_RESULT, hmac.doFinal(TEST_3_DATA));
+   }
+
+   @Test
+   public void longKeyTest() {
+      // RFC-4231 test case 6, the key is longer than the block size and gets hashed
+      byte[] key = new byte[131];
+      Arrays.fill(key, (byte) 0xaa);
+      byte[] data = "Test Using Larger Than Block-Size Key - Hash Key First".getBytes();
+      assertArrayEquals(HexUtils.toBytes("60e431591ee0b67f0d8a26aacbf5b77f8e0bc6213728c5140546040f0ee37f54"),
+            Hmac.hmacSha256(key, data));
+      assertArrayEquals(HexUtils.toBytes("80b24263c7c1a3ebb71493c1dd7be8b49b46d1f41b4aeec1121b013783f8f352"
+            + "6b56d037e05f2598bd0fd2215d6a1e5295e64f73f63f0aec8b915a985d786598"), Hmac.hmacSha512(key, data));
+   }
 }
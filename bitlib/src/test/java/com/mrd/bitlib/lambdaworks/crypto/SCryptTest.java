@@ -0,0 +1,45 @@
+package com.mrd.bitlib.lambdaworks.crypto;
+
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SCryptTest {
+   // Test vectors from RFC 7914, section 12
+   @Test
+   public void testVectors() throws Exception {
+      assertScrypt("", "", 16, 1, 1,
+            "77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442fcd0069ded0948f8326a753a0fc81f17e8d3e0fb2e0d3628cf35e20c38d18906");
+      assertScrypt("password", "NaCl", 1024, 8, 16,
+            "fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b3731622eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+      assertScrypt("pleaseletmein", "SodiumChloride", 16384, 8, 1,
+            "7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887");
+   }
+
+   @Test
+   public void testProgress() throws Exception {
+      SCryptProgress progress = new SCryptProgress(1024, 8, 4);
+      assertEquals(0, progress.getProgress(), 0);
+      SCrypt.scrypt("password".getBytes("UTF-8"), "NaCl".getBytes("UTF-8"), 1024, 8, 4, 64, progress);
+      assertEquals(1, progress.getProgress(), 0);
+   }
+
+   @Test
+   public void testTerminate() throws Exception {
+      SCryptProgress progress = new SCryptProgress(1024, 8, 4);
+      progress.terminate();
+      try {
+         SCrypt.scrypt("password".getBytes("UTF-8"), "NaCl".getBytes("UTF-8"), 1024, 8, 4, 64, progress);
+         fail();
+      } catch (InterruptedException expected) {
+      }
+   }
+
+   private static void assertScrypt(String password, String salt, int n, int r, int p, String expected) throws Exception {
+      byte[] derived = SCrypt.scrypt(password.getBytes("UTF-8"), salt.getBytes("UTF-8"), n, r, p, 64, null);
+      assertArrayEquals(HexUtils.toBytes(expected), derived);
+   }
+}
@@ -0,0 +1,113 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashUtilsTest {
+   @Test
+   public void testHash160() {
+      // the compressed public key of private key 1
+      byte[] publicKey = HexUtils.toBytes("0279be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798");
+      assertEquals("751e76e8199196d454941c45d1b3a323f1433bd6", HexUtils.toHex(HashUtils.addressHash(publicKey)));
+      byte[] padded = new byte[publicKey.length + 10];
+      System.arraycopy(publicKey, 0, padded, 3, publicKey.length);
+      assertArrayEquals(HashUtils.addressHash(publicKey), HashUtils.hash160(padded, 3, publicKey.length));
+   }
+
+   @Test
+   public void testMatchesNewDigests() throws Exception {
+      Random random = new Random(1);
+      for (int run = 0; run < 200; run++) {
+         byte[] data = new byte[random.nextInt(300)];
+         random.nextBytes(data);
+         byte[] other = new byte[random.nextInt(100)];
+         random.nextBytes(other);
+         int offset = data.length == 0 ? 0 : random.nextInt(data.length);
+         int length = random.nextInt(data.length - offset + 1);
+         byte[] slice = Arrays.copyOfRange(data, offset, offset + length);
+
+         byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(data);
+         byte[] doubleSha256 = MessageDigest.getInstance("SHA-256").digest(sha256);
+         assertArrayEquals(sha256, HashUtils.sha256(data).getBytes());
+         assertArrayEquals(doubleSha256, HashUtils.doubleSha256(data).getBytes());
+         assertArrayEquals(sha256, HashUtils.sha256(ByteBuffer.wrap(data)).getBytes());
+         assertArrayEquals(doubleSha256, HashUtils.doubleSha256(direct(data)).getBytes());
+         assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(data), HashUtils.sha512(data).getBytes());
+
+         byte[] sliceSha256 = MessageDigest.getInstance("SHA-256").digest(slice);
+         assertArrayEquals(sliceSha256, HashUtils.sha256(data, offset, length).getBytes());
+         assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(sliceSha256),
+               HashUtils.doubleSha256(data, offset, length).getBytes());
+         ByteBuffer buffer = ByteBuffer.wrap(data, offset, length).slice();
+         assertArrayEquals(sliceSha256, HashUtils.sha256(buffer).getBytes());
+         assertEquals(buffer.limit(), buffer.position());
+
+         MessageDigest two = MessageDigest.getInstance("SHA-256");
+         two.update(data);
+         two.update(other);
+         byte[] twoSha256 = two.digest();
+         assertArrayEquals(twoSha256, HashUtils.sha256(data, other).getBytes());
+         assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(twoSha256),
+               HashUtils.doubleSha256TwoBuffers(data, other).getBytes());
+
+         RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
+         ripeMD160.update(sha256, 0, sha256.length);
+         byte[] hash160 = new byte[20];
+         ripeMD160.doFinal(hash160, 0);
+         assertArrayEquals(hash160, HashUtils.addressHash(data));
+      }
+   }
+
+   @Test
+   public void testThreadsDoNotShareEngines() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+         for (int task = 0; task < 8; task++) {
+            final int seed = task;
+            results.add(executor.submit(new Callable<Boolean>() {
+               @Override
+               public Boolean call() throws Exception {
+                  Random random = new Random(seed);
+                  for (int i = 0; i < 2000; i++) {
+                     byte[] data = new byte[random.nextInt(200)];
+                     random.nextBytes(data);
+                     MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                     byte[] expected = digest.digest(digest.digest(data));
+                     if (!Arrays.equals(expected, HashUtils.doubleSha256(data).getBytes())) {
+                        return false;
+                     }
+                  }
+                  return true;
+               }
+            }));
+         }
+         for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   private static ByteBuffer direct(byte[] data) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+      buffer.put(data).flip();
+      return buffer;
+   }
+}
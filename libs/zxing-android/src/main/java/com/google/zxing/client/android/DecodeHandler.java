@@ -26,10 +26,10 @@ import android.util.Log;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.RotatedYUVLuminanceSource;
+import com.google.zxing.common.ReusableHybridBinarizer;
 
 final class DecodeHandler extends Handler {
 
@@ -38,10 +38,10 @@ final class DecodeHandler extends Handler {
    private final CaptureActivity activity;
    private final MultiFormatReader multiFormatReader;
    private boolean running = true;
-   private RotationUtil _rotationHelper;
+   private RotatedYUVLuminanceSource _source;
+   private ReusableHybridBinarizer _binarizer;
 
    DecodeHandler(CaptureActivity activity, Map<DecodeHintType, Object> hints) {
-      _rotationHelper = new RotationUtil(activity);
       multiFormatReader = new MultiFormatReader();
       multiFormatReader.setHints(hints);
       this.activity = activity;
@@ -64,8 +64,9 @@ final class DecodeHandler extends Handler {
 
    /**
     * Decode the data within the viewfinder rectangle, and time how long it
-    * took. For efficiency, reuse the same reader objects from one decode to the
-    * next.
+    * took. For efficiency, reuse the same reader, luminance source and
+    * binarizer objects from one decode to the next. The frame is never copied,
+    * the source reads it rotated and only within the viewfinder rectangle.
     * 
     * @param data
     *           The YUV preview frame.
@@ -76,16 +77,16 @@ final class DecodeHandler extends Handler {
     */
    private void decode(byte[] data, int width, int height) {
       long start = System.currentTimeMillis();
-      byte[] rotatedData = _rotationHelper.rotateImageData(data, width, height);
-      if (_rotationHelper.flipWidthAndHeight()) {
-         int tmp = width;
-         width = height;
-         height = tmp;
-      }
       Result rawResult = null;
-      PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(rotatedData, width, height);
+      RotatedYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data, width, height, _source);
       if (source != null) {
-         BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+         if (source != _source) {
+            _source = source;
+            _binarizer = new ReusableHybridBinarizer(source);
+         } else {
+            _binarizer.reset();
+         }
+         BinaryBitmap bitmap = new BinaryBitmap(_binarizer);
          try {
             rawResult = multiFormatReader.decodeWithState(bitmap);
          } catch (ReaderException re) {
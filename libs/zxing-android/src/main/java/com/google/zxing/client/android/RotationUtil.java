@@ -85,46 +85,4 @@ public class RotationUtil {
       }
    }
 
-   public byte[] rotateImageData(byte[] data, int width, int height) {
-      switch (getDisplayOrientationForCameraParameters()) {
-      case 0:
-         return data;
-      case 90:
-         return rotate90(data, width, height);
-      case 180:
-         return rotate180(data, width, height);
-      case 270:
-         return rotate270(data, width, height);
-      default:
-         return data;
-      }
-   }
-
-   private static byte[] rotate90(byte[] data, int width, int height) {
-      byte[] rotatedData = new byte[data.length];
-      for (int y = 0; y < height; y++) {
-         for (int x = 0; x < width; x++)
-            rotatedData[x * height + height - y - 1] = data[x + y * width];
-      }
-      return rotatedData;
-   }
-
-   private static byte[] rotate270(byte[] data, int width, int height) {
-      byte[] rotatedData = new byte[data.length];
-      for (int y = 0; y < height; y++) {
-         for (int x = 0; x < width; x++)
-            rotatedData[(width - x - 1) * height + y] = data[x + y * width];
-      }
-      return rotatedData;
-   }
-
-   private static byte[] rotate180(byte[] data, int width, int height) {
-      byte[] rotatedData = new byte[data.length];
-      for (int y = 0; y < height; y++) {
-         for (int x = 0; x < width; x++)
-            rotatedData[(width - x - 1) + width * (height - y - 1)] = data[x + y * width];
-      }
-      return rotatedData;
-   }
-
 }
@@ -24,7 +24,7 @@ import android.hardware.Camera;
 import android.os.Handler;
 import android.util.Log;
 import android.view.SurfaceHolder;
-import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.RotatedYUVLuminanceSource;
 import com.google.zxing.client.android.RotationUtil;
 import com.google.zxing.client.android.camera.open.OpenCamera;
 import com.google.zxing.client.android.camera.open.OpenCameraInterface;
@@ -328,23 +328,37 @@ public final class CameraManager {
 
    /**
     * A factory method to build the appropriate LuminanceSource object based on
-    * the format of the preview buffers, as described by Camera.Parameters.
+    * the format of the preview buffers, as described by Camera.Parameters. The
+    * source reads the frame rotated to the display orientation and cropped to
+    * the framing rectangle, without copying it.
     * 
     * @param data
     *           A preview frame.
     * @param width
-    *           The width of the image.
+    *           The width of the image as delivered by the camera.
     * @param height
-    *           The height of the image.
-    * @return A PlanarYUVLuminanceSource instance.
+    *           The height of the image as delivered by the camera.
+    * @param previous
+    *           The source of the previous frame or null. It is fed the new
+    *           frame and returned if the frame geometry did not change.
+    * @return A RotatedYUVLuminanceSource instance.
     */
-   public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
+   public RotatedYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height,
+         RotatedYUVLuminanceSource previous) {
       Rect rect = getFramingRectInPreview();
       if (rect == null) {
          return null;
       }
+      int rotation = _rotationHelper.getDisplayOrientationForCameraParameters();
+      if (previous != null && previous.getDataWidth() == width && previous.getDataHeight() == height
+            && previous.getRotation() == rotation && previous.getLeft() == rect.left && previous.getTop() == rect.top
+            && previous.getWidth() == rect.width() && previous.getHeight() == rect.height()) {
+         previous.setData(data);
+         return previous;
+      }
       // Go ahead and assume it's YUV rather than die.
-      return new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top, rect.width(), rect.height(), false);
+      return new RotatedYUVLuminanceSource(data, width, height, rotation, rect.left, rect.top, rect.width(),
+            rect.height());
    }
 
    public int getCameraId() {
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+/**
+ * A LuminanceSource around the Y plane of a camera frame that is rotated by 0, 90, 180 or 270
+ * degrees clockwise, cropped to a region of interest in rotated coordinates.
+ *
+ * Rotation is done by mapping coordinates while reading, so no rotated copy of the frame is ever
+ * made, and only the pixels inside the region of interest are touched. The source can be fed
+ * one frame after the other with {@link #setData(byte[])}, which keeps the matrix buffer for the
+ * next frame. It does not depend on Android, so it can be run against recorded frames on the JVM.
+ */
+public final class RotatedYUVLuminanceSource extends LuminanceSource {
+
+  private final int dataWidth;
+  private final int dataHeight;
+  private final int rotation;
+  private final int left;
+  private final int top;
+  private byte[] yuvData;
+  private byte[] matrix;
+
+  /**
+   * @param yuvData the camera frame, may be null if it is set later with {@link #setData(byte[])}
+   * @param dataWidth the width of the frame as delivered by the camera
+   * @param dataHeight the height of the frame as delivered by the camera
+   * @param rotation clockwise rotation in degrees, one of 0, 90, 180 or 270
+   * @param left left edge of the region of interest in the rotated frame
+   * @param top top edge of the region of interest in the rotated frame
+   * @param width width of the region of interest
+   * @param height height of the region of interest
+   */
+  public RotatedYUVLuminanceSource(byte[] yuvData,
+                                   int dataWidth,
+                                   int dataHeight,
+                                   int rotation,
+                                   int left,
+                                   int top,
+                                   int width,
+                                   int height) {
+    super(width, height);
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+      throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+    }
+    int rotatedWidth = getRotatedWidth(dataWidth, dataHeight, rotation);
+    int rotatedHeight = getRotatedHeight(dataWidth, dataHeight, rotation);
+    if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data." + "Frame(left:" + left
+          + " top:" + top + " width:" + width + " height:" + height + " ) Data(width:" + rotatedWidth + " height:"
+          + rotatedHeight + " )");
+    }
+    this.yuvData = yuvData;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.rotation = rotation;
+    this.left = left;
+    this.top = top;
+  }
+
+  /**
+   * Width of the frame after rotating it
+   */
+  public static int getRotatedWidth(int dataWidth, int dataHeight, int rotation) {
+    return rotation == 90 || rotation == 270 ? dataHeight : dataWidth;
+  }
+
+  /**
+   * Height of the frame after rotating it
+   */
+  public static int getRotatedHeight(int dataWidth, int dataHeight, int rotation) {
+    return rotation == 90 || rotation == 270 ? dataWidth : dataHeight;
+  }
+
+  /**
+   * Switch to the next frame. It must have the same dimensions as the previous one. Matrices
+   * returned before are overwritten by the next call to {@link #getMatrix()}.
+   */
+  public void setData(byte[] yuvData) {
+    this.yuvData = yuvData;
+  }
+
+  public int getDataWidth() {
+    return dataWidth;
+  }
+
+  public int getDataHeight() {
+    return dataHeight;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  public int getLeft() {
+    return left;
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    copyRow(y, row, 0);
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    int width = getWidth();
+    int height = getHeight();
+    if (rotation == 0 && width == dataWidth && height == dataHeight) {
+      return yuvData;
+    }
+    if (matrix == null) {
+      matrix = new byte[width * height];
+    }
+    for (int y = 0; y < height; y++) {
+      copyRow(y, matrix, y * width);
+    }
+    return matrix;
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    return new RotatedYUVLuminanceSource(yuvData,
+                                         dataWidth,
+                                         dataHeight,
+                                         rotation,
+                                         this.left + left,
+                                         this.top + top,
+                                         width,
+                                         height);
+  }
+
+  /**
+   * Copies one row of the region of interest. Walking along a row of the rotated frame is walking
+   * along a row or a column of the camera frame, in either direction.
+   */
+  private void copyRow(int y, byte[] out, int offset) {
+    int width = getWidth();
+    int rotatedY = top + y;
+    int inputOffset;
+    int step;
+    switch (rotation) {
+      case 90:
+        inputOffset = (dataHeight - 1 - left) * dataWidth + rotatedY;
+        step = -dataWidth;
+        break;
+      case 180:
+        inputOffset = (dataHeight - 1 - rotatedY) * dataWidth + dataWidth - 1 - left;
+        step = -1;
+        break;
+      case 270:
+        inputOffset = left * dataWidth + dataWidth - 1 - rotatedY;
+        step = dataWidth;
+        break;
+      default:
+        System.arraycopy(yuvData, rotatedY * dataWidth + left, out, offset, width);
+        return;
+    }
+    byte[] yuv = yuvData;
+    for (int x = 0; x < width; x++, inputOffset += step) {
+      out[offset + x] = yuv[inputOffset];
+    }
+  }
+
+}
@@ -41,10 +41,10 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
 
   // This class uses 5x5 blocks to compute local luminance, where each block is 8x8 pixels.
   // So this is the smallest dimension in each axis we can accept.
-  private static final int BLOCK_SIZE_POWER = 3;
+  static final int BLOCK_SIZE_POWER = 3;
   private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER; // ...0100...00
-  private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;   // ...0011...11
-  private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+  static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;   // ...0011...11
+  static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
   private static final int MIN_DYNAMIC_RANGE = 24;
 
   private BitMatrix matrix;
@@ -76,7 +76,8 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
       if ((height & BLOCK_SIZE_MASK) != 0) {
         subHeight++;
       }
-      int[][] blackPoints = calculateBlackPoints(luminances, subWidth, subHeight, width, height);
+      int[][] blackPoints = new int[subHeight][subWidth];
+      calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
 
       BitMatrix newMatrix = new BitMatrix(width, height);
       calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
@@ -98,13 +99,13 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
    * of the blocks around it. Also handles the corner cases (fractional blocks are computed based
    * on the last pixels in the row/column which are also used in the previous block).
    */
-  private static void calculateThresholdForBlock(byte[] luminances,
-                                                 int subWidth,
-                                                 int subHeight,
-                                                 int width,
-                                                 int height,
-                                                 int[][] blackPoints,
-                                                 BitMatrix matrix) {
+  static void calculateThresholdForBlock(byte[] luminances,
+                                         int subWidth,
+                                         int subHeight,
+                                         int width,
+                                         int height,
+                                         int[][] blackPoints,
+                                         BitMatrix matrix) {
     for (int y = 0; y < subHeight; y++) {
       int yoffset = y << BLOCK_SIZE_POWER;
       int maxYOffset = height - BLOCK_SIZE;
@@ -158,12 +159,12 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
    * See the following thread for a discussion of this algorithm:
    *  http://groups.google.com/group/zxing/browse_thread/thread/d06efa2c35a7ddc0
    */
-  private static int[][] calculateBlackPoints(byte[] luminances,
-                                              int subWidth,
-                                              int subHeight,
-                                              int width,
-                                              int height) {
-    int[][] blackPoints = new int[subHeight][subWidth];
+  static void calculateBlackPoints(byte[] luminances,
+                                   int subWidth,
+                                   int subHeight,
+                                   int width,
+                                   int height,
+                                   int[][] blackPoints) {
     for (int y = 0; y < subHeight; y++) {
       int yoffset = y << BLOCK_SIZE_POWER;
       int maxYOffset = height - BLOCK_SIZE;
@@ -231,7 +232,6 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
         blackPoints[y][x] = average;
       }
     }
-    return blackPoints;
   }
 
 }
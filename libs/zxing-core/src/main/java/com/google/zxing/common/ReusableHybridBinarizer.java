@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+
+/**
+ * Does the same as {@link HybridBinarizer}, but allocates the black point blocks and the bit
+ * matrix once and reuses them for every frame of a source whose contents change, like a
+ * {@link com.google.zxing.RotatedYUVLuminanceSource} that is fed camera preview frames.
+ *
+ * Call {@link #reset()} after the source moved on to the next frame. The matrix returned by
+ * {@link #getBlackMatrix()} is only valid until then.
+ */
+public final class ReusableHybridBinarizer extends GlobalHistogramBinarizer {
+
+  private final int subWidth;
+  private final int subHeight;
+  private int[][] blackPoints;
+  private BitMatrix matrix;
+  private boolean valid;
+
+  public ReusableHybridBinarizer(LuminanceSource source) {
+    super(source);
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int subWidth = width >> HybridBinarizer.BLOCK_SIZE_POWER;
+    if ((width & HybridBinarizer.BLOCK_SIZE_MASK) != 0) {
+      subWidth++;
+    }
+    int subHeight = height >> HybridBinarizer.BLOCK_SIZE_POWER;
+    if ((height & HybridBinarizer.BLOCK_SIZE_MASK) != 0) {
+      subHeight++;
+    }
+    this.subWidth = subWidth;
+    this.subHeight = subHeight;
+  }
+
+  /**
+   * Forget the matrix of the previous frame
+   */
+  public void reset() {
+    valid = false;
+  }
+
+  @Override
+  public BitMatrix getBlackMatrix() throws NotFoundException {
+    if (valid) {
+      return matrix;
+    }
+    LuminanceSource source = getLuminanceSource();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width >= HybridBinarizer.MINIMUM_DIMENSION && height >= HybridBinarizer.MINIMUM_DIMENSION) {
+      byte[] luminances = source.getMatrix();
+      if (blackPoints == null) {
+        blackPoints = new int[subHeight][subWidth];
+        matrix = new BitMatrix(width, height);
+      } else {
+        matrix.clear();
+      }
+      HybridBinarizer.calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
+      HybridBinarizer.calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, matrix);
+    } else {
+      // If the image is too small, fall back to the global histogram approach.
+      matrix = super.getBlackMatrix();
+    }
+    valid = true;
+    return matrix;
+  }
+
+  @Override
+  public Binarizer createBinarizer(LuminanceSource source) {
+    return new ReusableHybridBinarizer(source);
+  }
+
+}
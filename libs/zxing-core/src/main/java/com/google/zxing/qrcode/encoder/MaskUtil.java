@@ -33,6 +33,142 @@ final class MaskUtil {
     // do nothing
   }
 
+  /**
+   * The sum of all four penalty rules, computed on a bit-packed copy of the matrix. Every row and
+   * every column is packed into longs, so the rules compare 64 cells at once with shifts and masks
+   * instead of looking at the cells one by one. The result is the same as adding up
+   * applyMaskPenaltyRule1 to applyMaskPenaltyRule4.
+   */
+  static int calculateMaskPenalty(ByteMatrix matrix) {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    long[][] rows = new long[height][(width + 63) >>> 6];
+    long[][] columns = new long[width][(height + 63) >>> 6];
+    byte[][] array = matrix.getArray();
+    int numDarkCells = 0;
+    for (int y = 0; y < height; y++) {
+      byte[] arrayY = array[y];
+      long[] row = rows[y];
+      int columnWord = y >>> 6;
+      long columnBit = 1L << (y & 63);
+      for (int x = 0; x < width; x++) {
+        if (arrayY[x] == 1) {
+          row[x >>> 6] |= 1L << (x & 63);
+          columns[x][columnWord] |= columnBit;
+        }
+      }
+    }
+
+    int rule1 = 0;
+    int rule3 = 0;
+    for (int y = 0; y < height; y++) {
+      rule1 += packedRule1(rows[y], width);
+      rule3 += packedRule3(rows[y], width);
+      for (long word : rows[y]) {
+        numDarkCells += Long.bitCount(word);
+      }
+    }
+    for (int x = 0; x < width; x++) {
+      rule1 += packedRule1(columns[x], height);
+      rule3 += packedRule3(columns[x], height);
+    }
+
+    int rule2 = 0;
+    for (int y = 0; y < height - 1; y++) {
+      long[] a = rows[y];
+      long[] b = rows[y + 1];
+      for (int w = 0; w < a.length; w++) {
+        long a0 = a[w];
+        long b0 = b[w];
+        long same = ~(a0 ^ shifted(a, w, 1)) & ~(a0 ^ b0) & ~(a0 ^ shifted(b, w, 1)) & below(width - 1, w);
+        rule2 += Long.bitCount(same);
+      }
+    }
+
+    int numTotalCells = height * width;
+    double darkRatio = (double) numDarkCells / numTotalCells;
+    int fivePercentVariances = (int) (Math.abs(darkRatio - 0.5) * 20.0); // * 100.0 / 5.0
+    return rule1 + N2 * rule2 + N3 * rule3 + fivePercentVariances * N4;
+  }
+
+  /**
+   * Rule 1 for one packed line of the given length. Runs start where a cell differs from the one
+   * before, so only the run starts are visited.
+   */
+  private static int packedRule1(long[] line, int length) {
+    int penalty = 0;
+    int runStart = 0;
+    for (int w = 0; w < line.length; w++) {
+      long starts = (line[w] ^ shifted(line, w, -1)) & below(length, w);
+      if (w == 0) {
+        // the first cell starts a run in any case
+        starts &= ~1L;
+      }
+      while (starts != 0) {
+        int position = (w << 6) + Long.numberOfTrailingZeros(starts);
+        int run = position - runStart;
+        if (run >= 5) {
+          penalty += N1 + (run - 5);
+        }
+        runStart = position;
+        starts &= starts - 1;
+      }
+    }
+    int run = length - runStart;
+    if (run >= 5) {
+      penalty += N1 + (run - 5);
+    }
+    return penalty;
+  }
+
+  /**
+   * Rule 3 for one packed line of the given length: the number of positions where 1011101 starts
+   * and is followed or preceded by 0000.
+   */
+  private static int packedRule3(long[] line, int length) {
+    int count = 0;
+    for (int w = 0; w < line.length; w++) {
+      long pattern = line[w] & ~shifted(line, w, 1) & shifted(line, w, 2) & shifted(line, w, 3)
+          & shifted(line, w, 4) & ~shifted(line, w, 5) & shifted(line, w, 6) & below(length - 6, w);
+      if (pattern == 0) {
+        continue;
+      }
+      long after = ~(shifted(line, w, 7) | shifted(line, w, 8) | shifted(line, w, 9) | shifted(line, w, 10))
+          & below(length - 10, w);
+      long before = ~(shifted(line, w, -1) | shifted(line, w, -2) | shifted(line, w, -3) | shifted(line, w, -4))
+          & ~below(4, w);
+      count += Long.bitCount(pattern & (after | before));
+    }
+    return count;
+  }
+
+  /**
+   * @return word w of the line shifted by k cells, bit i is cell 64 * w + i + k. Cells outside
+   * the line are 0.
+   */
+  private static long shifted(long[] line, int w, int k) {
+    int first = (w << 6) + k;
+    int word = first >> 6;
+    int offset = first & 63;
+    long low = word >= 0 && word < line.length ? line[word] : 0L;
+    if (offset == 0) {
+      return low;
+    }
+    long high = word + 1 >= 0 && word + 1 < line.length ? line[word + 1] : 0L;
+    return (low >>> offset) | (high << (64 - offset));
+  }
+
+  /**
+   * @return the bits of word w that are cells with an index below limit
+   */
+  private static long below(int limit, int w) {
+    int bits = limit - (w << 6);
+    if (bits <= 0) {
+      return 0L;
+    }
+    return bits >= 64 ? -1L : (1L << bits) - 1;
+  }
+
   /**
    * Apply mask penalty rule 1 and return the penalty. Find repetitive cells with the same color and
    * give penalty to them. Example: 00000 or 11111.
@@ -0,0 +1,257 @@
+package com.google.zxing;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.ReusableHybridBinarizer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decodes camera preview frames the way the scanner does, once the way it used to with a rotated copy of every frame
+ * and a new luminance source and binarizer per frame, and once with a {@link RotatedYUVLuminanceSource} and a
+ * {@link ReusableHybridBinarizer} that are kept across frames.
+ * <p>
+ * Run {@link #main(String[])} with the test class path. Without arguments it decodes generated frames, QR codes
+ * rendered with noise and uneven lighting into frames lying on their side like a phone camera delivers them. To
+ * decode recorded frames instead, pass a directory of NV21 preview frames named {@code <anything>_<width>x<height>.nv21}
+ * and optionally the rotation in degrees (90 by default).
+ */
+public class FrameDecodeBenchmark {
+   private static final Pattern FRAME_NAME = Pattern.compile(".*_(\\d+)x(\\d+)\\.nv21");
+
+   public static class Frame {
+      final String name;
+      final byte[] data;
+      final int width;
+      final int height;
+
+      public Frame(String name, byte[] data, int width, int height) {
+         this.name = name;
+         this.data = data;
+         this.width = width;
+         this.height = height;
+      }
+   }
+
+   private final List<Frame> frames;
+   private final int rotation;
+   private final MultiFormatReader reader = new MultiFormatReader();
+
+   public FrameDecodeBenchmark(List<Frame> frames, int rotation) {
+      this.frames = frames;
+      this.rotation = rotation;
+      Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+      hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+      reader.setHints(hints);
+   }
+
+   /**
+    * Decode all frames with a rotated copy of each and a new luminance source and binarizer per frame
+    *
+    * @return the text of each frame, or null where nothing was found
+    */
+   public String[] decodeCopying() {
+      String[] results = new String[frames.size()];
+      for (int i = 0; i < results.length; i++) {
+         Frame frame = frames.get(i);
+         int rotatedWidth = RotatedYUVLuminanceSource.getRotatedWidth(frame.width, frame.height, rotation);
+         int rotatedHeight = RotatedYUVLuminanceSource.getRotatedHeight(frame.width, frame.height, rotation);
+         byte[] rotated = rotate(frame.data, frame.width, frame.height, rotation);
+         int[] viewfinder = viewfinder(rotatedWidth, rotatedHeight);
+         LuminanceSource source = new PlanarYUVLuminanceSource(rotated, rotatedWidth, rotatedHeight, viewfinder[0],
+               viewfinder[1], viewfinder[2], viewfinder[3], false);
+         results[i] = decode(new BinaryBitmap(new HybridBinarizer(source)));
+      }
+      return results;
+   }
+
+   /**
+    * Decode all frames with one luminance source and binarizer, which only get rebuilt when the frame size changes
+    *
+    * @return the text of each frame, or null where nothing was found
+    */
+   public String[] decodeReusing() {
+      String[] results = new String[frames.size()];
+      RotatedYUVLuminanceSource source = null;
+      ReusableHybridBinarizer binarizer = null;
+      for (int i = 0; i < results.length; i++) {
+         Frame frame = frames.get(i);
+         if (source != null && source.getDataWidth() == frame.width && source.getDataHeight() == frame.height) {
+            source.setData(frame.data);
+            binarizer.reset();
+         } else {
+            int rotatedWidth = RotatedYUVLuminanceSource.getRotatedWidth(frame.width, frame.height, rotation);
+            int rotatedHeight = RotatedYUVLuminanceSource.getRotatedHeight(frame.width, frame.height, rotation);
+            int[] viewfinder = viewfinder(rotatedWidth, rotatedHeight);
+            source = new RotatedYUVLuminanceSource(frame.data, frame.width, frame.height, rotation, viewfinder[0],
+                  viewfinder[1], viewfinder[2], viewfinder[3]);
+            binarizer = new ReusableHybridBinarizer(source);
+         }
+         results[i] = decode(new BinaryBitmap(binarizer));
+      }
+      return results;
+   }
+
+   private String decode(BinaryBitmap bitmap) {
+      try {
+         return reader.decodeWithState(bitmap).getText();
+      } catch (ReaderException e) {
+         return null;
+      } finally {
+         reader.reset();
+      }
+   }
+
+   // a centered square like the viewfinder of the scanner
+   private static int[] viewfinder(int width, int height) {
+      int size = Math.min(width, height) * 3 / 4;
+      return new int[]{(width - size) / 2, (height - size) / 2, size, size};
+   }
+
+   /**
+    * The copying rotation the scanner used before
+    */
+   public static byte[] rotate(byte[] data, int width, int height, int rotation) {
+      byte[] rotated = new byte[data.length];
+      for (int y = 0; y < height; y++) {
+         for (int x = 0; x < width; x++) {
+            switch (rotation) {
+               case 90:
+                  rotated[x * height + height - y - 1] = data[x + y * width];
+                  break;
+               case 180:
+                  rotated[(width - x - 1) + width * (height - y - 1)] = data[x + y * width];
+                  break;
+               case 270:
+                  rotated[(width - x - 1) * height + y] = data[x + y * width];
+                  break;
+               default:
+                  rotated[x + y * width] = data[x + y * width];
+            }
+         }
+      }
+      return rotated;
+   }
+
+   /**
+    * Render QR codes into NV21 frames of the given camera size, which show the code upright when rotated by 90
+    * degrees
+    */
+   public static List<Frame> generateFrames(String[] texts, int width, int height, long seed) throws WriterException {
+      Random random = new Random(seed);
+      List<Frame> frames = new ArrayList<Frame>(texts.length);
+      // the upright image is height wide and width high
+      int codeSize = height / 2;
+      for (String text : texts) {
+         BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, codeSize, codeSize);
+         int codeLeft = (height - codeSize) / 2 + random.nextInt(11) - 5;
+         int codeTop = (width - codeSize) / 2 + random.nextInt(11) - 5;
+         byte[] data = new byte[width * height * 3 / 2];
+         for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+               // the upright pixel this camera pixel ends up at after rotating by 90 degrees
+               int uprightX = height - 1 - y;
+               int uprightY = x;
+               int codeX = uprightX - codeLeft;
+               int codeY = uprightY - codeTop;
+               boolean dark = codeX >= 0 && codeY >= 0 && codeX < codeSize && codeY < codeSize && code.get(codeX, codeY);
+               // light falls off towards one side of the frame, with sensor noise on top that is small enough for
+               // the binarizer to see flat areas as flat
+               int light = 220 - 80 * x / width;
+               int value = (dark ? light / 4 : light) + random.nextInt(17) - 8;
+               data[x + y * width] = (byte) Math.max(0, Math.min(255, value));
+            }
+         }
+         Arrays.fill(data, width * height, data.length, (byte) 0x80);
+         frames.add(new Frame(text, data, width, height));
+      }
+      return frames;
+   }
+
+   /**
+    * Read the NV21 frames of a directory, named {@code <anything>_<width>x<height>.nv21}
+    */
+   public static List<Frame> readFrames(File directory) throws IOException {
+      File[] files = directory.listFiles();
+      if (files == null) {
+         throw new IOException("Not a directory: " + directory);
+      }
+      Arrays.sort(files);
+      List<Frame> frames = new ArrayList<Frame>();
+      for (File file : files) {
+         Matcher matcher = FRAME_NAME.matcher(file.getName());
+         if (!matcher.matches()) {
+            continue;
+         }
+         byte[] data = new byte[(int) file.length()];
+         DataInputStream in = new DataInputStream(new FileInputStream(file));
+         try {
+            in.readFully(data);
+         } finally {
+            in.close();
+         }
+         frames.add(new Frame(file.getName(), data, Integer.parseInt(matcher.group(1)),
+               Integer.parseInt(matcher.group(2))));
+      }
+      return frames;
+   }
+
+   public static void main(String[] args) throws Exception {
+      List<Frame> frames;
+      if (args.length == 0) {
+         String[] texts = new String[20];
+         for (int i = 0; i < texts.length; i++) {
+            texts[i] = "bitcoin:1BitcoinEaterAddressDontSendf59kuE?amount=0." + i;
+         }
+         frames = generateFrames(texts, 1280, 720, 1);
+      } else {
+         frames = readFrames(new File(args[0]));
+      }
+      int rotation = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+      FrameDecodeBenchmark benchmark = new FrameDecodeBenchmark(frames, rotation);
+
+      int decoded = 0;
+      String[] results = benchmark.decodeReusing();
+      for (int i = 0; i < results.length; i++) {
+         if (results[i] != null) {
+            decoded++;
+         } else {
+            System.out.println("not decoded: " + frames.get(i).name);
+         }
+      }
+      System.out.println(String.format("%d frames, %d decoded", frames.size(), decoded));
+
+      // warm up, then measure a few rounds of each
+      for (int round = 0; round < 5; round++) {
+         benchmark.decodeCopying();
+         benchmark.decodeReusing();
+      }
+      int rounds = 20;
+      long start = System.nanoTime();
+      for (int round = 0; round < rounds; round++) {
+         benchmark.decodeCopying();
+      }
+      long copying = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int round = 0; round < rounds; round++) {
+         benchmark.decodeReusing();
+      }
+      long reusing = System.nanoTime() - start;
+      int count = rounds * frames.size();
+      System.out.println(String.format("copying: %d us per frame, reusing: %d us per frame",
+            copying / count / 1000, reusing / count / 1000));
+   }
+}
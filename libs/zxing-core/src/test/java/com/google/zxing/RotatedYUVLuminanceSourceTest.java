@@ -0,0 +1,78 @@
+package com.google.zxing;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.ReusableHybridBinarizer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RotatedYUVLuminanceSourceTest {
+   private static final int WIDTH = 64;
+   private static final int HEIGHT = 48;
+
+   @Test
+   public void testMatchesRotatedCopy() {
+      byte[] frame = randomFrame(1);
+      for (int rotation = 0; rotation < 360; rotation += 90) {
+         int rotatedWidth = RotatedYUVLuminanceSource.getRotatedWidth(WIDTH, HEIGHT, rotation);
+         int rotatedHeight = RotatedYUVLuminanceSource.getRotatedHeight(WIDTH, HEIGHT, rotation);
+         byte[] rotated = FrameDecodeBenchmark.rotate(frame, WIDTH, HEIGHT, rotation);
+         PlanarYUVLuminanceSource expected = new PlanarYUVLuminanceSource(rotated, rotatedWidth, rotatedHeight,
+               5, 7, rotatedWidth - 11, rotatedHeight - 9, false);
+         RotatedYUVLuminanceSource actual = new RotatedYUVLuminanceSource(frame, WIDTH, HEIGHT, rotation,
+               5, 7, rotatedWidth - 11, rotatedHeight - 9);
+         assertEquals(expected.getWidth(), actual.getWidth());
+         assertEquals(expected.getHeight(), actual.getHeight());
+         assertArrayEquals("rotation " + rotation, expected.getMatrix(), actual.getMatrix());
+         assertArrayEquals(expected.getRow(3, null), actual.getRow(3, null));
+         assertArrayEquals(expected.crop(2, 3, 20, 10).getMatrix(), actual.crop(2, 3, 20, 10).getMatrix());
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testCropMustFitRotatedFrame() {
+      // fits the camera frame, but not the frame rotated by 90 degrees
+      new RotatedYUVLuminanceSource(null, WIDTH, HEIGHT, 90, 0, 0, WIDTH, HEIGHT);
+   }
+
+   @Test
+   public void testReusableBinarizerAcrossFrames() throws NotFoundException {
+      RotatedYUVLuminanceSource source = new RotatedYUVLuminanceSource(randomFrame(2), WIDTH, HEIGHT, 270,
+            4, 4, HEIGHT - 8, WIDTH - 8);
+      ReusableHybridBinarizer binarizer = new ReusableHybridBinarizer(source);
+      BitMatrix first = binarizer.getBlackMatrix();
+      assertEquals(new HybridBinarizer(source).getBlackMatrix(), first);
+
+      byte[] next = randomFrame(3);
+      source.setData(next);
+      binarizer.reset();
+      BitMatrix second = binarizer.getBlackMatrix();
+      assertSame(first, second);
+      RotatedYUVLuminanceSource fresh = new RotatedYUVLuminanceSource(next, WIDTH, HEIGHT, 270,
+            4, 4, HEIGHT - 8, WIDTH - 8);
+      assertEquals(new HybridBinarizer(fresh).getBlackMatrix(), second);
+   }
+
+   @Test
+   public void testDecodesGeneratedFramesLikeCopying() throws WriterException {
+      String[] texts = {"bitcoin:1BitcoinEaterAddressDontSendf59kuE", "first", "second", "third"};
+      FrameDecodeBenchmark benchmark = new FrameDecodeBenchmark(
+            FrameDecodeBenchmark.generateFrames(texts, 640, 480, 4), 90);
+      assertArrayEquals(texts, benchmark.decodeCopying());
+      assertArrayEquals(texts, benchmark.decodeReusing());
+   }
+
+   private static byte[] randomFrame(long seed) {
+      // Y plane followed by the chroma planes of a NV21 frame
+      byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+      new Random(seed).nextBytes(frame);
+      Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 0x80);
+      return frame;
+   }
+}
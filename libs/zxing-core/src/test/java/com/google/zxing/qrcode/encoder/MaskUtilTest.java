@@ -0,0 +1,48 @@
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MaskUtilTest {
+   @Test
+   public void testPackedPenaltyMatchesRules() {
+      Random random = new Random(42);
+      int[] sizes = {21, 25, 57, 63, 64, 65, 127, 128, 129, 177};
+      for (int size : sizes) {
+         for (int i = 0; i < 20; i++) {
+            ByteMatrix matrix = new ByteMatrix(size, size);
+            // vary the density, sparse matrices have long runs and many finder-like patterns
+            int density = 1 + random.nextInt(9);
+            for (int y = 0; y < size; y++) {
+               for (int x = 0; x < size; x++) {
+                  matrix.set(x, y, random.nextInt(10) < density);
+               }
+            }
+            assertEquals("size " + size, referencePenalty(matrix), MaskUtil.calculateMaskPenalty(matrix));
+         }
+      }
+   }
+
+   @Test
+   public void testPackedPenaltyOnEncodedMatrices() throws Exception {
+      String[] contents = {"1", "bitcoin:1KNR5VdtWLRTyxAnGY3CwzVqAq4opnQVgy?amount=0.0123",
+            "6PRN5VdtWLRTyxAnGY3CwzVqAq4opnQVgyxsr8tMw3yxmKTbAhpY4VxAqTsr8tMw3yxmKTbAhpY4VxAq"};
+      for (String content : contents) {
+         for (ErrorCorrectionLevel level : ErrorCorrectionLevel.values()) {
+            ByteMatrix matrix = Encoder.encode(content, level).getMatrix();
+            assertEquals(referencePenalty(matrix), MaskUtil.calculateMaskPenalty(matrix));
+         }
+      }
+   }
+
+   private static int referencePenalty(ByteMatrix matrix) {
+      return MaskUtil.applyMaskPenaltyRule1(matrix)
+            + MaskUtil.applyMaskPenaltyRule2(matrix)
+            + MaskUtil.applyMaskPenaltyRule3(matrix)
+            + MaskUtil.applyMaskPenaltyRule4(matrix);
+   }
+}
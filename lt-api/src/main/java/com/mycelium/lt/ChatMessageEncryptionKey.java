@@ -18,6 +18,8 @@ package com.mycelium.lt;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import Rijndael.Rijndael;
@@ -32,6 +34,7 @@ import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
 import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
+import com.mycelium.lt.api.model.ChatEntry;
 
 public class ChatMessageEncryptionKey implements Serializable {
    private static final long serialVersionUID = 1L;
@@ -142,64 +145,111 @@ public class ChatMessageEncryptionKey implements Serializable {
     *            if the message fails integrity checks
     */
    public String decryptAndCheckChatMessage(String encryptedChatMessage) throws InvalidChatMessage {
+      return new Decrypter().decryptAndCheck(encryptedChatMessage);
+   }
 
-      // Base-64 decode without padding
-      byte[] encryptedMessageBytes;
-      try {
-         encryptedMessageBytes = BaseEncoding.base64().omitPadding().decode(encryptedChatMessage);
-      } catch (IllegalArgumentException e) {
-         throw new InvalidChatMessage("Invalid Base-64 encoding");
+   /**
+    * Decrypt and verify the integrity of all chat messages of a trade session.
+    * The AES key schedule and the HMAC key are set up once for all messages.
+    * 
+    * @param chatEntries
+    *           the chat entries of a trade session
+    * @return for every entry the plaintext message, or null if the entry is
+    *         not a chat message or if it fails integrity checks
+    */
+   public String[] decryptAndCheckChatMessages(List<ChatEntry> chatEntries) {
+      Decrypter decrypter = new Decrypter();
+      String[] messages = new String[chatEntries.size()];
+      for (int i = 0; i < messages.length; i++) {
+         ChatEntry entry = chatEntries.get(i);
+         if (entry.type != ChatEntry.TYPE_OWNER_CHAT && entry.type != ChatEntry.TYPE_PEER_CHAT) {
+            continue;
+         }
+         try {
+            messages[i] = decrypter.decryptAndCheck(entry.message);
+         } catch (InvalidChatMessage e) {
+            // Leave it null
+         }
       }
+      return messages;
+   }
 
-      // Extract MAC and encrypted bytes
-      byte[] mac = BitUtils.copyOf(encryptedMessageBytes, MAC_LENGTH);
-      byte[] encryptedBytes = BitUtils.copyOfRange(encryptedMessageBytes, MAC_LENGTH, encryptedMessageBytes.length);
+   /**
+    * AES key schedule, HMAC state and block buffers for decrypting messages
+    * with this key
+    */
+   private class Decrypter {
+      private final Rijndael _aes;
+      private final Hmac _hmac;
+      private final byte[] _ct = new byte[Rijndael.BLOCK_SIZE];
+      private final byte[] _pt = new byte[Rijndael.BLOCK_SIZE];
+      private final byte[] _parentBlock = new byte[Rijndael.BLOCK_SIZE];
+
+      private Decrypter() {
+         _aes = new Rijndael();
+         _aes.makeKey(encryptionKey, encryptionKey.length * 8, Rijndael.DIR_DECRYPT);
+         _hmac = Hmac.sha256(hmacKey);
+      }
 
-      // Decrypt message using the MAC value as IV
-      byte[] IV = BitUtils.copyOf(mac, Rijndael.BLOCK_SIZE);
-      byte[] decryptedMessage = aesDecrypt(IV, encryptedBytes);
+      private String decryptAndCheck(String encryptedChatMessage) throws InvalidChatMessage {
 
-      // Get message bytes
-      ByteReader reader = new ByteReader(decryptedMessage);
-      byte[] messageBytes;
-      try {
-         int messageByteSize = reader.getIntLE();
-         if (messageByteSize < 0 || messageByteSize > encryptedMessageBytes.length) {
-            throw new InvalidChatMessage("Invalid chat message size");
+         // Base-64 decode without padding
+         byte[] encryptedMessageBytes;
+         try {
+            encryptedMessageBytes = BaseEncoding.base64().omitPadding().decode(encryptedChatMessage);
+         } catch (IllegalArgumentException e) {
+            throw new InvalidChatMessage("Invalid Base-64 encoding");
          }
-         messageBytes = reader.getBytes(messageByteSize);
-      } catch (InsufficientBytesException e) {
-         throw new InvalidChatMessage("Invalid chat message size");
-      }
 
-      // Validate MAC
-      byte[] calculatedMac = calculateHmac(messageBytes);
-      if (!BitUtils.areEqual(calculatedMac, mac)) {
-         throw new InvalidChatMessage("Message integrity check failed");
-      }
+         // Extract MAC, the encrypted bytes follow it
+         byte[] mac = BitUtils.copyOf(encryptedMessageBytes, MAC_LENGTH);
+
+         // Decrypt message using the MAC value as IV
+         byte[] decryptedMessage = decrypt(mac, encryptedMessageBytes, MAC_LENGTH);
+
+         // Get message bytes
+         ByteReader reader = new ByteReader(decryptedMessage);
+         byte[] messageBytes;
+         try {
+            int messageByteSize = reader.getIntLE();
+            if (messageByteSize < 0 || messageByteSize > encryptedMessageBytes.length) {
+               throw new InvalidChatMessage("Invalid chat message size");
+            }
+            messageBytes = reader.getBytes(messageByteSize);
+         } catch (InsufficientBytesException e) {
+            throw new InvalidChatMessage("Invalid chat message size");
+         }
 
-      // Get the string
-      return bytesToUtf8String(messageBytes);
-   }
+         // Validate MAC
+         byte[] calculatedMac = BitUtils.copyOf(_hmac.doFinal(messageBytes), MAC_LENGTH);
+         if (!BitUtils.areEqual(calculatedMac, mac)) {
+            throw new InvalidChatMessage("Message integrity check failed");
+         }
 
-   private byte[] aesDecrypt(byte[] IV, byte[] encryptedBytes) {
-      // Prepare AES key
-      Rijndael aes = new Rijndael();
-      aes.makeKey(encryptionKey, encryptionKey.length * 8, Rijndael.DIR_DECRYPT);
+         // Get the string
+         return bytesToUtf8String(messageBytes);
+      }
 
-      // Decrypt in CBC mode using IV
-      byte[] pt = new byte[Rijndael.BLOCK_SIZE];
-      byte[] ct;
-      byte[] parentBlock = IV;
-      ByteWriter writer = new ByteWriter(encryptedBytes.length);
-      for (int i = 0; i < encryptedBytes.length; i += Rijndael.BLOCK_SIZE) {
-         ct = BitUtils.copyOfRange(encryptedBytes, i, i + Rijndael.BLOCK_SIZE);
-         aes.decrypt(ct, pt);
-         xorBytes(parentBlock, pt);
-         parentBlock = ct;
-         writer.putBytes(pt);
+      /**
+       * Decrypt in CBC mode, a partial last block is padded with zeros
+       */
+      private byte[] decrypt(byte[] IV, byte[] bytes, int offset) {
+         int length = Math.max(0, bytes.length - offset);
+         int blocks = (length + Rijndael.BLOCK_SIZE - 1) / Rijndael.BLOCK_SIZE;
+         byte[] result = new byte[blocks * Rijndael.BLOCK_SIZE];
+         System.arraycopy(IV, 0, _parentBlock, 0, Rijndael.BLOCK_SIZE);
+         for (int i = 0; i < result.length; i += Rijndael.BLOCK_SIZE) {
+            int available = Math.min(Rijndael.BLOCK_SIZE, length - i);
+            System.arraycopy(bytes, offset + i, _ct, 0, available);
+            Arrays.fill(_ct, available, Rijndael.BLOCK_SIZE, (byte) 0);
+            _aes.decrypt(_ct, _pt);
+            for (int j = 0; j < Rijndael.BLOCK_SIZE; j++) {
+               result[i + j] = (byte) (_pt[j] ^ _parentBlock[j]);
+            }
+            System.arraycopy(_ct, 0, _parentBlock, 0, Rijndael.BLOCK_SIZE);
+         }
+         return result;
       }
-      return writer.toBytes();
    }
 
    private byte[] aesCbcEncryption(byte[] IV, byte[] data) {
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.lt.api;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Local Trader requests in the background.
+ * <p>
+ * Read-only requests run concurrently on a bounded pool. Requests that change something on the server run one at a
+ * time in the order they were submitted, so that for instance chat messages arrive in order. A read-only request
+ * waits for the writes submitted before it, so it sees their changes. A read-only request with the same
+ * deduplication key as one that is still queued or running, and that was submitted after the same writes, is not run
+ * again, the caller waits for the request in flight.
+ */
+public class LtRequestExecutor {
+
+   private static final long KEEP_ALIVE_SECONDS = 30;
+
+   private final ExecutorService _readers;
+   private final ExecutorService _writer;
+   private final ConcurrentMap<Object, RequestTask> _inFlight = new ConcurrentHashMap<Object, RequestTask>();
+   // the last write that was submitted and how many writes were submitted so far, guarded by this
+   private Future<?> _lastWrite;
+   private long _writeCount;
+
+   public LtRequestExecutor(int maxConcurrentRequests) {
+      _readers = createExecutor(maxConcurrentRequests, "lt-read");
+      _writer = createExecutor(1, "lt-write");
+   }
+
+   /**
+    * Submit a request for execution.
+    *
+    * @param readOnly
+    *           true if the request may run concurrently with other requests
+    * @param deduplicationKey
+    *           key of identical read-only requests, or null if the request must run even if an identical one is in
+    *           flight
+    * @return a future for the request. Every caller gets its own future, a deduplicated request only gets cancelled
+    *         once all of its callers cancelled it.
+    */
+   public synchronized Future<?> submit(Runnable request, boolean readOnly, Object deduplicationKey) {
+      if (!readOnly) {
+         RequestTask task = new RequestTask(request, null, null, _writeCount);
+         _writer.execute(task);
+         _lastWrite = task;
+         _writeCount++;
+         return task.newCaller();
+      }
+      Future<?> barrier = _lastWrite != null && !_lastWrite.isDone() ? _lastWrite : null;
+      if (deduplicationKey == null) {
+         RequestTask task = new RequestTask(request, null, barrier, _writeCount);
+         _readers.execute(task);
+         return task.newCaller();
+      }
+      RequestTask existing = _inFlight.get(deduplicationKey);
+      if (existing != null && existing._writeCount == _writeCount) {
+         // it sees the same writes as this request would
+         Future<?> caller = existing.newCaller();
+         if (caller != null) {
+            return caller;
+         }
+      }
+      RequestTask task = new RequestTask(request, deduplicationKey, barrier, _writeCount);
+      _inFlight.put(deduplicationKey, task);
+      _readers.execute(task);
+      return task.newCaller();
+   }
+
+   /**
+    * Stop accepting requests, queued requests are not run and running requests are interrupted
+    */
+   public void shutdown() {
+      _readers.shutdownNow();
+      _writer.shutdownNow();
+   }
+
+   private class RequestTask extends FutureTask<Void> {
+      private final Object _key;
+      private final Future<?> _barrier;
+      private final long _writeCount;
+      // the callers that did not cancel yet
+      private int _callers;
+
+      private RequestTask(Runnable request, Object key, Future<?> barrier, long writeCount) {
+         super(request, null);
+         _key = key;
+         _barrier = barrier;
+         _writeCount = writeCount;
+      }
+
+      /**
+       * @return a future for another caller of this request, or null if it got cancelled already
+       */
+      private synchronized Future<?> newCaller() {
+         if (isCancelled()) {
+            return null;
+         }
+         _callers++;
+         return new CallerFuture(this);
+      }
+
+      /**
+       * One of the callers is no longer interested, cancel the request if it was the last one
+       */
+      private synchronized void cancelCaller(boolean mayInterruptIfRunning) {
+         if (--_callers == 0) {
+            cancel(mayInterruptIfRunning);
+         }
+      }
+
+      @Override
+      public void run() {
+         if (_barrier != null) {
+            try {
+               _barrier.get();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               setException(e);
+               return;
+            } catch (ExecutionException | CancellationException ignore) {
+               // the write failed, the read should run anyway
+            }
+         }
+         super.run();
+      }
+
+      // Release the key before waiting callers are woken up, so that a request made after get() returned is sent
+      @Override
+      protected void set(Void v) {
+         release();
+         super.set(v);
+      }
+
+      @Override
+      protected void setException(Throwable t) {
+         release();
+         super.setException(t);
+      }
+
+      // Cancelled requests don't call set()
+      @Override
+      protected void done() {
+         release();
+      }
+
+      private void release() {
+         if (_key != null) {
+            _inFlight.remove(_key, this);
+         }
+      }
+   }
+
+   /**
+    * The future of one caller of a request, cancelling it does not cancel the request for the other callers
+    */
+   private static class CallerFuture implements Future<Void> {
+      private final RequestTask _task;
+      private volatile boolean _cancelled;
+
+      private CallerFuture(RequestTask task) {
+         _task = task;
+      }
+
+      @Override
+      public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+         if (_cancelled || _task.isDone()) {
+            return false;
+         }
+         _cancelled = true;
+         _task.cancelCaller(mayInterruptIfRunning);
+         return true;
+      }
+
+      @Override
+      public boolean isCancelled() {
+         return _cancelled || _task.isCancelled();
+      }
+
+      @Override
+      public boolean isDone() {
+         return _cancelled || _task.isDone();
+      }
+
+      @Override
+      public Void get() throws InterruptedException, ExecutionException {
+         if (_cancelled) {
+            throw new CancellationException();
+         }
+         return _task.get();
+      }
+
+      @Override
+      public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+         if (_cancelled) {
+            throw new CancellationException();
+         }
+         return _task.get(timeout, unit);
+      }
+   }
+
+   private static ExecutorService createExecutor(int threads, final String name) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+               private final AtomicInteger _count = new AtomicInteger();
+
+               @Override
+               public Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, name + "-" + _count.incrementAndGet());
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+   }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.lt.api;
+
+import java.util.UUID;
+
+import com.mycelium.lt.api.model.LtSession;
+import com.mycelium.lt.api.params.LoginParameters;
+
+/**
+ * Keeps the session with the Local Trader server for requests running on several threads.
+ * <p>
+ * Creating a session and logging in are serialized: a request that needs a session while another thread is renewing
+ * it waits for that renewal and uses its result instead of starting its own round trip.
+ */
+public class LtSessionKeeper {
+
+   public interface Credentials {
+      /**
+       * @return the login parameters with the session id signed by the trader key, or null if there is no trader
+       *         account
+       */
+      LoginParameters getLoginParameters(UUID sessionId);
+   }
+
+   private final LtApi _api;
+   private volatile LtSession _session;
+   private String _sessionLocale;
+   private boolean _isLoggedIn;
+
+   public LtSessionKeeper(LtApi api) {
+      _api = api;
+   }
+
+   /**
+    * @return the current session without creating one, may be null
+    */
+   public LtSession getSession() {
+      return _session;
+   }
+
+   /**
+    * Get a session for the locale, creating a new one if there is none or if the locale changed.
+    *
+    * @param credentials
+    *           used to log in if the session is not logged in yet, null if the request does not need a login
+    */
+   public synchronized LtSession obtainSession(String locale, String bitcoinDenomination, Credentials credentials)
+         throws LtApiException {
+      if (_session == null || !locale.equals(_sessionLocale)) {
+         renewSession(locale, bitcoinDenomination);
+      }
+      if (credentials != null && !_isLoggedIn) {
+         try {
+            login(credentials);
+         } catch (LtApiException e) {
+            if (e.errorCode != LtApi.ERROR_CODE_INVALID_SESSION) {
+               throw e;
+            }
+            // The session expired between creating it and logging in, try once more with a fresh one
+            renewSession(locale, bitcoinDenomination);
+            login(credentials);
+         }
+      }
+      return _session;
+   }
+
+   /**
+    * Drop the session after the server rejected it. Requests that failed with the same session call this
+    * concurrently, only the first one drops it and the others keep a session that was renewed in the meantime.
+    */
+   public synchronized void invalidate(UUID sessionId) {
+      if (_session != null && _session.id.equals(sessionId)) {
+         reset();
+      }
+   }
+
+   /**
+    * Drop the session, the next request creates a new one
+    */
+   public synchronized void reset() {
+      _session = null;
+      _sessionLocale = null;
+      _isLoggedIn = false;
+   }
+
+   private void renewSession(String locale, String bitcoinDenomination) throws LtApiException {
+      reset();
+      _session = _api.createSession(LtApi.VERSION, locale, bitcoinDenomination).getResult();
+      _sessionLocale = locale;
+   }
+
+   private void login(Credentials credentials) throws LtApiException {
+      LoginParameters params = credentials.getLoginParameters(_session.id);
+      if (params == null) {
+         throw new LtApiException(LtApi.ERROR_CODE_TRADER_DOES_NOT_EXIST);
+      }
+      _api.traderLogin(_session.id, params).getResult();
+      _isLoggedIn = true;
+   }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.lt.api.model;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.mrd.bitlib.crypto.PublicKey;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
+import com.mrd.bitlib.util.ByteWriter;
+
+/**
+ * Compact binary encoding of a {@link TradeSession} with its chat entries, for storing sessions locally.
+ * <p>
+ * The first byte is the version of the format. Fields are written in a fixed order, numbers little endian, strings
+ * as UTF-8 with a length, and objects that may be missing with a presence byte. Unlike Java serialization this does
+ * not store class descriptors, and it does not break when a class changes without changing its serialVersionUID.
+ */
+public class TradeSessionCodec {
+
+   public static final byte VERSION = 1;
+
+   private static final int INITIAL_CAPACITY = 1024;
+   private static final byte ABSENT = 0;
+   private static final byte PRESENT = 1;
+   private static final byte ACTION_NONE = -1;
+   private static final byte ACTION_NA = 0;
+   private static final byte ACTION_ENABLED = 1;
+   private static final byte ACTION_DISABLED = 2;
+
+   public static byte[] encode(TradeSession session) {
+      ByteWriter writer = new ByteWriter(INITIAL_CAPACITY);
+      writer.put(VERSION);
+      writer.putLongLE(session.id.getMostSignificantBits());
+      writer.putLongLE(session.id.getLeastSignificantBits());
+      writer.putLongLE(session.creationTime);
+      writer.putLongLE(session.lastChange);
+      putPriceFormula(writer, session.priceFormula);
+      writer.putLongLE(Double.doubleToLongBits(session.premium));
+      putString(writer, session.currency);
+      writer.putIntLE(session.fiatTraded);
+      writer.putLongLE(session.satoshisAtMarketPrice);
+      writer.putLongLE(session.satoshisFromSeller);
+      writer.putLongLE(session.satoshisForBuyer);
+      putAddress(writer, session.buyerAddress);
+      putAddress(writer, session.feeAddress);
+      putChatEntries(writer, session.chatEntries);
+      putString(writer, session.ownerName);
+      putAddress(writer, session.ownerId);
+      putPublicKey(writer, session.ownerPublicKey);
+      putString(writer, session.peerName);
+      putAddress(writer, session.peerId);
+      putPublicKey(writer, session.peerPublicKey);
+      writer.putBoolean(session.isOwner);
+      writer.putBoolean(session.isBuyer);
+      putString(writer, session.statusText);
+      if (session.confidence == null) {
+         writer.put(ABSENT);
+      } else {
+         writer.put(PRESENT);
+         writer.putLongLE(Double.doubleToLongBits(session.confidence));
+      }
+      putActionState(writer, session.acceptAction);
+      putActionState(writer, session.abortAction);
+      putActionState(writer, session.refreshRateAction);
+      putActionState(writer, session.changePriceAction);
+      putActionState(writer, session.releaseBtcAction);
+      putActionState(writer, session.sendMessageAction);
+      writer.putBoolean(session.isWaitingForPeerAccept);
+      writer.putBoolean(session.isOpen);
+      putLocation(writer, session.location);
+      return writer.toBytes();
+   }
+
+   /**
+    * @return the session, or null if the bytes are not a session in a version of the format this class knows
+    */
+   public static TradeSession decode(byte[] bytes) {
+      ByteReader reader = new ByteReader(bytes);
+      try {
+         if (reader.get() != VERSION) {
+            return null;
+         }
+         UUID id = new UUID(reader.getLongLE(), reader.getLongLE());
+         long creationTime = reader.getLongLE();
+         long lastChange = reader.getLongLE();
+         PriceFormula priceFormula = getPriceFormula(reader);
+         double premium = Double.longBitsToDouble(reader.getLongLE());
+         String currency = getString(reader);
+         int fiatTraded = reader.getIntLE();
+         long satoshisAtMarketPrice = reader.getLongLE();
+         long satoshisFromSeller = reader.getLongLE();
+         long satoshisForBuyer = reader.getLongLE();
+         Address buyerAddress = getAddress(reader);
+         Address feeAddress = getAddress(reader);
+         List<ChatEntry> chatEntries = getChatEntries(reader);
+         String ownerName = getString(reader);
+         Address ownerId = getAddress(reader);
+         PublicKey ownerPublicKey = getPublicKey(reader);
+         String peerName = getString(reader);
+         Address peerId = getAddress(reader);
+         PublicKey peerPublicKey = getPublicKey(reader);
+         boolean isOwner = reader.getBoolean();
+         boolean isBuyer = reader.getBoolean();
+         String statusText = getString(reader);
+         Double confidence = reader.get() == ABSENT ? null : Double.longBitsToDouble(reader.getLongLE());
+         ActionState acceptAction = getActionState(reader);
+         ActionState abortAction = getActionState(reader);
+         ActionState refreshRateAction = getActionState(reader);
+         ActionState changePriceAction = getActionState(reader);
+         ActionState releaseBtcAction = getActionState(reader);
+         ActionState sendMessageAction = getActionState(reader);
+         boolean isWaitingForPeerAccept = reader.getBoolean();
+         boolean isOpen = reader.getBoolean();
+         GpsLocation location = getLocation(reader);
+         return new TradeSession(id, creationTime, lastChange, priceFormula, premium, currency, fiatTraded,
+               satoshisAtMarketPrice, satoshisFromSeller, satoshisForBuyer, buyerAddress, feeAddress, chatEntries,
+               ownerName, ownerId, ownerPublicKey, peerName, peerId, peerPublicKey, isOwner, isBuyer, statusText,
+               confidence, acceptAction, abortAction, refreshRateAction, changePriceAction, releaseBtcAction,
+               sendMessageAction, isWaitingForPeerAccept, isOpen, location);
+      } catch (InsufficientBytesException e) {
+         return null;
+      } catch (IllegalStateException e) {
+         // the amounts did not pass the sanity check of the session
+         return null;
+      }
+   }
+
+   private static void putChatEntries(ByteWriter writer, List<ChatEntry> entries) {
+      if (entries == null) {
+         writer.putIntLE(-1);
+         return;
+      }
+      writer.putIntLE(entries.size());
+      for (ChatEntry entry : entries) {
+         writer.putLongLE(entry.time);
+         writer.putIntLE(entry.type);
+         writer.putIntLE(entry.subtype);
+         putString(writer, entry.message);
+      }
+   }
+
+   private static List<ChatEntry> getChatEntries(ByteReader reader) throws InsufficientBytesException {
+      int size = reader.getIntLE();
+      if (size == -1) {
+         return null;
+      }
+      // every entry takes at least 20 bytes, don't trust a corrupted size
+      if (size < 0 || size > reader.available() / 20) {
+         throw new InsufficientBytesException();
+      }
+      List<ChatEntry> entries = new ArrayList<ChatEntry>(size);
+      for (int i = 0; i < size; i++) {
+         entries.add(new ChatEntry(reader.getLongLE(), reader.getIntLE(), reader.getIntLE(), getString(reader)));
+      }
+      return entries;
+   }
+
+   private static void putPriceFormula(ByteWriter writer, PriceFormula priceFormula) {
+      if (priceFormula == null) {
+         writer.put(ABSENT);
+         return;
+      }
+      writer.put(PRESENT);
+      putString(writer, priceFormula.id);
+      putString(writer, priceFormula.name);
+      writer.put(priceFormula.available == null ? -1 : (byte) (priceFormula.available ? 1 : 0));
+   }
+
+   private static PriceFormula getPriceFormula(ByteReader reader) throws InsufficientBytesException {
+      if (reader.get() == ABSENT) {
+         return null;
+      }
+      String id = getString(reader);
+      String name = getString(reader);
+      byte available = reader.get();
+      return new PriceFormula(id, name, available == -1 ? null : available == 1);
+   }
+
+   private static void putLocation(ByteWriter writer, GpsLocation location) {
+      if (location == null) {
+         writer.put(ABSENT);
+         return;
+      }
+      writer.put(PRESENT);
+      writer.putLongLE(Double.doubleToLongBits(location.latitude));
+      writer.putLongLE(Double.doubleToLongBits(location.longitude));
+      putString(writer, location.name);
+      putString(writer, location.countryCode);
+   }
+
+   private static GpsLocation getLocation(ByteReader reader) throws InsufficientBytesException {
+      if (reader.get() == ABSENT) {
+         return null;
+      }
+      GpsLocation location = new GpsLocation(Double.longBitsToDouble(reader.getLongLE()),
+            Double.longBitsToDouble(reader.getLongLE()), getString(reader));
+      location.countryCode = getString(reader);
+      return location;
+   }
+
+   private static void putActionState(ByteWriter writer, ActionState state) {
+      if (state == null) {
+         writer.put(ACTION_NONE);
+      } else if (state.isEnabled()) {
+         writer.put(ACTION_ENABLED);
+      } else if (state.isDisabled()) {
+         writer.put(ACTION_DISABLED);
+      } else {
+         writer.put(ACTION_NA);
+      }
+   }
+
+   private static ActionState getActionState(ByteReader reader) throws InsufficientBytesException {
+      switch (reader.get()) {
+         case ACTION_NONE:
+            return null;
+         case ACTION_ENABLED:
+            return ActionState.ENABLED;
+         case ACTION_DISABLED:
+            return ActionState.DISABLED;
+         default:
+            return ActionState.NA;
+      }
+   }
+
+   private static void putAddress(ByteWriter writer, Address address) {
+      putBytes(writer, address == null ? null : address.getAllAddressBytes());
+   }
+
+   private static Address getAddress(ByteReader reader) throws InsufficientBytesException {
+      byte[] bytes = getBytes(reader);
+      return bytes == null ? null : new Address(bytes);
+   }
+
+   private static void putPublicKey(ByteWriter writer, PublicKey key) {
+      putBytes(writer, key == null ? null : key.getPublicKeyBytes());
+   }
+
+   private static PublicKey getPublicKey(ByteReader reader) throws InsufficientBytesException {
+      byte[] bytes = getBytes(reader);
+      return bytes == null ? null : new PublicKey(bytes);
+   }
+
+   private static void putString(ByteWriter writer, String s) {
+      try {
+         putBytes(writer, s == null ? null : s.getBytes("UTF-8"));
+      } catch (UnsupportedEncodingException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static String getString(ByteReader reader) throws InsufficientBytesException {
+      byte[] bytes = getBytes(reader);
+      try {
+         return bytes == null ? null : new String(bytes, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static void putBytes(ByteWriter writer, byte[] bytes) {
+      if (bytes == null) {
+         writer.putIntLE(-1);
+         return;
+      }
+      writer.putIntLE(bytes.length);
+      writer.putBytes(bytes);
+   }
+
+   private static byte[] getBytes(ByteReader reader) throws InsufficientBytesException {
+      int length = reader.getIntLE();
+      if (length == -1) {
+         return null;
+      }
+      if (length < 0) {
+         throw new InsufficientBytesException();
+      }
+      return reader.getBytes(length);
+   }
+}
@@ -16,6 +16,8 @@
 
 package com.mycelium.lt;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.Test;
@@ -27,7 +29,9 @@ import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.HexUtils;
 import com.mycelium.lt.ChatMessageEncryptionKey.InvalidChatMessage;
+import com.mycelium.lt.api.model.ChatEntry;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -100,6 +104,28 @@ public class MessageEncryptionTest {
       }
    }
 
+   @Test
+   public void testBatchDecryption() {
+      HdKeyNode root = HdKeyNode.fromSeed(MASTER_SEED);
+      ChatMessageEncryptionKey encryptionKey = ChatMessageEncryptionKey.fromEcdh(root.createChildPublicKey(1),
+            root.createChildPrivateKey(0), UUID.randomUUID());
+      String tampered = encryptionKey.encryptChatMessage(MESSAGE_ONE);
+      tampered = (tampered.charAt(0) == 'A' ? 'B' : 'A') + tampered.substring(1);
+
+      List<ChatEntry> entries = new ArrayList<ChatEntry>();
+      entries.add(new ChatEntry(1, ChatEntry.TYPE_EVENT, ChatEntry.EVENT_SUBTYPE_TRADE_STARTED, "Trade started"));
+      entries.add(new ChatEntry(2, ChatEntry.TYPE_OWNER_CHAT, 0, encryptionKey.encryptChatMessage(MESSAGE_ONE)));
+      entries.add(new ChatEntry(3, ChatEntry.TYPE_PEER_CHAT, 0, encryptionKey.encryptChatMessage(MESSAGE_TWO)));
+      entries.add(new ChatEntry(4, ChatEntry.TYPE_PEER_CHAT, 0, tampered));
+      entries.add(new ChatEntry(5, ChatEntry.TYPE_OWNER_CHAT, 0, encryptionKey.encryptChatMessage(MESSAGE_THREE)));
+      entries.add(new ChatEntry(6, ChatEntry.TYPE_OWNER_CHAT, 0, "AAAA"));
+
+      String[] messages = encryptionKey.decryptAndCheckChatMessages(entries);
+      assertArrayEquals(new String[]{null, MESSAGE_ONE, MESSAGE_TWO, null, MESSAGE_THREE, null}, messages);
+      checkFailDecrypt(tampered, encryptionKey);
+      checkFailDecrypt("AAAA", encryptionKey);
+   }
+
    private byte[] flipBit(int bitNum, byte[] data) {
       byte[] copy = BitUtils.copyOf(data, data.length);
       int index = bitNum >> 3;
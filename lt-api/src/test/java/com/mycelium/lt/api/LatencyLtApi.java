@@ -0,0 +1,73 @@
+package com.mycelium.lt.api;
+
+import com.mycelium.lt.api.model.LtSession;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-JVM stand-in for the Local Trader server that answers every call after a fixed latency, for measuring how
+ * requests are scheduled. Sessions are created for real, every other call succeeds with an empty result.
+ */
+public class LatencyLtApi implements InvocationHandler {
+   private final long _latencyMillis;
+   private final ConcurrentMap<String, AtomicInteger> _calls = new ConcurrentHashMap<String, AtomicInteger>();
+   private final AtomicInteger _running = new AtomicInteger();
+   private final AtomicInteger _maxRunning = new AtomicInteger();
+
+   public LatencyLtApi(long latencyMillis) {
+      _latencyMillis = latencyMillis;
+   }
+
+   public LtApi asLtApi() {
+      return (LtApi) Proxy.newProxyInstance(LtApi.class.getClassLoader(), new Class<?>[]{LtApi.class}, this);
+   }
+
+   public int getCallCount(String methodName) {
+      AtomicInteger count = _calls.get(methodName);
+      return count == null ? 0 : count.get();
+   }
+
+   /**
+    * @return the highest number of calls that were in progress at the same time
+    */
+   public int getMaxConcurrentCalls() {
+      return _maxRunning.get();
+   }
+
+   @Override
+   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+         return method.invoke(this, args);
+      }
+      AtomicInteger count = _calls.get(method.getName());
+      if (count == null) {
+         _calls.putIfAbsent(method.getName(), new AtomicInteger());
+         count = _calls.get(method.getName());
+      }
+      count.incrementAndGet();
+      int running = _running.incrementAndGet();
+      while (true) {
+         int max = _maxRunning.get();
+         if (running <= max || _maxRunning.compareAndSet(max, running)) {
+            break;
+         }
+      }
+      try {
+         Thread.sleep(_latencyMillis);
+      } finally {
+         _running.decrementAndGet();
+      }
+      if (method.getName().equals("createSession")) {
+         return new LtResponse<LtSession>(new LtSession(UUID.randomUUID(),
+               Collections.<LtSession.CaptchaCommands>emptyList()));
+      }
+      return new LtResponse<Object>(null);
+   }
+}
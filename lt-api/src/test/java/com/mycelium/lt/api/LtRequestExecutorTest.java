@@ -0,0 +1,269 @@
+package com.mycelium.lt.api;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mycelium.lt.api.model.LtSession;
+import com.mycelium.lt.api.params.LoginParameters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LtRequestExecutorTest {
+   private static final long LATENCY = 100;
+   private static final LtSessionKeeper.Credentials CREDENTIALS = new LtSessionKeeper.Credentials() {
+      @Override
+      public LoginParameters getLoginParameters(UUID sessionId) {
+         return new LoginParameters(Address.getNullAddress(NetworkParameters.testNetwork), "signature");
+      }
+   };
+
+   @Test
+   public void testConcurrentReadsShareOneSession() throws Exception {
+      LatencyLtApi server = new LatencyLtApi(LATENCY);
+      final LtApi api = server.asLtApi();
+      final LtSessionKeeper keeper = new LtSessionKeeper(api);
+      LtRequestExecutor executor = new LtRequestExecutor(4);
+      int requests = 8;
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < requests; i++) {
+         futures.add(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  LtSession session = keeper.obtainSession("en", "BTC", CREDENTIALS);
+                  api.getTradeSession(session.id, UUID.randomUUID()).getResult();
+               } catch (LtApiException e) {
+                  throw new RuntimeException(e);
+               }
+            }
+         }, true, null));
+      }
+      for (Future<?> future : futures) {
+         future.get();
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      executor.shutdown();
+
+      assertEquals(1, server.getCallCount("createSession"));
+      assertEquals(1, server.getCallCount("traderLogin"));
+      assertEquals(requests, server.getCallCount("getTradeSession"));
+      assertEquals(4, server.getMaxConcurrentCalls());
+      // one at a time this takes (2 + requests) * LATENCY, with four threads it takes (2 + requests / 4) * LATENCY
+      assertTrue("took " + elapsed + "ms", elapsed < (2 + requests) * LATENCY * 3 / 4);
+   }
+
+   @Test
+   public void testIdenticalReadsAreDeduplicated() throws Exception {
+      LatencyLtApi server = new LatencyLtApi(LATENCY);
+      final LtApi api = server.asLtApi();
+      LtRequestExecutor executor = new LtRequestExecutor(4);
+      final UUID tradeSessionId = UUID.randomUUID();
+      Runnable request = new Runnable() {
+         @Override
+         public void run() {
+            api.getTradeSession(null, tradeSessionId);
+         }
+      };
+      Future<?> first = executor.submit(request, true, tradeSessionId);
+      Future<?> second = executor.submit(request, true, tradeSessionId);
+      Future<?> third = executor.submit(request, true, tradeSessionId);
+      Future<?> other = executor.submit(request, true, UUID.randomUUID());
+      first.get();
+      second.get();
+      third.get();
+      other.get();
+      assertEquals(2, server.getCallCount("getTradeSession"));
+
+      // Once done the same request runs again
+      Future<?> again = executor.submit(request, true, tradeSessionId);
+      assertNotSame(first, again);
+      again.get();
+      assertEquals(3, server.getCallCount("getTradeSession"));
+      executor.shutdown();
+   }
+
+   @Test
+   public void testWritesRunInOrder() throws Exception {
+      LatencyLtApi server = new LatencyLtApi(10);
+      final LtApi api = server.asLtApi();
+      LtRequestExecutor executor = new LtRequestExecutor(4);
+      final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+      Future<?> last = null;
+      for (int i = 0; i < 10; i++) {
+         final int index = i;
+         last = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+               api.sendEncryptedChatMessage(null, null);
+               order.add(index);
+            }
+         }, false, null);
+      }
+      last.get();
+      executor.shutdown();
+      assertEquals(1, server.getMaxConcurrentCalls());
+      for (int i = 0; i < 10; i++) {
+         assertEquals(Integer.valueOf(i), order.get(i));
+      }
+   }
+
+   @Test
+   public void testCancelQueuedRequest() throws Exception {
+      LtRequestExecutor executor = new LtRequestExecutor(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final boolean[] ran = new boolean[1];
+      Future<?> blocking = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+         }
+      }, true, null);
+      Future<?> queued = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+            ran[0] = true;
+         }
+      }, true, "queued");
+      assertTrue(queued.cancel(false));
+      // a cancelled request no longer absorbs identical requests
+      Future<?> resubmitted = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+         }
+      }, true, "queued");
+      assertNotSame(queued, resubmitted);
+      release.countDown();
+      blocking.get();
+      resubmitted.get();
+      executor.shutdown();
+      assertFalse(ran[0]);
+   }
+
+   @Test
+   public void testStaleSessionIsRenewedOnce() throws Exception {
+      LatencyLtApi server = new LatencyLtApi(0);
+      LtSessionKeeper keeper = new LtSessionKeeper(server.asLtApi());
+      LtSession first = keeper.obtainSession("en", "BTC", null);
+      assertSame(first, keeper.obtainSession("en", "BTC", null));
+
+      // two requests fail with the first session, only the first failure drops it
+      keeper.invalidate(first.id);
+      LtSession second = keeper.obtainSession("en", "BTC", null);
+      keeper.invalidate(first.id);
+      assertSame(second, keeper.obtainSession("en", "BTC", null));
+      assertEquals(2, server.getCallCount("createSession"));
+
+      // a new language needs a new session
+      assertNotSame(second, keeper.obtainSession("de", "BTC", null));
+      assertEquals(3, server.getCallCount("createSession"));
+      assertEquals(0, server.getCallCount("traderLogin"));
+   }
+
+   @Test
+   public void testReadWaitsForEarlierWrite() throws Exception {
+      LtRequestExecutor executor = new LtRequestExecutor(4);
+      final CountDownLatch writing = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      Runnable read = new Runnable() {
+         @Override
+         public void run() {
+            order.add("read");
+         }
+      };
+      // a read in flight before the write
+      Future<?> before = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               writing.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+            order.add("early read");
+         }
+      }, true, "session");
+      Future<?> write = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+            writing.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+            order.add("write");
+         }
+      }, false, null);
+      // neither gets deduplicated onto the early read
+      Future<?> after = executor.submit(read, true, "session");
+      Future<?> afterWithoutKey = executor.submit(read, true, null);
+      before.get();
+      Thread.sleep(100);
+      assertFalse(after.isDone());
+      assertFalse(afterWithoutKey.isDone());
+      release.countDown();
+      write.get();
+      after.get();
+      afterWithoutKey.get();
+      executor.shutdown();
+      assertEquals(Arrays.asList("early read", "write", "read", "read"), order);
+   }
+
+   @Test
+   public void testCancelOneOfDeduplicatedCallers() throws Exception {
+      LtRequestExecutor executor = new LtRequestExecutor(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      Future<?> blocking = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+         }
+      }, true, null);
+      final boolean[] ran = new boolean[1];
+      Runnable request = new Runnable() {
+         @Override
+         public void run() {
+            ran[0] = true;
+         }
+      };
+      Future<?> first = executor.submit(request, true, "key");
+      Future<?> second = executor.submit(request, true, "key");
+      assertTrue(first.cancel(false));
+      assertTrue(first.isCancelled());
+      assertFalse(second.isCancelled());
+      release.countDown();
+      blocking.get();
+      second.get();
+      assertTrue(ran[0]);
+      try {
+         first.get();
+         fail();
+      } catch (CancellationException expected) {
+      }
+      executor.shutdown();
+   }
+}
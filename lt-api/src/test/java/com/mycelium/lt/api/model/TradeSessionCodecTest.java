@@ -0,0 +1,122 @@
+package com.mycelium.lt.api.model;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.PublicKey;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.HashUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TradeSessionCodecTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   private static final PublicKey OWNER_KEY = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{1}), true)
+         .getPublicKey();
+
+   @Test
+   public void testRoundTrip() {
+      List<ChatEntry> chat = new ArrayList<ChatEntry>();
+      chat.add(new ChatEntry(1000L, ChatEntry.TYPE_EVENT, ChatEntry.EVENT_SUBTYPE_TRADE_STARTED, null));
+      chat.add(new ChatEntry(2000L, ChatEntry.TYPE_PEER_CHAT, ChatEntry.EVENT_SUBTYPE_NONE, "Grüße, 5 €"));
+      GpsLocation location = new GpsLocation(47.37, 8.54, "Zürich");
+      location.countryCode = "CH";
+      TradeSession session = new TradeSession(UUID.randomUUID(), 123L, 456L,
+            new PriceFormula("BITSTAMP", "Bitstamp", true), 1.5, "EUR", 250, 100000000L, 101000000L, 100000000L,
+            Address.getNullAddress(NETWORK), null, chat, "owner", Address.getNullAddress(NETWORK), OWNER_KEY,
+            "peer", null, null, true, false, "Waiting", 0.75, ActionState.ENABLED, ActionState.DISABLED,
+            ActionState.NA, null, ActionState.DISABLED, ActionState.ENABLED, true, false, location);
+
+      byte[] encoded = TradeSessionCodec.encode(session);
+      TradeSession decoded = TradeSessionCodec.decode(encoded);
+      assertEquals(TradeSessionCodec.VERSION, encoded[0]);
+      assertSameSession(session, decoded);
+      assertArrayEquals(encoded, TradeSessionCodec.encode(decoded));
+   }
+
+   @Test
+   public void testMissingValues() {
+      TradeSession session = new TradeSession(UUID.randomUUID(), 0, 0, null, 0, null, 0, 0, 100000000L,
+            100000000L, null, null, null, null, null, null, null, null, null, false, true, null, null, null, null,
+            null, null, null, null, false, false, null);
+      TradeSession decoded = TradeSessionCodec.decode(TradeSessionCodec.encode(session));
+      assertSameSession(session, decoded);
+   }
+
+   @Test
+   public void testRejectsUnknownOrTruncated() {
+      TradeSession session = new TradeSession(UUID.randomUUID(), 0, 0, null, 0, "USD", 0, 0, 100000000L,
+            100000000L, null, null, null, null, null, null, null, null, null, false, true, null, null, null, null,
+            null, null, null, null, false, false, null);
+      byte[] encoded = TradeSessionCodec.encode(session);
+      byte[] truncated = new byte[encoded.length - 1];
+      System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+      assertNull(TradeSessionCodec.decode(truncated));
+      encoded[0] = TradeSessionCodec.VERSION + 1;
+      assertNull(TradeSessionCodec.decode(encoded));
+   }
+
+   private static void assertSameSession(TradeSession expected, TradeSession actual) {
+      assertEquals(expected.id, actual.id);
+      assertEquals(expected.creationTime, actual.creationTime);
+      assertEquals(expected.lastChange, actual.lastChange);
+      assertEquals(expected.priceFormula, actual.priceFormula);
+      if (expected.priceFormula != null) {
+         assertEquals(expected.priceFormula.name, actual.priceFormula.name);
+         assertEquals(expected.priceFormula.available, actual.priceFormula.available);
+      }
+      assertEquals(expected.premium, actual.premium, 0);
+      assertEquals(expected.currency, actual.currency);
+      assertEquals(expected.fiatTraded, actual.fiatTraded);
+      assertEquals(expected.satoshisAtMarketPrice, actual.satoshisAtMarketPrice);
+      assertEquals(expected.satoshisFromSeller, actual.satoshisFromSeller);
+      assertEquals(expected.satoshisForBuyer, actual.satoshisForBuyer);
+      assertEquals(expected.buyerAddress, actual.buyerAddress);
+      assertEquals(expected.feeAddress, actual.feeAddress);
+      if (expected.chatEntries == null) {
+         assertNull(actual.chatEntries);
+      } else {
+         assertEquals(expected.chatEntries.size(), actual.chatEntries.size());
+         for (int i = 0; i < expected.chatEntries.size(); i++) {
+            ChatEntry e = expected.chatEntries.get(i);
+            ChatEntry a = actual.chatEntries.get(i);
+            assertEquals(e.time, a.time);
+            assertEquals(e.type, a.type);
+            assertEquals(e.subtype, a.subtype);
+            assertEquals(e.message, a.message);
+         }
+      }
+      assertEquals(expected.ownerName, actual.ownerName);
+      assertEquals(expected.ownerId, actual.ownerId);
+      assertEquals(expected.ownerPublicKey, actual.ownerPublicKey);
+      assertEquals(expected.peerName, actual.peerName);
+      assertEquals(expected.peerId, actual.peerId);
+      assertEquals(expected.peerPublicKey, actual.peerPublicKey);
+      assertEquals(expected.isOwner, actual.isOwner);
+      assertEquals(expected.isBuyer, actual.isBuyer);
+      assertEquals(expected.statusText, actual.statusText);
+      assertEquals(expected.confidence, actual.confidence);
+      assertEquals(expected.acceptAction, actual.acceptAction);
+      assertEquals(expected.abortAction, actual.abortAction);
+      assertEquals(expected.refreshRateAction, actual.refreshRateAction);
+      assertEquals(expected.changePriceAction, actual.changePriceAction);
+      assertEquals(expected.releaseBtcAction, actual.releaseBtcAction);
+      assertEquals(expected.sendMessageAction, actual.sendMessageAction);
+      assertEquals(expected.isWaitingForPeerAccept, actual.isWaitingForPeerAccept);
+      assertEquals(expected.isOpen, actual.isOpen);
+      if (expected.location == null) {
+         assertNull(actual.location);
+      } else {
+         assertEquals(expected.location.latitude, actual.location.latitude, 0);
+         assertEquals(expected.location.longitude, actual.location.longitude, 0);
+         assertEquals(expected.location.name, actual.location.name);
+         assertEquals(expected.location.countryCode, actual.location.countryCode);
+      }
+   }
+}
@@ -35,50 +35,225 @@
 package com.mycelium.wallet;
 
 
+import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wallet.persistence.MetadataStorage;
 import com.mycelium.wapi.model.TransactionSummary;
+import com.mycelium.wapi.wallet.AbstractAccount;
 import com.mycelium.wapi.wallet.WalletAccount;
+import com.mycelium.wapi.wallet.currency.HistoricalRateStore;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Exports the transaction history as CSV.
+ * <p>
+ * The history is read from the account one page at a time and written out before the next page is read, with the
+ * labels of a page fetched in one query. Memory use does not grow with the size of the history.
+ * <p>
+ * Bitcoin amounts are also valued in a fiat currency at the rate of the time of the transaction, looked up from the
+ * historical rates for the whole page at once. The fiat value is left empty where no rate is known.
+ */
 public class DataExport {
-   private static final String CSV_HEADER = "Account, Transaction ID, Destination Address, Timestamp, Value, Currency, Transaction Label\n";
+   private static final String CSV_HEADER = "Account, Transaction ID, Destination Address, Timestamp, Value, Currency, Transaction Label, Fiat Value, Fiat Currency\n";
+   private static final int PAGE_SIZE = 500;
+   private static final int MAX_THREADS = 4;
+   private static final int FIAT_SCALE = 2;
+
+   /**
+    * @param rates        the historical rates to value the transactions with
+    * @param fiatCurrency the currency to value the transactions in, or null for no fiat values
+    */
+   public static File getTxHistoryCsv(WalletAccount account, MetadataStorage storage, HistoricalRateStore rates,
+                                      String fiatCurrency, File file) throws IOException {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+      try {
+         writer.write(CSV_HEADER);
+         writeTxHistory(account, storage, rates, fiatCurrency, writer);
+      } finally {
+         writer.close();
+      }
+      return file;
+   }
 
-   public static File getTxHistoryCsv(WalletAccount account, MetadataStorage storage, File file) throws IOException {
-      FileOutputStream fos = new FileOutputStream(file);
-      OutputStreamWriter osw = new OutputStreamWriter(fos);
-      osw.write(CSV_HEADER);
-      String accountLabel = storage.getLabelByAccount(account.getId());
-      List<TransactionSummary> history = account.getTransactionHistory(0, Integer.MAX_VALUE);
-      for (TransactionSummary summary : history) {
-         String txLabel = storage.getLabelByTransaction(summary.txid);
-         osw.write(getTxLine(accountLabel, txLabel, summary));
+   /**
+    * Export the accounts in parallel, each into its own file in the directory.
+    *
+    * @return the files, in the order of the accounts
+    */
+   public static List<File> getTxHistoryCsvs(List<WalletAccount> accounts, MetadataStorage storage,
+                                             HistoricalRateStore rates, String fiatCurrency, File directory,
+                                             String prefix) throws IOException {
+      List<File> files = new ArrayList<>(accounts.size());
+      for (WalletAccount account : accounts) {
+         files.add(new File(directory, prefix + account.getId() + ".csv"));
+      }
+      exportInParallel(accounts, storage, rates, fiatCurrency, files);
+      return files;
+   }
+
+   /**
+    * Export the accounts in parallel into one file. The accounts are written one after the other in their order,
+    * with one header line on top.
+    */
+   public static File getMergedTxHistoryCsv(List<WalletAccount> accounts, MetadataStorage storage,
+                                            HistoricalRateStore rates, String fiatCurrency, File file)
+         throws IOException {
+      List<File> parts = new ArrayList<>(accounts.size());
+      for (int i = 0; i < accounts.size(); i++) {
+         parts.add(new File(file.getParentFile(), file.getName() + ".part" + i));
+      }
+      try {
+         exportInParallel(accounts, storage, rates, fiatCurrency, parts);
+         OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+         try {
+            // every part starts with the header, keep only the first one
+            byte[] header = CSV_HEADER.getBytes("UTF-8");
+            out.write(header);
+            byte[] buffer = new byte[8192];
+            for (File part : parts) {
+               InputStream in = new FileInputStream(part);
+               try {
+                  skipFully(in, header.length);
+                  int read;
+                  while ((read = in.read(buffer)) != -1) {
+                     out.write(buffer, 0, read);
+                  }
+               } finally {
+                  in.close();
+               }
+            }
+         } finally {
+            out.close();
+         }
+      } finally {
+         for (File part : parts) {
+            //noinspection ResultOfMethodCallIgnored
+            part.delete();
+         }
       }
-      osw.close();
       return file;
    }
 
-   private static String getTxLine(String accountLabel, String txLabel, TransactionSummary summary) {
-      TimeZone tz = TimeZone.getDefault();
+   private static void exportInParallel(List<WalletAccount> accounts, final MetadataStorage storage,
+                                        final HistoricalRateStore rates, final String fiatCurrency,
+                                        List<File> files) throws IOException {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, accounts.size())));
+      try {
+         List<Future<File>> results = new ArrayList<>(accounts.size());
+         for (int i = 0; i < accounts.size(); i++) {
+            final WalletAccount account = accounts.get(i);
+            final File file = files.get(i);
+            results.add(executor.submit(new Callable<File>() {
+               @Override
+               public File call() throws IOException {
+                  return getTxHistoryCsv(account, storage, rates, fiatCurrency, file);
+               }
+            }));
+         }
+         for (Future<File> result : results) {
+            result.get();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Export interrupted");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void writeTxHistory(WalletAccount account, MetadataStorage storage, HistoricalRateStore rates,
+                                      String fiatCurrency, Writer writer) throws IOException {
+      // SimpleDateFormat is not thread safe, so every export has its own
       DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
-      df.setTimeZone(tz);
+      df.setTimeZone(TimeZone.getDefault());
+      String accountLabel = escape(storage.getLabelByAccount(account.getId()));
+      boolean lastPage = false;
+      for (int offset = 0; !lastPage; offset += PAGE_SIZE) {
+         List<TransactionSummary> page;
+         if (account instanceof AbstractAccount) {
+            // These accounts leave some transactions out of a page, which can then be short or even empty. Only a
+            // short page of the stored history is the last one.
+            page = new ArrayList<>(PAGE_SIZE);
+            lastPage = ((AbstractAccount) account).getTransactionHistory(offset, PAGE_SIZE, page) < PAGE_SIZE;
+         } else {
+            page = account.getTransactionHistory(offset, PAGE_SIZE);
+            lastPage = page.size() < PAGE_SIZE;
+         }
+         List<Sha256Hash> txids = new ArrayList<>(page.size());
+         long[] timestamps = new long[page.size()];
+         for (int i = 0; i < page.size(); i++) {
+            txids.add(page.get(i).txid);
+            timestamps[i] = page.get(i).time * 1000;
+         }
+         Map<Sha256Hash, String> labels = storage.getLabelsByTransactions(txids);
+         double[] prices = fiatCurrency == null ? null : rates.valueAt(fiatCurrency, timestamps);
+         for (int i = 0; i < page.size(); i++) {
+            TransactionSummary summary = page.get(i);
+            String txLabel = labels.get(summary.txid);
+            writeTxLine(writer, df, accountLabel, txLabel == null ? "" : txLabel, summary,
+                  prices == null ? Double.NaN : prices[i], fiatCurrency);
+         }
+      }
+   }
+
+   private static void writeTxLine(Writer writer, DateFormat df, String escapedAccountLabel, String txLabel,
+                                   TransactionSummary summary, double price, String fiatCurrency)
+         throws IOException {
       String date = df.format(new Date(summary.time * 1000)); //summary holds time in seconds, date expects milli-seconds
       BigDecimal value = (summary.isIncoming ? summary.value.getValue() : summary.value.getValue().negate()); //show outgoing as negative amount
       String destination = summary.destinationAddress.isPresent() ? summary.destinationAddress.get().toString() : "";
-      return
-            escape(accountLabel) + "," +
-                  summary.txid + "," +
-                  destination + "," +
-                  date + "," +
-                  value + "," +
-                  summary.value.getCurrency() + "," +
-                  escape(txLabel) + "\n";
+      writer.write(escapedAccountLabel);
+      writer.write(',');
+      writer.write(summary.txid.toString());
+      writer.write(',');
+      writer.write(destination);
+      writer.write(',');
+      writer.write(date);
+      writer.write(',');
+      writer.write(value.toString());
+      writer.write(',');
+      writer.write(summary.value.getCurrency());
+      writer.write(',');
+      writer.write(escape(txLabel));
+      writer.write(',');
+      // only bitcoin amounts have a historical rate
+      if (!Double.isNaN(price) && summary.value.isBtc()) {
+         writer.write(value.multiply(BigDecimal.valueOf(price)).setScale(FIAT_SCALE, RoundingMode.HALF_UP).toString());
+         writer.write(',');
+         writer.write(fiatCurrency);
+      } else {
+         writer.write(',');
+      }
+      writer.write('\n');
+   }
+
+   private static void skipFully(InputStream in, long count) throws IOException {
+      while (count > 0) {
+         long skipped = in.skip(count);
+         if (skipped <= 0) {
+            throw new EOFException();
+         }
+         count -= skipped;
+      }
    }
 
    private static String escape(String input) {
@@ -47,14 +47,18 @@ import com.mycelium.wallet.exchange.model.CoinmarketcapRate;
 import com.mycelium.wallet.persistence.MetadataStorage;
 import com.mycelium.wapi.api.Wapi;
 import com.mycelium.wapi.api.WapiException;
+import com.mycelium.wapi.api.request.QueryExchangeRatesMultiRequest;
 import com.mycelium.wapi.api.request.QueryExchangeRatesRequest;
 import com.mycelium.wapi.api.response.QueryExchangeRatesResponse;
 import com.mycelium.wapi.model.ExchangeRate;
 import com.mycelium.wapi.wallet.currency.ExchangeRateProvider;
+import com.mycelium.wapi.wallet.currency.ExchangeRateSnapshot;
+import com.mycelium.wapi.wallet.currency.HistoricalRateStore;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +72,7 @@ public class ExchangeRateManager implements ExchangeRateProvider {
    private static final int MAX_RATE_AGE_MS = 5 * 1000 * 60; /// 5 minutes
    private static final int MIN_RATE_AGE_MS = 5 * 1000; /// 5 seconds
    private static final String EXCHANGE_DATA = "wapi_exchange_rates";
+   private static final String HISTORICAL_RATES_DIRECTORY = "historical_rates";
    public static final String BTC = "BTC";
 
    private static final Pattern EXCHANGE_RATE_PATTERN;
@@ -87,14 +92,15 @@ public class ExchangeRateManager implements ExchangeRateProvider {
    private final Wapi _api;
 
    private volatile List<String> _fiatCurrencies;
-   private Map<String, QueryExchangeRatesResponse> _latestRates;
-   private long _latestRatesTime;
+   // Replaced as a whole by the fetcher, readers don't lock
+   private volatile ExchangeRateSnapshot _latestRates;
    private volatile Fetcher _fetcher;
    private final Object _requestLock = new Object();
    private final List<Observer> _subscribers;
-   private String _currentExchangeSourceName;
+   private volatile String _currentExchangeSourceName;
+   private final HistoricalRateStore _historicalRates;
 
-   private float rateRmcBtc;
+   private volatile float rateRmcBtc;
    // value hardcoded for now, but in future we need get from somewhere
    private static final float MSS_RATE = 3125f;
 
@@ -105,13 +111,21 @@ public class ExchangeRateManager implements ExchangeRateProvider {
       this.networkParameters = networkParameters;
       _applicationContext = applicationContext;
       _api = api;
-      _latestRates = null;
-      _latestRatesTime = 0;
+      _latestRates = ExchangeRateSnapshot.EMPTY;
       _currentExchangeSourceName = getPreferences().getString("currentRateName", null);
 
       _subscribers = new LinkedList<>();
-      _latestRates = new HashMap<>();
       this.storage = storage;
+      _historicalRates = createHistoricalRateStore(applicationContext);
+   }
+
+   private static HistoricalRateStore createHistoricalRateStore(Context applicationContext) {
+      try {
+         return new HistoricalRateStore(new File(applicationContext.getFilesDir(), HISTORICAL_RATES_DIRECTORY));
+      } catch (IOException e) {
+         Log.e("ExchangeRateManager", "could not load historical exchange rates", e);
+         return new HistoricalRateStore();
+      }
    }
 
    public synchronized void subscribe(Observer subscriber) {
@@ -132,16 +146,13 @@ public class ExchangeRateManager implements ExchangeRateProvider {
          }
 
          try {
-            List<QueryExchangeRatesResponse> responses = new ArrayList<QueryExchangeRatesResponse>();
-
-            for (String currency : selectedCurrencies) {
-               responses.add(_api.queryExchangeRates(new QueryExchangeRatesRequest(Wapi.VERSION, currency)).getResult());
-            }
+            List<QueryExchangeRatesResponse> responses = queryExchangeRates(selectedCurrencies);
             synchronized (_requestLock) {
                setLatestRates(responses);
                _fetcher = null;
                notifyRefreshingExchangeRatesSucceeded();
             }
+            recordHistoricalRates(responses);
          } catch (WapiException e) {
             // we failed to get the exchange rate, try to restore saved values from the local database
             Map<String, String> savedExchangeRates = storage.getAllExchangeRates();
@@ -201,6 +212,29 @@ public class ExchangeRateManager implements ExchangeRateProvider {
       }
    }
 
+   /**
+    * Get the rates of all currencies in one round trip. If that fails, the currencies get asked for one after the
+    * other, and the next refresh tries the multi-currency query again.
+    * <p>
+    * Servers that don't know the multi-currency query are remembered by the WapiClient, which answers with
+    * {@link Wapi#ERROR_CODE_UNSUPPORTED_FUNCTION} without a round trip until it is time to ask them again.
+    */
+   private List<QueryExchangeRatesResponse> queryExchangeRates(List<String> currencies) throws WapiException {
+      try {
+         return _api.queryExchangeRatesMulti(new QueryExchangeRatesMultiRequest(Wapi.VERSION, currencies))
+               .getResult().rates;
+      } catch (WapiException e) {
+         if (e.errorCode != Wapi.ERROR_CODE_UNSUPPORTED_FUNCTION) {
+            Log.w("ExchangeRateManager", "Multi-currency query failed, asking for one currency after the other", e);
+         }
+      }
+      List<QueryExchangeRatesResponse> responses = new ArrayList<>();
+      for (String currency : currencies) {
+         responses.add(_api.queryExchangeRates(new QueryExchangeRatesRequest(Wapi.VERSION, currency)).getResult());
+      }
+      return responses;
+   }
+
    private synchronized void notifyRefreshingExchangeRatesSucceeded() {
       for (final Observer s : _subscribers) {
          s.refreshingExchangeRatesSucceeded();
@@ -215,7 +249,7 @@ public class ExchangeRateManager implements ExchangeRateProvider {
 
    // only refresh if last refresh is old
    public void requestOptionalRefresh(){
-      if (System.currentTimeMillis() - _latestRatesTime > MIN_RATE_AGE_MS){
+      if (System.currentTimeMillis() - _latestRates.getTime() > MIN_RATE_AGE_MS){
          requestRefresh();
       }
    }
@@ -232,16 +266,13 @@ public class ExchangeRateManager implements ExchangeRateProvider {
       }
    }
 
-   private synchronized void setLatestRates(List<QueryExchangeRatesResponse> latestRates) {
-      _latestRates = new HashMap<String, QueryExchangeRatesResponse>();
+   private void setLatestRates(List<QueryExchangeRatesResponse> latestRates) {
       for (QueryExchangeRatesResponse response : latestRates) {
-         _latestRates.put(response.currency, response);
-
          for(ExchangeRate rate : response.exchangeRates) {
             storage.storeExchangeRate(BTC, rate.currency, rate.name, rate.price.toString());
          }
       }
-      _latestRatesTime = System.currentTimeMillis();
+      _latestRates = ExchangeRateSnapshot.fromResponses(latestRates, System.currentTimeMillis());
 
       if (_currentExchangeSourceName == null) {
          // This only happens the first time the wallet picks up exchange rates.
@@ -252,6 +283,33 @@ public class ExchangeRateManager implements ExchangeRateProvider {
       }
    }
 
+   /**
+    * Keep the rates of the current exchange source, to value transactions at the time they happened. Rates restored
+    * from the local database are not recorded, their time is not known.
+    */
+   private void recordHistoricalRates(List<QueryExchangeRatesResponse> responses) {
+      String sourceName = _currentExchangeSourceName;
+      for (QueryExchangeRatesResponse response : responses) {
+         for (ExchangeRate rate : response.exchangeRates) {
+            if (rate.name.equals(sourceName) && rate.price != null) {
+               try {
+                  _historicalRates.record(response.currency, rate.time, rate.price);
+               } catch (IOException e) {
+                  Log.e("ExchangeRateManager", "could not store historical exchange rate", e);
+               }
+               break;
+            }
+         }
+      }
+   }
+
+   /**
+    * Past rates of the current exchange source, recorded on every refresh
+    */
+   public HistoricalRateStore getHistoricalRateStore() {
+      return _historicalRates;
+   }
+
    /**
     * Get the name of the current exchange rate. May be null the first time the
     * app is running
@@ -264,17 +322,8 @@ public class ExchangeRateManager implements ExchangeRateProvider {
     * Get the names of the currently available exchange rates. May be empty the
     * first time the app is running
     */
-   public synchronized List<String> getExchangeSourceNames() {
-      List<String> result = new LinkedList<String>();
-      //check whether we have any rates
-      if (_latestRates.isEmpty()) return result;
-      QueryExchangeRatesResponse latestRates =  _latestRates.values().iterator().next();
-      if (latestRates != null) {
-         for (ExchangeRate r : latestRates.exchangeRates) {
-            result.add(r.name);
-         }
-      }
-      return result;
+   public List<String> getExchangeSourceNames() {
+      return new LinkedList<String>(_latestRates.getSourceNames());
    }
 
    public synchronized void setCurrentExchangeSourceName(String name) {
@@ -291,35 +340,37 @@ public class ExchangeRateManager implements ExchangeRateProvider {
     * the currently chosen exchange source is not available.
     */
    @Override
-   public synchronized ExchangeRate getExchangeRate(String currency) {
+   public ExchangeRate getExchangeRate(String currency) {
       // TODO need some refactoring for this
       String injectCurrency = null;
       if(currency.equals("RMC") || currency.equals("MSS")) {
          injectCurrency = currency;
          currency = "USD";
       }
-      if (_latestRates == null || _latestRates.isEmpty() || !_latestRates.containsKey(currency)) {
+      // Read the published rates and source once, the fetcher may replace them at any time
+      ExchangeRateSnapshot latestRates = _latestRates;
+      String sourceName = _currentExchangeSourceName;
+      if (!latestRates.hasCurrency(currency)) {
          return null;
       }
-      if (_latestRatesTime + MAX_RATE_AGE_MS < System.currentTimeMillis()) {
+      if (latestRates.getTime() + MAX_RATE_AGE_MS < System.currentTimeMillis()) {
          //rate is too old, source seems to not be available
          //we return a rate with null price to indicate there is something wrong with the exchange rate source
-         return ExchangeRate.missingRate(_currentExchangeSourceName, System.currentTimeMillis(),  currency);
+         return ExchangeRate.missingRate(sourceName, System.currentTimeMillis(),  currency);
       }
-      for (ExchangeRate r : _latestRates.get(currency).exchangeRates) {
-         if (r.name.equals(_currentExchangeSourceName)) {
-            //if the price is 0, obviously something went wrong
-            if (r.price.equals(0d)) {
-               //we return an exchange rate with null price -> indicating missing rate
-               return ExchangeRate.missingRate(_currentExchangeSourceName, System.currentTimeMillis(),  currency);
-            }
-            //everything is fine, return the rate
-            return getRMCExchangeRate(injectCurrency, r);
+      ExchangeRate r = latestRates.get(currency, sourceName);
+      if (r != null) {
+         //if the price is 0, obviously something went wrong
+         if (r.price.equals(0d)) {
+            //we return an exchange rate with null price -> indicating missing rate
+            return ExchangeRate.missingRate(sourceName, System.currentTimeMillis(),  currency);
          }
+         //everything is fine, return the rate
+         return getRMCExchangeRate(injectCurrency, r);
       }
-      if (_currentExchangeSourceName != null) {
+      if (sourceName != null) {
          // We end up here if the exchange is no longer on the list
-         return ExchangeRate.missingRate(_currentExchangeSourceName, System.currentTimeMillis(),  currency);
+         return ExchangeRate.missingRate(sourceName, System.currentTimeMillis(),  currency);
       }
       return null;
    }
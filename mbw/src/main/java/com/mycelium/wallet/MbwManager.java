@@ -102,6 +102,7 @@ import com.mycelium.wallet.persistence.TradeSessionDb;
 import com.mycelium.wallet.wapi.SqliteWalletManagerBackingWrapper;
 import com.mycelium.wapi.api.WapiClient;
 import com.mycelium.wapi.wallet.AccountProvider;
+import com.mycelium.wapi.wallet.AddressActivityWatcher;
 import com.mycelium.wapi.wallet.AesKeyCipher;
 import com.mycelium.wapi.wallet.IdentityAccountKeyManager;
 import com.mycelium.wapi.wallet.InMemoryWalletManagerBacking;
@@ -119,16 +120,14 @@ import com.squareup.otto.Bus;
 import com.squareup.otto.Subscribe;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -164,7 +163,7 @@ public class MbwManager {
 
    private final CurrencySwitcher _currencySwitcher;
    private boolean startUpPinUnlocked = false;
-   private Timer _addressWatchTimer;
+   private AddressActivityWatcher _addressWatcher;
 
    public static synchronized MbwManager getInstance(Context context) {
       if (_instance == null) {
@@ -1322,24 +1321,27 @@ public class MbwManager {
    }
 
    private void switchServer() {
-      _environment.getWapiEndpoints().switchToNextEndpoint();
+      _environment.getWapiEndpoints().switchToBestEndpoint();
    }
 
    public void stopWatchingAddress(){
-      if (_addressWatchTimer != null){
-         _addressWatchTimer.cancel();
+      if (_addressWatcher != null){
+         _addressWatcher.cancel();
+         _addressWatcher = null;
       }
    }
 
    public void watchAddress(final Address address){
       stopWatchingAddress();
-      _addressWatchTimer = new Timer();
-      _addressWatchTimer.scheduleAtFixedRate(new TimerTask() {
+      // sync once to be up to date, then only when the server reports activity on the address
+      getWalletManager(false).startSynchronization(new SyncMode(address));
+      _addressWatcher = new AddressActivityWatcher(_wapi, Collections.singletonList(address), new AddressActivityWatcher.Listener() {
          @Override
-         public void run() {
+         public void onAddressActivity(Collection<Address> addresses) {
             getWalletManager(false).startSynchronization(new SyncMode(address));
          }
-      }, 1000, 5 * 1000);
+      });
+      _addressWatcher.start();
    }
 
    private Boolean _hasCoinapultAccounts = null;
@@ -1368,10 +1370,8 @@ public class MbwManager {
     * Refresh transaction data and exchange rates.
     */
    public void manualRefresh(SyncMode syncMode) {
-      //switch server every third time the refresh button gets hit
-      if (new Random().nextInt(3) == 0) {
-         switchServer();
-      }
+      // make sure we talk to the fastest healthy server, based on what we measured so far
+      switchServer();
       getWalletManager(false).startSynchronization(syncMode);
       // also fetch a new exchange rate, if necessary
       getExchangeRateManager().requestOptionalRefresh();
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+
+package com.mycelium.wallet;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently encoded QR code matrices, so showing the same content again does not run the
+ * encoder again.
+ * <p>
+ * Only use it for public content like addresses and payment requests. Everything in here stays in memory until
+ * it is evicted, which is not what we want for private keys.
+ */
+public class QrCodeCache {
+   private static final int DEFAULT_SIZE = 64;
+   private static final QrCodeCache INSTANCE = new QrCodeCache(DEFAULT_SIZE);
+
+   private final Map<String, BitMatrix> _matrices;
+
+   public static QrCodeCache getInstance() {
+      return INSTANCE;
+   }
+
+   public QrCodeCache(final int maxSize) {
+      _matrices = new LinkedHashMap<String, BitMatrix>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, BitMatrix> eldest) {
+            return size() > maxSize;
+         }
+      };
+   }
+
+   /**
+    * Get the matrix for the content, encoding it if it is not cached yet. The matrix is shared, do not modify it.
+    */
+   public BitMatrix encode(String content, ErrorCorrectionLevel level, int margin) throws WriterException {
+      String key = level.name() + "/" + margin + "/" + content;
+      synchronized (_matrices) {
+         BitMatrix matrix = _matrices.get(key);
+         if (matrix != null) {
+            return matrix;
+         }
+      }
+      BitMatrix matrix = encodeUncached(content, level, margin);
+      synchronized (_matrices) {
+         _matrices.put(key, matrix);
+      }
+      return matrix;
+   }
+
+   public static BitMatrix encodeUncached(String content, ErrorCorrectionLevel level, int margin)
+         throws WriterException {
+      Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
+      hints.put(EncodeHintType.ERROR_CORRECTION, level);
+      hints.put(EncodeHintType.MARGIN, margin);
+      return new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, 0, 0, hints);
+   }
+}
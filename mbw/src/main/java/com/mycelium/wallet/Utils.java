@@ -70,11 +70,8 @@ import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.NetworkParameters;
@@ -111,7 +108,6 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Locale;
 
@@ -169,12 +165,19 @@ public class Utils {
    }
 
    public static Bitmap getMinimalQRCodeBitmap(String url) {
-      Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
-      hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
-      hints.put(EncodeHintType.MARGIN, 5);
+      return getMinimalQRCodeBitmap(url, false);
+   }
 
+   /**
+    * @param cacheable
+    *           true if the content is public, like an address, and the
+    *           matrix may be kept in {@link QrCodeCache}
+    */
+   public static Bitmap getMinimalQRCodeBitmap(String url, boolean cacheable) {
       try {
-         final BitMatrix result = new QRCodeWriter().encode(url, BarcodeFormat.QR_CODE, 0, 0, hints);
+         final BitMatrix result = cacheable
+               ? QrCodeCache.getInstance().encode(url, ErrorCorrectionLevel.M, 5)
+               : QrCodeCache.encodeUncached(url, ErrorCorrectionLevel.M, 5);
 
          final int width = result.getWidth();
          final int height = result.getHeight();
@@ -46,6 +46,7 @@ import android.view.View;
 import android.view.WindowManager;
 import android.widget.*;
 import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.Bip39WordIndex;
 import com.mycelium.wallet.MbwManager;
 import com.mycelium.wallet.R;
 import com.mycelium.wallet.event.SeedFromWordsCreated;
@@ -102,7 +103,7 @@ public class EnterWordListActivity extends ActionBarActivity implements WordAuto
       _wordAutoCompleter = (WordAutoCompleterFragment) getSupportFragmentManager().findFragmentById(R.id.wordAutoCompleter);
       _wordAutoCompleter.setListener(this);
       _wordAutoCompleter.setMinimumCompletionCharacters(2);
-      _wordAutoCompleter.setCompletions(Bip39.ENGLISH_WORD_LIST);
+      _wordAutoCompleter.setCompletions(Bip39WordIndex.ENGLISH);
       UsKeyboardFragment keyboard = (UsKeyboardFragment) getSupportFragmentManager().findFragmentById(R.id.usKeyboard);
       keyboard.setListener(_wordAutoCompleter);
       currentWordNum = 1;
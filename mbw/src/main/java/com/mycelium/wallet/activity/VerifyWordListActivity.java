@@ -45,6 +45,7 @@ import android.view.WindowManager;
 import android.widget.*;
 import com.google.common.base.Optional;
 import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.Bip39WordIndex;
 import com.mycelium.wallet.MbwManager;
 import com.mycelium.wallet.R;
 import com.mycelium.wallet.Utils;
@@ -87,7 +88,7 @@ public class VerifyWordListActivity extends ActionBarActivity implements WordAut
       WordAutoCompleterFragment wordAutoCompleter = (WordAutoCompleterFragment) getSupportFragmentManager().findFragmentById(R.id.wordAutoCompleter);
       wordAutoCompleter.setListener(this);
       wordAutoCompleter.setMinimumCompletionCharacters(2);
-      wordAutoCompleter.setCompletions(Bip39.ENGLISH_WORD_LIST);
+      wordAutoCompleter.setCompletions(Bip39WordIndex.ENGLISH);
       UsKeyboardFragment keyboard = (UsKeyboardFragment) getSupportFragmentManager().findFragmentById(R.id.usKeyboard);
       keyboard.setListener(wordAutoCompleter);
       setHint();
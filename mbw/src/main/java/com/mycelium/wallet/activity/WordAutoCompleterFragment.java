@@ -43,10 +43,10 @@ import android.view.ViewGroup;
 import android.widget.Button;
 
 import com.google.common.base.Preconditions;
+import com.mrd.bitlib.crypto.Bip39WordIndex;
 import com.mycelium.wallet.R;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class WordAutoCompleterFragment extends Fragment implements UsKeyboardFragment.UsKeyboardListener {
@@ -54,7 +54,7 @@ public class WordAutoCompleterFragment extends Fragment implements UsKeyboardFra
    private WordAutoCompleterListener _listener;
    private String _currentWord;
    private List<Button> _completionButtons;
-   private String[] _completions;
+   private Bip39WordIndex _completions;
    private int _minimumCharacters;
 
    public interface WordAutoCompleterListener {
@@ -111,22 +111,13 @@ public class WordAutoCompleterFragment extends Fragment implements UsKeyboardFra
 
    private boolean exactMatch(String entered){
       // check if the word matches one entry in the wordlist exactly
-      if (Arrays.asList(_completions).contains(entered)){
-         // check if there is no other word starting with the same letters (eg. "sea" / "seat")
-         for (String w : _completions){
-            if (!w.equals(entered) && w.startsWith(entered)){
-               return false;
-            }
-         }
-         return true;
-      }else{
-         return false;
-      }
-
+      // and there is no other word starting with the same letters (eg. "sea" / "seat")
+      return _completions != null && _completions.indexOf(entered) != -1
+            && _completions.getCompletionCount(entered) == 1;
    }
 
-   public void setCompletions(String[] completions) {
-      _completions = completions.clone();
+   public void setCompletions(Bip39WordIndex completions) {
+      _completions = completions;
       showCompletionButtons();
    }
 
@@ -177,19 +168,10 @@ public class WordAutoCompleterFragment extends Fragment implements UsKeyboardFra
    }
 
    private List<String> determineCompletions(String partialWord, int maxCompletions) {
-      List<String> completions = new ArrayList<String>(maxCompletions);
       if (_completions == null || partialWord.length() < _minimumCharacters) {
-         return completions;
-      }
-      for (String s : _completions) {
-         if (s.startsWith(partialWord)) {
-            completions.add(s);
-            if (completions.size() == maxCompletions) {
-               break;
-            }
-         }
+         return new ArrayList<String>(maxCompletions);
       }
-      return completions;
+      return _completions.getCompletions(partialWord, maxCompletions);
    }
 
    @Override
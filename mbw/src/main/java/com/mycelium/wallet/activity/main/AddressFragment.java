@@ -119,7 +119,7 @@ public class AddressFragment extends Fragment {
       if (receivingAddress.isPresent()) {
          // Set address
          qrButton.setVisibility(View.VISIBLE);
-         qrButton.setQrCode(BitcoinUriWithAddress.fromAddress(receivingAddress.get()).toString());
+         qrButton.setQrCode(BitcoinUriWithAddress.fromAddress(receivingAddress.get()).toString(), true);
          String[] addressStrings = Utils.stringChopper(receivingAddress.get().toString(), 12);
          ((TextView) _root.findViewById(R.id.tvAddress1)).setText(addressStrings[0]);
          ((TextView) _root.findViewById(R.id.tvAddress2)).setText(addressStrings[1]);
@@ -21,7 +21,9 @@ import com.mycelium.wallet.activity.util.TransactionConfirmationsDisplay;
 import com.mycelium.wallet.persistence.MetadataStorage;
 import com.mycelium.wapi.model.TransactionSummary;
 import com.mycelium.wapi.wallet.currency.CurrencyValue;
+import com.mycelium.wapi.wallet.currency.ExactFiatValue;
 
+import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -40,6 +42,9 @@ public class TransactionArrayAdapter extends ArrayAdapter<TransactionSummary> {
    private Fragment _containerFragment;
    private Map<Address, String> _addressBook;
    private SharedPreferences transactionFiatValuePref;
+   // historical rate at the time of every transaction, looked up for the whole list at once
+   private double[] _historicalPrices;
+   private String _historicalPricesCurrency;
 
    public TransactionArrayAdapter(Context context, List<TransactionSummary> transactions, Map<Address, String> addressBook) {
       this(context, transactions, null, addressBook, true);
@@ -144,6 +149,15 @@ public class TransactionArrayAdapter extends ArrayAdapter<TransactionSummary> {
       tvFiatTimed.setVisibility(value != null ? View.VISIBLE : View.GONE);
       if(value != null) {
          tvFiatTimed.setText(value);
+      } else if (record.value.isBtc() && _mbwManager.hasFiatCurrency()) {
+         // no value was kept when sending, use the historical rate
+         double price = getHistoricalPrice(position);
+         if (!Double.isNaN(price)) {
+            CurrencyValue fiatValue = new ExactFiatValue(record.value.getValue().multiply(BigDecimal.valueOf(price)),
+                  _historicalPricesCurrency);
+            tvFiatTimed.setText(Utils.getFormattedValueWithUnit(fiatValue, _mbwManager.getBitcoinDenomination()));
+            tvFiatTimed.setVisibility(View.VISIBLE);
+         }
       }
 
       // Show destination address and address label, if this address is in our address book
@@ -228,4 +242,25 @@ public class TransactionArrayAdapter extends ArrayAdapter<TransactionSummary> {
       rowView.setTag(record);
       return rowView;
    }
+
+   @Override
+   public void notifyDataSetChanged() {
+      _historicalPrices = null;
+      super.notifyDataSetChanged();
+   }
+
+   private double getHistoricalPrice(int position) {
+      String fiatCurrency = _mbwManager.getFiatCurrency();
+      if (_historicalPrices == null || _historicalPrices.length != getCount()
+            || !fiatCurrency.equals(_historicalPricesCurrency)) {
+         long[] timestamps = new long[getCount()];
+         for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = getItem(i).time * 1000L;
+         }
+         _historicalPrices = _mbwManager.getExchangeRateManager().getHistoricalRateStore()
+               .valueAt(fiatCurrency, timestamps);
+         _historicalPricesCurrency = fiatCurrency;
+      }
+      return _historicalPrices[position];
+   }
 }
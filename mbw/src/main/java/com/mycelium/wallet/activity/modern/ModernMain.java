@@ -384,6 +384,7 @@ public class ModernMain extends ActionBarActivity {
 
       //export tx history
       Preconditions.checkNotNull(menu.findItem(R.id.miExportHistory)).setVisible(isHistoryTab);
+      Preconditions.checkNotNull(menu.findItem(R.id.miExportAllHistory)).setVisible(isHistoryTab);
 
       Preconditions.checkNotNull(menu.findItem(R.id.miRescanTransactions)).setVisible(isHistoryTab);
 
@@ -454,6 +455,9 @@ public class ModernMain extends ActionBarActivity {
          case R.id.miExportHistory:
             shareTransactionHistory();
             break;
+         case R.id.miExportAllHistory:
+            shareAllTransactionHistory();
+            break;
          case R.id.miVerifyMessage:
             startActivity(new Intent(this, MessageVerifyActivity.class));
             break;
@@ -466,34 +470,57 @@ public class ModernMain extends ActionBarActivity {
       MetadataStorage metaData = _mbwManager.getMetadataStorage();
       try {
          String fileName = "MyceliumExport_" + System.currentTimeMillis() + ".csv";
-         File historyData = DataExport.getTxHistoryCsv(account, metaData, getFileStreamPath(fileName));
-         PackageManager packageManager = Preconditions.checkNotNull(getPackageManager());
-         PackageInfo packageInfo = packageManager.getPackageInfo(getPackageName(), PackageManager.GET_PROVIDERS);
-         for (ProviderInfo info : packageInfo.providers) {
-            if (info.name.equals("android.support.v4.content.FileProvider")) {
-               String authority = info.authority;
-               Uri uri = FileProvider.getUriForFile(this, authority, historyData);
-               Intent intent = ShareCompat.IntentBuilder.from(this)
-                     .setStream(uri)  // uri from FileProvider
-                     .setType("text/plain")
-                     .setSubject(getResources().getString(R.string.transaction_history_title))
-                     .setText(getResources().getString(R.string.transaction_history_title))
-                     .getIntent()
-                     .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-               List<ResolveInfo> resInfoList = packageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
-               for (ResolveInfo resolveInfo : resInfoList) {
-                  String packageName = resolveInfo.activityInfo.packageName;
-                  grantUriPermission(packageName, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
-               }
-               startActivity(Intent.createChooser(intent, getResources().getString(R.string.share_transaction_history)));
-            }
-         }
+         String fiatCurrency = _mbwManager.hasFiatCurrency() ? _mbwManager.getFiatCurrency() : null;
+         File historyData = DataExport.getTxHistoryCsv(account, metaData,
+               _mbwManager.getExchangeRateManager().getHistoricalRateStore(), fiatCurrency,
+               getFileStreamPath(fileName));
+         shareHistoryFile(historyData);
       } catch (IOException | PackageManager.NameNotFoundException e) {
          _toaster.toast("Export failed. Check your logs", false);
          e.printStackTrace();
       }
    }
 
+   private void shareAllTransactionHistory() {
+      MetadataStorage metaData = _mbwManager.getMetadataStorage();
+      List<WalletAccount> accounts = Utils.sortAccounts(_mbwManager.getWalletManager(false).getActiveAccounts(), metaData);
+      try {
+         String fileName = "MyceliumExport_all_" + System.currentTimeMillis() + ".csv";
+         String fiatCurrency = _mbwManager.hasFiatCurrency() ? _mbwManager.getFiatCurrency() : null;
+         File historyData = DataExport.getMergedTxHistoryCsv(accounts, metaData,
+               _mbwManager.getExchangeRateManager().getHistoricalRateStore(), fiatCurrency,
+               getFileStreamPath(fileName));
+         shareHistoryFile(historyData);
+      } catch (IOException | PackageManager.NameNotFoundException e) {
+         _toaster.toast("Export failed. Check your logs", false);
+         e.printStackTrace();
+      }
+   }
+
+   private void shareHistoryFile(File historyData) throws PackageManager.NameNotFoundException {
+      PackageManager packageManager = Preconditions.checkNotNull(getPackageManager());
+      PackageInfo packageInfo = packageManager.getPackageInfo(getPackageName(), PackageManager.GET_PROVIDERS);
+      for (ProviderInfo info : packageInfo.providers) {
+         if (info.name.equals("android.support.v4.content.FileProvider")) {
+            String authority = info.authority;
+            Uri uri = FileProvider.getUriForFile(this, authority, historyData);
+            Intent intent = ShareCompat.IntentBuilder.from(this)
+                  .setStream(uri)  // uri from FileProvider
+                  .setType("text/plain")
+                  .setSubject(getResources().getString(R.string.transaction_history_title))
+                  .setText(getResources().getString(R.string.transaction_history_title))
+                  .getIntent()
+                  .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            List<ResolveInfo> resInfoList = packageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
+            for (ResolveInfo resolveInfo : resInfoList) {
+               String packageName = resolveInfo.activityInfo.packageName;
+               grantUriPermission(packageName, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            }
+            startActivity(Intent.createChooser(intent, getResources().getString(R.string.share_transaction_history)));
+         }
+      }
+   }
+
    @Override
    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
       if (requestCode == REQUEST_SETTING_CHANGED) {
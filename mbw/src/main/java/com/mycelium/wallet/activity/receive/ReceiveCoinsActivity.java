@@ -264,7 +264,7 @@ public class ReceiveCoinsActivity extends Activity {
       }
 
       // QR code
-      ivQrCode.setQrCode(qrText);
+      ivQrCode.setQrCode(qrText, true);
 
       // Show warning if the record has no private key
       if (_havePrivateKey) {
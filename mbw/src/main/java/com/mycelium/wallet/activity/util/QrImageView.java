@@ -131,12 +131,19 @@ public class QrImageView extends ImageView {
    }
 
    public void setQrCode(String qrCode) {
+      setQrCode(qrCode, false);
+   }
+
+   /**
+    * @param cacheable true if the content is public, like an address, and its matrix may be cached
+    */
+   public void setQrCode(String qrCode, boolean cacheable) {
       if (qrCode.equals(this.qrCodeText)) {
          // Only update QR code if necessary
          return;
       }
       this.qrCodeText = qrCode;
-      _qrImage = Utils.getMinimalQRCodeBitmap(qrCodeText);
+      _qrImage = Utils.getMinimalQRCodeBitmap(qrCodeText, cacheable);
       _qrImageScaled = null;
       _qrImageToDraw = null;
       this.invalidate();
@@ -38,6 +38,7 @@ import android.os.Handler;
 import com.google.common.base.Optional;
 import com.mrd.bitlib.model.Address;
 import com.mycelium.wallet.ExchangeRateManager;
+import com.mycelium.wapi.wallet.SyncRequest;
 import com.mycelium.wapi.wallet.WalletManager;
 import com.squareup.otto.Bus;
 
@@ -102,6 +103,11 @@ public class EventTranslator implements WalletManager.Observer, ExchangeRateMana
       }
    }
 
+   @Override
+   public void onSyncRequestChanged(WalletManager wallet, SyncRequest request) {
+      // the start and end of synchronization gets posted from onWalletStateChanged
+   }
+
    @Override
    public void refreshingExchangeRatesSucceeded() {
       postEvent(new ExchangeRatesRefreshed());
@@ -41,10 +41,8 @@ import android.content.Intent;
 import android.net.Uri;
 import android.util.Log;
 import com.google.common.base.Optional;
-import com.google.protobuf.ByteString;
 import com.google.protobuf.GeneratedMessage;
 import com.google.protobuf.Message;
-import com.mrd.bitlib.StandardTransactionBuilder.SigningRequest;
 import com.mrd.bitlib.StandardTransactionBuilder.UnsignedTransaction;
 import com.mrd.bitlib.crypto.HdKeyNode;
 import com.mrd.bitlib.crypto.PublicKey;
@@ -52,8 +50,6 @@ import com.mrd.bitlib.model.*;
 import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.NetworkParameters;
 import com.mrd.bitlib.model.Transaction;
-import com.mrd.bitlib.model.TransactionInput;
-import com.mrd.bitlib.model.TransactionOutput;
 import com.mrd.bitlib.model.hdpath.HdKeyPath;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteWriter;
@@ -231,7 +227,8 @@ public abstract class ExternalSignatureDeviceManager extends AbstractAccountScan
          return null;
       }
 
-      SigningRequest[] signatureInfo = unsigned.getSignatureInfo();
+      // look up and parse everything the device might ask for once
+      SigningSession session = new SigningSession(unsigned, getNetwork(), getSessionAccount(forAccount));
 
       ByteWriter signedTx = new ByteWriter(1024);
 
@@ -267,123 +264,14 @@ public abstract class ExternalSignatureDeviceManager extends AbstractAccountScan
          }
 
          // Device asked for more information, let's process it.
-         TrezorType.TxRequestDetailsType txRequestDetailsType = txRequest.getDetails();
          Log.d("trezor", "RequestTyp: " + txRequest.getRequestType().toString());
-
-
-         Transaction currentTx;
-         if (txRequestDetailsType.hasTxHash()) {
-            // trezor requested information about a related tx - get it from the account backing
-            Sha256Hash requestHash = Sha256Hash.of(txRequestDetailsType.getTxHash().toByteArray());
-            currentTx = TransactionEx.toTransaction(forAccount.getTransaction(requestHash));
-         } else {
-            // trezor requested information about the to-be-signed tx
-            currentTx = Transaction.fromUnsignedTransaction(unsigned);
-         }
-
-         // Lets see, what trezor wants to know
-         if (txRequest.getRequestType() == TrezorType.RequestType.TXMETA) {
-            // Send transaction metadata
-
-            TrezorType.TransactionType txType = TrezorType.TransactionType.newBuilder()
-                  .setInputsCnt(currentTx.inputs.length)
-                  .setOutputsCnt(currentTx.outputs.length)
-                  .setVersion(currentTx.version)
-                  .setLockTime(currentTx.lockTime)
-                  .build();
-
-            TrezorMessage.TxAck txAck = TrezorMessage.TxAck.newBuilder()
-                  .setTx(txType)
-                  .build();
-
-            response = getSignatureDevice().send(txAck);
-
-         } else if (txRequest.getRequestType() == TrezorType.RequestType.TXINPUT) {
-            TransactionInput ak_input = currentTx.inputs[txRequestDetailsType.getRequestIndex()];
-
-
-            ByteString prevHash = ByteString.copyFrom(ak_input.outPoint.hash.getBytes());
-            ByteString scriptSig = ByteString.copyFrom(ak_input.script.getScriptBytes());
-            TrezorType.TxInputType.Builder txInputBuilder = TrezorType.TxInputType.newBuilder()
-                  .setPrevHash(prevHash)
-                  .setPrevIndex(ak_input.outPoint.index)
-                  .setSequence(ak_input.sequence)
-                  .setScriptSig(scriptSig);
-
-            // get the bip32 path for the address, so that trezor knows with what key to sign it
-            // only for the unsigned txin
-            if (!txRequestDetailsType.hasTxHash()) {
-               SigningRequest signingRequest = signatureInfo[txRequestDetailsType.getRequestIndex()];
-               Address toSignWith = signingRequest.publicKey.toAddress(getNetwork());
-
-               if (toSignWith != null) {
-                  Optional<Integer[]> addId = forAccount.getAddressId(toSignWith);
-                  if (addId.isPresent()) {
-                     new InputAddressSetter(txInputBuilder).setAddressN(forAccount.getAccountIndex(), addId.get());
-                  }
-               } else {
-                  Log.w("trezor", "no address found for signing InputIDX " + txRequestDetailsType.getRequestIndex());
-               }
-            }
-
-            TrezorType.TxInputType txInput = txInputBuilder.build();
-
-            TrezorType.TransactionType txType = TrezorType.TransactionType.newBuilder()
-                  .addInputs(txInput)
-                  .build();
-
-            TrezorMessage.TxAck txAck = TrezorMessage.TxAck.newBuilder()
-                  .setTx(txType)
-                  .build();
-
-            response = getSignatureDevice().send(txAck);
-
-         } else if (txRequest.getRequestType() == TrezorType.RequestType.TXOUTPUT) {
-            TransactionOutput ak_output = currentTx.outputs[txRequestDetailsType.getRequestIndex()];
-
-            TrezorType.TransactionType txType;
-
-            if (txRequestDetailsType.hasTxHash()) {
-               // request has an hash -> requests data for an existing output
-               ByteString scriptPubKey = ByteString.copyFrom(ak_output.script.getScriptBytes());
-               TrezorType.TxOutputBinType txOutput = TrezorType.TxOutputBinType.newBuilder()
-                     .setScriptPubkey(scriptPubKey)
-                     .setAmount(ak_output.value)
-                     .build();
-
-               txType = TrezorType.TransactionType.newBuilder()
-                     .addBinOutputs(txOutput)
-                     .build();
-
-            } else {
-               // request has no hash -> trezor wants informations about the
-               // outputs of the new tx
-               Address address = ak_output.script.getAddress(getNetwork());
-               TrezorType.TxOutputType.Builder txOutput = TrezorType.TxOutputType.newBuilder()
-                     .setAmount(ak_output.value)
-                     .setScriptType(mapScriptType(ak_output.script));
-
-               Optional<Integer[]> addId = forAccount.getAddressId(address);
-               if (addId.isPresent() && addId.get()[0] == 1) {
-                  // If it is one of our internal change addresses, add the HD-PathID
-                  // so that trezor knows, this is the change txout and can calculate the value of the tx correctly
-                  new OutputAddressSetter(txOutput).setAddressN(forAccount.getAccountIndex(), addId.get());
-               } else {
-                  // If it is regular address (non-change), set address instead of address_n
-                  txOutput.setAddress(address.toString());
-               }
-
-               txType = TrezorType.TransactionType.newBuilder()
-                     .addOutputs(txOutput.build())
-                     .build();
-            }
-
-            TrezorMessage.TxAck txAck = TrezorMessage.TxAck.newBuilder()
-                  .setTx(txType)
-                  .build();
-
-            response = getSignatureDevice().send(txAck);
+         TrezorMessage.TxAck txAck = session.answer(txRequest);
+         if (txAck == null) {
+            Log.e("trezor", "Trezor: Unexpected request " + txRequest.getRequestType() + " for "
+                  + (txRequest.getDetails().hasTxHash() ? "a previous tx" : "the tx to sign"));
+            return null;
          }
+         response = getSignatureDevice().send(txAck);
       }
 
       Transaction ret;
@@ -418,14 +306,23 @@ public abstract class ExternalSignatureDeviceManager extends AbstractAccountScan
       }
    }
 
-   private TrezorType.OutputScriptType mapScriptType(ScriptOutput script) {
-      if (script instanceof ScriptOutputStandard) {
-         return TrezorType.OutputScriptType.PAYTOADDRESS;
-      } else if (script instanceof ScriptOutputP2SH) {
-         return TrezorType.OutputScriptType.PAYTOSCRIPTHASH;
-      } else {
-         throw new RuntimeException("unknown script type");
-      }
+   private static SigningSession.Account getSessionAccount(final Bip44AccountExternalSignature forAccount) {
+      return new SigningSession.Account() {
+         @Override
+         public TransactionEx getTransaction(Sha256Hash txid) {
+            return forAccount.getTransaction(txid);
+         }
+
+         @Override
+         public Optional<Integer[]> getAddressId(Address address) {
+            return forAccount.getAddressId(address);
+         }
+
+         @Override
+         public int getAccountIndex() {
+            return forAccount.getAccountIndex();
+         }
+      };
    }
 
    @Override
@@ -541,42 +438,4 @@ public abstract class ExternalSignatureDeviceManager extends AbstractAccountScan
    public TrezorMessage.Features getFeatures() {
       return features;
    }
-
-   private abstract class AddressSetter {
-      public abstract void addAddressN(Integer addressPath);
-
-      public void setAddressN(Integer accountNumber, Integer[] addId) {
-         // build the full bip32 path
-         Integer[] addressPath = new Integer[]{44 | PRIME_DERIVATION_FLAG, getNetwork().getBip44CoinType().getLastIndex() | PRIME_DERIVATION_FLAG, accountNumber | PRIME_DERIVATION_FLAG, addId[0], addId[1]};
-         for (Integer b : addressPath) {
-            this.addAddressN(b);
-         }
-      }
-   }
-
-   private class OutputAddressSetter extends AddressSetter {
-      final private TrezorType.TxOutputType.Builder txOutput;
-
-      private OutputAddressSetter(TrezorType.TxOutputType.Builder txOutput) {
-         this.txOutput = txOutput;
-      }
-
-      @Override
-      public void addAddressN(Integer addressPath) {
-         txOutput.addAddressN(addressPath);
-      }
-   }
-
-   private class InputAddressSetter extends AddressSetter {
-      final private TrezorType.TxInputType.Builder txInput;
-
-      private InputAddressSetter(TrezorType.TxInputType.Builder txInput) {
-         this.txInput = txInput;
-      }
-
-      @Override
-      public void addAddressN(Integer addressPath) {
-         txInput.addAddressN(addressPath);
-      }
-   }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wallet.extsig.common;
+
+import com.google.common.base.Optional;
+import com.google.protobuf.ByteString;
+import com.mrd.bitlib.StandardTransactionBuilder.SigningRequest;
+import com.mrd.bitlib.StandardTransactionBuilder.UnsignedTransaction;
+import com.mrd.bitlib.model.*;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionEx;
+import com.satoshilabs.trezor.protobuf.TrezorMessage;
+import com.satoshilabs.trezor.protobuf.TrezorMessage.TxRequest;
+import com.satoshilabs.trezor.protobuf.TrezorType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The answers to the requests of a Trezor or KeepKey while it signs one transaction.
+ * <p>
+ * A device asks for the metadata, every input and every output of the transaction to sign and of every transaction
+ * it spends from, one at a time. The session looks up and parses every previous transaction once, when it is created,
+ * and builds the protobuf fragment of every answer up front, so each request is answered from memory.
+ */
+public class SigningSession {
+   private static final int PRIME_DERIVATION_FLAG = 0x80000000;
+
+   /**
+    * What the session needs from the account that signs the transaction
+    */
+   public interface Account {
+      TransactionEx getTransaction(Sha256Hash txid);
+
+      Optional<Integer[]> getAddressId(Address address);
+
+      int getAccountIndex();
+   }
+
+   private final NetworkParameters network;
+   private final Account account;
+   private final Fragments unsignedTransaction;
+   private final Map<Sha256Hash, Fragments> previousTransactions = new HashMap<Sha256Hash, Fragments>();
+
+   public SigningSession(UnsignedTransaction unsigned, NetworkParameters network, Account account) {
+      this.network = network;
+      this.account = account;
+      unsignedTransaction = fragmentsOfUnsigned(unsigned);
+      for (UnspentTransactionOutput funding : unsigned.getFundingOutputs()) {
+         Sha256Hash hash = funding.outPoint.hash;
+         if (!previousTransactions.containsKey(hash)) {
+            Transaction previous = TransactionEx.toTransaction(account.getTransaction(hash));
+            if (previous != null) {
+               previousTransactions.put(hash, fragmentsOfPrevious(previous));
+            }
+         }
+      }
+   }
+
+   /**
+    * @return the answer to the request, or null if the session does not know what the device asks for
+    */
+   public TrezorMessage.TxAck answer(TxRequest txRequest) {
+      TrezorType.TxRequestDetailsType details = txRequest.getDetails();
+      Fragments fragments;
+      if (details.hasTxHash()) {
+         // a transaction the signed transaction spends from
+         fragments = previousTransactions.get(Sha256Hash.of(details.getTxHash().toByteArray()));
+         if (fragments == null) {
+            return null;
+         }
+      } else {
+         fragments = unsignedTransaction;
+      }
+
+      TrezorType.TransactionType txType;
+      switch (txRequest.getRequestType()) {
+         case TXMETA:
+            txType = fragments.meta;
+            break;
+         case TXINPUT:
+            txType = get(fragments.inputs, details.getRequestIndex());
+            break;
+         case TXOUTPUT:
+            txType = get(fragments.outputs, details.getRequestIndex());
+            break;
+         default:
+            txType = null;
+      }
+      if (txType == null) {
+         return null;
+      }
+      return TrezorMessage.TxAck.newBuilder()
+            .setTx(txType)
+            .build();
+   }
+
+   /**
+    * @return the number of previous transactions the session found in the account
+    */
+   public int getPreviousTransactionCount() {
+      return previousTransactions.size();
+   }
+
+   private Fragments fragmentsOfUnsigned(UnsignedTransaction unsigned) {
+      Transaction tx = Transaction.fromUnsignedTransaction(unsigned);
+      SigningRequest[] signatureInfo = unsigned.getSignatureInfo();
+      Fragments fragments = new Fragments(tx);
+      for (int i = 0; i < tx.inputs.length; i++) {
+         TrezorType.TxInputType.Builder txInput = inputBuilder(tx.inputs[i]);
+         // the bip32 path for the address, so that the device knows with what key to sign it
+         Address toSignWith = signatureInfo[i].publicKey.toAddress(network);
+         Optional<Integer[]> addId = account.getAddressId(toSignWith);
+         if (addId.isPresent()) {
+            txInput.addAllAddressN(getAddressPath(addId.get()));
+         }
+         fragments.inputs[i] = TrezorType.TransactionType.newBuilder()
+               .addInputs(txInput.build())
+               .build();
+      }
+      for (int i = 0; i < tx.outputs.length; i++) {
+         TransactionOutput output = tx.outputs[i];
+         Address address = output.script.getAddress(network);
+         TrezorType.TxOutputType.Builder txOutput = TrezorType.TxOutputType.newBuilder()
+               .setAmount(output.value)
+               .setScriptType(mapScriptType(output.script));
+
+         Optional<Integer[]> addId = account.getAddressId(address);
+         if (addId.isPresent() && addId.get()[0] == 1) {
+            // If it is one of our internal change addresses, add the HD-PathID
+            // so that the device knows, this is the change txout and can calculate the value of the tx correctly
+            txOutput.addAllAddressN(getAddressPath(addId.get()));
+         } else {
+            // If it is regular address (non-change), set address instead of address_n
+            txOutput.setAddress(address.toString());
+         }
+         fragments.outputs[i] = TrezorType.TransactionType.newBuilder()
+               .addOutputs(txOutput.build())
+               .build();
+      }
+      return fragments;
+   }
+
+   private static Fragments fragmentsOfPrevious(Transaction tx) {
+      Fragments fragments = new Fragments(tx);
+      for (int i = 0; i < tx.inputs.length; i++) {
+         fragments.inputs[i] = TrezorType.TransactionType.newBuilder()
+               .addInputs(inputBuilder(tx.inputs[i]).build())
+               .build();
+      }
+      for (int i = 0; i < tx.outputs.length; i++) {
+         TransactionOutput output = tx.outputs[i];
+         TrezorType.TxOutputBinType txOutput = TrezorType.TxOutputBinType.newBuilder()
+               .setScriptPubkey(ByteString.copyFrom(output.script.getScriptBytes()))
+               .setAmount(output.value)
+               .build();
+         fragments.outputs[i] = TrezorType.TransactionType.newBuilder()
+               .addBinOutputs(txOutput)
+               .build();
+      }
+      return fragments;
+   }
+
+   private static TrezorType.TxInputType.Builder inputBuilder(TransactionInput input) {
+      return TrezorType.TxInputType.newBuilder()
+            .setPrevHash(ByteString.copyFrom(input.outPoint.hash.getBytes()))
+            .setPrevIndex(input.outPoint.index)
+            .setSequence(input.sequence)
+            .setScriptSig(ByteString.copyFrom(input.script.getScriptBytes()));
+   }
+
+   // the full bip32 path of an address of the account
+   private List<Integer> getAddressPath(Integer[] addId) {
+      List<Integer> path = new ArrayList<Integer>(5);
+      path.add(44 | PRIME_DERIVATION_FLAG);
+      path.add(network.getBip44CoinType().getLastIndex() | PRIME_DERIVATION_FLAG);
+      path.add(account.getAccountIndex() | PRIME_DERIVATION_FLAG);
+      path.add(addId[0]);
+      path.add(addId[1]);
+      return path;
+   }
+
+   private static TrezorType.OutputScriptType mapScriptType(ScriptOutput script) {
+      if (script instanceof ScriptOutputStandard) {
+         return TrezorType.OutputScriptType.PAYTOADDRESS;
+      } else if (script instanceof ScriptOutputP2SH) {
+         return TrezorType.OutputScriptType.PAYTOSCRIPTHASH;
+      } else {
+         throw new RuntimeException("unknown script type");
+      }
+   }
+
+   private static TrezorType.TransactionType get(TrezorType.TransactionType[] fragments, int index) {
+      return index >= 0 && index < fragments.length ? fragments[index] : null;
+   }
+
+   // the answers for one transaction
+   private static class Fragments {
+      final TrezorType.TransactionType meta;
+      final TrezorType.TransactionType[] inputs;
+      final TrezorType.TransactionType[] outputs;
+
+      Fragments(Transaction tx) {
+         meta = TrezorType.TransactionType.newBuilder()
+               .setInputsCnt(tx.inputs.length)
+               .setOutputsCnt(tx.outputs.length)
+               .setVersion(tx.version)
+               .setLockTime(tx.lockTime)
+               .build();
+         inputs = new TrezorType.TransactionType[tx.inputs.length];
+         outputs = new TrezorType.TransactionType[tx.outputs.length];
+      }
+   }
+}
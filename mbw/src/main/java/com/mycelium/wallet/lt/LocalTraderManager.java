@@ -52,6 +52,8 @@ import com.mycelium.lt.ApiUtils;
 import com.mycelium.lt.ChatMessageEncryptionKey;
 import com.mycelium.lt.api.LtApi;
 import com.mycelium.lt.api.LtApiException;
+import com.mycelium.lt.api.LtRequestExecutor;
+import com.mycelium.lt.api.LtSessionKeeper;
 import com.mycelium.lt.api.model.LtSession;
 import com.mycelium.lt.api.model.TradeSession;
 import com.mycelium.lt.api.model.TraderInfo;
@@ -67,12 +69,17 @@ import com.mycelium.wallet.persistence.TradeSessionDb;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Future;
 
 public class LocalTraderManager {
 
    public static final String GCM_SENDER_ID = "1025080855849";
 
    private static final String TAG = "LocalTraderManager";
+   private static final int MAX_CONCURRENT_REQUESTS = 4;
+   // how often a request that failed with an invalid session is sent again with a new one
+   private static final int MAX_SESSION_RETRIES = 2;
+   private static final int MAX_CHAT_MESSAGE_CACHES = 8;
    public static final String LT_DERIVATION_SEED = "lt.mycelium.com";
 
    final private Context _context;
@@ -80,11 +87,9 @@ public class LocalTraderManager {
    final private LtApi _api;
    final private MbwManager _mbwManager;
    final private Set<LocalTraderEventSubscriber> _subscribers;
-   final private Thread _executer;
+   final private LtRequestExecutor _executor;
+   final private LtSessionKeeper _sessionKeeper;
    final private Geocoder _geocoder;
-   private LtSession _session;
-   final private List<Request> _requests;
-   private boolean _isLoggedIn;
    private Address _localTraderAddress;
    private long _lastTraderSynchronization;
    private long _lastTraderNotification;
@@ -97,6 +102,7 @@ public class LocalTraderManager {
    private TradeSessionChangeMonitor _tradeSessionChangeMonitor;
    private boolean _notificationsEnabled;
    private TraderInfo _cachedTraderInfo;
+   final private Map<UUID, ChatMessageCache> _chatMessageCaches;
    private long _lastNotificationSoundTimestamp;
    private String _localTraderPrivateKeyString;
    private UUID _localTraderAccountId;
@@ -114,7 +120,14 @@ public class LocalTraderManager {
       _api = api;
       _mbwManager = mbwManager;
       _subscribers = new HashSet<>();
-      _requests = new LinkedList<>();
+      _sessionKeeper = new LtSessionKeeper(_api);
+      // Keep the chats of the most recently viewed trade sessions
+      _chatMessageCaches = new LinkedHashMap<UUID, ChatMessageCache>(MAX_CHAT_MESSAGE_CACHES, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<UUID, ChatMessageCache> eldest) {
+            return size() > MAX_CHAT_MESSAGE_CACHES;
+         }
+      };
 
       // Preferences
       SharedPreferences preferences = _context.getSharedPreferences(Constants.LOCAL_TRADER_SETTINGS_NAME,
@@ -150,9 +163,7 @@ public class LocalTraderManager {
       _lastTraderSynchronization = preferences.getLong(Constants.LOCAL_TRADER_LAST_TRADER_SYNCHRONIZATION_SETTING, 0);
       _lastTraderNotification = preferences.getLong(Constants.LOCAL_TRADER_LAST_TRADER_NOTIFICATION_SETTING, 0);
 
-      _executer = new Thread(new Executor());
-      _executer.setDaemon(true);
-      _executer.start();
+      _executor = new LtRequestExecutor(MAX_CONCURRENT_REQUESTS);
 
       _traderChangeMonitor = new TraderChangeMonitor(this, _api);
       _tradeSessionChangeMonitor = new TradeSessionChangeMonitor(this, _api);
@@ -178,14 +189,25 @@ public class LocalTraderManager {
       }
    }
 
-   public void makeRequest(Request request) {
+   /**
+    * Run a request in the background, subscribers are notified of the outcome.
+    *
+    * @return a future that can be used to cancel the request or to wait for it
+    */
+   public Future<?> makeRequest(Request request) {
       if (request.requiresLogin() && !hasLocalTraderAccount()) {
          throw new RuntimeException("Cannot make login request when trading is disabled");
       }
-      synchronized (_requests) {
-         _requests.add(request);
-         _requests.notify();
-      }
+      return submit(request, 0);
+   }
+
+   private Future<?> submit(Request request, int retries) {
+      return _executor.submit(new RequestRunner(request, retries), request.isReadOnly(), request.getDeduplicationKey());
+   }
+
+   private LtSession obtainSession(Request request) throws LtApiException {
+      return _sessionKeeper.obtainSession(_mbwManager.getLanguage(),
+            _mbwManager.getBitcoinDenomination().getAsciiName(), request.requiresLogin() ? _credentials : null);
    }
 
    public void startMonitoringTrader() {
@@ -197,11 +219,12 @@ public class LocalTraderManager {
    }
 
    public void startMonitoringTradeSession(TradeSessionChangeMonitor.Listener listener) {
-      if (_session == null) {
+      LtSession session = _sessionKeeper.getSession();
+      if (session == null) {
          Log.e(TAG, "Trying to monitor trade session without having a session");
          return;
       }
-      _tradeSessionChangeMonitor.startMonitoring(_session.id, listener);
+      _tradeSessionChangeMonitor.startMonitoring(session.id, listener);
    }
 
    public void stopMonitoringTradeSession() {
@@ -232,91 +255,58 @@ public class LocalTraderManager {
       void unsetLocalTraderAccount();
    }
 
-   private class Executor implements Runnable, LocalManagerApiContext {
+   private class RequestRunner implements Runnable {
+      private final Request _request;
+      private final int _retries;
+
+      private RequestRunner(Request request, int retries) {
+         _request = request;
+         _retries = retries;
+      }
 
       @Override
       public void run() {
-
-         String currentSessionLanguage = null;
-
-         while (true) {
-
-            // Grab a request or wait
-            Request request;
-            synchronized (_requests) {
-               if (_requests.size() == 0) {
-                  try {
-                     _requests.wait();
-                  } catch (InterruptedException e) {
-                     break;
-                  }
-               }
-               request = _requests.remove(0);
+         // Requests waiting for a session share the renewal and login that is in progress
+         LtSession session = _sessionKeeper.getSession();
+         if (_request.requiresSession()) {
+            try {
+               session = obtainSession(_request);
+            } catch (LtApiException e) {
+               new RequestContext(null, _retries).handleErrors(null, e.errorCode);
+               return;
             }
-
-            // If the request requires a session and we don't got one or if the
-            // language was changed, get a session
-            if (request.requiresSession()) {
-               if (_session == null || !_mbwManager.getLanguage().equals(currentSessionLanguage)) {
-                  if (renewSession()) {
-                     currentSessionLanguage = _mbwManager.getLanguage();
-                  } else {
-                     continue;
-                  }
-               }
-            }
-
-            // If the request requires a login and we don't are not logged in,
-            // login
-            if (request.requiresLogin() && !_isLoggedIn) {
-               if (!login()) {
-                  continue;
-               }
-            }
-            request.execute(this, _api, _session.id, _subscribers);
          }
-
+         UUID sessionId = session == null ? null : session.id;
+         _request.execute(new RequestContext(sessionId, _retries), _api, sessionId, _subscribers);
       }
+   }
 
-      private boolean renewSession() {
-         try {
-            // Get new session
-            _session = _api.createSession(LtApi.VERSION, _mbwManager.getLanguage(),
-                  _mbwManager.getBitcoinDenomination().getAsciiName()).getResult();
-            _isLoggedIn = false;
-            return true;
-         } catch (LtApiException e) {
-            // Handle errors
-            handleErrors(null, e.errorCode);
-            return false;
-         }
-      }
+   private final LtSessionKeeper.Credentials _credentials = new LtSessionKeeper.Credentials() {
 
-      private boolean login() {
-         Preconditions.checkNotNull(_session.id);
+      @Override
+      public LoginParameters getLoginParameters(UUID sessionId) {
          // Sign session ID with private key
          InMemoryPrivateKey privateKey = getLocalTraderPrivateKey();
          if (privateKey == null) {
-            handleErrors(null, LtApi.ERROR_CODE_TRADER_DOES_NOT_EXIST);
-            return false;
-         }
-         String sigHashSessionId = ApiUtils.generateUuidHashSignature(privateKey, _session.id
-         );
-         try {
-            // Login
-            LoginParameters params = new LoginParameters(getLocalTraderAddress(), sigHashSessionId);
-            params.setGcmId(getGcmRegistrationId());
-            _api.traderLogin(_session.id, params).getResult();
-            _isLoggedIn = true;
-            return true;
-         } catch (LtApiException e) {
-            if (e.errorCode == LtApi.ERROR_CODE_INVALID_SESSION) {
-               return renewSession() && login();
-            } else {
-               handleErrors(null, e.errorCode);
-               return false;
-            }
+            return null;
          }
+         String sigHashSessionId = ApiUtils.generateUuidHashSignature(privateKey, sessionId);
+         LoginParameters params = new LoginParameters(getLocalTraderAddress(), sigHashSessionId);
+         params.setGcmId(getGcmRegistrationId());
+         return params;
+      }
+   };
+
+   /**
+    * Context of a single request execution, knows which session the request used
+    */
+   private class RequestContext implements LocalManagerApiContext {
+      private final UUID _sessionId;
+      private final int _retries;
+
+      private RequestContext(UUID sessionId, int retries) {
+         _sessionId = sessionId;
+         _retries = retries;
       }
 
       public void updateLocalTradeSessions(Collection<TradeSession> collection) {
@@ -339,14 +329,23 @@ public class LocalTraderManager {
       public void handleErrors(Request request, int errorCode) {
          switch (errorCode) {
             case LtApi.ERROR_CODE_INVALID_SESSION:
-               if (renewSession()) {
-                  if (login()) {
-                     synchronized (_requests) {
-                        _requests.add(request);
-                        _requests.notify();
-                     }
-                  }
+               // Other requests may have renewed the session already, only drop it if it is the one we used
+               _sessionKeeper.invalidate(_sessionId);
+               if (request == null) {
+                  break;
                }
+               if (_retries >= MAX_SESSION_RETRIES) {
+                  notifyError(errorCode);
+                  break;
+               }
+               // Only send the request again once we have a new session and are logged in
+               try {
+                  obtainSession(request);
+               } catch (LtApiException e) {
+                  new RequestContext(null, _retries).handleErrors(null, e.errorCode);
+                  break;
+               }
+               submit(request, _retries + 1);
                break;
             case LtApi.ERROR_CODE_NO_SERVER_CONNECTION:
                notifyNoConnection(errorCode);
@@ -355,15 +354,13 @@ public class LocalTraderManager {
                notifyIncompatibleApiVersion(errorCode);
                break;
             case LtApi.ERROR_CODE_TRADER_DOES_NOT_EXIST:
-               _isLoggedIn = false;
-               _session = null;
+               _sessionKeeper.reset();
                // Disconnect trader account
                unsetLocalTraderAccount();
                notifyNoTraderAccount(errorCode);
                break;
             default:
-               _isLoggedIn = false;
-               _session = null;
+               _sessionKeeper.invalidate(_sessionId);
                notifyError(errorCode);
                break;
          }
@@ -457,6 +454,13 @@ public class LocalTraderManager {
       return _db.getAll();
    }
 
+   /**
+    * Get what the trade lists show of all local sessions, the most recently changed first
+    */
+   public synchronized List<TradeSessionDb.Summary> getLocalTradeSessionSummaries() {
+      return _db.getSummaries();
+   }
+
    public synchronized Collection<TradeSession> getLocalBuyTradeSessions() {
       return _db.getBuyTradeSessions();
    }
@@ -486,18 +490,18 @@ public class LocalTraderManager {
    }
 
    private synchronized void updateLocalTradeSessions(Collection<TradeSession> remoteList) {
-      // Get all the local sessions
-      Collection<TradeSession> localList = _db.getAll();
+      // Get the ids and change times of all the local sessions, without decoding them
+      List<TradeSessionDb.Summary> localList = _db.getSummaries();
 
       // Iterate over local items to find records to delete or update locally
-      for (TradeSession localItem : localList) {
-         TradeSession remoteItem = findAndEliminate(localItem, remoteList);
+      for (TradeSessionDb.Summary localItem : localList) {
+         TradeSession remoteItem = findAndEliminate(localItem.id, remoteList);
          if (remoteItem == null) {
             // A local item is not in the remote list, remove it locally
             _db.delete(localItem.id);
          } else {
             // A local item is in the new list, see if it needs to be updated
-            if (needsUpdate(localItem, remoteItem)) {
+            if (localItem.lastChange < remoteItem.lastChange) {
                _db.update(remoteItem);
             }
          }
@@ -522,11 +526,11 @@ public class LocalTraderManager {
       return _cachedTraderInfo;
    }
 
-   private TradeSession findAndEliminate(TradeSession item, Collection<TradeSession> list) {
+   private TradeSession findAndEliminate(UUID id, Collection<TradeSession> list) {
       Iterator<TradeSession> it = list.iterator();
       while (it.hasNext()) {
          TradeSession t = it.next();
-         if (t.equals(item)) {
+         if (t.id.equals(id)) {
             it.remove();
             return t;
          }
@@ -534,11 +538,6 @@ public class LocalTraderManager {
       return null;
    }
 
-   private boolean needsUpdate(TradeSession oldValue, TradeSession newValue) {
-      Preconditions.checkArgument(oldValue.id.equals(newValue.id));
-      return oldValue.lastChange < newValue.lastChange;
-   }
-
    private SharedPreferences.Editor getEditor() {
       return _context.getSharedPreferences(Constants.LOCAL_TRADER_SETTINGS_NAME, Activity.MODE_PRIVATE).edit();
    }
@@ -569,8 +568,30 @@ public class LocalTraderManager {
       return ChatMessageEncryptionKey.fromEcdh(foreignPublicKey, getLocalTraderPrivateKey(), tradeSessionId);
    }
 
+   /**
+    * Get the decrypted chat messages of a trade session. The cache is replaced if the encryption key of the session
+    * changed, for instance because the trader account changed.
+    */
+   public ChatMessageCache getChatMessageCache(UUID tradeSessionId, ChatMessageEncryptionKey key) {
+      synchronized (_chatMessageCaches) {
+         ChatMessageCache cache = _chatMessageCaches.get(tradeSessionId);
+         if (cache == null || !cache.getKey().equals(key)) {
+            cache = new ChatMessageCache(key);
+            _chatMessageCaches.put(tradeSessionId, cache);
+         }
+         return cache;
+      }
+   }
+
+   private void clearChatMessageCaches() {
+      synchronized (_chatMessageCaches) {
+         _chatMessageCaches.clear();
+      }
+   }
+
    public void unsetLocalTraderAccount() {
-      _session = null;
+      _sessionKeeper.reset();
+      clearChatMessageCaches();
       _localTraderAddress = null;
       _localTraderAccountId = null;
       _localTraderPrivateKey = null;
@@ -587,7 +608,8 @@ public class LocalTraderManager {
    }
 
    public void setLocalTraderData(UUID accountId, InMemoryPrivateKey privateKey, Address address, String nickname) {
-      _session = null;
+      _sessionKeeper.reset();
+      clearChatMessageCaches();
       _localTraderAddress = Preconditions.checkNotNull(address);
       _localTraderAccountId = Preconditions.checkNotNull(accountId);
       _localTraderPrivateKey = Preconditions.checkNotNull(privateKey);
@@ -692,10 +714,11 @@ public class LocalTraderManager {
    }
 
    public boolean isCaptchaRequired(Request request) {
+      LtSession session = _sessionKeeper.getSession();
       if (request instanceof CreateAd) {
-         return _session == null || _session.captcha.contains(LtSession.CaptchaCommands.CREATE_SELL_ORDER);
+         return session == null || session.captcha.contains(LtSession.CaptchaCommands.CREATE_SELL_ORDER);
       } else if (request instanceof CreateTrade) {
-         return _session == null || _session.captcha.contains(LtSession.CaptchaCommands.CREATE_INSTANT_BUY_ORDER);
+         return session == null || session.captcha.contains(LtSession.CaptchaCommands.CREATE_INSTANT_BUY_ORDER);
       }
       return false;
    }
@@ -778,7 +801,7 @@ public class LocalTraderManager {
    }
 
    public LtSession getSession(){
-      return _session;
+      return _sessionKeeper.getSession();
    }
 
    public Bitcoins getMinerFeeEstimation(){
@@ -37,10 +37,7 @@ package com.mycelium.wallet.lt.activity;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 
@@ -67,6 +64,7 @@ import com.mycelium.wallet.lt.LocalTraderEventSubscriber;
 import com.mycelium.wallet.lt.LocalTraderManager;
 import com.mycelium.wallet.lt.api.GetTraderInfo;
 import com.mycelium.wallet.lt.api.Request;
+import com.mycelium.wallet.persistence.TradeSessionDb;
 
 public class ActiveTradesFragment extends Fragment {
 
@@ -97,7 +95,7 @@ public class ActiveTradesFragment extends Fragment {
 
    @Override
    public void onResume() {
-      _tradeSessionAdapter = new TradeSessionsAdapter(getActivity(), new ArrayList<TradeSession>());
+      _tradeSessionAdapter = new TradeSessionsAdapter(getActivity(), new ArrayList<TradeSessionDb.Summary>());
       ListView list = (ListView) findViewById(R.id.lvRecentTrades);
       list.setAdapter(_tradeSessionAdapter);
       updateUi();
@@ -111,25 +109,9 @@ public class ActiveTradesFragment extends Fragment {
       super.onPause();
    }
 
-   private List<TradeSession> createTradeSessionList() {
-      LocalTraderManager ltManager = _mbwManager.getLocalTraderManager();
-      List<TradeSession> list = new LinkedList<TradeSession>();
-      list.addAll(ltManager.getLocalTradeSessions());
-      Collections.sort(list, new Comparator<TradeSession>() {
-
-         @Override
-         public int compare(TradeSession lhs, TradeSession rhs) {
-
-            if (lhs.lastChange > rhs.lastChange) {
-               return -1;
-            } else if (lhs.lastChange < rhs.lastChange) {
-               return 1;
-            } else {
-               return 0;
-            }
-         }
-      });
-      return list;
+   private List<TradeSessionDb.Summary> createTradeSessionList() {
+      // Sorted by the database, most recent change first
+      return _mbwManager.getLocalTraderManager().getLocalTradeSessionSummaries();
    }
 
    private void updateUi() {
@@ -137,7 +119,7 @@ public class ActiveTradesFragment extends Fragment {
          return;
       }
 
-      List<TradeSession> tradeSessions = createTradeSessionList();
+      List<TradeSessionDb.Summary> tradeSessions = createTradeSessionList();
       if (tradeSessions.size() == 0) {
          findViewById(R.id.tvNoRecords).setVisibility(View.VISIBLE);
          findViewById(R.id.lvRecentTrades).setVisibility(View.GONE);
@@ -148,7 +130,7 @@ public class ActiveTradesFragment extends Fragment {
          // list.setAdapter(new TradeSessionsAdapter(getActivity(),
          // tradeSessions));
          _tradeSessionAdapter.clear();
-         for (TradeSession tradeSession : tradeSessions) {
+         for (TradeSessionDb.Summary tradeSession : tradeSessions) {
             _tradeSessionAdapter.add(tradeSession);
          }
          _tradeSessionAdapter.notifyDataSetChanged();
@@ -159,18 +141,23 @@ public class ActiveTradesFragment extends Fragment {
 
       @Override
       public void onItemClick(AdapterView<?> listView, final View view, int position, long id) {
-         TradeActivity.callMe(ActiveTradesFragment.this.getActivity(), ((TradeSession) view.getTag()));
+         // Only the session that is opened gets decoded
+         TradeSessionDb.Summary summary = (TradeSessionDb.Summary) view.getTag();
+         TradeSession tradeSession = _ltManager.getLocalTradeSession(summary.id);
+         if (tradeSession != null) {
+            TradeActivity.callMe(ActiveTradesFragment.this.getActivity(), tradeSession);
+         }
       }
    };
 
-   private class TradeSessionsAdapter extends ArrayAdapter<TradeSession> {
+   private class TradeSessionsAdapter extends ArrayAdapter<TradeSessionDb.Summary> {
       private Context _context;
       private Date _midnight;
       private DateFormat _dayFormat;
       private DateFormat _hourFormat;
       private Locale _locale;
 
-      public TradeSessionsAdapter(Context context, List<TradeSession> objects) {
+      public TradeSessionsAdapter(Context context, List<TradeSessionDb.Summary> objects) {
          super(context, R.layout.lt_active_trade_session_row, objects);
          _context = context;
          // Get the time at last midnight
@@ -194,15 +181,13 @@ public class ActiveTradesFragment extends Fragment {
             LayoutInflater vi = (LayoutInflater) _context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             v = Preconditions.checkNotNull(vi.inflate(R.layout.lt_active_trade_session_row, null));
          }
-         TradeSession o = getItem(position);
+         TradeSessionDb.Summary o = getItem(position);
 
          // Dot
-         boolean viewed = _mbwManager.getLocalTraderManager().isViewed(o);
-         v.findViewById(R.id.ivDot).setVisibility(viewed ? View.INVISIBLE : View.VISIBLE);
+         v.findViewById(R.id.ivDot).setVisibility(o.viewed ? View.INVISIBLE : View.VISIBLE);
 
          // Peer
-         String peerName = o.isOwner ? o.peerName : o.ownerName;
-         ((TextView) v.findViewById(R.id.tvPeer)).setText(peerName);
+         ((TextView) v.findViewById(R.id.tvPeer)).setText(o.peerName);
 
          // Fiat
          String fiat = String.format(_locale, "%d %s", o.fiatTraded, o.currency);
@@ -219,10 +204,10 @@ public class ActiveTradesFragment extends Fragment {
          String summary;
          if (o.isBuyer) {
             summary = getResources().getString(R.string.lt_buying_details,
-                  _mbwManager.getBtcValueString(o.satoshisForBuyer));
+                  _mbwManager.getBtcValueString(o.satoshis));
          } else {
             summary = getResources().getString(R.string.lt_selling_details,
-                  _mbwManager.getBtcValueString(o.satoshisFromSeller));
+                  _mbwManager.getBtcValueString(o.satoshis));
          }
          ((TextView) v.findViewById(R.id.tvSummary)).setText(summary);
 
@@ -59,7 +59,6 @@ import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.Transaction;
 import com.mrd.bitlib.util.HexUtils;
 import com.mycelium.lt.ChatMessageEncryptionKey;
-import com.mycelium.lt.ChatMessageEncryptionKey.InvalidChatMessage;
 import com.mycelium.lt.api.model.ActionState;
 import com.mycelium.lt.api.model.ChatEntry;
 import com.mycelium.lt.api.model.TradeSession;
@@ -68,6 +67,7 @@ import com.mycelium.wallet.MbwManager;
 import com.mycelium.wallet.R;
 import com.mycelium.wallet.Utils;
 import com.mycelium.wallet.activity.send.SignTransactionActivity;
+import com.mycelium.wallet.lt.ChatMessageCache;
 import com.mycelium.wallet.lt.LocalTraderEventSubscriber;
 import com.mycelium.wallet.lt.LocalTraderManager;
 import com.mycelium.wallet.lt.TradeSessionChangeMonitor;
@@ -123,6 +123,7 @@ public class TradeActivity extends Activity {
    private boolean _dingOnUpdates;
    private boolean _didShowInsufficientFunds;
    public ChatMessageEncryptionKey _key;
+   private ChatMessageCache _chatMessageCache;
 
    @Override
    public void onCreate(Bundle savedInstanceState) {
@@ -224,6 +225,13 @@ public class TradeActivity extends Activity {
       return _key;
    }
 
+   private ChatMessageCache getChatMessageCache() {
+      if (_chatMessageCache == null) {
+         _chatMessageCache = _ltManager.getChatMessageCache(_tradeSession.id, getChatMessageEncryptionKey());
+      }
+      return _chatMessageCache;
+   }
+
    OnClickListener refreshClickListener = new OnClickListener() {
 
       @Override
@@ -584,6 +592,8 @@ public class TradeActivity extends Activity {
       // add a scary warning to the top of the chat
       ChatEntry scaryWarning = new ChatEntry(0L, ChatEntry.TYPE_EVENT, ChatEntry.EVENT_SUBTYPE_CASH_ONLY_WARNING, "");
       _chatAdapter.add(scaryWarning);
+      // decrypt new messages in one go, the adapter takes them from the cache
+      getChatMessageCache().addAll(tradeSession.chatEntries);
       // add all the persisted messages
       for (ChatEntry chatEntry : tradeSession.chatEntries) {
          _chatAdapter.add(chatEntry);
@@ -700,6 +710,7 @@ public class TradeActivity extends Activity {
          // Message text and color
          TextView tvMessage = (TextView) v.findViewById(R.id.tvMessage);
          String text;
+         String plaintext;
          int color;
          // Message Color
          switch (o.type) {
@@ -708,21 +719,21 @@ public class TradeActivity extends Activity {
                color = _eventBackgroundColor;
                break;
             case ChatEntry.TYPE_OWNER_CHAT:
-               try {
-                  text =_tradeSession.ownerName + ": "
-                        + getChatMessageEncryptionKey().decryptAndCheckChatMessage(o.message);
+               plaintext = getChatMessageCache().get(o);
+               if (plaintext != null) {
+                  text = _tradeSession.ownerName + ": " + plaintext;
                   color = _ownerMessageBackgroundColor;
-               } catch (InvalidChatMessage e) {
+               } else {
                   text = getString(R.string.lt_invalid_chat_message, _tradeSession.ownerName);
                   color = _invalidMessageBackgroundColor;
                }
                break;
             case ChatEntry.TYPE_PEER_CHAT:
-               try {
-                  text = _tradeSession.peerName + ": " +
-                          getChatMessageEncryptionKey().decryptAndCheckChatMessage(o.message);
+               plaintext = getChatMessageCache().get(o);
+               if (plaintext != null) {
+                  text = _tradeSession.peerName + ": " + plaintext;
                   color = _peerMessageBackgroundColor;
-               } catch (InvalidChatMessage e) {
+               } else {
                   text = getString(R.string.lt_invalid_chat_message, _tradeSession.peerName);
                   color = _invalidMessageBackgroundColor;
                }
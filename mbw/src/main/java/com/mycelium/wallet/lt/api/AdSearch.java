@@ -61,6 +61,11 @@ public class AdSearch extends Request {
       this.type = type;
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
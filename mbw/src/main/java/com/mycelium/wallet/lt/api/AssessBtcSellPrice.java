@@ -54,6 +54,11 @@ public class AssessBtcSellPrice extends Request {
       this.params = params;
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
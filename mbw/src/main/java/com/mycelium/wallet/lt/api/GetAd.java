@@ -34,6 +34,7 @@
 
 package com.mycelium.wallet.lt.api;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
 
@@ -53,6 +54,16 @@ public class GetAd extends Request {
       _adId = adId;
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return Arrays.asList(GetAd.class, _adId);
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
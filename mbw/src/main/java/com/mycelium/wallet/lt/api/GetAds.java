@@ -50,6 +50,16 @@ public class GetAds extends Request {
       super(true, true);
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return GetAds.class;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
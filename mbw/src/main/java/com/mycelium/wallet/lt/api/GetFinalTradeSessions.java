@@ -34,6 +34,7 @@
 
 package com.mycelium.wallet.lt.api;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
@@ -56,6 +57,16 @@ public class GetFinalTradeSessions extends Request {
       _offset = offset;
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return Arrays.asList(GetFinalTradeSessions.class, _limit, _offset);
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -51,6 +51,16 @@ public class GetOpenTradeSessions extends Request {
       super(true, true);
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return GetOpenTradeSessions.class;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
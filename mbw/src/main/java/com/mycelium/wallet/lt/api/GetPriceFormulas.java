@@ -51,6 +51,16 @@ public class GetPriceFormulas extends Request {
       super(true, false);
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return GetPriceFormulas.class;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -34,6 +34,7 @@
 
 package com.mycelium.wallet.lt.api;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
 
@@ -55,6 +56,16 @@ public class GetPublicTraderInfo extends Request {
       _traderIdentity = Preconditions.checkNotNull(traderIdentity);
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return Arrays.asList(GetPublicTraderInfo.class, _traderIdentity);
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -34,6 +34,7 @@
 
 package com.mycelium.wallet.lt.api;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
 
@@ -53,6 +54,16 @@ public class GetTradeSession extends Request {
       _tradeSessionId = tradeSessionId;
    }
 
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object getDeduplicationKey() {
+      return Arrays.asList(GetTradeSession.class, _tradeSessionId);
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -61,6 +61,24 @@ public abstract class Request implements Serializable{
       return _requiresLogin;
    }
 
+   /**
+    * Requests that only fetch data may run concurrently with other requests. Requests that change something on the
+    * server run one at a time in the order they were made.
+    */
+   public boolean isReadOnly() {
+      return false;
+   }
+
+   /**
+    * A read-only request made while an equal one is in flight is not sent again, subscribers are notified once with
+    * the result of the request in flight.
+    *
+    * @return a key that is equal for identical requests, or null if the request is never shared
+    */
+   public Object getDeduplicationKey() {
+      return null;
+   }
+
    public abstract void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers);
 
@@ -8,6 +8,7 @@ import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.*;
 import com.mycelium.paymentrequest.PaymentRequestException;
 import com.mycelium.paymentrequest.PaymentRequestInformation;
+import com.mycelium.paymentrequest.PkiValidator;
 import com.mycelium.wallet.BitcoinUri;
 import com.squareup.okhttp.*;
 import com.squareup.otto.Bus;
@@ -24,6 +25,10 @@ public class PaymentRequestHandler {
    public static final String MIME_PAYMENTREQUEST = "application/bitcoin-paymentrequest";
    public static final String MIME_ACK = "application/bitcoin-paymentack";
 
+   // shared by all handlers, so known certificate chains are not validated again. The validator reads the trusted CAs
+   // again when CAs are added to or removed from the Android CA store
+   private static PkiValidator pkiValidator;
+
    private final Bus eventBus;
    private final NetworkParameters networkParameters;
    private PaymentRequestInformation paymentRequestInformation;
@@ -71,7 +76,7 @@ public class PaymentRequestHandler {
          eventBus.post(paymentRequestInformation);
       } else {
          try {
-            paymentRequestInformation = PaymentRequestInformation.fromRawPaymentRequest(rawPr, getAndroidKeyStore(), networkParameters);
+            paymentRequestInformation = PaymentRequestInformation.fromRawPaymentRequest(rawPr, getPkiValidator(), networkParameters);
             eventBus.post(paymentRequestInformation);
          } catch (PaymentRequestException ex) {
             eventBus.post(ex);
@@ -147,7 +152,7 @@ public class PaymentRequestHandler {
                throw new PaymentRequestException("server responded with wrong mime-type");
             }
             byte[] data = response.body().bytes();
-            return PaymentRequestInformation.fromRawPaymentRequest(data, getAndroidKeyStore(), networkParameters);
+            return PaymentRequestInformation.fromRawPaymentRequest(data, getPkiValidator(), networkParameters);
          } else {
             throw new PaymentRequestException("could not fetch the payment request from " + url.toString());
          }
@@ -171,6 +176,13 @@ public class PaymentRequestHandler {
    }
 
 
+   private static synchronized PkiValidator getPkiValidator() {
+      if (pkiValidator == null) {
+         pkiValidator = new PkiValidator(getAndroidKeyStore());
+      }
+      return pkiValidator;
+   }
+
    private static KeyStore getAndroidKeyStore() {
       KeyStore trustStore;
 
@@ -44,23 +44,28 @@ import android.os.Build;
 import android.util.Log;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.mycelium.wallet.QrCodeCache;
 import com.mycelium.wallet.R;
-import crl.android.pdfwriter.PDFWriter;
+import crl.android.pdfwriter.PDFStreamWriter;
 import crl.android.pdfwriter.PaperSize;
 import crl.android.pdfwriter.StandardFonts;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ExportDistiller {
 
@@ -131,21 +136,109 @@ public class ExportDistiller {
 
    }
 
-   public static String exportPrivateKeysToFile(Context context, ExportPdfParameters params,
-                                                ExportProgressTracker progressTracker, String filePath) throws IOException {
-      // Write document to file
-      String result = exportPrivateKeys(context, params, progressTracker);
-      try {
+   /**
+    * Renders the QR codes ahead of the page that is being written, in record order, on all cores. Only a window of
+    * matrices is held at a time, so memory does not grow with the number of records.
+    */
+   private static class QrCodePipeline {
+      private final ExecutorService _executor;
+      private final Iterator<Callable<BitMatrix>> _pending;
+      private final Queue<Future<BitMatrix>> _window = new LinkedList<Future<BitMatrix>>();
+      private final int _windowSize;
+
+      private QrCodePipeline(List<Callable<BitMatrix>> renderers) {
+         int threads = Runtime.getRuntime().availableProcessors();
+         _executor = Executors.newFixedThreadPool(threads);
+         _pending = renderers.iterator();
+         _windowSize = threads * 2;
+         fill();
+      }
+
+      private void fill() {
+         while (_window.size() < _windowSize && _pending.hasNext()) {
+            _window.add(_executor.submit(_pending.next()));
+         }
+      }
+
+      /**
+       * @return the matrix of the next QR code in the order the renderers were given
+       */
+      private BitMatrix next() {
+         Future<BitMatrix> future = Preconditions.checkNotNull(_window.poll());
+         fill();
+         try {
+            return future.get();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+         } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+         }
+      }
+
+      private void shutdown() {
+         _executor.shutdownNow();
+      }
+   }
+
+   private static Callable<BitMatrix> qrCodeRenderer(final String url, final boolean cacheable) {
+      return new Callable<BitMatrix>() {
+         @Override
+         public BitMatrix call() {
+            return MyWriter.getQRCodeMatrix(url, cacheable);
+         }
+      };
+   }
+
+   /**
+    * QR codes in the order the records are written: master seed, then address and key of every active and archived
+    * record
+    */
+   private static List<Callable<BitMatrix>> getQrCodeRenderers(ExportPdfParameters params) {
+      List<Callable<BitMatrix>> renderers = new ArrayList<Callable<BitMatrix>>();
+      if (params.masterSeed.isPresent()) {
+         renderers.add(qrCodeRenderer(params.masterSeed.get().encryptedMasterSeed, false));
+      }
+      List<ExportEntry> records = new ArrayList<ExportEntry>(params.getActive());
+      records.addAll(params.getArchived());
+      for (ExportEntry entry : records) {
+         renderers.add(qrCodeRenderer("bitcoin:" + entry.address, true));
+         if (entry.encryptedKey != null) {
+            renderers.add(qrCodeRenderer(entry.encryptedKey, false));
+         }
+      }
+      return renderers;
+   }
 
-         FileOutputStream stream;
-         stream = getOutStream(context, filePath);
-         stream.write(result.getBytes("UTF-8"));
-         stream.close();
+   public static void exportPrivateKeysToFile(Context context, ExportPdfParameters params,
+                                              ExportProgressTracker progressTracker, String filePath) throws IOException {
+      // Write document to a temporary file while it is generated, and only put it in place once it is complete.
+      // A failed export must not leave a partial document behind that looks like a backup
+      String tempPath = filePath + ".tmp";
+      boolean completed = false;
+      try {
+         exportPrivateKeys(context, params, progressTracker, getOutStream(context, tempPath));
+         if (!getFile(context, tempPath).renameTo(getFile(context, filePath))) {
+            throw new IOException("Unable to rename " + tempPath + " to " + filePath);
+         }
+         completed = true;
       } catch (IOException e) {
          Log.e("ExportDistiller", "IOException while writing file", e);
          throw e;
+      } finally {
+         if (!completed) {
+            //noinspection ResultOfMethodCallIgnored
+            getFile(context, tempPath).delete();
+         }
+      }
+   }
+
+   private static File getFile(Context context, String filePath) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+         return context.getFileStreamPath(filePath);
+      } else {
+         return new File(filePath);
       }
-      return result;
    }
 
    private static FileOutputStream getOutStream(Context context, String filePath) throws FileNotFoundException {
@@ -156,12 +249,28 @@ public class ExportDistiller {
       }
    }
 
-   public static String exportPrivateKeys(Context context, ExportPdfParameters params,
-                                          ExportProgressTracker progressTracker) {
+   /**
+    * Write the backup document to a stream. Finished pages are written out right away and the stream is closed
+    * when the document is complete.
+    */
+   public static void exportPrivateKeys(Context context, ExportPdfParameters params,
+                                        ExportProgressTracker progressTracker, OutputStream out) throws IOException {
 
       int pageWidth = PaperSize.EXECUTIVE_WIDTH;
       int pageHeight = PaperSize.EXECUTIVE_HEIGHT;
 
+      MyWriter writer = new MyWriter(new PDFStreamWriter(out, pageWidth, pageHeight), pageWidth, pageHeight, 20, 20, 20, 20);
+      QrCodePipeline qrCodes = new QrCodePipeline(getQrCodeRenderers(params));
+      try {
+         writeDocument(context, params, progressTracker, writer, qrCodes);
+      } finally {
+         qrCodes.shutdown();
+         writer.close();
+      }
+   }
+
+   private static void writeDocument(Context context, ExportPdfParameters params,
+                                     ExportProgressTracker progressTracker, MyWriter writer, QrCodePipeline qrCodes) {
       final String versionName;
       final String appName;
       try {
@@ -183,8 +292,6 @@ public class ExportDistiller {
 
       int totalPages = 1 + ((totalRecords + RECORDS_PR_PAGE - 1) / RECORDS_PR_PAGE) + 1;
 
-      MyWriter writer = new MyWriter(pageWidth, pageHeight, 20, 20, 20, 20);
-
       // Watermark
 
       try {
@@ -311,7 +418,7 @@ public class ExportDistiller {
       if (params.masterSeed.isPresent()) {
          remainingRecords--;
          recordsOnThisPage++;
-         fromTop = addMasterSeed(new OffsetWriter(0F, fromTop, writer), "Master Seed", params.masterSeed.get(), remainingRecords == 0, progressTracker);
+         fromTop = addMasterSeed(new OffsetWriter(0F, fromTop, writer), "Master Seed", params.masterSeed.get(), remainingRecords == 0, progressTracker, qrCodes);
       }
 
       List<ExportEntry> active = params.getActive();
@@ -323,7 +430,7 @@ public class ExportDistiller {
 
          // Add Record
          fromTop += addRecord(new OffsetWriter(0F, fromTop, writer), getTitle(true, i + 1, active.size()),
-               exportEntry, lastRecordOnPage, progressTracker);
+               exportEntry, lastRecordOnPage, progressTracker, qrCodes);
 
          if (lastRecordOnPage) {
             recordsOnThisPage = 0;
@@ -344,7 +451,7 @@ public class ExportDistiller {
 
          // Add Record
          fromTop += addRecord(new OffsetWriter(0F, fromTop, writer), getTitle(false, i + 1, archived.size()),
-               exportEntry, lastRecordOnPage, progressTracker);
+               exportEntry, lastRecordOnPage, progressTracker, qrCodes);
 
          if (lastRecordOnPage) {
             recordsOnThisPage = 0;
@@ -357,7 +464,6 @@ public class ExportDistiller {
       }
 
       addFinalPage(writer, totalPages);
-      return writer.asString();
    }
 
    private static String getTitle(boolean isActive, int entryNum, int totalEntries) {
@@ -368,8 +474,8 @@ public class ExportDistiller {
       writer.addText(16F, 26.4F, 12, "Page " + i + " of " + totalPages);
    }
 
-   private static double addRecord(OffsetWriter writer, String title,
-                                   ExportEntry entry, boolean addEndLine, ExportProgressTracker progressTracker) {
+   private static double addRecord(OffsetWriter writer, String title, ExportEntry entry, boolean addEndLine,
+                                   ExportProgressTracker progressTracker, QrCodePipeline qrCodes) {
       String address = entry.address;
       String encryptedKey = entry.encryptedKey;
       double fromTop = 0;
@@ -410,7 +516,7 @@ public class ExportDistiller {
       // Bitmap addressQr = Utils.getQRCodeBitmap("bitcoin:" + address, 200, 0);
       // writer.addImage(2.9, fromTop, 3.5, 3.5, addressQr);
 
-      writer.addQrCode(2.9, fromTop - 0.25, 3.5, "bitcoin:" + address);
+      writer.addQrCode(2.9, fromTop - 0.25, 3.5, qrCodes.next());
 
       progressTracker.addressCompleted();
       // Encrypted private key QR-code
@@ -418,7 +524,7 @@ public class ExportDistiller {
          // Bitmap keyQr = Utils.getQRCodeBitmap(encryptedKey, 200, 0);
          // writer.addImage(12.5, fromTop, 3.5, 3.5, keyQr);
 
-         writer.addQrCode(12.5, fromTop - 0.5, 4, encryptedKey);
+         writer.addQrCode(12.5, fromTop - 0.5, 4, qrCodes.next());
 
          progressTracker.privateKeyCompleted();
       }
@@ -459,8 +565,8 @@ public class ExportDistiller {
       return fromTop;
    }
 
-   private static double addMasterSeed(OffsetWriter writer, String title,
-                                       ExportEntry entry, boolean addEndLine, ExportProgressTracker progressTracker) {
+   private static double addMasterSeed(OffsetWriter writer, String title, ExportEntry entry, boolean addEndLine,
+                                       ExportProgressTracker progressTracker, QrCodePipeline qrCodes) {
       String encryptedMasterSeed = entry.encryptedMasterSeed;
       double fromTop = 0;
       // Add separator line and key title
@@ -476,7 +582,7 @@ public class ExportDistiller {
       writer.addText(6.8F, fromTop, 13, "Encrypted Master Seed");
       fromTop += 1.5F;
 
-      writer.addQrCode(7.5, fromTop - 0.25, 3.5, encryptedMasterSeed);
+      writer.addQrCode(7.5, fromTop - 0.25, 3.5, qrCodes.next());
 
       progressTracker.masterSeedCompleted();
       // Encrypted private key QR-code
@@ -783,7 +889,7 @@ public class ExportDistiller {
    }
 
    private static class MyWriter {
-      private PDFWriter _writer;
+      private PDFStreamWriter _writer;
       private int _pageWidth;
       private int _pageHeight;
       private int _marginLeft;
@@ -793,10 +899,11 @@ public class ExportDistiller {
       protected int _offX;
       protected int _offY;
 
-      public MyWriter(int pageWidth, int pageHeight, int marginLeft, int marginRight, int marginTop, int marginBottom) {
+      public MyWriter(PDFStreamWriter writer, int pageWidth, int pageHeight, int marginLeft, int marginRight,
+                      int marginTop, int marginBottom) {
          _pageWidth = pageWidth;
          _pageHeight = pageHeight;
-         _writer = new PDFWriter(pageWidth, pageHeight);
+         _writer = writer;
          _marginLeft = marginLeft;
          _marginRight = marginRight;
          _marginTop = marginTop;
@@ -888,8 +995,7 @@ public class ExportDistiller {
                height, bitmap);
       }
 
-      public void addQrCode(double cmX, double cmY, double cmSize, String url) {
-         BitMatrix matrix = getQRCodeMatrix(url);
+      public void addQrCode(double cmX, double cmY, double cmSize, BitMatrix matrix) {
          int xPos = translateCmX(cmX);
          int yPos = translateCmX(cmY);
          int width = matrix.getWidth();
@@ -913,19 +1019,22 @@ public class ExportDistiller {
          return Math.round(value * 10) / 10.0;
       }
 
-      private static BitMatrix getQRCodeMatrix(String url) {
-         Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
-         hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
-         hints.put(EncodeHintType.MARGIN, 0);
+      /**
+       * @param cacheable true for public content like addresses, false for keys, which must not stay in memory
+       */
+      private static BitMatrix getQRCodeMatrix(String url, boolean cacheable) {
          try {
-            return new QRCodeWriter().encode(url, BarcodeFormat.QR_CODE, 0, 0, hints);
+            if (cacheable) {
+               return QrCodeCache.getInstance().encode(url, ErrorCorrectionLevel.M, 0);
+            }
+            return QrCodeCache.encodeUncached(url, ErrorCorrectionLevel.M, 0);
          } catch (final WriterException e) {
             throw new RuntimeException(e);
          }
       }
 
-      public String asString() {
-         return _writer.asString();
+      public void close() throws IOException {
+         _writer.close();
       }
 
       public int translateCmX(double cmX) {
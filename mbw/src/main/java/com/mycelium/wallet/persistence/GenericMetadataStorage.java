@@ -54,6 +54,8 @@ class GenericMetadataStorage {
    private static final String TABLE_TRANSACTION_LABELS = "transactionlabels";
    // the actual and only table
    private static final String TABLE_KEY_VALUE_STORE = "keyValueStore";
+   // stay well below SQLite's limit of 999 host parameters per statement
+   private static final int MAX_KEYS_PER_QUERY = 500;
 
    private class OpenHelper extends SQLiteOpenHelper {
       private static final String DATABASE_NAME = "mds.db";
@@ -167,6 +169,38 @@ class GenericMetadataStorage {
       }
    }
 
+   /**
+    * Look up the values of many keys of one category with one query per {@link #MAX_KEYS_PER_QUERY} keys.
+    * Keys without an entry are not in the result.
+    */
+   Map<String, String> getKeysAndValuesByCategory(final MetadataCategory category, final Collection<String> keys){
+      Map<String, String> entries = new HashMap<String, String>();
+      List<String> keyList = new ArrayList<String>(keys);
+      for (int from = 0; from < keyList.size(); from += MAX_KEYS_PER_QUERY) {
+         List<String> batch = keyList.subList(from, Math.min(from + MAX_KEYS_PER_QUERY, keyList.size()));
+         StringBuilder selection = new StringBuilder(" category = ? and key IN (");
+         String[] args = new String[batch.size() + 1];
+         args[0] = category.category;
+         for (int i = 0; i < batch.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            args[i + 1] = batch.get(i);
+         }
+         selection.append(')');
+         Cursor cursor = null;
+         try {
+            cursor = _db.query(false, TABLE_KEY_VALUE_STORE, new String[]{"key", "value"}, selection.toString(), args, null, null, null, null);
+            while (cursor.moveToNext()) {
+               entries.put(cursor.getString(0), cursor.getString(1));
+            }
+         } finally {
+            if (cursor != null) {
+               cursor.close();
+            }
+         }
+      }
+      return entries;
+   }
+
    Optional<String> getFirstKeyForCategoryValue(final MetadataCategory category, final String value){
       return getFirstKeyForCategoryValue(category.category, value);
    }
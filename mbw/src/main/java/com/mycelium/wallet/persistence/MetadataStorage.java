@@ -95,6 +95,21 @@ public class MetadataStorage extends GenericMetadataStorage {
       return getKeyCategoryValueEntry(TRANSACTION_LABEL_CATEGORY.of(txid.toString()), "");
    }
 
+   /**
+    * Get the labels of many transactions at once. Transactions without a label are not in the map.
+    */
+   public Map<Sha256Hash, String> getLabelsByTransactions(Collection<Sha256Hash> txids) {
+      Map<String, Sha256Hash> keys = new HashMap<String, Sha256Hash>(txids.size());
+      for (Sha256Hash txid : txids) {
+         keys.put(txid.toString(), txid);
+      }
+      Map<Sha256Hash, String> labels = new HashMap<Sha256Hash, String>();
+      for (Map.Entry<String, String> entry : getKeysAndValuesByCategory(TRANSACTION_LABEL_CATEGORY, keys.keySet()).entrySet()) {
+         labels.put(keys.get(entry.getKey()), entry.getValue());
+      }
+      return labels;
+   }
+
    public String getLabelByAccount(UUID account) {
       return getKeyCategoryValueEntry(ACCOUNTLABEL_CATEGORY.of(account.toString()), "");
    }
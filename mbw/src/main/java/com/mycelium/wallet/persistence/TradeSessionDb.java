@@ -43,8 +43,9 @@ import android.util.Log;
 
 import com.mycelium.lt.api.LtApi;
 import com.mycelium.lt.api.model.TradeSession;
+import com.mycelium.lt.api.model.TradeSessionCodec;
 
-import java.io.*;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -60,7 +61,7 @@ public class TradeSessionDb {
    private class OpenHelper extends SQLiteOpenHelper {
 
       private static final String DATABASE_NAME = "tradesession.db";
-      private static final int MINOR_DATABASE_VERSION = 3;
+      private static final int MINOR_DATABASE_VERSION = 4;
       // Automatically increase the database version when the LT API version
       // increases. Also allow for minor database versions which is useful during development.
       private static final int DATABASE_VERSION = LtApi.VERSION << 8 + MINOR_DATABASE_VERSION;
@@ -71,7 +72,12 @@ public class TradeSessionDb {
 
       @Override
       public void onCreate(SQLiteDatabase db) {
-         db.execSQL("CREATE TABLE active (id TEXT PRIMARY KEY, isBuy BOOLEAN, session BLOB);");
+         // The columns before the session are what the trade lists show, so they can be read without decoding
+         // the session
+         db.execSQL("CREATE TABLE active (id TEXT PRIMARY KEY, isBuy BOOLEAN, lastChange INTEGER, peer TEXT, "
+               + "currency TEXT, fiatTraded INTEGER, satoshis INTEGER, status TEXT, session BLOB);");
+         db.execSQL("CREATE INDEX active_lastchange ON active (lastChange);");
+         db.execSQL("CREATE INDEX active_isbuy_lastchange ON active (isBuy, lastChange);");
          db.execSQL("CREATE TABLE IF NOT EXISTS viewtime (id TEXT PRIMARY KEY, viewtime INTEGER);");
       }
 
@@ -82,16 +88,46 @@ public class TradeSessionDb {
       }
    }
 
-   public class Entry {
-      final UUID id;
-      final long time;
-
-      public Entry(UUID id, long time) {
+   /**
+    * What the trade lists show of a session, read from the columns of the session table
+    */
+   public static class Summary {
+      public final UUID id;
+      public final boolean isBuyer;
+      public final long lastChange;
+      /**
+       * The name of the other party of the trade
+       */
+      public final String peerName;
+      public final String currency;
+      public final int fiatTraded;
+      /**
+       * The amount the buyer receives for buy sessions, the amount the seller sends for sell sessions
+       */
+      public final long satoshis;
+      public final String statusText;
+      /**
+       * Whether the session has been viewed since it last changed
+       */
+      public final boolean viewed;
+
+      public Summary(UUID id, boolean isBuyer, long lastChange, String peerName, String currency, int fiatTraded,
+                     long satoshis, String statusText, boolean viewed) {
          this.id = id;
-         this.time = time;
+         this.isBuyer = isBuyer;
+         this.lastChange = lastChange;
+         this.peerName = peerName;
+         this.currency = currency;
+         this.fiatTraded = fiatTraded;
+         this.satoshis = satoshis;
+         this.statusText = statusText;
+         this.viewed = viewed;
       }
    }
 
+   private static final String SUMMARY_QUERY = "SELECT a.id, a.isBuy, a.lastChange, a.peer, a.currency, a.fiatTraded, "
+         + "a.satoshis, a.status, v.viewtime FROM active a LEFT JOIN viewtime v ON a.id = v.id";
+
    private OpenHelper _openHelper;
    private SQLiteDatabase _database;
    private SQLiteStatement _insert;
@@ -106,8 +142,9 @@ public class TradeSessionDb {
    public TradeSessionDb(Context context) {
       _openHelper = new OpenHelper(context);
       _database = _openHelper.getWritableDatabase();
-      _insert = _database.compileStatement("INSERT OR REPLACE INTO active VALUES (?,?,?)");
-      _updateSession = _database.compileStatement("UPDATE active SET session=? WHERE id=?");
+      _insert = _database.compileStatement("INSERT OR REPLACE INTO active VALUES (?,?,?,?,?,?,?,?,?)");
+      _updateSession = _database.compileStatement("UPDATE active SET isBuy=?, lastChange=?, peer=?, currency=?, "
+            + "fiatTraded=?, satoshis=?, status=?, session=? WHERE id=?");
       _delete = _database.compileStatement("DELETE FROM active WHERE id = ?");
       _deleteAll = _database.compileStatement("DELETE FROM active");
       _countTradeSessions = _database.compileStatement("SELECT COUNT(*) FROM active");
@@ -132,7 +169,7 @@ public class TradeSessionDb {
             return null;
          }
          byte[] value = cursor.getBlob(0);
-         return sessionFromBlob(value);
+         return TradeSessionCodec.decode(value);
       } finally {
          if (cursor != null) {
             cursor.close();
@@ -161,6 +198,30 @@ public class TradeSessionDb {
       return (int) _countSellTradeSessions.simpleQueryForLong();
    }
 
+   /**
+    * Get the summaries of all sessions, the most recently changed first. This does not decode any session.
+    */
+   public List<Summary> getSummaries() {
+      Cursor cursor = null;
+      try {
+         cursor = _database.rawQuery(SUMMARY_QUERY + " ORDER BY a.lastChange DESC", null);
+         List<Summary> summaries = new ArrayList<Summary>(cursor.getCount());
+         while (cursor.moveToNext()) {
+            long lastChange = cursor.getLong(2);
+            // without a view time the session has never been viewed
+            boolean viewed = !cursor.isNull(8) && cursor.getLong(8) >= lastChange;
+            summaries.add(new Summary(UUID.fromString(cursor.getString(0)), cursor.getInt(1) == 1, lastChange,
+                  cursor.getString(3), cursor.getString(4), cursor.getInt(5), cursor.getLong(6), cursor.getString(7),
+                  viewed));
+         }
+         return summaries;
+      } finally {
+         if (cursor != null) {
+            cursor.close();
+         }
+      }
+   }
+
    /**
     * Get all active sessions from the database
     */
@@ -170,7 +231,7 @@ public class TradeSessionDb {
          List<TradeSession> entries = new LinkedList<TradeSession>();
          cursor = _database.query(TABLE_ACTIVE, new String[]{"session"}, null, null, null, null, null);
          while (cursor.moveToNext()) {
-            TradeSession session = sessionFromBlob(cursor.getBlob(0));
+            TradeSession session = TradeSessionCodec.decode(cursor.getBlob(0));
             if (session == null) {
                // Ignore anything we cannot parse... happens if the
                // serialization changes
@@ -196,7 +257,7 @@ public class TradeSessionDb {
          cursor = _database.query(TABLE_ACTIVE, new String[]{"session"}, "isBuy=?", new String[]{"1"}, null,
                null, null);
          while (cursor.moveToNext()) {
-            TradeSession session = sessionFromBlob(cursor.getBlob(0));
+            TradeSession session = TradeSessionCodec.decode(cursor.getBlob(0));
             if (session == null) {
                // Ignore anything we cannot parse... happens if the
                // serialization changes
@@ -219,7 +280,7 @@ public class TradeSessionDb {
          cursor = _database.query(TABLE_ACTIVE, new String[]{"session"}, "isBuy=?", new String[]{"0"}, null,
                null, null);
          while (cursor.moveToNext()) {
-            TradeSession session = sessionFromBlob(cursor.getBlob(0));
+            TradeSession session = TradeSessionCodec.decode(cursor.getBlob(0));
             if (session == null) {
                // Ignore anything we cannot parse... happens if the
                // serialization changes
@@ -240,11 +301,29 @@ public class TradeSessionDb {
     */
    public synchronized void insert(TradeSession session) {
       _insert.bindString(1, session.id.toString());
-      _insert.bindLong(2, session.isBuyer ? 1 : 0);
-      _insert.bindBlob(3, sessionToBlob(session));
+      bindSummaryColumns(_insert, 2, session);
+      _insert.bindBlob(9, TradeSessionCodec.encode(session));
       _insert.executeInsert();
    }
 
+   private static void bindSummaryColumns(SQLiteStatement statement, int index, TradeSession session) {
+      statement.bindLong(index, session.isBuyer ? 1 : 0);
+      statement.bindLong(index + 1, session.lastChange);
+      bindStringOrNull(statement, index + 2, session.isOwner ? session.peerName : session.ownerName);
+      bindStringOrNull(statement, index + 3, session.currency);
+      statement.bindLong(index + 4, session.fiatTraded);
+      statement.bindLong(index + 5, session.isBuyer ? session.satoshisForBuyer : session.satoshisFromSeller);
+      bindStringOrNull(statement, index + 6, session.statusText);
+   }
+
+   private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+      if (value == null) {
+         statement.bindNull(index);
+      } else {
+         statement.bindString(index, value);
+      }
+   }
+
    /**
     * Mark this session as viewed at its current lastChange timestamp
     */
@@ -278,8 +357,9 @@ public class TradeSessionDb {
     * changing its viewed status.
     */
    public synchronized void update(TradeSession session) {
-      _updateSession.bindBlob(1, sessionToBlob(session));
-      _updateSession.bindString(2, session.id.toString());
+      bindSummaryColumns(_updateSession, 1, session);
+      _updateSession.bindBlob(8, TradeSessionCodec.encode(session));
+      _updateSession.bindString(9, session.id.toString());
       _updateSession.execute();
    }
 
@@ -308,39 +388,4 @@ public class TradeSessionDb {
       }
    }
 
-   private static byte[] sessionToBlob(TradeSession session) {
-      try {
-         ByteArrayOutputStream bout = new ByteArrayOutputStream(1024);
-         ObjectOutputStream out = new ObjectOutputStream(bout);
-         out.writeObject(session);
-         out.close();
-         byte[] result = bout.toByteArray();
-         bout.close();
-         return result;
-      } catch (IOException e) {
-         throw new RuntimeException(e);
-      }
-   }
-
-   private static TradeSession sessionFromBlob(byte[] blob) {
-      try {
-         ByteArrayInputStream bin = new ByteArrayInputStream(blob);
-         ObjectInputStream in = new ObjectInputStream(bin);
-         TradeSession session;
-         try {
-            // readObject might be dangerous if blob comes from an untrusted source
-            session = (TradeSession) in.readObject();
-         } catch (ClassNotFoundException e) {
-            return null;
-         } catch (InvalidClassException invalid) {
-            return null;
-         }
-         in.close();
-         bin.close();
-         return session;
-      } catch (IOException e) {
-         throw new RuntimeException(e);
-      }
-   }
-
 }
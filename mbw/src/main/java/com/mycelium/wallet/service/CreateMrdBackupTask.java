@@ -161,6 +161,7 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
          try {
             encryptionParameters = EncryptionParameters.generate(_kdfParameters);
          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
          }
 
@@ -177,13 +178,13 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
              encryptedMasterSeed = Optional.of(new ExportEntry(null, null, e, null));
          }
 
-         // Encrypt active
+         // Encrypt active and archived one after the other. The key stretching above already runs the scrypt lanes
+         // on all cores, and encrypting an entry with the stretched key is cheap
          List<ExportEntry> encryptedActiveKeys = new LinkedList<ExportEntry>();
          for (EntryToExport e : _active) {
             encryptedActiveKeys.add(createExportEntry(e, encryptionParameters, _network));
             _encryptionProgress += increment;
          }
-         // Encrypt archived
          List<ExportEntry> encryptedArchivedKeys = new LinkedList<ExportEntry>();
          for (EntryToExport e : _archived) {
             encryptedArchivedKeys.add(createExportEntry(e, encryptionParameters, _network));
@@ -426,7 +426,10 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
    private static void createAccountBackingTables(UUID id, SQLiteDatabase db) {
       String tableSuffix = uuidToTableSuffix(id);
       db.execSQL("CREATE TABLE IF NOT EXISTS " + getUtxoTableName(tableSuffix)
-            + " (outpoint BLOB PRIMARY KEY, height INTEGER, value INTEGER, isCoinbase INTEGER, script BLOB);");
+            + " (outpoint BLOB PRIMARY KEY, height INTEGER, value INTEGER, isCoinbase INTEGER, script BLOB, address BLOB);");
+      // index names are global in sqlite, so every account needs its own
+      db.execSQL("CREATE INDEX IF NOT EXISTS utxoAddressIndex_" + tableSuffix + " ON " + getUtxoTableName(tableSuffix)
+            + " (address);");
       db.execSQL("CREATE TABLE IF NOT EXISTS " + getPtxoTableName(tableSuffix)
             + " (outpoint BLOB PRIMARY KEY, height INTEGER, value INTEGER, isCoinbase INTEGER, script BLOB);");
       db.execSQL("CREATE TABLE IF NOT EXISTS " + getTxTableName(tableSuffix)
@@ -438,6 +441,35 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             + " (txid BLOB, input BLOB, PRIMARY KEY (txid, input) );");
    }
 
+   /**
+    * Add the address column to the utxo table of an account, and fill it for the outputs we already have
+    */
+   private static void addUtxoAddressColumn(UUID id, SQLiteDatabase db) {
+      String utxoTableName = getUtxoTableName(uuidToTableSuffix(id));
+      Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?",
+            new String[]{utxoTableName});
+      try {
+         if (!cursor.moveToNext()) {
+            // will get created with the column
+            return;
+         }
+      } finally {
+         cursor.close();
+      }
+      db.execSQL("ALTER TABLE " + utxoTableName + " ADD COLUMN address BLOB");
+      SQLiteStatement updateAddress = db.compileStatement("UPDATE " + utxoTableName + " SET address = ? WHERE outpoint = ?");
+      cursor = db.rawQuery("SELECT outpoint, script FROM " + utxoTableName, new String[]{});
+      try {
+         while (cursor.moveToNext()) {
+            updateAddress.bindBlob(1, ScriptOutput.getIndexAddressHash(cursor.getBlob(1)));
+            updateAddress.bindBlob(2, cursor.getBlob(0));
+            updateAddress.execute();
+         }
+      } finally {
+         cursor.close();
+      }
+   }
+
    private static String uuidToTableSuffix(UUID uuid) {
       return HexUtils.toHex(uuidToBytes(uuid));
    }
@@ -469,6 +501,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       private final String txTableName;
       private final String outTxTableName;
       private final String txRefersParentTxTableName;
+      private static final int MAX_ADDRESSES_PER_QUERY = 500;
       private final SQLiteStatement _insertOrReplaceUtxo;
       private final SQLiteStatement _deleteUtxo;
       private final SQLiteStatement _insertOrReplacePtxo;
@@ -489,7 +522,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          txTableName = getTxTableName(tableSuffix);
          outTxTableName = getOutgoingTxTableName(tableSuffix);
          txRefersParentTxTableName = getTxRefersPtxoTableName(tableSuffix);
-         _insertOrReplaceUtxo = db.compileStatement("INSERT OR REPLACE INTO " + utxoTableName + " VALUES (?,?,?,?,?)");
+         _insertOrReplaceUtxo = db.compileStatement("INSERT OR REPLACE INTO " + utxoTableName + " VALUES (?,?,?,?,?,?)");
          _deleteUtxo = db.compileStatement("DELETE FROM " + utxoTableName + " WHERE outpoint = ?");
          _insertOrReplacePtxo = db.compileStatement("INSERT OR REPLACE INTO " + ptxoTableName + " VALUES (?,?,?,?,?)");
          _insertOrReplaceTx = db.compileStatement("INSERT OR REPLACE INTO " + txTableName + " VALUES (?,?,?,?)");
@@ -540,9 +573,42 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          _insertOrReplaceUtxo.bindLong(3, output.value);
          _insertOrReplaceUtxo.bindLong(4, output.isCoinBase ? 1 : 0);
          _insertOrReplaceUtxo.bindBlob(5, output.script);
+         _insertOrReplaceUtxo.bindBlob(6, ScriptOutput.getIndexAddressHash(output.script));
          _insertOrReplaceUtxo.executeInsert();
       }
 
+      @Override
+      public Collection<TransactionOutputEx> getUnspentOutputs(Collection<Address> addresses) {
+         List<TransactionOutputEx> list = new LinkedList<>();
+         List<Address> all = new ArrayList<>(addresses);
+         // stay well below the limit of bound parameters per statement
+         for (int start = 0; start < all.size(); start += MAX_ADDRESSES_PER_QUERY) {
+            List<Address> batch = all.subList(start, Math.min(all.size(), start + MAX_ADDRESSES_PER_QUERY));
+            Cursor cursor = null;
+            try {
+               SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
+               StringBuilder selection = new StringBuilder("address IN (");
+               for (int i = 0; i < batch.size(); i++) {
+                  selection.append(i == 0 ? "?" : ",?");
+                  blobQuery.bindBlob(i + 1, batch.get(i).getTypeSpecificBytes());
+               }
+               selection.append(")");
+               cursor = blobQuery.query(false, utxoTableName, new String[]{"outpoint", "height", "value", "isCoinbase",
+                     "script"}, selection.toString(), null, null, null, null, null);
+               while (cursor.moveToNext()) {
+                  TransactionOutputEx tex = new TransactionOutputEx(SQLiteQueryWithBlobs.outPointFromBytes(cursor
+                        .getBlob(0)), cursor.getInt(1), cursor.getLong(2), cursor.getBlob(4), cursor.getInt(3) != 0);
+                  list.add(tex);
+               }
+            } finally {
+               if (cursor != null) {
+                  cursor.close();
+               }
+            }
+         }
+         return list;
+      }
+
       @Override
       public Collection<TransactionOutputEx> getAllUnspentOutputs() {
          Cursor cursor = null;
@@ -892,7 +958,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
    private class OpenHelper extends SQLiteOpenHelper {
       private static final String DATABASE_NAME = "walletbacking.db";
-      private static final int DATABASE_VERSION = 3;
+      private static final int DATABASE_VERSION = 4;
 
       OpenHelper(Context context) {
          super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -929,6 +995,12 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             db.execSQL("ALTER TABLE bip44 ADD COLUMN accountType INTEGER DEFAULT 0");
             db.execSQL("ALTER TABLE bip44 ADD COLUMN accountSubId INTEGER DEFAULT 0");
          }
+         if (oldVersion < 4) {
+            // store the address of each utxo, so we can look them up by address instead of parsing all scripts
+            for (UUID account : getAccountIds(db)) {
+               addUtxoAddressColumn(account, db);
+            }
+         }
       }
    }
 }
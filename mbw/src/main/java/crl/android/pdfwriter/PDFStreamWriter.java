@@ -0,0 +1,237 @@
+//
+//  Android PDF Writer
+//  http://coderesearchlabs.com/androidpdfwriter
+//
+//  by Javier Santo Domingo (j-a-s-d@coderesearchlabs.com)
+//
+
+package crl.android.pdfwriter;
+
+import android.graphics.Bitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes a PDF document page by page. Every page is written to the output as soon as the next page is started, so
+ * only the current page is held in memory. The cross reference table is built from the byte offsets
+ * of the objects while they are written. Fonts are written once per document and shared by all pages.
+ * <p>
+ * Like a PrintWriter the drawing methods do not throw, the first error writing to the output is thrown by
+ * {@link #close()}.
+ */
+public class PDFStreamWriter {
+
+	private static final String ENCODING = "ISO-8859-1";
+	private static final int CATALOG = 1;
+	private static final int PAGES = 2;
+
+	private final OutputStream mOut;
+	private final int mPageWidth;
+	private final int mPageHeight;
+	private long mPosition;
+	// byte offset of every object, the object number is the index + 1
+	private final ArrayList<Long> mOffsets = new ArrayList<Long>();
+	private final ArrayList<Integer> mKids = new ArrayList<Integer>();
+	private final Map<String, Integer> mFonts = new HashMap<String, Integer>();
+	private StringBuilder mPageContent;
+	private Map<String, Integer> mPageFonts;
+	private Map<String, Integer> mPageImages;
+	private String mCurrentFont;
+	private IOException mError;
+
+	public PDFStreamWriter(OutputStream out, int pageWidth, int pageHeight) {
+		mOut = new BufferedOutputStream(out);
+		mPageWidth = pageWidth;
+		mPageHeight = pageHeight;
+		// catalog and page tree are written last, but they get the first object numbers
+		mOffsets.add(null);
+		mOffsets.add(null);
+		write("%PDF-1.4\n%");
+		write(new byte[]{-1, -2, -3, -4});
+		write("\n");
+		newPage();
+	}
+
+	public void newPage() {
+		finishPage();
+		mPageContent = new StringBuilder();
+		mPageFonts = new LinkedHashMap<String, Integer>();
+		mPageImages = new LinkedHashMap<String, Integer>();
+		setFont(StandardFonts.SUBTYPE, StandardFonts.TIMES_ROMAN, StandardFonts.WIN_ANSI_ENCODING);
+	}
+
+	public int getPageCount() {
+		return mKids.size() + 1;
+	}
+
+	public void setFont(String subType, String baseFont) {
+		setFont("  /Type /Font\n  /Subtype /" + subType + "\n  /BaseFont /" + baseFont + "\n");
+	}
+
+	public void setFont(String subType, String baseFont, String encoding) {
+		setFont("  /Type /Font\n  /Subtype /" + subType + "\n  /BaseFont /" + baseFont + "\n  /Encoding /" + encoding + "\n");
+	}
+
+	private void setFont(String dictionary) {
+		Integer number = mFonts.get(dictionary);
+		if (number == null) {
+			number = writeObject("<<\n" + dictionary + ">>\n");
+			mFonts.put(dictionary, number);
+		}
+		mCurrentFont = "/F" + number;
+		mPageFonts.put(mCurrentFont, number);
+	}
+
+	public void addRawContent(String rawContent) {
+		mPageContent.append(rawContent);
+	}
+
+	public void addText(int leftPosition, int topPositionFromBottom, int fontSize, String text) {
+		mPageContent.append("BT\n")
+				.append(Transformation.DEGREES_0_ROTATION).append(' ').append(leftPosition).append(' ').append(topPositionFromBottom).append(" Tm\n")
+				.append(mCurrentFont).append(' ').append(fontSize).append(" Tf\n")
+				.append('(').append(text).append(") Tj\n")
+				.append("ET\n");
+	}
+
+	public void addLine(int fromLeft, int fromBottom, int toLeft, int toBottom) {
+		mPageContent.append(fromLeft).append(' ').append(fromBottom).append(" m\n")
+				.append(toLeft).append(' ').append(toBottom).append(" l\nS\n");
+	}
+
+	public void addRectangle(int fromLeft, int fromBottom, int toLeft, int toBottom) {
+		mPageContent.append(fromLeft).append(' ').append(fromBottom).append(' ')
+				.append(toLeft).append(' ').append(toBottom).append(" re\nS\n");
+	}
+
+	public void addFilledRectangle(double fromLeft, double fromBottom, double toLeft, double toBottom) {
+		mPageContent.append(fromLeft).append(' ').append(fromBottom).append(' ')
+				.append(toLeft).append(' ').append(toBottom).append(" re\nf\n");
+	}
+
+	public void addImageKeepRatio(int fromLeft, int fromBottom, int width, int height, Bitmap bitmap) {
+		final XObjectImage xImage = new XObjectImage(null, bitmap);
+		final float imgRatio = (float) xImage.getWidth() / (float) xImage.getHeight();
+		final float boxRatio = (float) width / (float) height;
+		float ratio;
+		if (imgRatio < boxRatio) {
+			ratio = (float) width / (float) xImage.getWidth();
+		} else {
+			ratio = (float) height / (float) xImage.getHeight();
+		}
+		width = (int) (xImage.getWidth() * ratio);
+		height = (int) (xImage.getHeight() * ratio);
+		int number = writeObject("<<\n" + xImage.getDictionaryContent() + ">>\nstream\n" + xImage.getProcessedImage() + "endstream\n");
+		mPageImages.put(xImage.getName(), number);
+		mPageContent.append("q\n")
+				.append("1 0 0 1 ").append(fromLeft).append(' ').append(fromBottom).append(" cm\n")
+				.append(Transformation.DEGREES_0_ROTATION).append(" 0 0 cm\n")
+				.append(width).append(" 0 0 ").append(height).append(" 0 0 cm\n")
+				.append(xImage.getName()).append(" Do\n")
+				.append("Q\n");
+	}
+
+	/**
+	 * Write the last page, the page tree, the cross reference table and the trailer, and close the output
+	 */
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			mOut.close();
+		}
+		if (mError != null) {
+			throw mError;
+		}
+	}
+
+	private void finish() {
+		finishPage();
+
+		StringBuilder kids = new StringBuilder("[");
+		for (Integer kid : mKids) {
+			kids.append(kid).append(" 0 R ");
+		}
+		kids.append(']');
+		writeObject(PAGES, "<<\n  /Type /Pages\n  /MediaBox [0 0 " + mPageWidth + " " + mPageHeight + " ]\n" +
+				"  /Count " + mKids.size() + "\n  /Kids " + kids + "\n>>\n");
+		writeObject(CATALOG, "<<\n  /Type /Catalog\n  /Pages " + PAGES + " 0 R\n>>\n");
+
+		long xrefOffset = mPosition;
+		StringBuilder xref = new StringBuilder();
+		xref.append("xref\r\n0 ").append(mOffsets.size() + 1).append("\r\n");
+		xref.append(String.format(Locale.US, "%010d %05d f \r\n", 0, 65535));
+		for (Long offset : mOffsets) {
+			xref.append(String.format(Locale.US, "%010d %05d n \r\n", offset, 0));
+		}
+		write(xref.toString());
+		String id = Indentifiers.generateId();
+		write("trailer\n<<\n  /Size " + (mOffsets.size() + 1) + "\n  /Root " + CATALOG + " 0 R\n" +
+				"  /ID [<" + id + "> <" + id + ">]\n>>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+	}
+
+	private void finishPage() {
+		if (mPageContent == null) {
+			return;
+		}
+		String content = mPageContent.toString();
+		mPageContent = null;
+		int contents = writeObject("<<\n  /Length " + content.length() + "\n>>\nstream\n" + content + "endstream\n");
+		StringBuilder page = new StringBuilder("<<\n  /Type /Page\n  /Parent " + PAGES + " 0 R\n  /Resources <<\n");
+		page.append("    /Font <<\n");
+		for (Map.Entry<String, Integer> font : mPageFonts.entrySet()) {
+			page.append("      ").append(font.getKey()).append(' ').append(font.getValue()).append(" 0 R\n");
+		}
+		page.append("    >>\n");
+		if (!mPageImages.isEmpty()) {
+			page.append("    /XObject <<\n");
+			for (Map.Entry<String, Integer> image : mPageImages.entrySet()) {
+				page.append("      ").append(image.getKey()).append(' ').append(image.getValue()).append(" 0 R\n");
+			}
+			page.append("    >>\n");
+		}
+		page.append("  >>\n  /Contents ").append(contents).append(" 0 R\n>>\n");
+		mKids.add(writeObject(page.toString()));
+	}
+
+	private int writeObject(String body) {
+		mOffsets.add(null);
+		int number = mOffsets.size();
+		writeObject(number, body);
+		return number;
+	}
+
+	private void writeObject(int number, String body) {
+		mOffsets.set(number - 1, mPosition);
+		write(number + " 0 obj\n" + body + "endobj\n\n");
+	}
+
+	private void write(String s) {
+		try {
+			write(s.getBytes(ENCODING));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void write(byte[] bytes) {
+		if (mError != null) {
+			return;
+		}
+		try {
+			mOut.write(bytes);
+			mPosition += bytes.length;
+		} catch (IOException e) {
+			mError = e;
+		}
+	}
+
+}
@@ -48,7 +48,12 @@ public class XObjectImage {
 	public void appendToDocument() {
 		mIndirectObject = mDocument.newIndirectObject();
 		mDocument.includeIndirectObject(mIndirectObject);
-		mIndirectObject.addDictionaryContent(
+		mIndirectObject.addDictionaryContent(getDictionaryContent());
+		mIndirectObject.addStreamContent(mProcessedImage);
+	}
+
+	String getDictionaryContent() {
+		return
 			" /Type /XObject\n" +
 			" /Subtype /Image\n" +
 			" /Filter [/ASCII85Decode /FlateDecode]\n" +
@@ -57,11 +62,13 @@ public class XObjectImage {
 			" /BitsPerComponent " + Integer.toString(BITSPERCOMPONENT) + "\n" +
 			" /Interpolate " + Boolean.toString(INTERPOLATION) + "\n" +
 			" /ColorSpace " + DEVICE_RGB + "\n" +
-			" /Length " + mProcessedImage.length() + "\n"
-		);
-		mIndirectObject.addStreamContent(mProcessedImage);
+			" /Length " + mProcessedImage.length() + "\n";
 	}
-	
+
+	String getProcessedImage() {
+		return mProcessedImage;
+	}
+
 	private Bitmap configureBitmap(Bitmap bitmap) {
 		final Bitmap img = bitmap.copy(Config.ARGB_8888, false);
 		if (img != null) {
@@ -0,0 +1,224 @@
+package com.mycelium.wallet.extsig.common;
+
+import com.google.common.base.Optional;
+import com.google.protobuf.ByteString;
+import com.mrd.bitlib.StandardTransactionBuilder.UnsignedTransaction;
+import com.mrd.bitlib.crypto.IPublicKeyRing;
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.PublicKey;
+import com.mrd.bitlib.model.*;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionEx;
+import com.satoshilabs.trezor.protobuf.TrezorMessage;
+import com.satoshilabs.trezor.protobuf.TrezorMessage.TxRequest;
+import com.satoshilabs.trezor.protobuf.TrezorType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SigningSessionTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   private static final int ACCOUNT_INDEX = 2;
+
+   private final Map<Address, PublicKey> keys = new HashMap<Address, PublicKey>();
+   private final Map<Address, Integer[]> addressIds = new HashMap<Address, Integer[]>();
+   private final Map<Sha256Hash, TransactionEx> transactions = new HashMap<Sha256Hash, TransactionEx>();
+   private int lookups;
+
+   private final SigningSession.Account account = new SigningSession.Account() {
+      @Override
+      public TransactionEx getTransaction(Sha256Hash txid) {
+         lookups++;
+         return transactions.get(txid);
+      }
+
+      @Override
+      public Optional<Integer[]> getAddressId(Address address) {
+         return Optional.fromNullable(addressIds.get(address));
+      }
+
+      @Override
+      public int getAccountIndex() {
+         return ACCOUNT_INDEX;
+      }
+   };
+
+   @Test
+   public void testAnswersScriptedDevice() throws Exception {
+      Address first = ownAddress(1, 0, 5);
+      Address second = ownAddress(2, 0, 7);
+      Address change = ownAddress(3, 1, 3);
+      Address foreign = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{9}), true).getPublicKey().toAddress(NETWORK);
+
+      // two outputs of the first previous transaction are spent, one of the second
+      Transaction previous1 = previousTransaction(40, first, second, foreign);
+      Transaction previous2 = previousTransaction(3, foreign, first);
+      List<UnspentTransactionOutput> funding = new ArrayList<UnspentTransactionOutput>();
+      funding.add(unspent(previous1, 0));
+      funding.add(unspent(previous2, 1));
+      funding.add(unspent(previous1, 1));
+      List<TransactionOutput> outputs = Arrays.asList(
+            new TransactionOutput(100000, new ScriptOutputStandard(foreign.getTypeSpecificBytes())),
+            new TransactionOutput(20000, new ScriptOutputStandard(change.getTypeSpecificBytes())));
+      UnsignedTransaction unsigned = new UnsignedTransaction(outputs, funding, new IPublicKeyRing() {
+         @Override
+         public PublicKey findPublicKeyByAddress(Address address) {
+            return keys.get(address);
+         }
+      }, NETWORK);
+
+      SigningSession session = new SigningSession(unsigned, NETWORK, account);
+      assertEquals(2, session.getPreviousTransactionCount());
+      assertEquals(2, lookups);
+
+      new ScriptedDevice(session).sign(unsigned);
+      // everything was answered from the session
+      assertEquals(2, lookups);
+   }
+
+   @Test
+   public void testUnknownRequests() throws Exception {
+      Address first = ownAddress(1, 0, 0);
+      Transaction previous = previousTransaction(1, first);
+      UnsignedTransaction unsigned = new UnsignedTransaction(
+            Arrays.asList(new TransactionOutput(1000, new ScriptOutputStandard(first.getTypeSpecificBytes()))),
+            Arrays.asList(unspent(previous, 0)), new IPublicKeyRing() {
+         @Override
+         public PublicKey findPublicKeyByAddress(Address address) {
+            return keys.get(address);
+         }
+      }, NETWORK);
+      SigningSession session = new SigningSession(unsigned, NETWORK, account);
+
+      assertNull(session.answer(request(TrezorType.RequestType.TXINPUT, null, 1)));
+      assertNull(session.answer(request(TrezorType.RequestType.TXOUTPUT, previous.getHash(), 5)));
+      assertNull(session.answer(request(TrezorType.RequestType.TXMETA, Sha256Hash.ZERO_HASH, 0)));
+      assertTrue(session.answer(request(TrezorType.RequestType.TXMETA, previous.getHash(), 0)).getTx().hasInputsCnt());
+   }
+
+   private Address ownAddress(int seed, int chain, int index) {
+      PublicKey key = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{(byte) seed}), true).getPublicKey();
+      Address address = key.toAddress(NETWORK);
+      keys.put(address, key);
+      addressIds.put(address, new Integer[]{chain, index});
+      return address;
+   }
+
+   private Transaction previousTransaction(int inputs, Address... to) {
+      TransactionInput[] txInputs = new TransactionInput[inputs];
+      for (int i = 0; i < inputs; i++) {
+         OutPoint outPoint = new OutPoint(HashUtils.sha256(new byte[]{(byte) i, (byte) inputs}), i);
+         txInputs[i] = new TransactionInput(outPoint, ScriptInput.fromOutputScript(
+               new ScriptOutputStandard(to[0].getTypeSpecificBytes())), i);
+      }
+      TransactionOutput[] txOutputs = new TransactionOutput[to.length];
+      for (int i = 0; i < to.length; i++) {
+         txOutputs[i] = new TransactionOutput(50000 + i, new ScriptOutputStandard(to[i].getTypeSpecificBytes()));
+      }
+      Transaction tx = new Transaction(1, txInputs, txOutputs, inputs);
+      transactions.put(tx.getHash(), TransactionEx.fromUnconfirmedTransaction(tx));
+      return tx;
+   }
+
+   private static UnspentTransactionOutput unspent(Transaction tx, int index) {
+      TransactionOutput output = tx.outputs[index];
+      return new UnspentTransactionOutput(new OutPoint(tx.getHash(), index), -1, output.value, output.script);
+   }
+
+   private static TxRequest request(TrezorType.RequestType type, Sha256Hash txHash, int index) {
+      TrezorType.TxRequestDetailsType.Builder details = TrezorType.TxRequestDetailsType.newBuilder()
+            .setRequestIndex(index);
+      if (txHash != null) {
+         details.setTxHash(ByteString.copyFrom(txHash.getBytes()));
+      }
+      return TxRequest.newBuilder()
+            .setRequestType(type)
+            .setDetails(details)
+            .build();
+   }
+
+   /**
+    * Asks for the parts of the transaction one at a time like a Trezor does, and checks that the previous transactions
+    * it gets have the hashes the inputs spend from
+    */
+   private class ScriptedDevice {
+      private final SigningSession session;
+
+      ScriptedDevice(SigningSession session) {
+         this.session = session;
+      }
+
+      void sign(UnsignedTransaction unsigned) throws Exception {
+         TrezorType.TransactionType meta = ask(TrezorType.RequestType.TXMETA, null, 0);
+         assertEquals(unsigned.getFundingOutputs().length, meta.getInputsCnt());
+         assertEquals(unsigned.getOutputs().length, meta.getOutputsCnt());
+
+         for (int i = 0; i < meta.getInputsCnt(); i++) {
+            TrezorType.TxInputType input = ask(TrezorType.RequestType.TXINPUT, null, i).getInputs(0);
+            OutPoint outPoint = unsigned.getFundingOutputs()[i].outPoint;
+            assertEquals(outPoint.hash, Sha256Hash.of(input.getPrevHash().toByteArray()));
+            assertEquals(outPoint.index, input.getPrevIndex());
+            Integer[] addressId = addressIds.get(unsigned.getFundingOutputs()[i].script.getAddress(NETWORK));
+            assertEquals(addressPath(addressId), input.getAddressNList());
+
+            // a device checks the amount of every input by hashing the whole previous transaction
+            Transaction previous = askPrevious(outPoint.hash);
+            assertEquals(outPoint.hash, previous.getHash());
+            assertEquals(unsigned.getFundingOutputs()[i].value, previous.outputs[outPoint.index].value);
+         }
+
+         for (int i = 0; i < meta.getOutputsCnt(); i++) {
+            TrezorType.TxOutputType output = ask(TrezorType.RequestType.TXOUTPUT, null, i).getOutputs(0);
+            TransactionOutput expected = unsigned.getOutputs()[i];
+            assertEquals(expected.value, output.getAmount());
+            Integer[] addressId = addressIds.get(expected.script.getAddress(NETWORK));
+            if (addressId != null && addressId[0] == 1) {
+               assertEquals(addressPath(addressId), output.getAddressNList());
+               assertFalse(output.hasAddress());
+            } else {
+               assertEquals(expected.script.getAddress(NETWORK).toString(), output.getAddress());
+               assertEquals(0, output.getAddressNCount());
+            }
+         }
+      }
+
+      private Transaction askPrevious(Sha256Hash hash) throws Exception {
+         TrezorType.TransactionType meta = ask(TrezorType.RequestType.TXMETA, hash, 0);
+         TransactionInput[] inputs = new TransactionInput[meta.getInputsCnt()];
+         for (int i = 0; i < inputs.length; i++) {
+            TrezorType.TxInputType input = ask(TrezorType.RequestType.TXINPUT, hash, i).getInputs(0);
+            inputs[i] = new TransactionInput(
+                  new OutPoint(Sha256Hash.of(input.getPrevHash().toByteArray()), input.getPrevIndex()),
+                  ScriptInput.fromScriptBytes(input.getScriptSig().toByteArray()), input.getSequence());
+         }
+         TransactionOutput[] outputs = new TransactionOutput[meta.getOutputsCnt()];
+         for (int i = 0; i < outputs.length; i++) {
+            TrezorType.TxOutputBinType output = ask(TrezorType.RequestType.TXOUTPUT, hash, i).getBinOutputs(0);
+            outputs[i] = new TransactionOutput(output.getAmount(),
+                  ScriptOutput.fromScriptBytes(output.getScriptPubkey().toByteArray()));
+         }
+         return new Transaction(meta.getVersion(), inputs, outputs, meta.getLockTime());
+      }
+
+      private TrezorType.TransactionType ask(TrezorType.RequestType type, Sha256Hash txHash, int index) {
+         TrezorMessage.TxAck txAck = session.answer(request(type, txHash, index));
+         assertTrue(txAck != null);
+         return txAck.getTx();
+      }
+
+      private List<Integer> addressPath(Integer[] addressId) {
+         return Arrays.asList(44 | 0x80000000, NETWORK.getBip44CoinType().getLastIndex() | 0x80000000,
+               ACCOUNT_INDEX | 0x80000000, addressId[0], addressId[1]);
+      }
+   }
+}
@@ -2,21 +2,34 @@ package com.mycelium.metadata.backup;
 
 import com.mrd.bitlib.crypto.PrivateKey;
 import com.mrd.bitlib.crypto.SignedMessage;
+import com.mrd.bitlib.model.CompactInt;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 
 public class BackupPayload {
+   private static final int IV_LENGTH = 16;
+   // version, timestamp and iv
+   private static final int HEADER_LENGTH = 1 + 4 + IV_LENGTH;
+   // DER encoded ECDSA signatures are at most 72 bytes
+   private static final int MAX_SIGNATURE_LENGTH = 80;
+
    private final byte version;
    private final int timestamp;
    private final byte[] iv;
    private final byte[] cipherText;
    private final byte[] signature;
-   private final MerkleTree merkleTree;
+   // only the root of the merkle tree of the cipher text is needed, not its chunks
+   private final Sha256Hash merkleRoot;
+   private Sha256Hash hashedContentToSign;
 
 
    public static BackupPayload deserialize(byte[] data){
@@ -26,7 +39,7 @@ public class BackupPayload {
          byte version = reader.get();
          int timestamp = reader.getIntLE();
 
-         byte[] iv = reader.getBytes(16);
+         byte[] iv = reader.getBytes(IV_LENGTH);
 
          int cipherTextLen = (int)reader.getCompactInt();
          byte[] cipherText = reader.getBytes(cipherTextLen);
@@ -41,8 +54,99 @@ public class BackupPayload {
       }
    }
 
+   /**
+    * Read a payload from the stream, hashing the cipher text while it is read. The length prefix is not trusted, the
+    * cipher text array only grows as the data arrives, so a corrupt length ends the stream early instead of allocating
+    * its full size.
+    */
+   public static BackupPayload deserialize(InputStream in) throws IOException {
+      try {
+         ByteReader header = new ByteReader(readFully(in, new byte[HEADER_LENGTH]));
+         byte version = header.get();
+         int timestamp = header.getIntLE();
+         byte[] iv = header.getBytes(IV_LENGTH);
+
+         int cipherTextLength = readLength(in);
+         byte[] cipherText = new byte[Math.min(cipherTextLength, MerkleTree.DEFAULT_CHUNK_SIZE)];
+         MerkleTreeBuilder merkleTree = new MerkleTreeBuilder();
+         int offset = 0;
+         while (offset < cipherTextLength) {
+            if (offset == cipherText.length) {
+               // the data so far is there, double the array up to the announced length
+               cipherText = Arrays.copyOf(cipherText, (int) Math.min(cipherTextLength, 2L * cipherText.length));
+            }
+            int read = in.read(cipherText, offset,
+                  Math.min(cipherText.length - offset, MerkleTree.DEFAULT_CHUNK_SIZE));
+            if (read == -1) {
+               throw new EOFException();
+            }
+            merkleTree.update(cipherText, offset, read);
+            offset += read;
+         }
+
+         int signatureLength = readLength(in);
+         if (signatureLength > MAX_SIGNATURE_LENGTH) {
+            throw new IllegalArgumentException("Backup payload invalid");
+         }
+         byte[] signature = readFully(in, new byte[signatureLength]);
+         return new BackupPayload(version, timestamp, iv, cipherText, signature, merkleTree.getRoot());
+      } catch (EOFException e) {
+         throw new IllegalArgumentException("Backup payload invalid");
+      } catch (ByteReader.InsufficientBytesException e) {
+         throw new IllegalArgumentException("Backup payload invalid");
+      }
+   }
+
+   private static int readLength(InputStream in) throws IOException, ByteReader.InsufficientBytesException {
+      int first = in.read();
+      if (first == -1) {
+         throw new EOFException();
+      }
+      // the bytes that follow the first one of a compact int
+      int following = first < 253 ? 0 : first == 253 ? 2 : first == 254 ? 4 : 8;
+      byte[] bytes = new byte[1 + following];
+      bytes[0] = (byte) first;
+      readFully(in, bytes, 1, following);
+      long length = CompactInt.fromByteReader(new ByteReader(bytes));
+      if (length < 0 || length > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("Backup payload invalid");
+      }
+      return (int) length;
+   }
+
+   private static byte[] readFully(InputStream in, byte[] buffer) throws IOException {
+      readFully(in, buffer, 0, buffer.length);
+      return buffer;
+   }
+
+   private static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+      while (length > 0) {
+         int read = in.read(buffer, offset, length);
+         if (read == -1) {
+            throw new EOFException();
+         }
+         offset += read;
+         length -= read;
+      }
+   }
+
+   /**
+    * Write the payload to the stream, the cipher text without copying it
+    */
+   public void serialize(OutputStream out) throws IOException {
+      ByteWriter header = new ByteWriter(HEADER_LENGTH + 9);
+      header.put(version);
+      header.putIntLE(timestamp);
+      header.putBytes(iv);
+      header.putCompactInt(cipherText.length);
+      out.write(header.toBytes());
+      out.write(cipherText);
+      out.write(CompactInt.toBytes(signature.length));
+      out.write(signature);
+   }
+
    public byte[] serialize(){
-      ByteWriter writer = new ByteWriter(1024);
+      ByteWriter writer = new ByteWriter(HEADER_LENGTH + 9 + cipherText.length + 9 + signature.length);
       writer.put(version);
       writer.putIntLE(timestamp);
       writer.putBytes(iv);
@@ -54,12 +158,17 @@ public class BackupPayload {
    }
 
    private BackupPayload(byte version, int timestamp, byte[] iv, byte[] cipherText, byte[] signature) {
+      this(version, timestamp, iv, cipherText, signature, new MerkleTreeBuilder().update(cipherText).getRoot());
+   }
+
+   private BackupPayload(byte version, int timestamp, byte[] iv, byte[] cipherText, byte[] signature,
+                         Sha256Hash merkleRoot) {
       this.version = version;
       this.timestamp = timestamp;
       this.iv = iv;
       this.cipherText = cipherText;
       this.signature = signature;
-      this.merkleTree = MerkleTree.fromData(cipherText);
+      this.merkleRoot = merkleRoot;
    }
 
    public BackupPayload(byte version, int timestamp, byte[] iv, byte[] cipherText, PrivateKey signatureKey) {
@@ -67,7 +176,7 @@ public class BackupPayload {
       this.timestamp = timestamp;
       this.iv = iv;
       this.cipherText = cipherText;
-      this.merkleTree = MerkleTree.fromData(cipherText);
+      this.merkleRoot = new MerkleTreeBuilder().update(cipherText).getRoot();
       this.signature = calcSignature(signatureKey);
    }
 
@@ -77,20 +186,22 @@ public class BackupPayload {
    }
 
 
-   // used for checking the signature
+   // used for checking the signature, computed once
    public Sha256Hash getHashedContentToSign(){
-      ByteWriter writer = new ByteWriter(1 + 4 + 16 + 32);
-      writer.put(version);
-      writer.putIntLE(timestamp);
-      writer.putBytes(iv);
-      writer.putBytes(merkleTree.getRoot().getBytes());
-      return HashUtils.doubleSha256(writer.toBytes());
+      if (hashedContentToSign == null) {
+         ByteWriter writer = new ByteWriter(HEADER_LENGTH + 32);
+         writer.put(version);
+         writer.putIntLE(timestamp);
+         writer.putBytes(iv);
+         writer.putBytes(merkleRoot.getBytes());
+         hashedContentToSign = HashUtils.doubleSha256(writer.toBytes());
+      }
+      return hashedContentToSign;
    }
 
+   // to verify several payloads of the same key use a BackupVerifier, which decodes the key once
    public boolean verifySignature(final byte[] apub) {
-      com.mrd.bitlib.crypto.PublicKey publicKey = new com.mrd.bitlib.crypto.PublicKey(apub);
-      Sha256Hash hashedContent = getHashedContentToSign();
-      return publicKey.verifyDerEncodedSignature(hashedContent, signature);
+      return new BackupVerifier(apub).verify(this);
    }
 
    public byte[] getSignature() {
@@ -109,7 +220,7 @@ public class BackupPayload {
       if (version != that.version) return false;
       if (!Arrays.equals(cipherText, that.cipherText)) return false;
       if (!Arrays.equals(iv, that.iv)) return false;
-      if (!merkleTree.equals(that.merkleTree)) return false;
+      if (!merkleRoot.equals(that.merkleRoot)) return false;
       if (!Arrays.equals(signature, that.signature)) return false;
 
       return true;
@@ -122,7 +233,7 @@ public class BackupPayload {
       result = 31 * result + Arrays.hashCode(iv);
       result = 31 * result + Arrays.hashCode(cipherText);
       result = 31 * result + Arrays.hashCode(signature);
-      result = 31 * result + merkleTree.hashCode();
+      result = 31 * result + merkleRoot.hashCode();
       return result;
    }
 }
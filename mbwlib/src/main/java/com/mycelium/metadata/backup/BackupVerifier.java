@@ -0,0 +1,47 @@
+package com.mycelium.metadata.backup;
+
+import com.mrd.bitlib.crypto.PublicKey;
+
+import java.util.List;
+
+// verifies the signatures of backup payloads with one public key, which is decoded to a curve point only once
+public class BackupVerifier {
+   private final PublicKey publicKey;
+
+   public BackupVerifier(byte[] apub) {
+      this(new PublicKey(apub));
+   }
+
+   public BackupVerifier(PublicKey publicKey) {
+      this.publicKey = publicKey;
+      // decode the point now instead of for the first payload
+      publicKey.getQ();
+   }
+
+   public boolean verify(BackupPayload payload) {
+      return publicKey.verifyDerEncodedSignature(payload.getHashedContentToSign(), payload.getSignature());
+   }
+
+   /**
+    * @return for every payload whether its signature verifies
+    */
+   public boolean[] verify(List<BackupPayload> payloads) {
+      boolean[] results = new boolean[payloads.size()];
+      for (int i = 0; i < results.length; i++) {
+         results[i] = verify(payloads.get(i));
+      }
+      return results;
+   }
+
+   /**
+    * @return true if the signatures of all payloads verify, stops at the first one that does not
+    */
+   public boolean verifyAll(Iterable<BackupPayload> payloads) {
+      for (BackupPayload payload : payloads) {
+         if (!verify(payload)) {
+            return false;
+         }
+      }
+      return true;
+   }
+}
@@ -0,0 +1,51 @@
+package com.mycelium.metadata.backup;
+
+import com.google.common.collect.ImmutableList;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+import java.util.List;
+
+/**
+ * Proof that a chunk is part of a {@link MerkleTree}: the siblings of the nodes on the path from the chunk to the
+ * root, lowest first. Which side a sibling is on follows from the bits of the chunk index. The last node of a layer
+ * with an odd number of nodes is its own sibling.
+ */
+public class MerkleProof {
+   private final int chunkIndex;
+   private final List<Sha256Hash> siblings;
+
+   public MerkleProof(int chunkIndex, List<Sha256Hash> siblings) {
+      this.chunkIndex = chunkIndex;
+      this.siblings = ImmutableList.copyOf(siblings);
+   }
+
+   public int getChunkIndex() {
+      return chunkIndex;
+   }
+
+   public List<Sha256Hash> getSiblings() {
+      return siblings;
+   }
+
+   /**
+    * @return the root of the tree the chunk is part of, if the chunk is the one the proof was made for
+    */
+   public Sha256Hash computeRoot(byte[] chunk) {
+      Sha256Hash node = HashUtils.doubleSha256(chunk);
+      int index = chunkIndex;
+      for (Sha256Hash sibling : siblings) {
+         if ((index & 1) == 0) {
+            node = HashUtils.doubleSha256TwoBuffers(node.getBytes(), sibling.getBytes());
+         } else {
+            node = HashUtils.doubleSha256TwoBuffers(sibling.getBytes(), node.getBytes());
+         }
+         index >>= 1;
+      }
+      return node;
+   }
+
+   public boolean verify(byte[] chunk, Sha256Hash root) {
+      return computeRoot(chunk).equals(root);
+   }
+}
@@ -1,16 +1,12 @@
 package com.mycelium.metadata.backup;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.mrd.bitlib.util.ByteReader;
-import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
 import java.util.ArrayList;
-import java.util.List;
 
 // implements https://github.com/oleganza/bitcoin-papers/blob/master/AutomaticEncryptedWalletBackups.md#definitions
+// use MerkleTreeBuilder to get the root of large data without holding it in chunks
 public class MerkleTree{
    public static final int DEFAULT_CHUNK_SIZE = 1024;
    private Sha256Hash root;
@@ -48,44 +44,12 @@ public class MerkleTree{
          }
       }
 
-      Sha256Hash root = calcRoot(chunks);
+      Sha256Hash root = new MerkleTreeBuilder(chunkSize, false).update(data).getRoot();
 
       return new MerkleTree(root, chunks);
 
    }
 
-   private static Sha256Hash calcRoot(ArrayList<byte[]> chunks){
-      ArrayList<Sha256Hash> hashList = new ArrayList<Sha256Hash>(Lists.transform(chunks, new Function<byte[], Sha256Hash>() {
-         @Override
-         public Sha256Hash apply(byte[] input) {
-            return HashUtils.doubleSha256(input);
-         }
-      }));
-
-      return calcParentLayer(hashList).get(0);
-   }
-
-   private static ArrayList<Sha256Hash> calcParentLayer(final List<Sha256Hash> chunksHashes){
-      if (chunksHashes.size() == 1){
-         return Lists.newArrayList(chunksHashes.get(0));
-      }
-
-      // if the current layer has an odd number of elements, append the last element as padding
-      if (chunksHashes.size() % 2 != 0){
-         chunksHashes.add(Iterables.getLast(chunksHashes));
-      }
-
-      ArrayList<Sha256Hash> ret = new ArrayList<Sha256Hash>((int) Math.floor( (double)chunksHashes.size() / 2 ));
-      for (int pos = 0; pos < chunksHashes.size(); pos+=2){
-         ret.add(HashUtils.doubleSha256TwoBuffers(
-               chunksHashes.get(pos).getBytes(),
-               chunksHashes.get(pos + 1).getBytes()
-         ));
-      }
-
-      return calcParentLayer(ret);
-   }
-
    public Sha256Hash getRoot() {
       return root;
    }
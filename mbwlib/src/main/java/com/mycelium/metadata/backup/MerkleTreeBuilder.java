@@ -0,0 +1,323 @@
+package com.mycelium.metadata.backup;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.util.Sha256Hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the same merkle root as {@link MerkleTree#fromData(byte[], int)} from data that arrives in pieces, without
+ * holding the data or all chunk hashes.
+ * <p>
+ * Chunks are hashed as soon as they are complete. For every level of the tree at most one node waits for its right
+ * sibling, like the digits of a binary counter, so the builder keeps O(log n) nodes. When the root is requested,
+ * the last node of every level with an odd number of nodes is paired with itself, as the layer by layer
+ * construction does.
+ * <p>
+ * A builder that keeps the chunk hashes can also create a {@link MerkleProof} for every chunk, to verify single chunks
+ * of a partial download against the root.
+ */
+public class MerkleTreeBuilder {
+   private static final int HASH_LENGTH = Sha256Hash.HASH_LENGTH;
+   // below this number of chunks hashing in parallel does not pay off
+   private static final int MIN_CHUNKS_PER_TASK = 64;
+
+   private final int _chunkSize;
+   private final MessageDigest _digest = newDigest();
+   // the chunk being filled
+   private final byte[] _chunk;
+   private int _chunkLength;
+   private long _chunkCount;
+   // node of every level that waits for its right sibling, valid where the bit of the level in _chunkCount is set
+   private final List<byte[]> _pending = new ArrayList<byte[]>();
+   // hashes of all chunks one after the other, if proofs are wanted
+   private byte[] _chunkHashes;
+   private Sha256Hash _root;
+   // the layers of the tree from the chunk hashes up, computed for the first proof
+   private List<byte[]> _layers;
+
+   /**
+    * @param keepChunkHashes true to keep the hashes of all chunks, 32 bytes per chunk, to create proofs
+    */
+   public MerkleTreeBuilder(int chunkSize, boolean keepChunkHashes) {
+      Preconditions.checkArgument(chunkSize > 0);
+      _chunkSize = chunkSize;
+      _chunk = new byte[chunkSize];
+      if (keepChunkHashes) {
+         _chunkHashes = new byte[HASH_LENGTH * 16];
+      }
+   }
+
+   public MerkleTreeBuilder() {
+      this(MerkleTree.DEFAULT_CHUNK_SIZE, false);
+   }
+
+   public MerkleTreeBuilder update(byte[] data) {
+      return update(data, 0, data.length);
+   }
+
+   public MerkleTreeBuilder update(byte[] data, int offset, int length) {
+      checkNotFinished();
+      int end = offset + length;
+      while (offset < end) {
+         if (_chunkLength == 0 && end - offset >= _chunkSize) {
+            // whole chunk, hash it where it is
+            addChunk(data, offset, _chunkSize);
+            offset += _chunkSize;
+         } else {
+            int count = Math.min(end - offset, _chunkSize - _chunkLength);
+            System.arraycopy(data, offset, _chunk, _chunkLength, count);
+            _chunkLength += count;
+            offset += count;
+            completeChunk();
+         }
+      }
+      return this;
+   }
+
+   /**
+    * Add the remaining bytes of the buffer, leaving its position at the limit
+    */
+   public MerkleTreeBuilder update(ByteBuffer data) {
+      checkNotFinished();
+      if (data.hasArray()) {
+         update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+         data.position(data.limit());
+         return this;
+      }
+      while (data.hasRemaining()) {
+         int count = Math.min(data.remaining(), _chunkSize - _chunkLength);
+         data.get(_chunk, _chunkLength, count);
+         _chunkLength += count;
+         completeChunk();
+      }
+      return this;
+   }
+
+   /**
+    * Add the remaining bytes of the buffer, hashing the chunks with the executor. Large payloads are split into one
+    * range of chunks per task, the chunk hashes are then combined in order, so the result is the same as
+    * {@link #update(ByteBuffer)}.
+    */
+   public MerkleTreeBuilder update(ByteBuffer data, ExecutorService executor, int tasks) throws InterruptedException {
+      checkNotFinished();
+      // fill the chunk that is already started first
+      if (_chunkLength > 0) {
+         ByteBuffer start = data.duplicate();
+         start.limit(start.position() + Math.min(data.remaining(), _chunkSize - _chunkLength));
+         update(start);
+         data.position(start.position());
+      }
+      int chunks = data.remaining() / _chunkSize;
+      int chunksPerTask = Math.max(MIN_CHUNKS_PER_TASK, (chunks + tasks - 1) / Math.max(1, tasks));
+      if (chunks < 2 * MIN_CHUNKS_PER_TASK) {
+         return update(data);
+      }
+      List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+      for (int first = 0; first < chunks; first += chunksPerTask) {
+         final ByteBuffer range = data.duplicate();
+         range.position(data.position() + first * _chunkSize);
+         range.limit(range.position() + Math.min(chunksPerTask, chunks - first) * _chunkSize);
+         results.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+               return hashChunks(range, _chunkSize);
+            }
+         }));
+      }
+      try {
+         for (Future<byte[]> result : results) {
+            byte[] hashes = result.get();
+            for (int offset = 0; offset < hashes.length; offset += HASH_LENGTH) {
+               addChunkHash(Arrays.copyOfRange(hashes, offset, offset + HASH_LENGTH));
+            }
+         }
+      } catch (ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      } finally {
+         for (Future<byte[]> result : results) {
+            result.cancel(true);
+         }
+      }
+      data.position(data.position() + chunks * _chunkSize);
+      // the partial chunk at the end
+      return update(data);
+   }
+
+   /**
+    * Read the stream to its end, without closing it
+    */
+   public MerkleTreeBuilder update(InputStream in) throws IOException {
+      checkNotFinished();
+      while (true) {
+         int read = in.read(_chunk, _chunkLength, _chunkSize - _chunkLength);
+         if (read == -1) {
+            return this;
+         }
+         _chunkLength += read;
+         completeChunk();
+      }
+   }
+
+   /**
+    * Finish the tree. Data that does not fill a chunk makes the last chunk, no data at all makes one empty chunk.
+    */
+   public Sha256Hash getRoot() {
+      if (_root != null) {
+         return _root;
+      }
+      if (_chunkLength > 0 || _chunkCount == 0) {
+         addChunk(_chunk, 0, _chunkLength);
+         _chunkLength = 0;
+      }
+      // start at the lowest pending node, its subtree is the last one
+      int level = Long.numberOfTrailingZeros(_chunkCount);
+      byte[] node = _pending.get(level);
+      long count = _chunkCount;
+      while (count != 1L << level) {
+         // the node is the last one of its level with no sibling, pair it with itself
+         node = hashNodes(node, node);
+         count += 1L << level;
+         level++;
+         // and combine it with the pending nodes to its left
+         while ((count & (1L << level)) == 0) {
+            node = hashNodes(_pending.get(level), node);
+            level++;
+         }
+      }
+      _root = new Sha256Hash(node);
+      return _root;
+   }
+
+   /**
+    * @return the number of chunks so far, including the last one once the root is computed
+    */
+   public long getChunkCount() {
+      return _chunkCount;
+   }
+
+   /**
+    * @return the proof that a chunk is part of the tree, needs the root to be computed and the chunk hashes to be kept
+    */
+   public MerkleProof getProof(int chunkIndex) {
+      Preconditions.checkState(_root != null, "The tree is not finished");
+      Preconditions.checkState(_chunkHashes != null, "The chunk hashes were not kept");
+      Preconditions.checkElementIndex(chunkIndex, (int) _chunkCount);
+      if (_layers == null) {
+         _layers = computeLayers();
+      }
+      List<Sha256Hash> siblings = new ArrayList<Sha256Hash>(_layers.size());
+      int index = chunkIndex;
+      for (byte[] layer : _layers) {
+         int size = layer.length / HASH_LENGTH;
+         if (size == 1) {
+            break;
+         }
+         // the last node of an odd layer is its own sibling
+         int sibling = (index ^ 1) < size ? index ^ 1 : index;
+         siblings.add(Sha256Hash.copyOf(layer, sibling * HASH_LENGTH));
+         index >>= 1;
+      }
+      return new MerkleProof(chunkIndex, siblings);
+   }
+
+   private List<byte[]> computeLayers() {
+      List<byte[]> layers = new ArrayList<byte[]>();
+      byte[] layer = Arrays.copyOf(_chunkHashes, (int) _chunkCount * HASH_LENGTH);
+      layers.add(layer);
+      while (layer.length > HASH_LENGTH) {
+         int size = layer.length / HASH_LENGTH;
+         byte[] parents = new byte[(size + 1) / 2 * HASH_LENGTH];
+         for (int i = 0; i < size; i += 2) {
+            int right = i + 1 < size ? i + 1 : i;
+            _digest.update(layer, i * HASH_LENGTH, HASH_LENGTH);
+            _digest.update(layer, right * HASH_LENGTH, HASH_LENGTH);
+            System.arraycopy(_digest.digest(_digest.digest()), 0, parents, i / 2 * HASH_LENGTH, HASH_LENGTH);
+         }
+         layers.add(parents);
+         layer = parents;
+      }
+      return layers;
+   }
+
+   private void completeChunk() {
+      if (_chunkLength == _chunkSize) {
+         addChunk(_chunk, 0, _chunkSize);
+         _chunkLength = 0;
+      }
+   }
+
+   private void addChunk(byte[] data, int offset, int length) {
+      _digest.update(data, offset, length);
+      addChunkHash(_digest.digest(_digest.digest()));
+   }
+
+   private void addChunkHash(byte[] hash) {
+      if (_chunkHashes != null) {
+         int offset = (int) _chunkCount * HASH_LENGTH;
+         if (offset + HASH_LENGTH > _chunkHashes.length) {
+            _chunkHashes = Arrays.copyOf(_chunkHashes, _chunkHashes.length * 2);
+         }
+         System.arraycopy(hash, 0, _chunkHashes, offset, HASH_LENGTH);
+      }
+      _chunkCount++;
+      // like incrementing a binary counter, every carry combines two subtrees into one of the next level
+      byte[] node = hash;
+      int level = 0;
+      while ((_chunkCount & (1L << level)) == 0) {
+         node = hashNodes(_pending.get(level), node);
+         level++;
+      }
+      if (level == _pending.size()) {
+         _pending.add(node);
+      } else {
+         _pending.set(level, node);
+      }
+   }
+
+   private byte[] hashNodes(byte[] left, byte[] right) {
+      _digest.update(left);
+      _digest.update(right);
+      return _digest.digest(_digest.digest());
+   }
+
+   private void checkNotFinished() {
+      Preconditions.checkState(_root == null, "The tree is already finished");
+   }
+
+   private static byte[] hashChunks(ByteBuffer data, int chunkSize) {
+      MessageDigest digest = newDigest();
+      byte[] hashes = new byte[data.remaining() / chunkSize * HASH_LENGTH];
+      byte[] chunk = data.hasArray() ? null : new byte[chunkSize];
+      for (int offset = 0; offset < hashes.length; offset += HASH_LENGTH) {
+         if (chunk == null) {
+            digest.update(data.array(), data.arrayOffset() + data.position(), chunkSize);
+            data.position(data.position() + chunkSize);
+         } else {
+            data.get(chunk);
+            digest.update(chunk);
+         }
+         System.arraycopy(digest.digest(digest.digest()), 0, hashes, offset, HASH_LENGTH);
+      }
+      return hashes;
+   }
+
+   private static MessageDigest newDigest() {
+      try {
+         return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e); //cannot happen
+      }
+   }
+}
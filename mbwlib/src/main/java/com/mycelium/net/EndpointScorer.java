@@ -0,0 +1,181 @@
+package com.mycelium.net;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of how well each {@link HttpEndpoint} of a {@link ServerEndpoints} set performed recently.
+ * <p>
+ * For every endpoint an exponentially weighted moving average (EWMA) of the request latency and of the failure rate
+ * is kept, together with a small window of recent latencies to estimate the 95th percentile. This is used to rank
+ * the endpoints (fastest healthy server first), to derive per-endpoint timeouts and to decide after how long an
+ * idempotent request should be hedged against another server.
+ */
+public class EndpointScorer {
+   /**
+    * Weight of the newest sample in the moving averages
+    */
+   private static final double ALPHA = 0.2;
+   /**
+    * Latency we assume for endpoints we have not talked to yet. Chosen to be optimistic enough that unknown servers
+    * get tried before servers that are known to be slow.
+    */
+   private static final long UNKNOWN_LATENCY_MS = 1000;
+   /**
+    * A failed request counts like a request that took this long, to push failing servers to the end of the list
+    */
+   private static final long FAILURE_PENALTY_MS = 30 * 1000;
+   /**
+    * After this time without any request, a failing endpoint gets the benefit of the doubt again
+    */
+   private static final long FAILURE_DECAY_MS = 5 * 60 * 1000;
+   private static final int LATENCY_WINDOW = 32;
+
+   private final Map<HttpEndpoint, Score> scores = new IdentityHashMap<HttpEndpoint, Score>();
+
+   public EndpointScorer(List<HttpEndpoint> endpoints) {
+      for (HttpEndpoint endpoint : endpoints) {
+         scores.put(endpoint, new Score());
+      }
+   }
+
+   public synchronized void onSuccess(HttpEndpoint endpoint, long latencyMs) {
+      getScore(endpoint).addSample(latencyMs, false, now());
+   }
+
+   public synchronized void onFailure(HttpEndpoint endpoint, long elapsedMs) {
+      getScore(endpoint).addSample(elapsedMs, true, now());
+   }
+
+   /**
+    * Record a request that got cancelled after elapsedMs, because another endpoint answered first. This only tells
+    * that the latency is at least elapsedMs, so it counts as a sample only if it is slower than what we expect of the
+    * endpoint.
+    */
+   public synchronized void onCancelled(HttpEndpoint endpoint, long elapsedMs) {
+      getScore(endpoint).addCensoredSample(elapsedMs, now());
+   }
+
+   /**
+    * @return the expected cost of sending a request to this endpoint in ms, lower is better
+    */
+   public synchronized double getCost(HttpEndpoint endpoint) {
+      return getScore(endpoint).cost(now());
+   }
+
+   /**
+    * @return the estimated 95th percentile of the latency of this endpoint, or -1 if there are no samples yet
+    */
+   public synchronized long getLatencyP95(HttpEndpoint endpoint) {
+      return getScore(endpoint).p95();
+   }
+
+   /**
+    * Get a timeout for a request to this endpoint, based on its own latency history instead of a process wide
+    * minimum. The timeout is a multiple of the p95 latency, never less than minTimeoutMs and never more than
+    * maxTimeoutMs.
+    */
+   public synchronized int getTimeoutMs(HttpEndpoint endpoint, int minTimeoutMs, int maxTimeoutMs) {
+      long p95 = getScore(endpoint).p95();
+      long timeout = p95 < 0 ? minTimeoutMs : Math.max(minTimeoutMs, 3 * p95);
+      return (int) Math.min(timeout, maxTimeoutMs);
+   }
+
+   /**
+    * Get the time after which a second, hedged request should be sent for an idempotent call, which is the p95
+    * latency of the endpoint or defaultDelayMs if it is not known yet.
+    */
+   public synchronized long getHedgeDelayMs(HttpEndpoint endpoint, long defaultDelayMs) {
+      long p95 = getScore(endpoint).p95();
+      return p95 < 0 ? defaultDelayMs : p95;
+   }
+
+   /**
+    * Sort the given endpoints by their cost, best first. The sort is stable, so endpoints with equal cost keep the
+    * order they were given in.
+    */
+   public synchronized List<HttpEndpoint> rank(List<HttpEndpoint> endpoints) {
+      final long now = now();
+      final Map<HttpEndpoint, Double> costs = new IdentityHashMap<HttpEndpoint, Double>();
+      for (HttpEndpoint endpoint : endpoints) {
+         costs.put(endpoint, getScore(endpoint).cost(now));
+      }
+      List<HttpEndpoint> ranked = new ArrayList<HttpEndpoint>(endpoints);
+      Collections.sort(ranked, new Comparator<HttpEndpoint>() {
+         @Override
+         public int compare(HttpEndpoint lhs, HttpEndpoint rhs) {
+            return Double.compare(costs.get(lhs), costs.get(rhs));
+         }
+      });
+      return ranked;
+   }
+
+   protected long now() {
+      return System.currentTimeMillis();
+   }
+
+   private Score getScore(HttpEndpoint endpoint) {
+      Score score = scores.get(endpoint);
+      Preconditions.checkArgument(score != null, "Unknown endpoint %s", endpoint);
+      return score;
+   }
+
+   private static class Score {
+      private double ewmaLatencyMs = -1;
+      private double failureRate;
+      private long lastSampleTime;
+      private final long[] latencies = new long[LATENCY_WINDOW];
+      private int latencyCount;
+      private int latencyPos;
+
+      void addSample(long elapsedMs, boolean failed, long now) {
+         lastSampleTime = now;
+         failureRate = (1 - ALPHA) * failureRate + (failed ? ALPHA : 0);
+         if (failed) {
+            // the elapsed time of a failed request says nothing about the latency of a successful one
+            return;
+         }
+         addLatency(elapsedMs);
+      }
+
+      void addCensoredSample(long elapsedMs, long now) {
+         if (elapsedMs > (ewmaLatencyMs < 0 ? UNKNOWN_LATENCY_MS : ewmaLatencyMs)) {
+            lastSampleTime = now;
+            addLatency(elapsedMs);
+         }
+      }
+
+      private void addLatency(long elapsedMs) {
+         ewmaLatencyMs = ewmaLatencyMs < 0 ? elapsedMs : (1 - ALPHA) * ewmaLatencyMs + ALPHA * elapsedMs;
+         latencies[latencyPos] = elapsedMs;
+         latencyPos = (latencyPos + 1) % LATENCY_WINDOW;
+         latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+      }
+
+      double cost(long now) {
+         double latency = ewmaLatencyMs < 0 ? UNKNOWN_LATENCY_MS : ewmaLatencyMs;
+         double failures = failureRate;
+         if (now - lastSampleTime > FAILURE_DECAY_MS) {
+            failures = 0;
+         }
+         return latency * (1 - failures) + FAILURE_PENALTY_MS * failures;
+      }
+
+      long p95() {
+         if (latencyCount == 0) {
+            return -1;
+         }
+         long[] sorted = Arrays.copyOf(latencies, latencyCount);
+         Arrays.sort(sorted);
+         int index = (int) Math.ceil(0.95 * latencyCount) - 1;
+         return sorted[Math.max(0, index)];
+      }
+   }
+}
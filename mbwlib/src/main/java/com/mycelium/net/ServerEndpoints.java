@@ -38,17 +38,20 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 public class ServerEndpoints {
 
    final private ArrayList<HttpEndpoint> endpoints;
-   private int currentEndpoint;
+   final private EndpointScorer scorer;
+   private volatile int currentEndpoint;
    private ServerEndpointType allowedEndpointTypes = ServerEndpointType.ONLY_HTTPS;
 
 
    public ServerEndpoints(HttpEndpoint endpoints[]) {
       this.endpoints = Lists.newArrayList(endpoints);
+      this.scorer = new EndpointScorer(this.endpoints);
       currentEndpoint = new Random().nextInt(this.endpoints.size());
       // ensure correct kind of endpoint
       switchToNextEndpoint();
@@ -56,6 +59,7 @@ public class ServerEndpoints {
 
    public ServerEndpoints(HttpEndpoint endpoints[], int initialEndpoint) {
       this.endpoints = Lists.newArrayList(endpoints);
+      this.scorer = new EndpointScorer(this.endpoints);
 
       Preconditions.checkElementIndex(initialEndpoint, endpoints.length);
       currentEndpoint = initialEndpoint;
@@ -87,6 +91,56 @@ public class ServerEndpoints {
       return selectedEndpoint;
    }
 
+   public EndpointScorer getScorer() {
+      return scorer;
+   }
+
+   /**
+    * Get all endpoints of the allowed type, ordered by their score with the best one first. Endpoints with the same
+    * score are returned in round robin order, starting with the current endpoint.
+    */
+   public synchronized List<HttpEndpoint> getEndpointsByScore() {
+      List<HttpEndpoint> allowed = new ArrayList<HttpEndpoint>(endpoints.size());
+      for (int i = 0; i < endpoints.size(); i++) {
+         HttpEndpoint endpoint = endpoints.get((currentEndpoint + i) % endpoints.size());
+         if (allowedEndpointTypes.isValid(endpoint.getClass())) {
+            allowed.add(endpoint);
+         }
+      }
+      if (allowed.isEmpty()) {
+         throw new RuntimeException("No valid Endpoint found, " + allowedEndpointTypes.toString());
+      }
+      return scorer.rank(allowed);
+   }
+
+   /**
+    * Make the endpoint with the best score the current one
+    */
+   public synchronized HttpEndpoint switchToBestEndpoint() {
+      HttpEndpoint best = getEndpointsByScore().get(0);
+      currentEndpoint = endpoints.indexOf(best);
+      return best;
+   }
+
+   /**
+    * Record a successful request to one of our endpoints
+    */
+   public void onSuccess(HttpEndpoint endpoint, long latencyMs) {
+      scorer.onSuccess(endpoint, latencyMs);
+   }
+
+   /**
+    * Record a failed request to one of our endpoints. If it was the current endpoint, we switch to the best one.
+    */
+   public void onFailure(HttpEndpoint endpoint, long elapsedMs) {
+      scorer.onFailure(endpoint, elapsedMs);
+      synchronized (this) {
+         if (getCurrentEndpoint() == endpoint) {
+            switchToBestEndpoint();
+         }
+      }
+   }
+
    public void setAllowedEndpointTypes(ServerEndpointType types){
       allowedEndpointTypes=types;
       switchToNextEndpoint();
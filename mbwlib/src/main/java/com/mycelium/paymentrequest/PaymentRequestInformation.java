@@ -42,13 +42,10 @@ import com.mrd.bitlib.model.*;
 import com.squareup.wire.Wire;
 import okio.ByteString;
 import org.bitcoin.protocols.payments.*;
-import org.bitcoinj.crypto.X509Utils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.*;
-import java.security.cert.*;
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -68,6 +65,11 @@ public class PaymentRequestInformation implements Serializable {
    private final byte[] rawPaymentRequest;
 
    public static PaymentRequestInformation fromRawPaymentRequest(byte[] rawPaymentRequest, KeyStore keyStore, final NetworkParameters networkParameters) {
+      return fromRawPaymentRequest(rawPaymentRequest, new PkiValidator(keyStore), networkParameters);
+   }
+
+   // use the same PkiValidator for all requests to not validate the same certificate chains again
+   public static PaymentRequestInformation fromRawPaymentRequest(byte[] rawPaymentRequest, PkiValidator pkiValidator, final NetworkParameters networkParameters) {
 
       if (rawPaymentRequest.length > MAX_MESSAGE_SIZE) {
          throw new PaymentRequestException("payment request too large");
@@ -133,7 +135,7 @@ public class PaymentRequestInformation implements Serializable {
             }
 
             certificates = wire.parseFrom(paymentRequest.pki_data.toByteArray(), X509Certificates.class);
-            PkiVerificationData pkiVerificationData = verifySignature(paymentRequest, certificates, keyStore);
+            PkiVerificationData pkiVerificationData = verifySignature(paymentRequest, certificates, pkiValidator);
             return new PaymentRequestInformation(paymentRequest, paymentDetails, pkiVerificationData, rawPaymentRequest);
 
 
@@ -147,41 +149,21 @@ public class PaymentRequestInformation implements Serializable {
       }
    }
 
-   private static PkiVerificationData verifySignature(PaymentRequest paymentRequest, X509Certificates certificates, KeyStore keyStore) {
+   private static PkiVerificationData verifySignature(PaymentRequest paymentRequest, X509Certificates certificates, PkiValidator pkiValidator) {
       if (certificates == null) {
          throw new PaymentRequestException("no certificates supplied");
       }
 
-      try {
-
-         CertificateFactory certFact = CertificateFactory.getInstance("X.509");
-
-         // parse each certificate from the chain ...
-         ArrayList<X509Certificate> certs = new ArrayList<X509Certificate>();
-         for (ByteString cert : certificates.certificate) {
-            ByteArrayInputStream inStream = new ByteArrayInputStream(cert.toByteArray());
-            certs.add((X509Certificate) certFact.generateCertificate(inStream));
-         }
-
-         // ... and generate the certification path from it.
-         CertPath certPath = certFact.generateCertPath(certs);
-
-         // Retrieves the most-trusted CAs from keystore.
-         PKIXParameters params = new PKIXParameters(keyStore);
-         // Revocation not supported in the current version.
-         params.setRevocationEnabled(false);
-
-         // Now verify the certificate chain is correct and trusted. This let's us get an identity linked pubkey.
-         CertPathValidator validator = CertPathValidator.getInstance("PKIX");
-         PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult) validator.validate(certPath, params);
-         PublicKey publicKey = result.getPublicKey();
+      // the chain is only validated if the validator did not see it before
+      PkiVerificationData pkiVerificationData = pkiValidator.validate(certificates.certificate);
 
+      try {
          // OK, we got an identity, now check it was used to sign this message.
          Signature signature = Signature.getInstance(getPkiSignatureAlgorithm(paymentRequest));
          // Note that we don't use signature.initVerify(certs.get(0)) here despite it being the most obvious
          // way to set it up, because we don't care about the constraints specified on the certificates: any
          // cert that links a key to a domain name or other identity will do for us.
-         signature.initVerify(publicKey);
+         signature.initVerify(pkiVerificationData.merchantSigningKey);
 
          // duplicate the payment-request but with an empty signature
          // then check the again serialized format of it
@@ -198,26 +180,13 @@ public class PaymentRequestInformation implements Serializable {
             throw new PaymentRequestException("signature does not match");
          }
 
+         return pkiVerificationData;
 
-         // Signature verifies, get the names from the identity we just verified for presentation to the user.
-         final X509Certificate cert = certs.get(0);
-         //return new PkiVerificationData(displayName, publicKey, result.getTrustAnchor());
-         String displayName = X509Utils.getDisplayNameFromCertificate(cert, true);
-         return new PkiVerificationData(displayName, publicKey, result.getTrustAnchor());
 
-
-      } catch (CertificateException e) {
-         throw new PaymentRequestException("invalid certificate", e);
       } catch (InvalidKeyException e) {
          throw new PaymentRequestException("keystore not ready", e);
       } catch (NoSuchAlgorithmException e) {
          throw new RuntimeException(e);
-      } catch (InvalidAlgorithmParameterException e) {
-         throw new PaymentRequestException("invalid certificate", e);
-      } catch (KeyStoreException e) {
-         throw new RuntimeException(e);
-      } catch (CertPathValidatorException e) {
-         throw new PaymentRequestException("invalid certificate", e);
       } catch (SignatureException e) {
          throw new PaymentRequestException("invalid certificate", e);
       }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.paymentrequest;
+
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import okio.ByteString;
+import org.bitcoinj.crypto.X509Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// validates the certificate chains of payment requests against one trust store
+//
+// The trust anchors are read from the key store on the first validation, and again whenever the aliases in the key
+// store change, which also forgets all remembered chains. Chains that passed are remembered by the fingerprint of their
+// certificates for as long as all their certificates and their trust anchor are valid, so a merchant that signs every
+// request with the same chain gets validated once. The signature of each request still needs to be verified
+// with the public key of the chain, see PaymentRequestInformation.
+public class PkiValidator {
+   private static final int MAX_CACHED_CHAINS = 64;
+
+   private final KeyStore trustStore;
+   // the parameters read from the trust store, and the fingerprint of the aliases they were read with
+   private volatile PKIXParameters parameters;
+   private Sha256Hash trustStoreFingerprint;
+   private final Map<Sha256Hash, ValidChain> validChains =
+         new LinkedHashMap<Sha256Hash, ValidChain>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Sha256Hash, ValidChain> eldest) {
+               return size() > MAX_CACHED_CHAINS;
+            }
+         };
+   private final AtomicInteger fullValidations = new AtomicInteger();
+
+   public PkiValidator(KeyStore trustStore) {
+      this.trustStore = trustStore;
+   }
+
+   /**
+    * @param certificates the encoded certificate chain, the signing certificate first
+    * @return the verified identity of the chain
+    * @throws PaymentRequestException if the chain does not lead to a trusted certificate
+    */
+   public PkiVerificationData validate(List<ByteString> certificates) {
+      PKIXParameters parameters = getParameters();
+      Sha256Hash fingerprint = fingerprint(certificates);
+      long now = now();
+      synchronized (validChains) {
+         ValidChain chain = validChains.get(fingerprint);
+         if (chain != null && chain.notBefore <= now && now <= chain.notAfter) {
+            return chain.verificationData;
+         }
+      }
+      ValidChain chain = validateChain(certificates, parameters, now);
+      synchronized (validChains) {
+         // not if the trust store changed while we were validating
+         if (parameters == this.parameters) {
+            validChains.put(fingerprint, chain);
+         }
+      }
+      return chain.verificationData;
+   }
+
+   private ValidChain validateChain(List<ByteString> certificates, PKIXParameters parameters, long now) {
+      fullValidations.incrementAndGet();
+      try {
+         CertificateFactory certFact = CertificateFactory.getInstance("X.509");
+
+         // parse each certificate from the chain ...
+         ArrayList<X509Certificate> certs = new ArrayList<X509Certificate>();
+         for (ByteString cert : certificates) {
+            ByteArrayInputStream inStream = new ByteArrayInputStream(cert.toByteArray());
+            certs.add((X509Certificate) certFact.generateCertificate(inStream));
+         }
+         if (certs.isEmpty()) {
+            throw new PaymentRequestException("no certificates supplied");
+         }
+
+         // ... and generate the certification path from it.
+         CertPath certPath = certFact.generateCertPath(certs);
+
+         // validate at the time the validity window of the cache entry is checked against
+         PKIXParameters params = (PKIXParameters) parameters.clone();
+         params.setDate(new Date(now));
+
+         // Now verify the certificate chain is correct and trusted. This let's us get an identity linked pubkey.
+         CertPathValidator validator = CertPathValidator.getInstance("PKIX");
+         PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult) validator.validate(certPath, params);
+
+         // the chain is valid as long as all of its certificates and the certificate it is anchored at are
+         long notBefore = Long.MIN_VALUE;
+         long notAfter = Long.MAX_VALUE;
+         X509Certificate anchor = result.getTrustAnchor().getTrustedCert();
+         if (anchor != null) {
+            certs.add(anchor);
+         }
+         for (X509Certificate cert : certs) {
+            notBefore = Math.max(notBefore, cert.getNotBefore().getTime());
+            notAfter = Math.min(notAfter, cert.getNotAfter().getTime());
+         }
+
+         // get the names from the identity we just verified for presentation to the user.
+         String displayName = X509Utils.getDisplayNameFromCertificate(certs.get(0), true);
+         PkiVerificationData verificationData =
+               new PkiVerificationData(displayName, result.getPublicKey(), result.getTrustAnchor());
+         return new ValidChain(verificationData, notBefore, notAfter);
+      } catch (CertificateException e) {
+         throw new PaymentRequestException("invalid certificate", e);
+      } catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e);
+      } catch (InvalidAlgorithmParameterException e) {
+         throw new PaymentRequestException("invalid certificate", e);
+      } catch (CertPathValidatorException e) {
+         throw new PaymentRequestException("invalid certificate", e);
+      }
+   }
+
+   private synchronized PKIXParameters getParameters() {
+      try {
+         // listing the aliases is cheap compared to reading the certificates, so check for added or removed CAs on
+         // every validation
+         Sha256Hash current = aliasFingerprint(trustStore);
+         if (parameters == null || !current.equals(trustStoreFingerprint)) {
+            // Retrieves the most-trusted CAs from keystore.
+            PKIXParameters params = new PKIXParameters(trustStore);
+            // Revocation not supported in the current version.
+            params.setRevocationEnabled(false);
+            parameters = params;
+            trustStoreFingerprint = current;
+            synchronized (validChains) {
+               validChains.clear();
+            }
+         }
+         return parameters;
+      } catch (KeyStoreException e) {
+         throw new RuntimeException(e);
+      } catch (InvalidAlgorithmParameterException e) {
+         // the trust store has no trusted certificates
+         throw new PaymentRequestException("invalid certificate", e);
+      }
+   }
+
+   private static Sha256Hash aliasFingerprint(KeyStore keyStore) throws KeyStoreException {
+      List<String> aliases = Collections.list(keyStore.aliases());
+      Collections.sort(aliases);
+      StringBuilder sb = new StringBuilder();
+      for (String alias : aliases) {
+         sb.append(alias).append('\n');
+      }
+      try {
+         return HashUtils.sha256(sb.toString().getBytes("UTF-8"));
+      } catch (UnsupportedEncodingException e) {
+         // Never happens
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static Sha256Hash fingerprint(List<ByteString> certificates) {
+      int size = 0;
+      for (ByteString cert : certificates) {
+         size += 4 + cert.size();
+      }
+      // with the lengths, so certificates cannot be split differently to get the same fingerprint
+      ByteWriter writer = new ByteWriter(size);
+      for (ByteString cert : certificates) {
+         writer.putIntLE(cert.size());
+         writer.putBytes(cert.toByteArray());
+      }
+      return HashUtils.sha256(writer.toBytes());
+   }
+
+   // the time to validate at, can be overridden by tests
+   long now() {
+      return System.currentTimeMillis();
+   }
+
+   int getFullValidations() {
+      return fullValidations.get();
+   }
+
+   private static class ValidChain {
+      final PkiVerificationData verificationData;
+      final long notBefore;
+      final long notAfter;
+
+      ValidChain(PkiVerificationData verificationData, long notBefore, long notAfter) {
+         this.verificationData = verificationData;
+         this.notBefore = notBefore;
+         this.notAfter = notAfter;
+      }
+   }
+}
@@ -5,6 +5,13 @@ import com.mrd.bitlib.crypto.PrivateKey;
 import com.mrd.bitlib.util.HexUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class BackupPayloadTest {
@@ -97,4 +104,88 @@ public class BackupPayloadTest {
       assertFalse("failing signature check",
             payload.verifySignature(wrongApub));
    }
-}
\ No newline at end of file
+
+   @Test
+   public void testStreamSerialization() throws Exception {
+      Random random = new Random(1);
+      PrivateKey sigKey = new InMemoryPrivateKey(HexUtils.toBytes("44b45878c33c974179f5363fee95f9e9d4a60c97e9c865e58b57bef3558034f4"), true);
+      for (int length : new int[]{0, 1, 252, 253, 1024, 70000}) {
+         byte[] cipherText = new byte[length];
+         random.nextBytes(cipherText);
+         byte[] iv = new byte[16];
+         random.nextBytes(iv);
+         BackupPayload payload = new BackupPayload((byte) 1, random.nextInt(), iv, cipherText, sigKey);
+
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         payload.serialize(out);
+         assertArrayEquals(payload.serialize(), out.toByteArray());
+
+         // a stream that returns a few bytes at a time
+         BackupPayload read = BackupPayload.deserialize(new ByteArrayInputStream(out.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+               return super.read(b, off, Math.min(len, 1000));
+            }
+         });
+         assertEquals(payload, read);
+         assertEquals(payload.getHashedContentToSign(), read.getHashedContentToSign());
+         assertTrue(read.verifySignature(sigKey.getPublicKey().getPublicKeyBytes()));
+
+         byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+         try {
+            BackupPayload.deserialize(new ByteArrayInputStream(truncated));
+            fail();
+         } catch (IllegalArgumentException e) {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testCorruptLengths() throws Exception {
+      // header, then a cipher text length of 2^31 - 1 with only a few bytes following it
+      byte[] hugeCipherText = new byte[1 + 4 + 16 + 5 + 10];
+      hugeCipherText[21] = (byte) 0xfe;
+      hugeCipherText[22] = (byte) 0xff;
+      hugeCipherText[23] = (byte) 0xff;
+      hugeCipherText[24] = (byte) 0xff;
+      hugeCipherText[25] = (byte) 0x7f;
+      // header, an empty cipher text and a signature length of 2^31 - 1
+      byte[] hugeSignature = new byte[1 + 4 + 16 + 1 + 5];
+      hugeSignature[22] = (byte) 0xfe;
+      hugeSignature[23] = (byte) 0xff;
+      hugeSignature[24] = (byte) 0xff;
+      hugeSignature[25] = (byte) 0xff;
+      hugeSignature[26] = (byte) 0x7f;
+      for (byte[] corrupt : Arrays.asList(hugeCipherText, hugeSignature)) {
+         try {
+            BackupPayload.deserialize(new ByteArrayInputStream(corrupt));
+            fail();
+         } catch (IllegalArgumentException e) {
+            // expected, without allocating the announced length
+         }
+      }
+   }
+
+   @Test
+   public void testBatchVerification() throws Exception {
+      Random random = new Random(2);
+      PrivateKey sigKey = new InMemoryPrivateKey(HexUtils.toBytes("44b45878c33c974179f5363fee95f9e9d4a60c97e9c865e58b57bef3558034f4"), true);
+      PrivateKey otherKey = new InMemoryPrivateKey(HexUtils.toBytes("54b45878c33c974179f5363fee95f9e9d4a60c97e9c865e58b57bef3558034f4"), true);
+      List<BackupPayload> history = new ArrayList<BackupPayload>();
+      for (int i = 0; i < 20; i++) {
+         byte[] cipherText = new byte[random.nextInt(3000)];
+         random.nextBytes(cipherText);
+         history.add(new BackupPayload((byte) 1, 1427720967 + i, new byte[16], cipherText, i == 7 ? otherKey : sigKey));
+      }
+      BackupVerifier verifier = new BackupVerifier(sigKey.getPublicKey().getPublicKeyBytes());
+      boolean[] results = verifier.verify(history);
+      for (int i = 0; i < results.length; i++) {
+         assertEquals(i != 7, results[i]);
+         assertEquals(results[i], history.get(i).verifySignature(sigKey.getPublicKey().getPublicKeyBytes()));
+      }
+      assertFalse(verifier.verifyAll(history));
+      history.remove(7);
+      assertTrue(verifier.verifyAll(history));
+   }
+}
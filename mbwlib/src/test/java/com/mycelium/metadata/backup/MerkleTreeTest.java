@@ -1,9 +1,23 @@
 package com.mycelium.metadata.backup;
 
+import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.HexUtils;
+import com.mrd.bitlib.util.Sha256Hash;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class MerkleTreeTest  {
    @Test
@@ -64,4 +78,122 @@ public class MerkleTreeTest  {
             "8d93a23d2c9ed526ce1100a9e3b8b979c2057526abfe2cb89c3f2614345b2a98",
             merkleTree.getRoot().toHex());
    }
-}
\ No newline at end of file
+
+   @Test
+   public void testBuilderMatchesLayers() throws Exception {
+      Random random = new Random(1);
+      int[] chunkSizes = {1, 3, 32, 1024};
+      for (int chunkSize : chunkSizes) {
+         for (int length = 0; length < 40 * chunkSize; length += 1 + random.nextInt(chunkSize + 1)) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            Sha256Hash expected = layerRoot(data, chunkSize);
+            assertEquals(expected, MerkleTree.fromData(data, chunkSize).getRoot());
+
+            // in pieces of random size
+            MerkleTreeBuilder builder = new MerkleTreeBuilder(chunkSize, false);
+            int offset = 0;
+            while (offset < length) {
+               int piece = Math.min(length - offset, random.nextInt(3 * chunkSize + 1));
+               builder.update(data, offset, piece);
+               offset += piece;
+            }
+            assertEquals(expected, builder.getRoot());
+
+            assertEquals(expected, new MerkleTreeBuilder(chunkSize, false).update(stream(data, random)).getRoot());
+            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(data).flip();
+            assertEquals(expected, new MerkleTreeBuilder(chunkSize, false).update(direct).getRoot());
+            assertEquals(length, direct.position());
+         }
+      }
+   }
+
+   @Test
+   public void testParallelHashing() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         Random random = new Random(2);
+         for (int length : new int[]{0, 100, 64 * 10, 1000 * 10 + 7, 5000 * 10}) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            Sha256Hash expected = layerRoot(data, 10);
+            MerkleTreeBuilder builder = new MerkleTreeBuilder(10, true);
+            // start with a partial chunk
+            builder.update(data, 0, Math.min(length, 3));
+            ByteBuffer rest = ByteBuffer.wrap(data);
+            rest.position(Math.min(length, 3));
+            builder.update(rest, executor, 4);
+            assertEquals(expected, builder.getRoot());
+            assertEquals(Math.max(1, (length + 9) / 10), builder.getChunkCount());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(data).flip();
+            assertEquals(expected, new MerkleTreeBuilder(10, false).update(direct, executor, 3).getRoot());
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testProofs() throws Exception {
+      Random random = new Random(3);
+      for (int chunks = 1; chunks <= 33; chunks++) {
+         byte[] data = new byte[chunks * 8 - random.nextInt(8)];
+         random.nextBytes(data);
+         MerkleTree tree = MerkleTree.fromData(data, 8);
+         MerkleTreeBuilder builder = new MerkleTreeBuilder(8, true);
+         Sha256Hash root = builder.update(data).getRoot();
+         assertEquals(tree.getRoot(), root);
+         for (int i = 0; i < chunks; i++) {
+            byte[] chunk = tree.getChunks().get(i);
+            MerkleProof proof = builder.getProof(i);
+            assertTrue(proof.verify(chunk, root));
+            byte[] tampered = chunk.clone();
+            tampered[0] ^= 1;
+            assertFalse(proof.verify(tampered, root));
+            if (chunks > 1) {
+               // a chunk does not verify at the position of another one
+               assertFalse(builder.getProof((i + 1) % chunks).verify(chunk, root));
+            }
+         }
+      }
+   }
+
+   /**
+    * The root computed layer by layer, duplicating the last node of odd layers, like the original implementation
+    */
+   private static Sha256Hash layerRoot(byte[] data, int chunkSize) {
+      List<Sha256Hash> layer = new ArrayList<Sha256Hash>();
+      int offset = 0;
+      do {
+         int length = Math.min(chunkSize, data.length - offset);
+         layer.add(HashUtils.doubleSha256(Arrays.copyOfRange(data, offset, offset + length)));
+         offset += length;
+      } while (offset < data.length);
+      while (layer.size() > 1) {
+         if (layer.size() % 2 != 0) {
+            layer.add(layer.get(layer.size() - 1));
+         }
+         List<Sha256Hash> parents = new ArrayList<Sha256Hash>();
+         for (int i = 0; i < layer.size(); i += 2) {
+            parents.add(HashUtils.doubleSha256TwoBuffers(layer.get(i).getBytes(), layer.get(i + 1).getBytes()));
+         }
+         layer = parents;
+      }
+      return layer.get(0);
+   }
+
+   /**
+    * A stream that returns fewer bytes than asked for, like network streams do
+    */
+   private static InputStream stream(byte[] data, final Random random) {
+      return new ByteArrayInputStream(data) {
+         @Override
+         public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, len == 0 ? 0 : 1 + random.nextInt(len));
+         }
+      };
+   }
+}
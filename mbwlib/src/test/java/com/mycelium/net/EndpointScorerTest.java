@@ -0,0 +1,87 @@
+package com.mycelium.net;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EndpointScorerTest {
+   private final HttpEndpoint fast = new HttpsEndpoint("https://fast", "");
+   private final HttpEndpoint slow = new HttpsEndpoint("https://slow", "");
+   private final HttpEndpoint broken = new HttpsEndpoint("https://broken", "");
+   private ServerEndpoints endpoints;
+
+   @Before
+   public void setup() {
+      endpoints = new ServerEndpoints(new HttpEndpoint[]{slow, broken, fast}, 0);
+   }
+
+   @Test
+   public void testFastestHealthyEndpointFirst() {
+      for (int i = 0; i < 10; i++) {
+         endpoints.onSuccess(fast, 100);
+         endpoints.onSuccess(slow, 3000);
+         endpoints.onFailure(broken, 50);
+      }
+      List<HttpEndpoint> ranked = endpoints.getEndpointsByScore();
+      assertSame(fast, ranked.get(0));
+      assertSame(slow, ranked.get(1));
+      assertSame(broken, ranked.get(2));
+      assertSame(fast, endpoints.switchToBestEndpoint());
+      assertSame(fast, endpoints.getCurrentEndpoint());
+   }
+
+   @Test
+   public void testUnknownEndpointsKeepRoundRobinOrder() {
+      List<HttpEndpoint> ranked = endpoints.getEndpointsByScore();
+      assertSame(slow, ranked.get(0));
+      assertSame(broken, ranked.get(1));
+      assertSame(fast, ranked.get(2));
+   }
+
+   @Test
+   public void testFailureSwitchesAwayFromCurrent() {
+      endpoints.onSuccess(fast, 100);
+      endpoints.onFailure(slow, 4000);
+      assertSame(fast, endpoints.getCurrentEndpoint());
+   }
+
+   @Test
+   public void testAdaptiveTimeoutAndHedgeDelay() {
+      EndpointScorer scorer = endpoints.getScorer();
+      assertEquals(4000, scorer.getTimeoutMs(slow, 4000, 60000));
+      assertEquals(2000, scorer.getHedgeDelayMs(slow, 2000));
+      for (int i = 1; i <= 100; i++) {
+         endpoints.onSuccess(slow, i * 100);
+      }
+      // the window only holds the last 32 samples: 6900..10000ms, p95 of those is 9900
+      assertEquals(9900, scorer.getLatencyP95(slow));
+      assertEquals(9900, scorer.getHedgeDelayMs(slow, 2000));
+      assertEquals(3 * 9900, scorer.getTimeoutMs(slow, 4000, 60000));
+      assertEquals(20000, scorer.getTimeoutMs(slow, 4000, 20000));
+   }
+
+   @Test
+   public void testCancelledLosersDegrade() {
+      for (int i = 0; i < 10; i++) {
+         endpoints.onSuccess(fast, 100);
+         endpoints.onSuccess(slow, 300);
+      }
+      assertSame(fast, endpoints.getEndpointsByScore().get(0));
+      // fast became slow, every call gets hedged to slow, which wins, and the request to fast gets cancelled
+      for (int i = 0; i < 10; i++) {
+         endpoints.onSuccess(slow, 300);
+         endpoints.getScorer().onCancelled(fast, 2000);
+      }
+      assertSame(slow, endpoints.getEndpointsByScore().get(0));
+
+      // a hedge that got cancelled right away says nothing about the endpoint
+      endpoints.getScorer().onCancelled(broken, 50);
+      assertEquals(-1, endpoints.getScorer().getLatencyP95(broken));
+      endpoints.getScorer().onCancelled(slow, 50);
+      assertEquals(300, endpoints.getScorer().getLatencyP95(slow));
+   }
+}
@@ -0,0 +1,266 @@
+package com.mycelium.paymentrequest;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.util.HashUtils;
+import okio.ByteString;
+import org.bitcoin.protocols.payments.Output;
+import org.bitcoin.protocols.payments.PaymentDetails;
+import org.bitcoin.protocols.payments.PaymentRequest;
+import org.bitcoin.protocols.payments.X509Certificates;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongycastle.asn1.x500.X500Name;
+import org.spongycastle.asn1.x509.BasicConstraints;
+import org.spongycastle.asn1.x509.Extension;
+import org.spongycastle.cert.X509v3CertificateBuilder;
+import org.spongycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.spongycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.spongycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Validates payment requests signed by certificate chains of test CAs generated for the test, so the chains do not
+ * expire
+ */
+public class PkiValidatorTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   private static final long DAY = 24 * 60 * 60 * 1000L;
+   // certificates store times in seconds
+   private static final long NOW = System.currentTimeMillis() / 1000 * 1000;
+   // the merchant certificate expires first
+   private static final long MERCHANT_NOT_AFTER = NOW + 30 * DAY;
+
+   private static KeyStore trustStore;
+   private static KeyStore otherTrustStore;
+   private static KeyPair rootKey;
+   private static KeyPair merchantKey;
+   private static X509Certificate root;
+   private static X509Certificate otherRoot;
+   private static List<ByteString> chain;
+
+   @BeforeClass
+   public static void generateCertificates() throws Exception {
+      rootKey = generateKey();
+      KeyPair intermediateKey = generateKey();
+      merchantKey = generateKey();
+      root = certificate("CN=Test Root CA, O=Test CA", rootKey, "CN=Test Root CA, O=Test CA", rootKey,
+            NOW + 3650 * DAY, true);
+      X509Certificate intermediate = certificate("CN=Test Intermediate CA, O=Test CA", intermediateKey,
+            "CN=Test Root CA, O=Test CA", rootKey, NOW + 365 * DAY, true);
+      X509Certificate merchant = certificate("CN=shop.example, O=Example Shop", merchantKey,
+            "CN=Test Intermediate CA, O=Test CA", intermediateKey, MERCHANT_NOT_AFTER, false);
+      chain = new ArrayList<ByteString>();
+      chain.add(ByteString.of(merchant.getEncoded()));
+      chain.add(ByteString.of(intermediate.getEncoded()));
+
+      trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      trustStore.load(null, null);
+      trustStore.setCertificateEntry("root", root);
+
+      KeyPair otherKey = generateKey();
+      otherTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      otherTrustStore.load(null, null);
+      otherRoot = certificate("CN=Other Root CA", otherKey, "CN=Other Root CA", otherKey, NOW + 3650 * DAY, true);
+      otherTrustStore.setCertificateEntry("other", otherRoot);
+   }
+
+   @Test
+   public void testValidatesChainOnce() throws Exception {
+      PkiValidator validator = new PkiValidator(trustStore);
+      for (int i = 1; i <= 5; i++) {
+         PaymentRequestInformation information = PaymentRequestInformation.fromRawPaymentRequest(
+               signedRequest(i * 1000L, merchantKey.getPrivate()), validator, NETWORK);
+         assertTrue(information.hasValidSignature());
+         assertEquals(i * 1000L, information.getOutputs().getTotalAmount());
+         assertEquals(merchantKey.getPublic(), information.getPkiVerificationData().merchantSigningKey);
+         assertEquals("Test CA", information.getPkiVerificationData().rootAuthorityName);
+      }
+      assertEquals(1, validator.getFullValidations());
+   }
+
+   @Test
+   public void testVerifiesSignatureOfKnownChain() throws Exception {
+      PkiValidator validator = new PkiValidator(trustStore);
+      PaymentRequestInformation.fromRawPaymentRequest(signedRequest(1000, merchantKey.getPrivate()), validator,
+            NETWORK);
+      // same chain, but signed by someone else
+      assertRejected(signedRequest(1000, generateKey().getPrivate()), validator, "signature does not match");
+      assertEquals(1, validator.getFullValidations());
+   }
+
+   @Test
+   public void testRejectsUntrustedChain() throws Exception {
+      PkiValidator validator = new PkiValidator(otherTrustStore);
+      byte[] request = signedRequest(1000, merchantKey.getPrivate());
+      assertRejected(request, validator, "invalid certificate");
+      // failures are not remembered
+      assertRejected(request, validator, "invalid certificate");
+      assertEquals(2, validator.getFullValidations());
+   }
+
+   @Test
+   public void testRevalidatesExpiredChain() throws Exception {
+      final long[] now = {NOW};
+      PkiValidator validator = new PkiValidator(trustStore) {
+         @Override
+         long now() {
+            return now[0];
+         }
+      };
+      byte[] request = signedRequest(1000, merchantKey.getPrivate());
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      now[0] = MERCHANT_NOT_AFTER - 1;
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      assertEquals(1, validator.getFullValidations());
+      now[0] = MERCHANT_NOT_AFTER + DAY;
+      assertRejected(request, validator, "invalid certificate");
+      assertEquals(2, validator.getFullValidations());
+   }
+
+   @Test
+   public void testRevalidatesUntilTrustAnchorExpires() throws Exception {
+      // the same root, but it expires before the merchant certificate
+      long rootNotAfter = NOW + 10 * DAY;
+      KeyStore shortTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      shortTrustStore.load(null, null);
+      shortTrustStore.setCertificateEntry("root", certificate("CN=Test Root CA, O=Test CA", rootKey,
+            "CN=Test Root CA, O=Test CA", rootKey, rootNotAfter, true));
+      final long[] now = {NOW};
+      PkiValidator validator = new PkiValidator(shortTrustStore) {
+         @Override
+         long now() {
+            return now[0];
+         }
+      };
+      byte[] request = signedRequest(1000, merchantKey.getPrivate());
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      now[0] = rootNotAfter - 1;
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      assertEquals(1, validator.getFullValidations());
+      now[0] = rootNotAfter + DAY;
+      try {
+         PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      } catch (PaymentRequestException ignore) {
+         // whether an expired anchor is accepted is up to the PKIX implementation, we only care that it is asked
+      }
+      assertEquals(2, validator.getFullValidations());
+   }
+
+   @Test
+   public void testRevalidatesWhenTrustStoreChanges() throws Exception {
+      KeyStore changingTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      changingTrustStore.load(null, null);
+      changingTrustStore.setCertificateEntry("root", root);
+      PkiValidator validator = new PkiValidator(changingTrustStore);
+      byte[] request = signedRequest(1000, merchantKey.getPrivate());
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      assertEquals(1, validator.getFullValidations());
+
+      // a CA was added
+      changingTrustStore.setCertificateEntry("other", otherRoot);
+      PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      assertEquals(2, validator.getFullValidations());
+
+      // the root of the chain was removed
+      changingTrustStore.deleteEntry("root");
+      assertRejected(request, validator, "invalid certificate");
+      assertEquals(3, validator.getFullValidations());
+   }
+
+   @Test
+   public void testBenchmark() throws Exception {
+      final int requests = 200;
+      List<byte[]> rawRequests = new ArrayList<byte[]>();
+      for (int i = 0; i < requests; i++) {
+         rawRequests.add(signedRequest(1000 + i, merchantKey.getPrivate()));
+      }
+
+      long start = System.nanoTime();
+      for (byte[] request : rawRequests) {
+         PaymentRequestInformation.fromRawPaymentRequest(request, trustStore, NETWORK);
+      }
+      long uncached = System.nanoTime() - start;
+
+      PkiValidator validator = new PkiValidator(trustStore);
+      start = System.nanoTime();
+      for (byte[] request : rawRequests) {
+         PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+      }
+      long cached = System.nanoTime() - start;
+
+      assertTrue("shared validator took " + cached + " ns, new validators " + uncached + " ns", cached < uncached);
+      assertEquals(1, validator.getFullValidations());
+   }
+
+   private static void assertRejected(byte[] request, PkiValidator validator, String message) {
+      try {
+         PaymentRequestInformation.fromRawPaymentRequest(request, validator, NETWORK);
+         fail();
+      } catch (PaymentRequestException e) {
+         assertEquals(message, e.getMessage());
+      }
+   }
+
+   private static byte[] signedRequest(long amount, PrivateKey signingKey) throws Exception {
+      Address address = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{1}), true).getPublicKey()
+            .toAddress(NETWORK);
+      Output output = new Output.Builder()
+            .amount(amount)
+            .script(ByteString.of(new ScriptOutputStandard(address.getTypeSpecificBytes()).getScriptBytes()))
+            .build();
+      PaymentDetails details = new PaymentDetails.Builder()
+            .network("test")
+            .outputs(Collections.singletonList(output))
+            .time(NOW / 1000)
+            .build();
+      PaymentRequest unsigned = new PaymentRequest.Builder()
+            .payment_details_version(1)
+            .pki_type(PaymentRequestInformation.PKI_X509_SHA256)
+            .pki_data(ByteString.of(new X509Certificates.Builder().certificate(chain).build().toByteArray()))
+            .serialized_payment_details(ByteString.of(details.toByteArray()))
+            .signature(ByteString.EMPTY)
+            .build();
+      Signature signature = Signature.getInstance("SHA256withRSA");
+      signature.initSign(signingKey);
+      signature.update(unsigned.toByteArray());
+      return new PaymentRequest.Builder(unsigned)
+            .signature(ByteString.of(signature.sign()))
+            .build()
+            .toByteArray();
+   }
+
+   private static KeyPair generateKey() throws Exception {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+      generator.initialize(2048);
+      return generator.generateKeyPair();
+   }
+
+   private static X509Certificate certificate(String subject, KeyPair subjectKey, String issuer, KeyPair issuerKey,
+                                              long notAfter, boolean isCa) throws Exception {
+      X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name(issuer),
+            BigInteger.valueOf(System.nanoTime()), new Date(NOW - DAY), new Date(notAfter), new X500Name(subject),
+            subjectKey.getPublic());
+      builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(isCa));
+      return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(issuerKey.getPrivate())));
+   }
+}
@@ -32,6 +32,11 @@ public interface Wapi {
    int ERROR_CODE_INTERNAL_CLIENT_ERROR = 3;
    int ERROR_CODE_INVALID_SESSION = 4;
    int ERROR_CODE_INVALID_ARGUMENT = 5;
+   int ERROR_CODE_WAIT_TIMEOUT = 6;
+   /**
+    * None of the servers knows the requested function, they probably run an older version. Set by the client.
+    */
+   int ERROR_CODE_UNSUPPORTED_FUNCTION = 7;
    int ERROR_CODE_INTERNAL_SERVER_ERROR = 99;
 
    String MYCELIUM_VERSION_HEADER = "MyceliumVersion";
@@ -104,6 +109,17 @@ public interface Wapi {
     */
    WapiResponse<QueryExchangeRatesResponse> queryExchangeRates(QueryExchangeRatesRequest request);
 
+   /**
+    * Query exchange rates for several fiat currencies in one round trip
+    * <p/>
+    * The response holds one {@link QueryExchangeRatesResponse} per requested currency, in the order of the request
+    * Example HTTP POST:
+    * curl  -k -X POST -H "Content-Type: application/json"
+    *       -d '{"version":1,"currencies":["USD","EUR"]}'
+    *       https://144.76.165.115/wapitestnet/wapi/queryExchangeRatesMulti
+    */
+   WapiResponse<QueryExchangeRatesMultiResponse> queryExchangeRatesMulti(QueryExchangeRatesMultiRequest request);
+
    /**
     * Check if the wapi-service is running
     *
@@ -139,4 +155,24 @@ public interface Wapi {
     *
     */
    WapiResponse<MinerFeeEstimationResponse> getMinerFeeEstimations();
+
+   /**
+    * Wait until one of a set of addresses sees a new transaction. The server holds the request open (long-poll) until
+    * there is activity on one of the addresses, the wait got stopped with
+    * {@link #stopWaitingForAddressActivity(StopWaitingForAddressActivityRequest)} or the server side timeout
+    * elapsed. In the latter two cases the response has no addresses, but still the timestamp to continue from.
+    * Older servers answer a timeout with {@link #ERROR_CODE_WAIT_TIMEOUT} instead.
+    *
+    * curl -k -X POST -H "Content-Type: application/json" -d '{"addresses":["mfd7QG4vn2U4U5BgnTuw7dmjKsutDxkK6b"],"token":"d68a13cc-0f63-43d8-a152-e196778e8026","timestamp":0}' https://144.76.165.115/wapitestnet/wapi/waitForAddressActivity
+    */
+   WapiResponse<WaitForAddressActivityResponse> waitForAddressActivity(WaitForAddressActivityRequest request);
+
+   /**
+    * Stop a pending {@link #waitForAddressActivity(WaitForAddressActivityRequest)} with the same token
+    *
+    * returns true if there was a pending wait for this token
+    *
+    * curl -k -X POST -H "Content-Type: application/json" -d '{"token":"d68a13cc-0f63-43d8-a152-e196778e8026"}' https://144.76.165.115/wapitestnet/wapi/stopWaitingForAddressActivity
+    */
+   WapiResponse<Boolean> stopWaitingForAddressActivity(StopWaitingForAddressActivityRequest request);
 }
@@ -23,6 +23,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableSet;
 import com.mycelium.WapiLogger;
 import com.mycelium.net.*;
 import com.mycelium.wapi.api.WapiConst.Function;
@@ -32,8 +33,16 @@ import com.squareup.okhttp.*;
 
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 
 public class WapiClient implements Wapi {
@@ -41,18 +50,38 @@ public class WapiClient implements Wapi {
    private static final int LONG_TIMEOUT_MS = 60 * 1000; // one minute
    private static final int MEDIUM_TIMEOUT_MS = 20 * 1000; // 20s
    private static final int SHORT_TIMEOUT_MS = 4 * 1000; // 4s
+   // the server holds a long-poll request for up to a minute, give it some slack
+   private static final int LONG_POLL_TIMEOUT_MS = 2 * 60 * 1000;
    private static final int[] SHORT_TO_LONG_TIMEOUTS_MS = new int[]{
       SHORT_TIMEOUT_MS, MEDIUM_TIMEOUT_MS, LONG_TIMEOUT_MS, VERY_LONG_TIMEOUT_MS
    };
 
-   // the minimum timeout for the lifetime of this process(?). Restarting the app resets it to the minimum.
-   private static int _minTimeout = 0;
+   // if a server did not answer an idempotent request within this time, ask another one too. Once we know the
+   // latency of a server, its p95 latency is used instead.
+   private static final long DEFAULT_HEDGE_DELAY_MS = 2 * 1000;
+   private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+         Thread thread = new Thread(runnable, "WapiHedgedRequest");
+         thread.setDaemon(true);
+         return thread;
+      }
+   });
 
    private ObjectMapper _objectMapper;
    private com.mycelium.WapiLogger _logger;
 
    private ServerEndpoints _serverEndpoints;
    private String versionCode;
+   // Functions that older server versions do not have. Only for these a 404 means the server does not know the
+   // function, for all others it is an ordinary failure, as proxies and deploys can answer anything with a 404.
+   private static final Set<String> OPTIONAL_FUNCTIONS = ImmutableSet.of(Function.QUERY_EXCHANGE_RATES_MULTI,
+         Function.WAIT_FOR_ADDRESS_ACTIVITY, Function.STOP_WAITING_FOR_ADDRESS_ACTIVITY);
+   // how long we don't ask an endpoint again for an optional function it answered with 404, it might get updated
+   private static final long UNSUPPORTED_FUNCTION_RETRY_MS = 60 * 60 * 1000;
+
+   // per optional function the endpoints that answered it with 404, and until when we don't ask them again
+   private final Map<String, Map<HttpEndpoint, Long>> _unsupportedFunctions = new HashMap<String, Map<HttpEndpoint, Long>>();
 
    public WapiClient(ServerEndpoints serverEndpoints, WapiLogger logger, String versionCode) {
       _serverEndpoints = serverEndpoints;
@@ -68,10 +97,26 @@ public class WapiClient implements Wapi {
    }
 
    private <T> WapiResponse<T> sendRequest(String function, Object request, TypeReference<WapiResponse<T>> typeReference) {
+      return sendRequest(function, request, typeReference, false);
+   }
+
+   /**
+    * Send a request that may safely be executed more than once. If the server does not answer within its usual
+    * (p95) latency, the same request is sent to the next best server as well and the first answer wins.
+    */
+   private <T> WapiResponse<T> sendIdempotentRequest(String function, Object request, TypeReference<WapiResponse<T>> typeReference) {
+      return sendRequest(function, request, typeReference, true);
+   }
+
+   private <T> WapiResponse<T> sendRequest(String function, Object request, TypeReference<WapiResponse<T>> typeReference, boolean idempotent) {
       try {
-         Response response = getConnectionAndSendRequest(function, request);
+         List<HttpEndpoint> endpoints = getSupportingEndpointsByScore(function);
+         if (endpoints.isEmpty()) {
+            return new WapiResponse<T>(ERROR_CODE_UNSUPPORTED_FUNCTION, null);
+         }
+         Response response = getConnectionAndSendRequest(function, request, endpoints, idempotent);
          if (response == null) {
-            return new WapiResponse<T>(ERROR_CODE_NO_SERVER_CONNECTION, null);
+            return new WapiResponse<T>(isUnsupportedByAll(function, endpoints) ? ERROR_CODE_UNSUPPORTED_FUNCTION : ERROR_CODE_NO_SERVER_CONNECTION, null);
          }
          return _objectMapper.readValue(response.body().charStream(), typeReference);
       } catch (JsonParseException e) {
@@ -86,6 +131,95 @@ public class WapiClient implements Wapi {
       }
    }
 
+   /**
+    * Send a long-poll request. It goes to the best endpoint first and is never hedged, as the server is expected to
+    * hold it open.
+    */
+   private <T> WapiResponse<T> sendLongPollRequest(String function, Object request, TypeReference<WapiResponse<T>> typeReference) {
+      try {
+         List<HttpEndpoint> endpoints = getSupportingEndpointsByScore(function);
+         if (endpoints.isEmpty()) {
+            return new WapiResponse<T>(ERROR_CODE_UNSUPPORTED_FUNCTION, null);
+         }
+         List<Integer> timeouts = Collections.nCopies(endpoints.size(), LONG_POLL_TIMEOUT_MS);
+         Response response = sendRequestInOrder(function, getPostBody(request), endpoints, timeouts, false);
+         if (response == null) {
+            return new WapiResponse<T>(isUnsupportedByAll(function, endpoints) ? ERROR_CODE_UNSUPPORTED_FUNCTION : ERROR_CODE_NO_SERVER_CONNECTION, null);
+         }
+         return _objectMapper.readValue(response.body().charStream(), typeReference);
+      } catch (IOException e) {
+         logError("sendLongPollRequest failed IO exception.", e);
+         return new WapiResponse<T>(ERROR_CODE_INTERNAL_CLIENT_ERROR, null);
+      }
+   }
+
+   /**
+    * @return the endpoints that might know the function, best first
+    */
+   private List<HttpEndpoint> getSupportingEndpointsByScore(String function) {
+      List<HttpEndpoint> endpoints = _serverEndpoints.getEndpointsByScore();
+      if (!OPTIONAL_FUNCTIONS.contains(function)) {
+         return endpoints;
+      }
+      List<HttpEndpoint> supporting = new ArrayList<HttpEndpoint>(endpoints.size());
+      for (HttpEndpoint endpoint : endpoints) {
+         if (!isUnsupported(function, endpoint)) {
+            supporting.add(endpoint);
+         }
+      }
+      return supporting;
+   }
+
+   /**
+    * @return true if the endpoint answered the function with 404 recently
+    */
+   private boolean isUnsupported(String function, HttpEndpoint endpoint) {
+      synchronized (_unsupportedFunctions) {
+         Map<HttpEndpoint, Long> unsupported = _unsupportedFunctions.get(function);
+         if (unsupported == null) {
+            return false;
+         }
+         Long until = unsupported.get(endpoint);
+         if (until == null) {
+            return false;
+         }
+         if (until <= now()) {
+            // time to see whether it got updated
+            unsupported.remove(endpoint);
+            return false;
+         }
+         return true;
+      }
+   }
+
+   /**
+    * @return true if all of the endpoints we tried answered the function with 404
+    */
+   private boolean isUnsupportedByAll(String function, List<HttpEndpoint> endpoints) {
+      for (HttpEndpoint endpoint : endpoints) {
+         if (!isUnsupported(function, endpoint)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void setUnsupported(String function, HttpEndpoint endpoint) {
+      synchronized (_unsupportedFunctions) {
+         Map<HttpEndpoint, Long> unsupported = _unsupportedFunctions.get(function);
+         if (unsupported == null) {
+            unsupported = new IdentityHashMap<HttpEndpoint, Long>();
+            _unsupportedFunctions.put(function, unsupported);
+         }
+         unsupported.put(endpoint, now() + UNSUPPORTED_FUNCTION_RETRY_MS);
+      }
+   }
+
+   // the current time, can be overridden by tests
+   long now() {
+      return System.currentTimeMillis();
+   }
+
    private void logError(String message) {
       if (_logger != null) {
          _logger.logError(message);
@@ -99,22 +233,40 @@ public class WapiClient implements Wapi {
    }
 
    /**
-    * Attempt to connect and send to a URL in our list of URLS, if it fails try
-    * the next until we have cycled through all URLs. If this fails with a short
+    * Attempt to connect and send to the endpoints in the order of their score, if it fails try
+    * the next until we have tried all of them. If this fails with a short
     * timeout, retry all servers with a medium timeout, followed by a retry with
-    * long timeout.
+    * long timeout. The timeout for each server is adapted to the latency we observed for it.
     */
-   private Response getConnectionAndSendRequest(String function, Object request) {
-      for(int timeout: SHORT_TO_LONG_TIMEOUTS_MS) {
-         if(timeout < _minTimeout) {
-            // if some timeout was too short for all servers, maybe we hit all of them but were slow ourselves
+   private Response getConnectionAndSendRequest(String function, Object request, List<HttpEndpoint> candidates,
+                                                boolean idempotent) {
+      final String toSend = getPostBody(request);
+      Map<HttpEndpoint, Integer> lastTimeouts = new IdentityHashMap<HttpEndpoint, Integer>();
+      for (int minTimeout : SHORT_TO_LONG_TIMEOUTS_MS) {
+         List<HttpEndpoint> endpoints = new ArrayList<HttpEndpoint>();
+         List<Integer> timeouts = new ArrayList<Integer>();
+         for (HttpEndpoint endpoint : candidates) {
+            if (isUnsupported(function, endpoint)) {
+               // it answered with 404 in an earlier round
+               continue;
+            }
+            int timeout = _serverEndpoints.getScorer().getTimeoutMs(endpoint, minTimeout, VERY_LONG_TIMEOUT_MS);
+            Integer lastTimeout = lastTimeouts.get(endpoint);
+            if (lastTimeout != null && timeout <= lastTimeout) {
+               // we already tried this server with this timeout
+               continue;
+            }
+            lastTimeouts.put(endpoint, timeout);
+            endpoints.add(endpoint);
+            timeouts.add(timeout);
+         }
+         if (endpoints.isEmpty()) {
             continue;
          }
-         Response response = getConnectionAndSendRequestWithTimeout(request, function, timeout);
+         Response response = idempotent && endpoints.size() > 1
+               ? sendHedgedRequest(function, toSend, endpoints, timeouts)
+               : sendRequestInOrder(function, toSend, endpoints, timeouts, true);
          if (response != null) {
-            if(timeout > _minTimeout) {
-               _minTimeout = timeout;
-            }
             return response;
          }
       }
@@ -122,66 +274,230 @@ public class WapiClient implements Wapi {
    }
 
    /**
-    * Attempt to connect and send to a URL in our list of URLS, if it fails try
-    * the next until we have cycled through all URLs. timeout.
+    * Try the endpoints one after the other until one of them answers
+    *
+    * @param measureLatency false for requests that the server holds open on purpose, as their duration says nothing
+    *                       about the latency of the server
     */
-   private Response getConnectionAndSendRequestWithTimeout(Object request, String function, int timeout) {
-      int originalConnectionIndex = _serverEndpoints.getCurrentEndpointIndex();
-      while (true) {
-         // currently active server-endpoint
-         HttpEndpoint serverEndpoint = _serverEndpoints.getCurrentEndpoint();
-         try {
-            OkHttpClient client = serverEndpoint.getClient();
-            _logger.logInfo("Connecting to " + serverEndpoint.getBaseUrl() + " (" + _serverEndpoints.getCurrentEndpointIndex() + ")");
-
-            client.setConnectTimeout(timeout, TimeUnit.MILLISECONDS);
-            client.setReadTimeout(timeout, TimeUnit.MILLISECONDS);
-            client.setWriteTimeout(timeout, TimeUnit.MILLISECONDS);
-
-            Stopwatch callDuration = Stopwatch.createStarted();
-            // build request
-            final String toSend = getPostBody(request);
-            Request rq = new Request.Builder()
-                  .addHeader(MYCELIUM_VERSION_HEADER, versionCode)
-                  .post(RequestBody.create(MediaType.parse("application/json"), toSend))
-                  .url(serverEndpoint.getUri(WapiConst.WAPI_BASE_PATH, function).toString())
-                  .build();
-
-            // execute request
-            Response response = client.newCall(rq).execute();
-            callDuration.stop();
-            _logger.logInfo(String.format(Locale.ENGLISH, "Wapi %s finished (%dms)", function, callDuration.elapsed(TimeUnit.MILLISECONDS)));
-
-            // Check for status code 2XX
-            if (response.isSuccessful()) {
-               if (serverEndpoint instanceof FeedbackEndpoint){
-                  ((FeedbackEndpoint) serverEndpoint).onSuccess();
+   private Response sendRequestInOrder(String function, String toSend, List<HttpEndpoint> endpoints, List<Integer> timeouts,
+                                       boolean measureLatency) {
+      for (int i = 0; i < endpoints.size(); i++) {
+         Response response = sendRequestToEndpoint(function, toSend, endpoints.get(i), timeouts.get(i), null, measureLatency);
+         if (response != null) {
+            return response;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Send the request to the first endpoint. Whenever no answer arrived within the hedge delay of the last
+    * endpoint we sent to, or a request failed, the request is also sent to the next endpoint. The first successful
+    * response is returned and all other requests get cancelled.
+    */
+   private Response sendHedgedRequest(String function, String toSend, List<HttpEndpoint> endpoints, List<Integer> timeouts) {
+      CompletionService<Response> completionService = new ExecutorCompletionService<Response>(HEDGE_EXECUTOR);
+      List<Call> calls = new CopyOnWriteArrayList<Call>();
+      HedgedResponses responses = new HedgedResponses();
+      // the futures and when they were submitted, in the order of the endpoints
+      List<Future<Response>> futures = new ArrayList<Future<Response>>();
+      List<Long> submitTimes = new ArrayList<Long>();
+      Response winner = null;
+      try {
+         submitTimes.add(System.currentTimeMillis());
+         futures.add(submitRequest(completionService, function, toSend, endpoints.get(0), timeouts.get(0), calls, responses));
+         int next = 1;
+         int running = 1;
+         while (running > 0) {
+            Future<Response> done;
+            if (next < endpoints.size()) {
+               long hedgeDelay = _serverEndpoints.getScorer().getHedgeDelayMs(endpoints.get(next - 1), DEFAULT_HEDGE_DELAY_MS);
+               done = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+               if (done == null) {
+                  // no answer within the usual latency, ask the next server as well
+                  _logger.logInfo("Hedging " + function + " to " + endpoints.get(next).getBaseUrl());
+                  submitTimes.add(System.currentTimeMillis());
+                  futures.add(submitRequest(completionService, function, toSend, endpoints.get(next), timeouts.get(next), calls, responses));
+                  next++;
+                  running++;
+                  continue;
                }
-               return response;
             } else {
-               // If the status code is not 200 we cycle to the next server
-               logError(String.format(Locale.ENGLISH, "Http call to %s failed with %d %s", function, response.code(), response.message()));
-               // throw...
+               done = completionService.take();
             }
-         } catch (IOException e) {
-            logError("IOException when sending request " + function, e);
-            if (serverEndpoint instanceof FeedbackEndpoint){
-               _logger.logInfo("Resetting tor");
-               ((FeedbackEndpoint) serverEndpoint).onError();
+            running--;
+            winner = done.get();
+            if (winner != null) {
+               return winner;
+            }
+            if (next < endpoints.size() && running == 0) {
+               // the request failed, don't wait for the hedge delay
+               submitTimes.add(System.currentTimeMillis());
+               futures.add(submitRequest(completionService, function, toSend, endpoints.get(next), timeouts.get(next), calls, responses));
+               next++;
+               running++;
             }
-         } catch (RuntimeException e) {
-            logError("Send request fail", e);
          }
-         // Try the next server
-         _serverEndpoints.switchToNextEndpoint();
-         if (_serverEndpoints.getCurrentEndpointIndex() == originalConnectionIndex) {
-            // We have tried all URLs
+         return null;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return null;
+      } catch (ExecutionException e) {
+         logError("Hedged request failed", e);
+         return null;
+      } finally {
+         responses.finish(winner);
+         long now = System.currentTimeMillis();
+         for (int i = 0; i < futures.size(); i++) {
+            if (winner != null && !futures.get(i).isDone()) {
+               // This one lost against a faster server. Its cancelled call records nothing, but it took at least
+               // this long, which has to count or a server that became slow would keep its good score.
+               _serverEndpoints.getScorer().onCancelled(endpoints.get(i), now - submitTimes.get(i));
+            }
+            futures.get(i).cancel(false);
+         }
+         for (Call call : calls) {
+            call.cancel();
+         }
+      }
+   }
+
+   /**
+    * The responses of the requests of one hedged call. When the call is finished, all responses but the winner get
+    * closed, including the ones that arrive later.
+    */
+   private static class HedgedResponses {
+      private final List<Response> responses = new ArrayList<Response>();
+      private boolean finished;
+
+      synchronized boolean isFinished() {
+         return finished;
+      }
+
+      /**
+       * @return the response, or null if the call is finished already, then the response got closed
+       */
+      synchronized Response add(Response response) {
+         if (finished) {
+            closeQuietly(response);
             return null;
          }
+         responses.add(response);
+         return response;
+      }
+
+      synchronized void finish(Response winner) {
+         finished = true;
+         for (Response response : responses) {
+            if (response != winner) {
+               closeQuietly(response);
+            }
+         }
+         responses.clear();
+      }
 
+      private static void closeQuietly(Response response) {
+         try {
+            response.body().close();
+         } catch (IOException ignore) {
+            // we are only cleaning up
+         }
       }
    }
 
+   private Future<Response> submitRequest(CompletionService<Response> completionService, final String function, final String toSend,
+                                          final HttpEndpoint endpoint, final int timeout, final List<Call> calls,
+                                          final HedgedResponses responses) {
+      return completionService.submit(new Callable<Response>() {
+         @Override
+         public Response call() throws Exception {
+            if (responses.isFinished()) {
+               return null;
+            }
+            Response response = sendRequestToEndpoint(function, toSend, endpoint, timeout, calls, true);
+            return response == null ? null : responses.add(response);
+         }
+      });
+   }
+
+   /**
+    * Send the request to a single endpoint and record the outcome in its score.
+    *
+    * @param calls if not null, the call gets added to this list, so that it can be cancelled by the caller
+    * @param measureLatency whether the duration of a successful call should count as latency of the endpoint
+    * @return the response or null, if the request failed
+    */
+   private Response sendRequestToEndpoint(String function, String toSend, HttpEndpoint serverEndpoint, int timeout, List<Call> calls,
+                                          boolean measureLatency) {
+      Stopwatch callDuration = Stopwatch.createStarted();
+      Call call = null;
+      try {
+         OkHttpClient client = serverEndpoint.getClient();
+         _logger.logInfo("Connecting to " + serverEndpoint.getBaseUrl() + " (timeout " + timeout + "ms)");
+
+         client.setConnectTimeout(timeout, TimeUnit.MILLISECONDS);
+         client.setReadTimeout(timeout, TimeUnit.MILLISECONDS);
+         client.setWriteTimeout(timeout, TimeUnit.MILLISECONDS);
+
+         // build request
+         Request rq = new Request.Builder()
+               .addHeader(MYCELIUM_VERSION_HEADER, versionCode)
+               .post(RequestBody.create(MediaType.parse("application/json"), toSend))
+               .url(serverEndpoint.getUri(WapiConst.WAPI_BASE_PATH, function).toString())
+               .build();
+
+         // execute request
+         call = client.newCall(rq);
+         if (calls != null) {
+            calls.add(call);
+         }
+         Response response = call.execute();
+         callDuration.stop();
+         long elapsed = callDuration.elapsed(TimeUnit.MILLISECONDS);
+         _logger.logInfo(String.format(Locale.ENGLISH, "Wapi %s finished (%dms)", function, elapsed));
+
+         // Check for status code 2XX
+         if (response.isSuccessful()) {
+            if (calls != null) {
+               // the caller must not cancel the call we are going to read the response of
+               calls.remove(call);
+            }
+            if (serverEndpoint instanceof FeedbackEndpoint){
+               ((FeedbackEndpoint) serverEndpoint).onSuccess();
+            }
+            if (measureLatency) {
+               _serverEndpoints.onSuccess(serverEndpoint, elapsed);
+            }
+            return response;
+         } else if (response.code() == HttpURLConnection.HTTP_NOT_FOUND && OPTIONAL_FUNCTIONS.contains(function)) {
+            // The server does not know this function yet, which says nothing about its health. Try the next server
+            // and don't ask this one again for a while.
+            _logger.logInfo("Wapi " + function + " is not supported by " + serverEndpoint.getBaseUrl());
+            response.body().close();
+            setUnsupported(function, serverEndpoint);
+            return null;
+         } else {
+            // If the status code is not 200 we try the next server
+            logError(String.format(Locale.ENGLISH, "Http call to %s failed with %d %s", function, response.code(), response.message()));
+            response.body().close();
+         }
+      } catch (IOException e) {
+         if (call != null && call.isCanceled()) {
+            // another server answered first, this says nothing about this server
+            return null;
+         }
+         logError("IOException when sending request " + function, e);
+         if (serverEndpoint instanceof FeedbackEndpoint){
+            _logger.logInfo("Resetting tor");
+            ((FeedbackEndpoint) serverEndpoint).onError();
+         }
+      } catch (RuntimeException e) {
+         logError("Send request fail", e);
+      }
+      _serverEndpoints.onFailure(serverEndpoint, callDuration.elapsed(TimeUnit.MILLISECONDS));
+      return null;
+   }
+
    private String getPostBody(Object request) {
       if (request == null) {
          return "";
@@ -196,7 +512,7 @@ public class WapiClient implements Wapi {
 
    @Override
    public WapiResponse<QueryUnspentOutputsResponse> queryUnspentOutputs(QueryUnspentOutputsRequest request) {
-      return sendRequest(Function.QUERY_UNSPENT_OUTPUTS, request,
+      return sendIdempotentRequest(Function.QUERY_UNSPENT_OUTPUTS, request,
             new TypeReference<WapiResponse<QueryUnspentOutputsResponse>>() {
             });
    }
@@ -204,7 +520,7 @@ public class WapiClient implements Wapi {
    @Override
    public WapiResponse<QueryTransactionInventoryResponse> queryTransactionInventory(
          QueryTransactionInventoryRequest request) {
-      return sendRequest(Function.QUERY_TRANSACTION_INVENTORY, request,
+      return sendIdempotentRequest(Function.QUERY_TRANSACTION_INVENTORY, request,
             new TypeReference<WapiResponse<QueryTransactionInventoryResponse>>() {
             });
    }
@@ -213,7 +529,7 @@ public class WapiClient implements Wapi {
    public WapiResponse<GetTransactionsResponse> getTransactions(GetTransactionsRequest request) {
       TypeReference<WapiResponse<GetTransactionsResponse>> typeref = new TypeReference<WapiResponse<GetTransactionsResponse>>() {
       };
-      return sendRequest(Function.GET_TRANSACTIONS, request, typeref);
+      return sendIdempotentRequest(Function.GET_TRANSACTIONS, request, typeref);
    }
 
    @Override
@@ -226,19 +542,25 @@ public class WapiClient implements Wapi {
    @Override
    public WapiResponse<CheckTransactionsResponse> checkTransactions(CheckTransactionsRequest request) {
       TypeReference<WapiResponse<CheckTransactionsResponse>> typeref = new TypeReference<WapiResponse<CheckTransactionsResponse>>() { };
-      return sendRequest(Function.CHECK_TRANSACTIONS, request, typeref);
+      return sendIdempotentRequest(Function.CHECK_TRANSACTIONS, request, typeref);
    }
 
    @Override
    public WapiResponse<QueryExchangeRatesResponse> queryExchangeRates(QueryExchangeRatesRequest request) {
       TypeReference<WapiResponse<QueryExchangeRatesResponse>> typeref = new TypeReference<WapiResponse<QueryExchangeRatesResponse>>() { };
-      return sendRequest(Function.QUERY_EXCHANGE_RATES, request, typeref);
+      return sendIdempotentRequest(Function.QUERY_EXCHANGE_RATES, request, typeref);
+   }
+
+   @Override
+   public WapiResponse<QueryExchangeRatesMultiResponse> queryExchangeRatesMulti(QueryExchangeRatesMultiRequest request) {
+      TypeReference<WapiResponse<QueryExchangeRatesMultiResponse>> typeref = new TypeReference<WapiResponse<QueryExchangeRatesMultiResponse>>() { };
+      return sendIdempotentRequest(Function.QUERY_EXCHANGE_RATES_MULTI, request, typeref);
    }
 
    @Override
    public  WapiResponse<PingResponse> ping(){
       TypeReference<WapiResponse<PingResponse>> typeref = new TypeReference<WapiResponse<PingResponse>>() { };
-      return sendRequest(Function.PING, null, typeref);
+      return sendIdempotentRequest(Function.PING, null, typeref);
    }
 
    @Override
@@ -250,13 +572,25 @@ public class WapiClient implements Wapi {
    @Override
    public WapiResponse<VersionInfoExResponse> getVersionInfoEx(VersionInfoExRequest request) {
       TypeReference<WapiResponse<VersionInfoExResponse>> typeref = new TypeReference<WapiResponse<VersionInfoExResponse>>() { };
-      return sendRequest(Function.GET_VERSION_INFO_EX, request, typeref);
+      return sendIdempotentRequest(Function.GET_VERSION_INFO_EX, request, typeref);
    }
 
    @Override
    public WapiResponse<MinerFeeEstimationResponse> getMinerFeeEstimations() {
       TypeReference<WapiResponse<MinerFeeEstimationResponse>> typeref = new TypeReference<WapiResponse<MinerFeeEstimationResponse>>() { };
-      return sendRequest(Function.GET_MINER_FEE_ESTIMATION, null, typeref);
+      return sendIdempotentRequest(Function.GET_MINER_FEE_ESTIMATION, null, typeref);
+   }
+
+   @Override
+   public WapiResponse<WaitForAddressActivityResponse> waitForAddressActivity(WaitForAddressActivityRequest request) {
+      TypeReference<WapiResponse<WaitForAddressActivityResponse>> typeref = new TypeReference<WapiResponse<WaitForAddressActivityResponse>>() { };
+      return sendLongPollRequest(Function.WAIT_FOR_ADDRESS_ACTIVITY, request, typeref);
+   }
+
+   @Override
+   public WapiResponse<Boolean> stopWaitingForAddressActivity(StopWaitingForAddressActivityRequest request) {
+      TypeReference<WapiResponse<Boolean>> typeref = new TypeReference<WapiResponse<Boolean>>() { };
+      return sendRequest(Function.STOP_WAITING_FOR_ADDRESS_ACTIVITY, request, typeref);
    }
 
    @Override
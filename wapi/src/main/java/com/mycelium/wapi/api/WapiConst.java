@@ -26,10 +26,13 @@ public interface WapiConst {
        String BROADCAST_TRANSACTION = "broadcastTransaction";
        String CHECK_TRANSACTIONS = "checkTransactions";
        String QUERY_EXCHANGE_RATES = "queryExchangeRates";
+       String QUERY_EXCHANGE_RATES_MULTI = "queryExchangeRatesMulti";
        String PING = "ping";
        String COLLECT_ERROR = "collectError";
        String GET_VERSION_INFO = "getVersion";
        String GET_VERSION_INFO_EX = "getVersionEx";
        String GET_MINER_FEE_ESTIMATION = "getMinerFeeEstimations";
+       String WAIT_FOR_ADDRESS_ACTIVITY = "waitForAddressActivity";
+       String STOP_WAITING_FOR_ADDRESS_ACTIVITY = "stopWaitingForAddressActivity";
    }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.api.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mrd.bitlib.model.Address;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.UUID;
+
+public class WaitForAddressActivityRequest implements Serializable {
+   private static final long serialVersionUID = 1L;
+
+   @JsonProperty
+   public final Collection<Address> addresses;
+   /**
+    * Token identifying this wait, which allows the client to stop waiting
+    */
+   @JsonProperty
+   public final UUID token;
+   /**
+    * The server timestamp of the last activity we know about, or 0 to only get notified about new activity
+    */
+   @JsonProperty
+   public final long timestamp;
+
+   public WaitForAddressActivityRequest(@JsonProperty("addresses") Collection<Address> addresses,
+                                        @JsonProperty("token") UUID token,
+                                        @JsonProperty("timestamp") long timestamp) {
+      this.addresses = addresses;
+      this.token = token;
+      this.timestamp = timestamp;
+   }
+}
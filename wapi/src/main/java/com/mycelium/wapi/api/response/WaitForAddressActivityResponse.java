@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.api.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mrd.bitlib.model.Address;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+public class WaitForAddressActivityResponse implements Serializable {
+   private static final long serialVersionUID = 1L;
+
+   /**
+    * The watched addresses that saw new transactions
+    */
+   @JsonProperty
+   public final Collection<Address> addresses;
+   /**
+    * The server timestamp of this activity, to be passed in the next request
+    */
+   @JsonProperty
+   public final long timestamp;
+
+   public WaitForAddressActivityResponse(@JsonProperty("addresses") Collection<Address> addresses,
+                                         @JsonProperty("timestamp") long timestamp) {
+      this.addresses = addresses;
+      this.timestamp = timestamp;
+   }
+}
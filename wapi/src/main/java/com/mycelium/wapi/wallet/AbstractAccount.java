@@ -200,8 +200,12 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       // Make a map for fast lookup
       Map<OutPoint, TransactionOutputEx> remoteMap = toMap(remoteUnspent);
 
-      // Get the current unspent outputs as it is believed to be locally
-      Collection<TransactionOutputEx> localUnspent = _backing.getAllUnspentOutputs();
+      // Get the current unspent outputs of the requested addresses as it is believed to be locally. Outputs of
+      // other addresses are not touched, so we don't need to load them. Outputs without an address are stored under
+      // the null address, the servers never return them for an address so they get removed below
+      Set<Address> localAddresses = new HashSet<>(addresses);
+      localAddresses.add(Address.getNullAddress(_network));
+      Collection<TransactionOutputEx> localUnspent = _backing.getUnspentOutputs(localAddresses);
       // Make a map for fast lookup
       Map<OutPoint, TransactionOutputEx> localMap = toMap(localUnspent);
 
@@ -214,29 +218,18 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
          if (r == null) {
             // An output has gone. Maybe it was spent in another wallet, or
             // never confirmed due to missing fees, double spend, or mutated.
-
-            // we need to fetch associated transactions, to see the outgoing tx in the history
-            ScriptOutput scriptOutput = ScriptOutput.fromScriptBytes(l.script);
-            boolean removeLocally = true;
-            if (scriptOutput != null) {
-               Address address = scriptOutput.getAddress(_network);
-               if (addresses.contains(address)) {
-                  // the output was associated with an address we were scanning for
-                  // we should have got back that output from the servers
-                  // this means it got probably spent via another wallet
-                  // scan this address for all associated transaction to keep the history in sync
-                  if (!address.equals(Address.getNullAddress(_network))) {
-                     addressesToDiscover.add(address);
-                  }
-               } else {
-                  removeLocally = false;
-               }
+            // The output was associated with an address we were scanning for,
+            // so we should have got back that output from the servers.
+            // This means it got probably spent via another wallet:
+            // scan this address for all associated transaction to keep the history in sync
+            ScriptOutput script = ScriptOutput.fromScriptBytes(l.script);
+            Address address = script == null ? null : script.getAddress(_network);
+            if (address != null && !address.equals(Address.getNullAddress(_network))) {
+               addressesToDiscover.add(address);
             }
 
-            if (removeLocally) {
-               // delete the UTXO locally
-               _backing.deleteUnspentOutput(l.outPoint);
-            }
+            // delete the UTXO locally
+            _backing.deleteUnspentOutput(l.outPoint);
          }
       }
 
@@ -667,10 +660,22 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
 
    @Override
    public List<TransactionSummary> getTransactionHistory(int offset, int limit) {
+      List<TransactionSummary> history = new ArrayList<>();
+      getTransactionHistory(offset, limit, history);
+      return history;
+   }
+
+   /**
+    * Get a page of the transaction history. Transactions that are not shown, like colored coin transactions, are
+    * left out, so the page can have less than limit entries even if there are more transactions.
+    *
+    * @param history the list to add the transactions of the page to
+    * @return the number of stored transactions the page was made of, less than limit for the last page
+    */
+   public int getTransactionHistory(int offset, int limit, List<TransactionSummary> history) {
       // Note that this method is not synchronized, and we might fetch the transaction history while synchronizing
       // accounts. That should be ok as we write to the DB in a sane order.
 
-      List<TransactionSummary> history = new ArrayList<>();
       checkNotArchived();
       int blockChainHeight = getBlockChainHeight();
       List<TransactionEx> list = _backing.getTransactionHistory(offset, limit);
@@ -680,7 +685,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             history.add(item);
          }
       }
-      return history;
+      return list.size();
    }
 
    @Override
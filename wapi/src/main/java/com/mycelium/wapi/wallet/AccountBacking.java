@@ -16,6 +16,7 @@
 
 package com.mycelium.wapi.wallet;
 
+import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.OutPoint;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.model.TransactionEx;
@@ -37,6 +38,14 @@ public interface AccountBacking {
 
    Collection<TransactionOutputEx> getAllUnspentOutputs();
 
+   /**
+    * Get the unspent outputs paying to any of the given addresses. Implementations look this up by the stored
+    * address hash of each output (see {@link com.mrd.bitlib.model.ScriptOutput#getIndexAddressHash(byte[])}), so the
+    * cost depends on the number of addresses and not on the size of the account. Outputs that do not pay to an
+    * address are found with the null address.
+    */
+   Collection<TransactionOutputEx> getUnspentOutputs(Collection<Address> addresses);
+
    TransactionOutputEx getUnspentOutput(OutPoint outPoint);
 
    void deleteUnspentOutput(OutPoint outPoint);
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.google.common.collect.ImmutableList;
+import com.mrd.bitlib.model.Address;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiException;
+import com.mycelium.wapi.api.WapiResponse;
+import com.mycelium.wapi.api.request.StopWaitingForAddressActivityRequest;
+import com.mycelium.wapi.api.request.WaitForAddressActivityRequest;
+import com.mycelium.wapi.api.response.WaitForAddressActivityResponse;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Watches a set of addresses for new transactions by long-polling
+ * {@link Wapi#waitForAddressActivity(WaitForAddressActivityRequest)}, and tells its listener only when the server
+ * reports activity on one of them.
+ * <p>
+ * If the server can not be reached, the listener gets called every {@link #RETRY_TIMEOUT_MS} until it is back. If
+ * the servers do not support long-polling, the watcher stops asking them and only calls the listener every
+ * {@link #RETRY_TIMEOUT_MS}, which is what polling did before.
+ */
+public class AddressActivityWatcher implements Runnable {
+   public static final long RETRY_TIMEOUT_MS = 5000;
+
+   public interface Listener {
+      /**
+       * Called on the watcher thread when some of the watched addresses saw new transactions
+       */
+      void onAddressActivity(Collection<Address> addresses);
+   }
+
+   private final Wapi _wapi;
+   private final WapiLogger _logger;
+   private final Collection<Address> _addresses;
+   private final Listener _listener;
+   private final UUID _token;
+   private final Thread _thread;
+   private volatile boolean _isCancelled;
+   private volatile boolean _isLongPolling = true;
+
+   public AddressActivityWatcher(Wapi wapi, Collection<Address> addresses, Listener listener) {
+      _wapi = wapi;
+      _logger = wapi.getLogger();
+      _addresses = ImmutableList.copyOf(addresses);
+      _listener = listener;
+      _token = UUID.randomUUID();
+      _thread = new Thread(this);
+      _thread.setDaemon(true);
+      _thread.setName(getClass().getSimpleName());
+   }
+
+   public void start() {
+      _thread.start();
+   }
+
+   @Override
+   public void run() {
+      long timestamp = 0;
+      try {
+         while (!_isCancelled) {
+            try {
+               WapiResponse<WaitForAddressActivityResponse> response = _wapi.waitForAddressActivity(
+                     new WaitForAddressActivityRequest(_addresses, _token, timestamp));
+               if (response.getErrorCode() == Wapi.ERROR_CODE_UNSUPPORTED_FUNCTION) {
+                  _logger.logInfo("The server does not support waiting for address activity, polling every "
+                        + (RETRY_TIMEOUT_MS / 1000) + " seconds");
+                  _isLongPolling = false;
+                  poll();
+                  return;
+               }
+               WaitForAddressActivityResponse result = response.getResult();
+               if (_isCancelled) {
+                  return;
+               }
+               // the next wait continues where this one stopped, so we don't miss anything in between. This includes
+               // timeouts, which come with the timestamp of the server too.
+               timestamp = result.timestamp;
+               if (!result.addresses.isEmpty()) {
+                  _listener.onAddressActivity(result.addresses);
+               }
+            } catch (WapiException e) {
+               if (e.errorCode == Wapi.ERROR_CODE_WAIT_TIMEOUT) {
+                  // Timeout of an older server, which does not tell us its timestamp. Try again.
+                  continue;
+               }
+               // Something went wrong, fall back to polling until the server is back
+               _logger.logInfo("Waiting for address activity failed, retrying in " + (RETRY_TIMEOUT_MS / 1000) + " seconds");
+               Thread.sleep(RETRY_TIMEOUT_MS);
+               if (!_isCancelled) {
+                  _listener.onAddressActivity(_addresses);
+               }
+            }
+         }
+      } catch (InterruptedException e) {
+         _isCancelled = true;
+      } catch (RuntimeException e) {
+         _logger.logError("Caught exception while watching addresses, exiting.", e);
+         _isCancelled = true;
+      }
+   }
+
+   private void poll() throws InterruptedException {
+      while (!_isCancelled) {
+         Thread.sleep(RETRY_TIMEOUT_MS);
+         if (!_isCancelled) {
+            _listener.onAddressActivity(_addresses);
+         }
+      }
+   }
+
+   public boolean isCancelled() {
+      return _isCancelled;
+   }
+
+   public void cancel() {
+      if (!_isCancelled) {
+         _isCancelled = true;
+         _thread.interrupt();
+         if (!_isLongPolling) {
+            return;
+         }
+         // Stop long polling from the server side by making an API call in a
+         // separate thread
+         Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               _wapi.stopWaitingForAddressActivity(new StopWaitingForAddressActivityRequest(_token));
+            }
+         });
+         t.setDaemon(true);
+         t.start();
+      }
+   }
+}
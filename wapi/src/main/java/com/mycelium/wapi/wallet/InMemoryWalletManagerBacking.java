@@ -18,7 +18,9 @@ package com.mycelium.wapi.wallet;
 
 
 import com.google.common.base.Preconditions;
+import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptOutput;
 import com.mrd.bitlib.util.HexUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.model.TransactionEx;
@@ -162,6 +164,7 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
 
    private class InMemoryAccountBacking implements Bip44AccountBacking, SingleAddressAccountBacking {
       private final Map<OutPoint, TransactionOutputEx> _unspentOuputs = new HashMap<>();
+      private final Map<String, Set<OutPoint>> _unspentOutputsByAddress = new HashMap<>();
       private final Map<Sha256Hash, TransactionEx> _transactions = new HashMap<>();
       private final Map<OutPoint, TransactionOutputEx> _parentOutputs = new HashMap<>();
       private final Map<Sha256Hash, byte[]> _outgoingTransactions = new HashMap<>();
@@ -197,6 +200,7 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
       @Override
       public void clear() {
          _unspentOuputs.clear();
+         _unspentOutputsByAddress.clear();
          _transactions.clear();
          _parentOutputs.clear();
          _outgoingTransactions.clear();
@@ -212,14 +216,50 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return _unspentOuputs.get(outPoint);
       }
 
+      @Override
+      public Collection<TransactionOutputEx> getUnspentOutputs(Collection<Address> addresses) {
+         List<TransactionOutputEx> result = new LinkedList<>();
+         for (Address address : addresses) {
+            Set<OutPoint> outPoints = _unspentOutputsByAddress.get(HexUtils.toHex(address.getTypeSpecificBytes()));
+            if (outPoints != null) {
+               for (OutPoint outPoint : outPoints) {
+                  result.add(_unspentOuputs.get(outPoint));
+               }
+            }
+         }
+         return result;
+      }
+
       @Override
       public void deleteUnspentOutput(OutPoint outPoint) {
-         _unspentOuputs.remove(outPoint);
+         TransactionOutputEx output = _unspentOuputs.remove(outPoint);
+         if (output != null) {
+            String key = addressKey(output);
+            Set<OutPoint> outPoints = _unspentOutputsByAddress.get(key);
+            if (outPoints != null) {
+               outPoints.remove(outPoint);
+               if (outPoints.isEmpty()) {
+                  _unspentOutputsByAddress.remove(key);
+               }
+            }
+         }
       }
 
       @Override
       public void putUnspentOutput(TransactionOutputEx output) {
+         deleteUnspentOutput(output.outPoint);
          _unspentOuputs.put(output.outPoint, output);
+         String key = addressKey(output);
+         Set<OutPoint> outPoints = _unspentOutputsByAddress.get(key);
+         if (outPoints == null) {
+            outPoints = new HashSet<>();
+            _unspentOutputsByAddress.put(key, outPoints);
+         }
+         outPoints.add(output.outPoint);
+      }
+
+      private String addressKey(TransactionOutputEx output) {
+         return HexUtils.toHex(ScriptOutput.getIndexAddressHash(output.script));
       }
 
       @Override
@@ -0,0 +1,179 @@
+package com.mycelium.wapi.wallet;
+
+import com.google.common.base.Objects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A request to synchronize the wallet, as queued by the {@link SyncScheduler}
+ */
+public class SyncRequest {
+   public enum Status {
+      /**
+       * Waiting in the queue
+       */
+      QUEUED,
+      /**
+       * Covered by another request, which will do the work
+       */
+      MERGED,
+      RUNNING,
+      DONE,
+      /**
+       * Ran, but could not complete, for example because the server was not reachable
+       */
+      FAILED,
+      CANCELLED
+   }
+
+   public final SyncMode mode;
+   /**
+    * The account to sync if the mode only syncs the active account, null if the active account was not known
+    */
+   public final UUID accountId;
+   final long sequence;
+   private volatile Status status = Status.QUEUED;
+   private volatile SyncRequest mergedInto;
+   private final List<SyncRequest> merged = new ArrayList<>();
+
+   SyncRequest(SyncMode mode, UUID accountId, long sequence) {
+      this.mode = mode;
+      this.accountId = mode.onlyActiveAccount ? accountId : null;
+      this.sequence = sequence;
+   }
+
+   public Status getStatus() {
+      return status;
+   }
+
+   /**
+    * @return the request that does the work of this one, which is this request unless it got merged
+    */
+   public SyncRequest getEffectiveRequest() {
+      SyncRequest request = this;
+      while (request.mergedInto != null) {
+         request = request.mergedInto;
+      }
+      return request;
+   }
+
+   public boolean isCancelled() {
+      return status == Status.CANCELLED;
+   }
+
+   void setStatus(Status status) {
+      this.status = status;
+   }
+
+   void setMergedInto(SyncRequest request) {
+      mergedInto = request;
+      status = Status.MERGED;
+      request.merged.add(this);
+      request.merged.addAll(merged);
+   }
+
+   /**
+    * @return all requests that got merged into this one, directly or through other merged requests
+    */
+   List<SyncRequest> getMergedRequests() {
+      return merged;
+   }
+
+   /**
+    * Lower runs first. Small, targeted syncs run first as the user is usually waiting for them.
+    */
+   int getPriority() {
+      switch (mode.mode) {
+         case ONE_ADDRESS:
+            return 0;
+         case FAST_SYNC:
+            return 1;
+         case NORMAL_SYNC:
+            return 2;
+         default:
+            return 3;
+      }
+   }
+
+   /**
+    * Get a sync mode that does everything both this and the other request do, if there is one that is not
+    * (much) more expensive than the two of them.
+    *
+    * @return the merged mode or null if the two requests can not be merged
+    */
+   SyncMode mergeWith(SyncRequest other) {
+      SyncMode a = mode;
+      SyncMode b = other.mode;
+      // the account scope
+      boolean onlyActiveAccount;
+      if (a.onlyActiveAccount && b.onlyActiveAccount) {
+         if (!Objects.equal(accountId, other.accountId)) {
+            return null;
+         }
+         onlyActiveAccount = true;
+      } else if (!a.onlyActiveAccount && !b.onlyActiveAccount) {
+         onlyActiveAccount = false;
+      } else {
+         // only merge into the all accounts sync if it covers the single account one anyway
+         SyncMode all = a.onlyActiveAccount ? b : a;
+         SyncMode single = a.onlyActiveAccount ? a : b;
+         if (rank(all.mode) < rank(single.mode)) {
+            return null;
+         }
+         onlyActiveAccount = false;
+      }
+
+      // the address scope
+      SyncMode.Mode mergedMode;
+      boolean ignoreSyncInterval = a.ignoreSyncInterval || b.ignoreSyncInterval;
+      if (a.mode == SyncMode.Mode.ONE_ADDRESS || b.mode == SyncMode.Mode.ONE_ADDRESS) {
+         SyncMode oneAddress = a.mode == SyncMode.Mode.ONE_ADDRESS ? a : b;
+         SyncMode otherMode = a.mode == SyncMode.Mode.ONE_ADDRESS ? b : a;
+         if (otherMode.mode == SyncMode.Mode.ONE_ADDRESS) {
+            if (!Objects.equal(oneAddress.addressToSync, otherMode.addressToSync)) {
+               return null;
+            }
+            // same address, just be forced if one of them was
+            return oneAddress.ignoreSyncInterval ? oneAddress : otherMode;
+         }
+         if (otherMode.mode == SyncMode.Mode.FAST_SYNC) {
+            // a fast sync might not look at the address
+            return null;
+         }
+         mergedMode = otherMode.mode;
+      } else {
+         mergedMode = rank(a.mode) >= rank(b.mode) ? a.mode : b.mode;
+      }
+      if (a.mode != b.mode) {
+         // the accounts skip a sync that ran less than its mode's interval ago. The bigger mode has the longer
+         // interval, so it might get skipped while the smaller request was due. Force it to not do less than the
+         // requests would have done on their own.
+         ignoreSyncInterval = true;
+      }
+      return new SyncMode(mergedMode,
+            a.ignoreTransactionHistory && b.ignoreTransactionHistory,
+            onlyActiveAccount,
+            a.ignoreMinerFeeFetch && b.ignoreMinerFeeFetch,
+            ignoreSyncInterval);
+   }
+
+   private static int rank(SyncMode.Mode mode) {
+      switch (mode) {
+         case FULL_SYNC:
+            return 3;
+         case NORMAL_SYNC:
+            return 2;
+         case FAST_SYNC:
+            return 1;
+         default:
+            return 0;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "SyncRequest{" + mode + (accountId == null ? "" : ", " + accountId) + ", " + status + '}';
+   }
+}
@@ -0,0 +1,210 @@
+package com.mycelium.wapi.wallet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs synchronization requests one at a time on a single background thread.
+ * <p>
+ * Requests are queued by priority. A new request that can be merged with a queued one (for example a
+ * {@link SyncMode.Mode#ONE_ADDRESS} sync into a {@link SyncMode.Mode#NORMAL_SYNC} of the same account) replaces both
+ * by a single request, so independent callers asking for overlapping syncs don't cause redundant passes. The first
+ * request of a burst waits for a short debounce delay, to give the others a chance to get merged.
+ */
+public class SyncScheduler {
+   public static final long DEFAULT_DEBOUNCE_MS = 300;
+
+   public interface Synchronizer {
+      /**
+       * Do the actual synchronization, called on the scheduler thread
+       *
+       * @return false if the synchronization failed
+       */
+      boolean synchronize(SyncRequest request);
+   }
+
+   public interface Listener {
+      /**
+       * Called whenever a request changes its status. Requests that got merged are reported again when the request
+       * they were merged into finished, {@link SyncRequest#getEffectiveRequest()} tells how it went.
+       */
+      void onSyncRequestChanged(SyncRequest request);
+   }
+
+   private final Synchronizer _synchronizer;
+   private final Listener _listener;
+   private final long _debounceMs;
+   private final ScheduledExecutorService _executor;
+   private final PriorityQueue<SyncRequest> _queue = new PriorityQueue<>(11, new Comparator<SyncRequest>() {
+      @Override
+      public int compare(SyncRequest lhs, SyncRequest rhs) {
+         if (lhs.getPriority() != rhs.getPriority()) {
+            return lhs.getPriority() < rhs.getPriority() ? -1 : 1;
+         }
+         return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+      }
+   });
+   private long _sequence;
+   private boolean _drainScheduled;
+   private SyncRequest _running;
+
+   public SyncScheduler(Synchronizer synchronizer, Listener listener, long debounceMs) {
+      _synchronizer = synchronizer;
+      _listener = listener;
+      _debounceMs = debounceMs;
+      _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Synchronizer");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }
+
+   /**
+    * Queue a synchronization
+    *
+    * @param accountId the active account, may be null if it is unknown or the mode syncs all accounts
+    * @return the request, which might get merged into another one
+    */
+   public SyncRequest submit(SyncMode mode, UUID accountId) {
+      List<SyncRequest> changed = new ArrayList<>();
+      SyncRequest request;
+      synchronized (this) {
+         request = new SyncRequest(mode, accountId, _sequence++);
+         changed.add(request);
+         SyncRequest effective = request;
+         Iterator<SyncRequest> it = _queue.iterator();
+         while (it.hasNext()) {
+            SyncRequest queued = it.next();
+            SyncMode merged = queued.mergeWith(effective);
+            if (merged != null) {
+               it.remove();
+               SyncRequest replacement = new SyncRequest(merged, effective.accountId != null ? effective.accountId : queued.accountId,
+                     Math.min(queued.sequence, effective.sequence));
+               queued.setMergedInto(replacement);
+               effective.setMergedInto(replacement);
+               changed.add(queued);
+               changed.add(replacement);
+               effective = replacement;
+               // the replacement might now cover more queued requests, so start over
+               it = _queue.iterator();
+            }
+         }
+         _queue.add(effective);
+         if (!_drainScheduled) {
+            _drainScheduled = true;
+            _executor.schedule(new Runnable() {
+               @Override
+               public void run() {
+                  drain();
+               }
+            }, _debounceMs, TimeUnit.MILLISECONDS);
+         }
+      }
+      notifyChanged(changed);
+      return request;
+   }
+
+   /**
+    * Cancel a request. If it is already running, the synchronizer should stop at the next opportunity.
+    *
+    * @return true if the request was queued or running
+    */
+   public boolean cancel(SyncRequest request) {
+      SyncRequest effective = request.getEffectiveRequest();
+      synchronized (this) {
+         if (!_queue.remove(effective) && _running != effective) {
+            return false;
+         }
+         effective.setStatus(SyncRequest.Status.CANCELLED);
+      }
+      _listener.onSyncRequestChanged(effective);
+      return true;
+   }
+
+   /**
+    * Cancel all queued requests and the running one
+    */
+   public void cancelAll() {
+      List<SyncRequest> cancelled;
+      synchronized (this) {
+         cancelled = new ArrayList<>(_queue);
+         _queue.clear();
+         if (_running != null) {
+            cancelled.add(_running);
+         }
+         for (SyncRequest request : cancelled) {
+            request.setStatus(SyncRequest.Status.CANCELLED);
+         }
+      }
+      notifyChanged(cancelled);
+   }
+
+   /**
+    * @return true if nothing is running or queued
+    */
+   public synchronized boolean isIdle() {
+      return _running == null && _queue.isEmpty();
+   }
+
+   /**
+    * @return the number of queued requests, not counting the running one
+    */
+   public synchronized int getQueueSize() {
+      return _queue.size();
+   }
+
+   public void shutdown() {
+      cancelAll();
+      _executor.shutdownNow();
+   }
+
+   private void drain() {
+      while (true) {
+         SyncRequest request;
+         synchronized (this) {
+            request = _queue.poll();
+            if (request == null) {
+               _drainScheduled = false;
+               return;
+            }
+            _running = request;
+            request.setStatus(SyncRequest.Status.RUNNING);
+         }
+         _listener.onSyncRequestChanged(request);
+         boolean success;
+         try {
+            success = _synchronizer.synchronize(request);
+         } catch (RuntimeException e) {
+            // the synchronizer is responsible for reporting its errors, we must keep going with the queue
+            success = false;
+         }
+         List<SyncRequest> changed = new ArrayList<>();
+         synchronized (this) {
+            _running = null;
+            if (!request.isCancelled()) {
+               request.setStatus(success ? SyncRequest.Status.DONE : SyncRequest.Status.FAILED);
+            }
+            changed.add(request);
+            changed.addAll(request.getMergedRequests());
+         }
+         notifyChanged(changed);
+      }
+   }
+
+   private void notifyChanged(List<SyncRequest> requests) {
+      for (SyncRequest request : requests) {
+         _listener.onSyncRequestChanged(request);
+      }
+   }
+}
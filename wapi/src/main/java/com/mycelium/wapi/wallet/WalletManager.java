@@ -65,7 +65,7 @@ public class WalletManager {
    private final List<Bip44Account> _bip44Accounts;
    private final Collection<Observer> _observers;
    private State _state;
-   private Thread _synchronizationThread;
+   private final SyncScheduler _syncScheduler;
    private AccountEventManager _accountEventManager;
    private NetworkParameters _network;
    private Wapi _wapi;
@@ -95,6 +95,7 @@ public class WalletManager {
       _state = State.READY;
       _accountEventManager = new AccountEventManager();
       _observers = new LinkedList<>();
+      _syncScheduler = new SyncScheduler(new Synchronizer(), new SyncRequestListener(), SyncScheduler.DEFAULT_DEBOUNCE_MS);
       loadAccounts();
    }
 
@@ -449,52 +450,31 @@ public class WalletManager {
     * Synchronization occurs in the background. To get feedback register an
     * observer.
     */
-   public void startSynchronization() {
-      startSynchronization(SyncMode.NORMAL);
+   public SyncRequest startSynchronization() {
+      return startSynchronization(SyncMode.NORMAL);
    }
 
-   public void startSynchronization(SyncMode mode) {
-      // Launch synchronizer thread
-      Synchronizer synchronizer;
-      if (hasAccount(_activeAccountId)) {
-         SynchronizeAbleWalletAccount activeAccount = (SynchronizeAbleWalletAccount) getAccount(_activeAccountId);
-         synchronizer = new Synchronizer(mode, activeAccount);
-      } else {
-         // we dont know the active account
-         synchronizer = new Synchronizer(mode);
-      }
-      startSynchronizationThread(synchronizer);
+   /**
+    * Queue a synchronization. Overlapping requests from different callers get merged, so it is cheap to ask for a
+    * sync whenever it might be needed.
+    *
+    * @return the request, which can be used to follow its progress or to cancel it
+    */
+   public SyncRequest startSynchronization(SyncMode mode) {
+      // if we dont know the active account, only syncs of all accounts do anything
+      UUID activeAccount = hasAccount(_activeAccountId) ? _activeAccountId : null;
+      return _syncScheduler.submit(mode, activeAccount);
    }
 
-   public void startSynchronization(UUID receivingAcc) {
-      // Launch synchronizer thread
-      SynchronizeAbleWalletAccount activeAccount = (SynchronizeAbleWalletAccount) getAccount(receivingAcc);
-      startSynchronizationThread(new Synchronizer(SyncMode.NORMAL, activeAccount));
+   public SyncRequest startSynchronization(UUID receivingAcc) {
+      return _syncScheduler.submit(SyncMode.NORMAL, receivingAcc);
    }
 
    /**
-    * Make the wallet manager synchronize only a subset of some addresses of a specific account
-    * <p>
-    * Synchronization occurs in the background. To get feedback register an
-    * observer.
+    * Cancel a queued synchronization, or stop a running one after the account it is synchronizing right now
     */
-   /*
-   public void startFastSynchronization(AbstractAccount forAccount, Collection<Address> addressesToWatch) {
-      // Launch fastSynchronizer thread
-      Synchronizer fastSynchronizer = new FastSynchronizer(forAccount, addressesToWatch);
-      startSynchronizationThread(fastSynchronizer);
-   }
-   */
-   private synchronized void startSynchronizationThread(Synchronizer synchronizer) {
-      if (_synchronizationThread != null) {
-         // Already running
-         return;
-      }
-      // Launch fastSynchronizer thread
-      _synchronizationThread = new Thread(synchronizer);
-      _synchronizationThread.setDaemon(true);
-      _synchronizationThread.setName(synchronizer.getClass().getSimpleName());
-      _synchronizationThread.start();
+   public boolean cancelSynchronization(SyncRequest request) {
+      return _syncScheduler.cancel(request);
    }
 
    @Override
@@ -666,23 +646,46 @@ public class WalletManager {
       }
    }
 
-   private class Synchronizer implements Runnable {
-      private final SyncMode syncMode;
-      private final SynchronizeAbleWalletAccount currentAccount;
-
-      private Synchronizer(SyncMode syncMode, SynchronizeAbleWalletAccount currentAccount) {
-         this.syncMode = syncMode;
-         this.currentAccount = currentAccount;
+   private class SyncRequestListener implements SyncScheduler.Listener {
+      @Override
+      public void onSyncRequestChanged(SyncRequest request) {
+         switch (request.getStatus()) {
+            case RUNNING:
+               if (_state != State.SYNCHRONIZING) {
+                  setStateAndNotify(State.SYNCHRONIZING);
+               }
+               break;
+            case DONE:
+            case FAILED:
+            case CANCELLED:
+               // only report being ready when there is nothing left to do
+               if (_state != State.READY && _syncScheduler.isIdle()) {
+                  setStateAndNotify(State.READY);
+               }
+               break;
+            default:
+               break;
+         }
+         synchronized (_observers) {
+            for (Observer o : _observers) {
+               o.onSyncRequestChanged(WalletManager.this, request);
+            }
+         }
       }
+   }
 
-      // use this constructor if you dont care about the current active account
-      private Synchronizer(SyncMode syncMode) {
-         this(syncMode, null);
-      }
+   private class Synchronizer implements SyncScheduler.Synchronizer {
+      private SyncMode syncMode;
+      private SynchronizeAbleWalletAccount currentAccount;
+      private SyncRequest request;
 
       @Override
-      public void run() {
-         setStateAndNotify(State.SYNCHRONIZING);
+      public boolean synchronize(SyncRequest request) {
+         this.request = request;
+         this.syncMode = request.mode;
+         // the account is looked up when we run, it might have been removed in the meantime
+         this.currentAccount = request.accountId != null && hasAccount(request.accountId)
+               ? (SynchronizeAbleWalletAccount) getAccount(request.accountId) : null;
          try {
             synchronized (_walletAccounts) {
                if (!syncMode.ignoreMinerFeeFetch &&
@@ -695,17 +698,18 @@ public class WalletManager {
                // this function goes over all accounts - it is reasonable to
                // exclude this from SyncMode.onlyActiveAccount behaviour
                if (!broadcastOutgoingTransactions()) {
-                  return;
+                  return false;
                }
 
                // Synchronize selected accounts with the blockchain
-               if (!synchronize()) {
-                  return;
-               }
+               return synchronize();
             }
+         } catch (RuntimeException e) {
+            _logger.logError("Synchronization failed for " + request, e);
+            return false;
          } finally {
-            _synchronizationThread = null;
-            setStateAndNotify(State.READY);
+            this.request = null;
+            this.currentAccount = null;
          }
       }
 
@@ -743,6 +747,9 @@ public class WalletManager {
             }
          } else {
             for (WalletAccount account : getAllAccounts()) {
+               if (request.isCancelled()) {
+                  return false;
+               }
                if (!account.isArchived()) {
                   if (!account.synchronize(syncMode)) {
                      // We failed to sync due to API error, we will have to try
@@ -1083,6 +1090,15 @@ public class WalletManager {
        * @param events    the event that occurred
        */
       void onAccountEvent(WalletManager wallet, UUID accountId, Event events);
+
+      /**
+       * Callback telling that a synchronization request got queued, merged into another one, started, finished or
+       * cancelled
+       *
+       * @param wallet  the wallet manager
+       * @param request the request, {@link SyncRequest#getStatus()} tells what happened
+       */
+      void onSyncRequestChanged(WalletManager wallet, SyncRequest request);
    }
 
    public enum State {
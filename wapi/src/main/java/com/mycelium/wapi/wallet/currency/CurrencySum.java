@@ -1,24 +1,32 @@
 package com.mycelium.wapi.wallet.currency;
 
 import com.google.common.collect.ImmutableMap;
+import com.megiontechnologies.Bitcoins;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Sum of values in several currencies, with one bucket per currency.
+ * <p>
+ * Buckets are mutable fixed point sums, bitcoins in satoshis and other currencies as {@link FixedPointSum}, so adding
+ * values and converting the sum to one currency does not allocate a BigDecimal for every step. The results are the
+ * same as adding up the values with {@link CurrencyValue#add(CurrencyValue, ExchangeRateProvider)}.
+ */
 public class CurrencySum {
-   private Map<String, CurrencyValue> buckets = new HashMap<String, CurrencyValue>();
+   private Map<String, Bucket> buckets = new HashMap<String, Bucket>();
 
    public synchronized void add(CurrencyValue valueToAdd) {
       CurrencyValue exactValue = valueToAdd.getExactValueIfPossible();
-      CurrencyValue newValue;
-      if (!buckets.containsKey(exactValue.getCurrency())) {
-         newValue = exactValue;
+      Bucket bucket = buckets.get(exactValue.getCurrency());
+      if (bucket == null) {
+         bucket = new Bucket(exactValue.getCurrency());
+         bucket.set(exactValue);
+         buckets.put(exactValue.getCurrency(), bucket);
       } else {
-         CurrencyValue existing = buckets.get(exactValue.getCurrency());
-         newValue = existing.add(exactValue, null);
+         bucket.add(exactValue);
       }
-      buckets.put(exactValue.getCurrency(), newValue);
    }
 
    public synchronized void add(CurrencySum sumToAdd) {
@@ -28,21 +36,146 @@ public class CurrencySum {
    }
 
    public synchronized Map<String, CurrencyValue> getAllValues() {
-      return ImmutableMap.copyOf(buckets);
+      ImmutableMap.Builder<String, CurrencyValue> values = ImmutableMap.builder();
+      for (Map.Entry<String, Bucket> bucket : buckets.entrySet()) {
+         values.put(bucket.getKey(), bucket.getValue().toCurrencyValue());
+      }
+      return values.build();
    }
 
    public synchronized CurrencyValue getSumAsCurrency(String targetCurrency, ExchangeRateProvider exchangeRateProvider) {
-      CurrencyValue sum = ExactCurrencyValue.from(BigDecimal.ZERO, targetCurrency);
-      for (Map.Entry<String, CurrencyValue> value : buckets.entrySet()) {
-         if (value.getValue() != null) {
-            CurrencyValue sumLocal = sum.add(value.getValue(), exchangeRateProvider);
-            if(sumLocal.getValue() != null) {
-               sum = sumLocal;
+      boolean toBitcoin = targetCurrency.equals(CurrencyValue.BTC);
+      long satoshis = 0;
+      FixedPointSum sum = new FixedPointSum();
+      // the sum stays exact as long as only exact values of the target currency were added
+      boolean exact = true;
+      for (Bucket bucket : buckets.values()) {
+         if (bucket.missing) {
+            continue;
+         }
+         if (bucket.currency.equals(targetCurrency)) {
+            if (toBitcoin) {
+               satoshis = checkBitcoins(FixedPoint.add(satoshis, bucket.satoshis));
+            } else {
+               sum.add(bucket.sum);
+            }
+            exact &= bucket.exact;
+         } else if (bucket.exact) {
+            RateMultiplier rate = RateMultiplier.of(bucket.currency, targetCurrency, exchangeRateProvider);
+            if (rate == null) {
+               continue;
+            }
+            if (toBitcoin) {
+               satoshis = checkBitcoins(FixedPoint.add(satoshis, checkBitcoins(rate.toSatoshis(bucket.sum))));
+            } else if (bucket.isBitcoin) {
+               // as many decimals as the bitcoin value has as BigDecimal
+               int scale = FixedPoint.bitcoinScale(bucket.satoshis);
+               long unscaled = bucket.satoshis / FixedPoint.pow10(8 - scale);
+               rate.convertInto(sum, unscaled, scale);
+            } else {
+               rate.convertInto(sum, bucket.sum);
             }
+            exact = false;
+         } else {
+            // values without exact value are converted from their own amount, which is rare enough to not optimize
+            CurrencyValue converted = ExchangeBasedCurrencyValue.fromValue(bucket.toCurrencyValue(), targetCurrency,
+                  exchangeRateProvider);
+            if (converted.getValue() == null) {
+               continue;
+            }
+            if (toBitcoin) {
+               satoshis = checkBitcoins(FixedPoint.add(satoshis, ((BitcoinValue) converted).getLongValue()));
+            } else {
+               sum.add(converted.getValue());
+            }
+            exact = false;
          }
       }
 
-      return sum;
+      if (toBitcoin) {
+         return exact ? ExactBitcoinValue.from(satoshis)
+               : new ExchangeBasedBitcoinValue(targetCurrency, satoshis, null);
+      }
+      return exact ? new ExactFiatValue(sum.toBigDecimal(), targetCurrency)
+            : new ExchangeBasedFiatValue(targetCurrency, sum.toBigDecimal());
    }
 
+   /**
+    * Throw for amounts that are not valid bitcoin values, the same way creating a bitcoin value from them would
+    */
+   private static long checkBitcoins(long satoshis) {
+      if (satoshis < 0 || satoshis >= Bitcoins.MAX_VALUE) {
+         Bitcoins.valueOf(satoshis);
+      }
+      return satoshis;
+   }
+
+   private static final class Bucket {
+      final String currency;
+      final boolean isBitcoin;
+      // false if the values are not all exact values
+      boolean exact;
+      // true once a value without amount was added, the bucket has no amount from then on
+      boolean missing;
+      // the sum of a bitcoin bucket
+      long satoshis;
+      // the sum of other currencies
+      final FixedPointSum sum = new FixedPointSum();
+
+      Bucket(String currency) {
+         this.currency = currency;
+         isBitcoin = currency.equals(CurrencyValue.BTC);
+      }
+
+      void set(CurrencyValue value) {
+         exact = value instanceof ExactCurrencyValue;
+         missing = !hasAmount(value);
+         if (missing) {
+            return;
+         }
+         if (isBitcoin) {
+            satoshis = getSatoshis(value);
+         } else {
+            sum.set(value.getValue());
+         }
+      }
+
+      void add(CurrencyValue value) {
+         if (missing || !hasAmount(value)) {
+            missing = true;
+            exact = true;
+            return;
+         }
+         exact &= value instanceof ExactCurrencyValue;
+         if (isBitcoin) {
+            satoshis = checkBitcoins(FixedPoint.add(satoshis, getSatoshis(value)));
+         } else {
+            sum.add(value.getValue());
+         }
+      }
+
+      CurrencyValue toCurrencyValue() {
+         if (isBitcoin) {
+            Long value = missing ? null : satoshis;
+            return exact ? ExactBitcoinValue.from(value) : new ExchangeBasedBitcoinValue(currency, value, null);
+         }
+         BigDecimal value = missing ? null : sum.toBigDecimal();
+         return exact ? new ExactFiatValue(value, currency) : new ExchangeBasedFiatValue(currency, value);
+      }
+
+      private boolean hasAmount(CurrencyValue value) {
+         if (isBitcoin && value instanceof BitcoinValue) {
+            // without converting to BigDecimal
+            return ((BitcoinValue) value).getAsBitcoin() != null;
+         }
+         return value.getValue() != null;
+      }
+
+      private static long getSatoshis(CurrencyValue value) {
+         if (value instanceof BitcoinValue) {
+            return ((BitcoinValue) value).getLongValue();
+         }
+         return Bitcoins.nearestValue(value.getValue()).getLongValue();
+      }
+   }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wapi.wallet.currency;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Table;
+import com.mycelium.wapi.api.response.QueryExchangeRatesResponse;
+import com.mycelium.wapi.model.ExchangeRate;
+
+import java.util.List;
+
+/**
+ * Immutable exchange rates of one refresh, indexed by currency and exchange source. A new snapshot is built for
+ * every refresh and published as a whole, so that readers can look up rates without locking.
+ */
+public final class ExchangeRateSnapshot {
+   public static final ExchangeRateSnapshot EMPTY = new ExchangeRateSnapshot(ImmutableSet.<String>of(),
+         ImmutableTable.<String, String, ExchangeRate>of(), ImmutableList.<String>of(), 0);
+
+   private final ImmutableSet<String> _currencies;
+   private final ImmutableTable<String, String, ExchangeRate> _rates;
+   private final ImmutableList<String> _sourceNames;
+   private final long _time;
+
+   private ExchangeRateSnapshot(ImmutableSet<String> currencies, ImmutableTable<String, String, ExchangeRate> rates,
+                                ImmutableList<String> sourceNames, long time) {
+      _currencies = currencies;
+      _rates = rates;
+      _sourceNames = sourceNames;
+      _time = time;
+   }
+
+   /**
+    * @param responses the exchange rates of every currency
+    * @param time      the time the rates were fetched
+    */
+   public static ExchangeRateSnapshot fromResponses(List<QueryExchangeRatesResponse> responses, long time) {
+      ImmutableSet.Builder<String> currencies = ImmutableSet.builder();
+      Table<String, String, ExchangeRate> rates = HashBasedTable.create();
+      ImmutableList.Builder<String> sourceNames = ImmutableList.builder();
+      boolean first = true;
+      for (QueryExchangeRatesResponse response : responses) {
+         currencies.add(response.currency);
+         for (ExchangeRate rate : response.exchangeRates) {
+            // like a linear scan, the first rate of a source wins
+            if (!rates.contains(response.currency, rate.name)) {
+               rates.put(response.currency, rate.name, rate);
+            }
+            if (first) {
+               sourceNames.add(rate.name);
+            }
+         }
+         first = false;
+      }
+      return new ExchangeRateSnapshot(currencies.build(), ImmutableTable.copyOf(rates), sourceNames.build(), time);
+   }
+
+   /**
+    * @return the rate of the source for the currency, or null if the source had no rate for it
+    */
+   public ExchangeRate get(String currency, String sourceName) {
+      return sourceName == null ? null : _rates.get(currency, sourceName);
+   }
+
+   /**
+    * @return true if the rates of the currency were fetched, even if no source had a rate for it
+    */
+   public boolean hasCurrency(String currency) {
+      return _currencies.contains(currency);
+   }
+
+   /**
+    * @return the exchange sources of the first currency, in the order the server sent them
+    */
+   public List<String> getSourceNames() {
+      return _sourceNames;
+   }
+
+   public boolean isEmpty() {
+      return _currencies.isEmpty();
+   }
+
+   /**
+    * @return the time the rates were fetched, 0 if there are no rates yet
+    */
+   public long getTime() {
+      return _time;
+   }
+}
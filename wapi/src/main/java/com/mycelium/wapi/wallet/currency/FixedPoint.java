@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wapi.wallet.currency;
+
+/**
+ * Exact arithmetic on decimal numbers held as a long unscaled value and a scale, like the compact form of a
+ * {@link java.math.BigDecimal}. Every operation throws an {@link ArithmeticException} instead of overflowing, so
+ * that callers can fall back to BigDecimal.
+ */
+final class FixedPoint {
+   private static final long[] POWERS_OF_TEN = new long[19];
+
+   static {
+      POWERS_OF_TEN[0] = 1;
+      for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+         POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+      }
+   }
+
+   private FixedPoint() {
+   }
+
+   static long pow10(int exponent) {
+      if (exponent < 0 || exponent >= POWERS_OF_TEN.length) {
+         throw new ArithmeticException("10^" + exponent + " does not fit a long");
+      }
+      return POWERS_OF_TEN[exponent];
+   }
+
+   static long add(long a, long b) {
+      long sum = a + b;
+      // overflow if both have the same sign and the sum has the other one
+      if (((a ^ sum) & (b ^ sum)) < 0) {
+         throw new ArithmeticException("long overflow");
+      }
+      return sum;
+   }
+
+   static long multiply(long a, long b) {
+      long high = Math.abs(a) | Math.abs(b);
+      if (high >>> 31 != 0) {
+         // at least one factor has more than 31 bits, check with a division
+         if ((b != 0 && (a * b) / b != a) || (a == Long.MIN_VALUE && b == -1)) {
+            throw new ArithmeticException("long overflow");
+         }
+      }
+      return a * b;
+   }
+
+   /**
+    * @return the unscaled value for a scale that is larger by the given difference
+    */
+   static long rescale(long unscaled, int scaleIncrease) {
+      return multiply(unscaled, pow10(scaleIncrease));
+   }
+
+   /**
+    * Divide and round half away from zero, like {@link java.math.RoundingMode#HALF_UP}
+    */
+   static long divideHalfUp(long dividend, long divisor) {
+      long quotient = dividend / divisor;
+      long remainder = dividend % divisor;
+      // the remainder is smaller than the divisor, twice it does not overflow for divisors up to 10^18
+      if (Math.abs(remainder) * 2 >= Math.abs(divisor)) {
+         quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+      }
+      return quotient;
+   }
+
+   /**
+    * Number of decimals of an amount of satoshis as {@link com.megiontechnologies.Bitcoins#toBigDecimal()} has them,
+    * which strips trailing zeros down to scale 0
+    */
+   static int bitcoinScale(long satoshis) {
+      if (satoshis == 0) {
+         return 0;
+      }
+      int scale = 8;
+      while (scale > 0 && satoshis % 10 == 0) {
+         satoshis /= 10;
+         scale--;
+      }
+      return scale;
+   }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wapi.wallet.currency;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Mutable sum of decimal numbers that does not allocate while the sum fits a long unscaled value. The result is the
+ * same as adding up the numbers with {@link BigDecimal#add(BigDecimal)}, including the scale, which is the largest
+ * scale of the numbers added. Once the sum does not fit a long anymore it continues as a BigDecimal.
+ */
+public class FixedPointSum {
+   private long _unscaled;
+   private int _scale;
+   // the sum once it did not fit a long anymore
+   private BigDecimal _overflow;
+
+   public void add(long unscaled, int scale) {
+      if (_overflow == null) {
+         try {
+            if (scale == _scale) {
+               _unscaled = FixedPoint.add(_unscaled, unscaled);
+            } else if (scale > _scale) {
+               _unscaled = FixedPoint.add(FixedPoint.rescale(_unscaled, scale - _scale), unscaled);
+               _scale = scale;
+            } else {
+               _unscaled = FixedPoint.add(_unscaled, FixedPoint.rescale(unscaled, _scale - scale));
+            }
+            return;
+         } catch (ArithmeticException e) {
+            // nothing was changed yet
+            _overflow = toBigDecimal();
+         }
+      }
+      _overflow = _overflow.add(BigDecimal.valueOf(unscaled, scale));
+   }
+
+   public void add(BigDecimal value) {
+      if (_overflow == null) {
+         BigInteger unscaled = value.unscaledValue();
+         if (unscaled.bitLength() < 64) {
+            add(unscaled.longValue(), value.scale());
+            return;
+         }
+         _overflow = toBigDecimal();
+      }
+      _overflow = _overflow.add(value);
+   }
+
+   /**
+    * Start over with the value, keeping its scale
+    */
+   public void set(BigDecimal value) {
+      BigInteger unscaled = value.unscaledValue();
+      if (unscaled.bitLength() < 64) {
+         _unscaled = unscaled.longValue();
+         _scale = value.scale();
+         _overflow = null;
+      } else {
+         _overflow = value;
+      }
+   }
+
+   public void add(FixedPointSum other) {
+      if (other.fitsLong()) {
+         add(other._unscaled, other._scale);
+      } else {
+         add(other._overflow);
+      }
+   }
+
+   /**
+    * @return true if the sum is held as a long unscaled value and a scale
+    */
+   public boolean fitsLong() {
+      return _overflow == null;
+   }
+
+   /**
+    * @return the unscaled value of the sum, only valid if it {@link #fitsLong()}
+    */
+   public long getUnscaled() {
+      return _unscaled;
+   }
+
+   public int getScale() {
+      return _overflow == null ? _scale : _overflow.scale();
+   }
+
+   public boolean isZero() {
+      return _overflow == null ? _unscaled == 0 : _overflow.signum() == 0;
+   }
+
+   public void reset() {
+      _unscaled = 0;
+      _scale = 0;
+      _overflow = null;
+   }
+
+   public BigDecimal toBigDecimal() {
+      return _overflow == null ? BigDecimal.valueOf(_unscaled, _scale) : _overflow;
+   }
+
+   @Override
+   public String toString() {
+      return toBigDecimal().toString();
+   }
+}
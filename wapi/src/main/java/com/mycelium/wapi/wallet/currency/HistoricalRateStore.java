@@ -0,0 +1,356 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wapi.wallet.currency;
+
+import com.google.common.base.Preconditions;
+import com.mycelium.wapi.model.ExchangeRate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Past exchange rates of BTC in fiat currencies, for valuing transactions at the time they happened.
+ * <p>
+ * Rates are kept in buckets of one hour, the last rate recorded for a bucket wins. Every currency has a sorted
+ * series of buckets which is replaced as a whole when rates are recorded, so lookups don't lock. Between two buckets
+ * the rate is interpolated linearly, unless they are more than {@link #MAX_INTERPOLATION_GAP_MS} apart.
+ * <p>
+ * With a directory the rates of every currency are appended to a file of their own and loaded again by the
+ * constructor. Files that collected many replaced buckets are rewritten.
+ */
+public class HistoricalRateStore {
+   public static final long BUCKET_MS = 60 * 60 * 1000L;
+   public static final long MAX_INTERPOLATION_GAP_MS = 7 * 24 * BUCKET_MS;
+   private static final String FILE_SUFFIX = ".rates";
+   private static final Pattern CURRENCY_PATTERN = Pattern.compile("[A-Za-z0-9]{1,16}");
+   // bucket start and price
+   private static final int RECORD_SIZE = 16;
+
+   public static class Point {
+      public final long time;
+      public final double price;
+
+      public Point(long time, double price) {
+         this.time = time;
+         this.price = price;
+      }
+   }
+
+   private final File _directory;
+   private final Map<String, Series> _series = new ConcurrentHashMap<>();
+   // number of records in the file of every currency, guarded by this
+   private final Map<String, Integer> _fileRecords = new HashMap<>();
+
+   /**
+    * Create a store that keeps the rates in memory only
+    */
+   public HistoricalRateStore() {
+      _directory = null;
+   }
+
+   /**
+    * Create a store that keeps the rates in the directory, and load the rates stored there
+    */
+   public HistoricalRateStore(File directory) throws IOException {
+      _directory = Preconditions.checkNotNull(directory);
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+         throw new IOException("Could not create " + directory);
+      }
+      File[] files = directory.listFiles();
+      if (files == null) {
+         throw new IOException("Could not list " + directory);
+      }
+      for (File file : files) {
+         String name = file.getName();
+         if (name.endsWith(FILE_SUFFIX)) {
+            String currency = name.substring(0, name.length() - FILE_SUFFIX.length());
+            if (CURRENCY_PATTERN.matcher(currency).matches()) {
+               load(currency, file);
+            }
+         }
+      }
+   }
+
+   /**
+    * Record the rate of a currency at a time in milliseconds
+    */
+   public void record(String currency, long time, double price) throws IOException {
+      SortedMap<Long, Double> points = new TreeMap<>();
+      addPoint(points, time, price);
+      store(currency, points);
+   }
+
+   /**
+    * Record many rates of a currency at once, in any order. Rates without a price are skipped.
+    */
+   public void recordAll(String currency, List<ExchangeRate> rates) throws IOException {
+      // the latest rate of a bucket wins
+      List<ExchangeRate> sorted = new ArrayList<>(rates);
+      Collections.sort(sorted, new Comparator<ExchangeRate>() {
+         @Override
+         public int compare(ExchangeRate lhs, ExchangeRate rhs) {
+            return lhs.time < rhs.time ? -1 : (lhs.time == rhs.time ? 0 : 1);
+         }
+      });
+      SortedMap<Long, Double> points = new TreeMap<>();
+      for (ExchangeRate rate : sorted) {
+         if (rate.price != null) {
+            addPoint(points, rate.time, rate.price);
+         }
+      }
+      store(currency, points);
+   }
+
+   /**
+    * Fetch the rates of a currency for a period from a source and record them
+    */
+   public void update(HistoricalRateSource source, String currency, long from, long to) throws IOException {
+      recordAll(currency, source.getRates(currency, from, to));
+   }
+
+   /**
+    * @return the currencies with recorded rates
+    */
+   public List<String> getCurrencies() {
+      return new ArrayList<>(_series.keySet());
+   }
+
+   /**
+    * @return the recorded buckets of the currency from the bucket of from up to before to, in ascending order
+    */
+   public List<Point> getRange(String currency, long from, long to) {
+      Series series = getSeries(currency);
+      int start = series.ceilingIndex(toBucket(from));
+      int end = series.ceilingIndex(to);
+      if (start >= end) {
+         return Collections.emptyList();
+      }
+      List<Point> points = new ArrayList<>(end - start);
+      for (int i = start; i < end; i++) {
+         points.add(new Point(series.times[i], series.prices[i]));
+      }
+      return points;
+   }
+
+   /**
+    * @return the rate of the currency at the time in milliseconds, or NaN if it is not known
+    */
+   public double priceAt(String currency, long time) {
+      return getSeries(currency).priceAt(time);
+   }
+
+   /**
+    * Look up the rates of the currency for many times at once, for instance the times of all transactions of an
+    * export. The lookups all see the same series.
+    *
+    * @param timestamps times in milliseconds, in any order
+    * @return the rate for every time, NaN where it is not known
+    */
+   public double[] valueAt(String currency, long[] timestamps) {
+      Series series = getSeries(currency);
+      double[] prices = new double[timestamps.length];
+      for (int i = 0; i < timestamps.length; i++) {
+         prices[i] = series.priceAt(timestamps[i]);
+      }
+      return prices;
+   }
+
+   private Series getSeries(String currency) {
+      Series series = _series.get(currency);
+      return series == null ? Series.EMPTY : series;
+   }
+
+   private synchronized void store(String currency, SortedMap<Long, Double> points) throws IOException {
+      Preconditions.checkArgument(CURRENCY_PATTERN.matcher(currency).matches(), "Invalid currency '%s'", currency);
+      if (points.isEmpty()) {
+         return;
+      }
+      Series series = getSeries(currency).merge(points);
+      if (_directory != null) {
+         Integer records = _fileRecords.get(currency);
+         int fileRecords = (records == null ? 0 : records) + points.size();
+         if (fileRecords > 2 * series.size()) {
+            // most records in the file were replaced since, start over
+            write(currency, series.times, series.prices, series.size(), false);
+            fileRecords = series.size();
+         } else {
+            long[] times = new long[points.size()];
+            double[] prices = new double[points.size()];
+            int i = 0;
+            for (Map.Entry<Long, Double> point : points.entrySet()) {
+               times[i] = point.getKey();
+               prices[i] = point.getValue();
+               i++;
+            }
+            write(currency, times, prices, times.length, true);
+         }
+         _fileRecords.put(currency, fileRecords);
+      }
+      _series.put(currency, series);
+   }
+
+   private void load(String currency, File file) throws IOException {
+      int count = (int) (file.length() / RECORD_SIZE);
+      SortedMap<Long, Double> points = new TreeMap<>();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+         for (int i = 0; i < count; i++) {
+            // later records replace earlier ones of the same bucket
+            addPoint(points, in.readLong(), in.readDouble());
+         }
+      } finally {
+         in.close();
+      }
+      Series series = Series.EMPTY.merge(points);
+      if (series.size() < count || file.length() != (long) count * RECORD_SIZE) {
+         // replaced buckets or a record that was cut short
+         write(currency, series.times, series.prices, series.size(), false);
+      }
+      _series.put(currency, series);
+      _fileRecords.put(currency, series.size());
+   }
+
+   private void write(String currency, long[] times, double[] prices, int count, boolean append)
+         throws IOException {
+      File file = new File(_directory, currency + FILE_SUFFIX);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+      try {
+         for (int i = 0; i < count; i++) {
+            out.writeLong(times[i]);
+            out.writeDouble(prices[i]);
+         }
+      } finally {
+         out.close();
+      }
+   }
+
+   private static void addPoint(SortedMap<Long, Double> points, long time, double price) {
+      // a price of 0 means the source had no rate
+      if (price > 0 && !Double.isInfinite(price)) {
+         points.put(toBucket(time), price);
+      }
+   }
+
+   private static long toBucket(long time) {
+      return time - ((time % BUCKET_MS) + BUCKET_MS) % BUCKET_MS;
+   }
+
+   private static final class Series {
+      static final Series EMPTY = new Series(new long[0], new double[0]);
+
+      // bucket starts in ascending order, and their prices
+      final long[] times;
+      final double[] prices;
+
+      private Series(long[] times, double[] prices) {
+         this.times = times;
+         this.prices = prices;
+      }
+
+      int size() {
+         return times.length;
+      }
+
+      /**
+       * @return a series with the points added, replacing the buckets they share with this series
+       */
+      Series merge(SortedMap<Long, Double> points) {
+         long[] mergedTimes = new long[times.length + points.size()];
+         double[] mergedPrices = new double[mergedTimes.length];
+         int count = 0;
+         int i = 0;
+         for (Map.Entry<Long, Double> point : points.entrySet()) {
+            long time = point.getKey();
+            while (i < times.length && times[i] < time) {
+               mergedTimes[count] = times[i];
+               mergedPrices[count++] = prices[i++];
+            }
+            if (i < times.length && times[i] == time) {
+               i++;
+            }
+            mergedTimes[count] = time;
+            mergedPrices[count++] = point.getValue();
+         }
+         while (i < times.length) {
+            mergedTimes[count] = times[i];
+            mergedPrices[count++] = prices[i++];
+         }
+         return new Series(Arrays.copyOf(mergedTimes, count), Arrays.copyOf(mergedPrices, count));
+      }
+
+      /**
+       * @return the index of the first bucket starting at or after the time
+       */
+      int ceilingIndex(long time) {
+         int index = Arrays.binarySearch(times, time);
+         return index < 0 ? -index - 1 : index;
+      }
+
+      double priceAt(long time) {
+         int index = Arrays.binarySearch(times, toBucket(time));
+         if (index >= 0) {
+            return prices[index];
+         }
+         // the buckets before and after the time
+         int before = -index - 2;
+         int after = before + 1;
+         if (before < 0 || after >= times.length) {
+            return Double.NaN;
+         }
+         long gap = times[after] - times[before];
+         if (gap > MAX_INTERPOLATION_GAP_MS) {
+            return Double.NaN;
+         }
+         return prices[before] + (prices[after] - prices[before]) * (time - times[before]) / gap;
+      }
+   }
+}
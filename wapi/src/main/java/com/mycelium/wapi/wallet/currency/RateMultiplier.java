@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wapi.wallet.currency;
+
+import com.mycelium.wapi.model.ExchangeRate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exchange rate from one currency to another, fetched and divided once and then applied to many values with long
+ * multiplications. The rate and the converted values are the same as those of
+ * {@link ExchangeBasedCurrencyValue#fromExactValue(ExactCurrencyValue, String, ExchangeRateProvider)}: the target
+ * price divided by the source price with {@link #RATE_SCALE} decimals, times the value.
+ */
+public final class RateMultiplier {
+   public static final int RATE_SCALE = 10;
+   private static final int SATOSHI_SCALE = 8;
+
+   private final BigDecimal _rate;
+   private final long _unscaledRate;
+   private final boolean _rateFitsLong;
+
+   /**
+    * @return the rate from the source to the target currency, or null if the price of one of them is not known
+    */
+   public static RateMultiplier of(String sourceCurrency, String targetCurrency, ExchangeRateProvider provider) {
+      BigDecimal sourcePrice = getPrice(sourceCurrency, provider);
+      BigDecimal targetPrice = getPrice(targetCurrency, provider);
+      if (sourcePrice == null || targetPrice == null) {
+         return null;
+      }
+      return new RateMultiplier(targetPrice.divide(sourcePrice, RATE_SCALE, RoundingMode.HALF_UP));
+   }
+
+   private static BigDecimal getPrice(String currency, ExchangeRateProvider provider) {
+      if (currency.equals(CurrencyValue.BTC)) {
+         return BigDecimal.ONE;
+      }
+      ExchangeRate rate = provider.getExchangeRate(currency);
+      return rate == null || rate.price == null ? null : BigDecimal.valueOf(rate.price);
+   }
+
+   private RateMultiplier(BigDecimal rate) {
+      _rate = rate;
+      // the unscaled value of a rate of up to 922 million fits a long
+      _rateFitsLong = rate.unscaledValue().bitLength() < 64;
+      _unscaledRate = _rateFitsLong ? rate.unscaledValue().longValue() : 0;
+   }
+
+   public BigDecimal getRate() {
+      return _rate;
+   }
+
+   /**
+    * Add the converted value to the sum
+    */
+   public void convertInto(FixedPointSum sum, long unscaled, int scale) {
+      if (_rateFitsLong) {
+         try {
+            sum.add(FixedPoint.multiply(unscaled, _unscaledRate), scale + RATE_SCALE);
+            return;
+         } catch (ArithmeticException e) {
+            // continue as BigDecimal
+         }
+      }
+      sum.add(BigDecimal.valueOf(unscaled, scale).multiply(_rate));
+   }
+
+   public void convertInto(FixedPointSum sum, FixedPointSum value) {
+      if (value.fitsLong()) {
+         convertInto(sum, value.getUnscaled(), value.getScale());
+      } else {
+         sum.add(value.toBigDecimal().multiply(_rate));
+      }
+   }
+
+   /**
+    * Convert a value to bitcoins, rounded half up to satoshis like {@link com.megiontechnologies.Bitcoins#nearestValue(BigDecimal)}
+    *
+    * @return the converted value in satoshis, not checked to be a valid amount of bitcoins
+    */
+   public long toSatoshis(long unscaled, int scale) {
+      if (_rateFitsLong) {
+         try {
+            long product = FixedPoint.multiply(unscaled, _unscaledRate);
+            // the product has scale + RATE_SCALE decimals, satoshis have SATOSHI_SCALE
+            int shift = scale + RATE_SCALE - SATOSHI_SCALE;
+            return shift >= 0 ? FixedPoint.divideHalfUp(product, FixedPoint.pow10(shift))
+                  : FixedPoint.rescale(product, -shift);
+         } catch (ArithmeticException e) {
+            // continue as BigDecimal
+         }
+      }
+      return toSatoshis(BigDecimal.valueOf(unscaled, scale));
+   }
+
+   public long toSatoshis(FixedPointSum value) {
+      if (value.fitsLong()) {
+         return toSatoshis(value.getUnscaled(), value.getScale());
+      }
+      return toSatoshis(value.toBigDecimal());
+   }
+
+   private long toSatoshis(BigDecimal value) {
+      return value.multiply(_rate).movePointRight(SATOSHI_SCALE).setScale(0, RoundingMode.HALF_UP).longValueExact();
+   }
+}
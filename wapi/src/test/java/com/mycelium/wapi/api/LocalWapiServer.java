@@ -0,0 +1,255 @@
+package com.mycelium.wapi.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import com.mrd.bitlib.model.Address;
+import com.mycelium.WapiLogger;
+import com.mycelium.net.HttpEndpoint;
+import com.mycelium.net.ServerEndpointType;
+import com.mycelium.net.ServerEndpoints;
+import com.mycelium.wapi.api.WapiConst.Function;
+import com.mycelium.wapi.api.request.QueryExchangeRatesMultiRequest;
+import com.mycelium.wapi.api.request.QueryExchangeRatesRequest;
+import com.mycelium.wapi.api.request.StopWaitingForAddressActivityRequest;
+import com.mycelium.wapi.api.request.WaitForAddressActivityRequest;
+import com.mycelium.wapi.api.response.QueryExchangeRatesMultiResponse;
+import com.mycelium.wapi.api.response.QueryExchangeRatesResponse;
+import com.mycelium.wapi.api.response.WaitForAddressActivityResponse;
+import com.mycelium.wapi.model.ExchangeRate;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local stand-in for the WAPI server, for tests that want to run the real {@link WapiClient} over http.
+ * <p>
+ * Functions are answered by {@link Handler}s. The long-poll functions for address activity are built in, tests can
+ * simulate activity with {@link #reportActivity(Address)}. So are the exchange rate queries, which answer with the
+ * rates set with {@link #setExchangeRates(String, ExchangeRate...)}.
+ */
+public class LocalWapiServer {
+   public interface Handler {
+      /**
+       * @param body the raw json request body
+       * @return the object to return as result of a successful {@link WapiResponse}, or a {@link WapiResponse}
+       */
+      Object handle(String body) throws IOException;
+   }
+
+   private final HttpServer server;
+   private final ExecutorService executor = Executors.newCachedThreadPool();
+   private final ObjectMapper objectMapper = new ObjectMapper();
+   private final Map<String, Handler> handlers = new HashMap<String, Handler>();
+   private final Map<Address, Long> lastActivity = new HashMap<Address, Long>();
+   private final Set<UUID> waitingTokens = new HashSet<UUID>();
+   private final Set<UUID> stoppedTokens = new HashSet<UUID>();
+   private final Map<String, ExchangeRate[]> exchangeRates = new HashMap<String, ExchangeRate[]>();
+   private final long holdMs;
+   // starts above 0, as a request for activity since 0 means since now
+   private long clock = 1;
+   private int requestCount;
+
+   /**
+    * @param holdMs how long long-poll requests are held before they time out
+    */
+   public LocalWapiServer(long holdMs) throws IOException {
+      this.holdMs = holdMs;
+      objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+      objectMapper.registerModule(new WapiJsonModule());
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      server.setExecutor(executor);
+      server.createContext(WapiConst.WAPI_BASE_PATH, new HttpHandler() {
+         @Override
+         public void handle(HttpExchange exchange) throws IOException {
+            dispatch(exchange);
+         }
+      });
+      addHandler(Function.WAIT_FOR_ADDRESS_ACTIVITY, new Handler() {
+         @Override
+         public Object handle(String body) throws IOException {
+            return waitForAddressActivity(objectMapper.readValue(body, WaitForAddressActivityRequest.class));
+         }
+      });
+      addHandler(Function.STOP_WAITING_FOR_ADDRESS_ACTIVITY, new Handler() {
+         @Override
+         public Object handle(String body) throws IOException {
+            return stopWaiting(objectMapper.readValue(body, StopWaitingForAddressActivityRequest.class).token);
+         }
+      });
+      addHandler(Function.QUERY_EXCHANGE_RATES, new Handler() {
+         @Override
+         public Object handle(String body) throws IOException {
+            return getExchangeRates(objectMapper.readValue(body, QueryExchangeRatesRequest.class).currency);
+         }
+      });
+      addHandler(Function.QUERY_EXCHANGE_RATES_MULTI, new Handler() {
+         @Override
+         public Object handle(String body) throws IOException {
+            List<QueryExchangeRatesResponse> rates = new ArrayList<QueryExchangeRatesResponse>();
+            for (String currency : objectMapper.readValue(body, QueryExchangeRatesMultiRequest.class).currencies) {
+               rates.add(getExchangeRates(currency));
+            }
+            return new QueryExchangeRatesMultiResponse(rates);
+         }
+      });
+      server.start();
+   }
+
+   public void addHandler(String function, Handler handler) {
+      synchronized (handlers) {
+         handlers.put(function, handler);
+      }
+   }
+
+   public Handler getHandler(String function) {
+      synchronized (handlers) {
+         return handlers.get(function);
+      }
+   }
+
+   /**
+    * Answer the function with 404, like a server that does not know it yet
+    */
+   public void removeHandler(String function) {
+      synchronized (handlers) {
+         handlers.remove(function);
+      }
+   }
+
+   public ObjectMapper getObjectMapper() {
+      return objectMapper;
+   }
+
+   /**
+    * Create a client talking to this server
+    */
+   public WapiClient createClient() {
+      return new WapiClient(createEndpoints(), WapiLogger.NULL_LOGGER, "test");
+   }
+
+   /**
+    * Create endpoints with this server as the only one
+    */
+   public ServerEndpoints createEndpoints() {
+      HttpEndpoint endpoint = new HttpEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+      ServerEndpoints endpoints = new ServerEndpoints(new HttpEndpoint[]{endpoint}, 0);
+      endpoints.setAllowedEndpointTypes(new ServerEndpointType(new Class[]{HttpEndpoint.class}));
+      return endpoints;
+   }
+
+   /**
+    * Set the exchange rates the server returns for a currency
+    */
+   public synchronized void setExchangeRates(String currency, ExchangeRate... rates) {
+      exchangeRates.put(currency, rates);
+   }
+
+   private synchronized QueryExchangeRatesResponse getExchangeRates(String currency) {
+      ExchangeRate[] rates = exchangeRates.get(currency);
+      return new QueryExchangeRatesResponse(currency, rates == null ? new ExchangeRate[0] : rates);
+   }
+
+   public synchronized void reportActivity(Address address) {
+      lastActivity.put(address, ++clock);
+      notifyAll();
+   }
+
+   /**
+    * @return the number of requests this server answered so far
+    */
+   public synchronized int getRequestCount() {
+      return requestCount;
+   }
+
+   public void stop() {
+      server.stop(0);
+      executor.shutdownNow();
+   }
+
+   private synchronized WapiResponse<WaitForAddressActivityResponse> waitForAddressActivity(WaitForAddressActivityRequest request) {
+      long since = request.timestamp == 0 ? clock : request.timestamp;
+      long deadline = System.currentTimeMillis() + holdMs;
+      waitingTokens.add(request.token);
+      try {
+         return waitForAddressActivity(request, since, deadline);
+      } finally {
+         waitingTokens.remove(request.token);
+      }
+   }
+
+   private WapiResponse<WaitForAddressActivityResponse> waitForAddressActivity(WaitForAddressActivityRequest request,
+                                                                               long since, long deadline) {
+      while (true) {
+         List<Address> active = new ArrayList<Address>();
+         for (Address address : request.addresses) {
+            Long activity = lastActivity.get(address);
+            if (activity != null && activity > since) {
+               active.add(address);
+            }
+         }
+         if (!active.isEmpty()) {
+            return new WapiResponse<WaitForAddressActivityResponse>(new WaitForAddressActivityResponse(active, clock));
+         }
+         long remaining = deadline - System.currentTimeMillis();
+         if (stoppedTokens.remove(request.token) || remaining <= 0) {
+            // nothing happened up to now, the next wait continues from here
+            return new WapiResponse<WaitForAddressActivityResponse>(new WaitForAddressActivityResponse(active, clock));
+         }
+         try {
+            wait(remaining);
+         } catch (InterruptedException e) {
+            return new WapiResponse<WaitForAddressActivityResponse>(new WaitForAddressActivityResponse(active, clock));
+         }
+      }
+   }
+
+   private synchronized boolean stopWaiting(UUID token) {
+      if (!waitingTokens.contains(token)) {
+         return false;
+      }
+      stoppedTokens.add(token);
+      notifyAll();
+      return true;
+   }
+
+   private void dispatch(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+      String function = path.substring(path.lastIndexOf('/') + 1);
+      Handler handler;
+      synchronized (handlers) {
+         handler = handlers.get(function);
+      }
+      synchronized (this) {
+         requestCount++;
+      }
+      if (handler == null) {
+         exchange.sendResponseHeaders(404, -1);
+         exchange.close();
+         return;
+      }
+      String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), "UTF-8");
+      Object result = handler.handle(body);
+      WapiResponse<?> response = result instanceof WapiResponse ? (WapiResponse<?>) result : new WapiResponse<Object>(result);
+      byte[] bytes = objectMapper.writeValueAsBytes(response);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+   }
+}
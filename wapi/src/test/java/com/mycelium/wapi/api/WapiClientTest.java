@@ -0,0 +1,69 @@
+package com.mycelium.wapi.api;
+
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.request.QueryExchangeRatesMultiRequest;
+import com.mycelium.wapi.api.request.QueryExchangeRatesRequest;
+import com.mycelium.wapi.model.ExchangeRate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class WapiClientTest {
+   private static final QueryExchangeRatesRequest SINGLE_REQUEST = new QueryExchangeRatesRequest(Wapi.VERSION, "USD");
+   private static final QueryExchangeRatesMultiRequest MULTI_REQUEST =
+         new QueryExchangeRatesMultiRequest(Wapi.VERSION, Collections.singletonList("USD"));
+
+   private LocalWapiServer server;
+   private long now;
+   private WapiClient client;
+
+   @Before
+   public void setup() throws Exception {
+      server = new LocalWapiServer(100);
+      server.setExchangeRates("USD", new ExchangeRate("Bitstamp", 1000L, 6500.5, "USD"));
+      now = 1000;
+      client = new WapiClient(server.createEndpoints(), WapiLogger.NULL_LOGGER, "test") {
+         @Override
+         long now() {
+            return now;
+         }
+      };
+   }
+
+   @After
+   public void tearDown() {
+      server.stop();
+   }
+
+   @Test
+   public void testNotFoundOnCoreFunctionIsOrdinaryFailure() {
+      LocalWapiServer.Handler handler = server.getHandler(WapiConst.Function.QUERY_EXCHANGE_RATES);
+      // like a proxy in front of the server that answers everything with 404 for a moment
+      server.removeHandler(WapiConst.Function.QUERY_EXCHANGE_RATES);
+      assertEquals(Wapi.ERROR_CODE_NO_SERVER_CONNECTION, client.queryExchangeRates(SINGLE_REQUEST).getErrorCode());
+
+      server.addHandler(WapiConst.Function.QUERY_EXCHANGE_RATES, handler);
+      assertEquals(Wapi.ERROR_CODE_SUCCESS, client.queryExchangeRates(SINGLE_REQUEST).getErrorCode());
+   }
+
+   @Test
+   public void testUnsupportedOptionalFunctionIsAskedAgainLater() {
+      LocalWapiServer.Handler handler = server.getHandler(WapiConst.Function.QUERY_EXCHANGE_RATES_MULTI);
+      server.removeHandler(WapiConst.Function.QUERY_EXCHANGE_RATES_MULTI);
+      assertEquals(Wapi.ERROR_CODE_UNSUPPORTED_FUNCTION, client.queryExchangeRatesMulti(MULTI_REQUEST).getErrorCode());
+      assertEquals(1, server.getRequestCount());
+
+      // the server got updated, but we only find out after a while
+      server.addHandler(WapiConst.Function.QUERY_EXCHANGE_RATES_MULTI, handler);
+      now += 60 * 1000;
+      assertEquals(Wapi.ERROR_CODE_UNSUPPORTED_FUNCTION, client.queryExchangeRatesMulti(MULTI_REQUEST).getErrorCode());
+      assertEquals(1, server.getRequestCount());
+      now += 60 * 60 * 1000;
+      assertEquals(Wapi.ERROR_CODE_SUCCESS, client.queryExchangeRatesMulti(MULTI_REQUEST).getErrorCode());
+      assertEquals(2, server.getRequestCount());
+   }
+}
@@ -0,0 +1,132 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mycelium.WapiLogger;
+import com.mycelium.net.HttpEndpoint;
+import com.mycelium.net.ServerEndpoints;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.api.WapiClient;
+import com.mycelium.wapi.api.WapiConst;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AddressActivityWatcherTest {
+   private static final Address WATCHED = Address.fromString("mfd7QG4vn2U4U5BgnTuw7dmjKsutDxkK6b", NetworkParameters.testNetwork);
+   private static final Address OTHER = Address.fromString("mysJrGMsYht9u3gBvKHFcNJsVEmaEPhUGA", NetworkParameters.testNetwork);
+
+   private LocalWapiServer server;
+   private AddressActivityWatcher watcher;
+   private final BlockingQueue<Collection<Address>> activity = new LinkedBlockingQueue<Collection<Address>>();
+
+   @Before
+   public void setup() throws Exception {
+      server = new LocalWapiServer(300);
+   }
+
+   private void startWatcher(WapiClient client) {
+      watcher = new AddressActivityWatcher(client, singletonList(WATCHED), new AddressActivityWatcher.Listener() {
+         @Override
+         public void onAddressActivity(Collection<Address> addresses) {
+            activity.add(addresses);
+         }
+      });
+      watcher.start();
+   }
+
+   @After
+   public void tearDown() {
+      if (watcher != null) {
+         watcher.cancel();
+      }
+      server.stop();
+   }
+
+   @Test(timeout = 10000)
+   public void testOnlyNotifiedOnActivity() throws Exception {
+      startWatcher(server.createClient());
+      // a few long-poll timeouts pass without any callback
+      Thread.sleep(1000);
+      assertTrue(activity.isEmpty());
+      server.reportActivity(OTHER);
+      assertNull(activity.poll(500, TimeUnit.MILLISECONDS));
+
+      server.reportActivity(WATCHED);
+      assertEquals(singletonList(WATCHED), activity.take());
+      assertNull(activity.poll(500, TimeUnit.MILLISECONDS));
+
+      // activity while no request is pending is not lost
+      server.reportActivity(WATCHED);
+      server.reportActivity(WATCHED);
+      assertEquals(singletonList(WATCHED), activity.take());
+   }
+
+   @Test(timeout = 10000)
+   public void testCancelStopsLongPoll() throws Exception {
+      startWatcher(server.createClient());
+      Thread.sleep(100);
+      watcher.cancel();
+      assertTrue(watcher.isCancelled());
+      int requests = server.getRequestCount();
+      Thread.sleep(1000);
+      // at most the stop request arrived after cancelling
+      assertTrue(server.getRequestCount() <= requests + 1);
+      server.reportActivity(WATCHED);
+      assertNull(activity.poll(500, TimeUnit.MILLISECONDS));
+   }
+
+   @Test(timeout = 10000)
+   public void testActivityBetweenTimeoutsIsNotLost() throws Exception {
+      final LocalWapiServer.Handler wait = server.getHandler(WapiConst.Function.WAIT_FOR_ADDRESS_ACTIVITY);
+      final AtomicBoolean reported = new AtomicBoolean();
+      server.addHandler(WapiConst.Function.WAIT_FOR_ADDRESS_ACTIVITY, new LocalWapiServer.Handler() {
+         @Override
+         public Object handle(String body) throws IOException {
+            Object result = wait.handle(body);
+            if (!reported.getAndSet(true)) {
+               // the first wait timed out, the activity happens before the watcher asks again
+               server.reportActivity(WATCHED);
+            }
+            return result;
+         }
+      });
+      startWatcher(server.createClient());
+      assertEquals(singletonList(WATCHED), activity.take());
+   }
+
+   @Test(timeout = 10000)
+   public void testUnsupportedServer() throws Exception {
+      server.removeHandler(WapiConst.Function.WAIT_FOR_ADDRESS_ACTIVITY);
+      server.removeHandler(WapiConst.Function.STOP_WAITING_FOR_ADDRESS_ACTIVITY);
+      ServerEndpoints endpoints = server.createEndpoints();
+      HttpEndpoint endpoint = endpoints.getCurrentEndpoint();
+      double cost = endpoints.getScorer().getCost(endpoint);
+      WapiClient client = new WapiClient(endpoints, WapiLogger.NULL_LOGGER, "test");
+      startWatcher(client);
+      Thread.sleep(1000);
+      // asked once, then it stopped long-polling without syncing on every retry
+      assertEquals(1, server.getRequestCount());
+      assertTrue(activity.isEmpty());
+      // a 404 says nothing about the health of the server
+      assertEquals(cost, endpoints.getScorer().getCost(endpoint), 0);
+
+      // the client remembers it, another watcher does not ask again
+      watcher.cancel();
+      startWatcher(client);
+      Thread.sleep(200);
+      assertEquals(1, server.getRequestCount());
+   }
+}
@@ -0,0 +1,90 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptOutputP2SH;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryAccountBackingTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   private static final Address ADDRESS = Address.fromString("mfd7QG4vn2U4U5BgnTuw7dmjKsutDxkK6b", NETWORK);
+   private static final Address OTHER_ADDRESS = Address.fromString("2N8hwP1WmJrFF5QWABn38y63uYLhnJYJYTF", NETWORK);
+
+   private AccountBacking backing;
+
+   @Before
+   public void setup() {
+      InMemoryWalletManagerBacking walletBacking = new InMemoryWalletManagerBacking();
+      UUID id = UUID.randomUUID();
+      walletBacking.createSingleAddressAccountContext(new SingleAddressAccountContext(id, ADDRESS, false, 0));
+      backing = walletBacking.getSingleAddressAccountBacking(id);
+   }
+
+   @Test
+   public void testUnspentOutputsByAddress() {
+      TransactionOutputEx first = output(0, new ScriptOutputStandard(ADDRESS.getTypeSpecificBytes()).getScriptBytes());
+      TransactionOutputEx second = output(1, new ScriptOutputStandard(ADDRESS.getTypeSpecificBytes()).getScriptBytes());
+      TransactionOutputEx other = output(2, new ScriptOutputP2SH(OTHER_ADDRESS.getTypeSpecificBytes()).getScriptBytes());
+      backing.putUnspentOutput(first);
+      backing.putUnspentOutput(second);
+      backing.putUnspentOutput(other);
+
+      Collection<TransactionOutputEx> outputs = backing.getUnspentOutputs(Collections.singletonList(ADDRESS));
+      assertEquals(2, outputs.size());
+      assertTrue(outputs.containsAll(Arrays.asList(first, second)));
+      assertEquals(Collections.singletonList(other), backing.getUnspentOutputs(Collections.singletonList(OTHER_ADDRESS)));
+      assertEquals(3, backing.getUnspentOutputs(Arrays.asList(ADDRESS, OTHER_ADDRESS)).size());
+
+      backing.deleteUnspentOutput(first.outPoint);
+      assertEquals(Collections.singletonList(second), backing.getUnspentOutputs(Collections.singletonList(ADDRESS)));
+      backing.deleteUnspentOutput(second.outPoint);
+      assertTrue(backing.getUnspentOutputs(Collections.singletonList(ADDRESS)).isEmpty());
+      assertEquals(1, backing.getAllUnspentOutputs().size());
+   }
+
+   @Test
+   public void testReplaceKeepsIndexInSync() {
+      OutPoint outPoint = new OutPoint(Sha256Hash.ZERO_HASH, 0);
+      backing.putUnspentOutput(new TransactionOutputEx(outPoint, -1, 1000,
+            new ScriptOutputStandard(ADDRESS.getTypeSpecificBytes()).getScriptBytes(), false));
+      backing.putUnspentOutput(new TransactionOutputEx(outPoint, 100, 1000,
+            new ScriptOutputStandard(ADDRESS.getTypeSpecificBytes()).getScriptBytes(), false));
+      Collection<TransactionOutputEx> outputs = backing.getUnspentOutputs(Collections.singletonList(ADDRESS));
+      assertEquals(1, outputs.size());
+      assertEquals(100, outputs.iterator().next().height);
+   }
+
+   @Test
+   public void testOutputsWithoutAddressAreFoundByNullAddress() {
+      // OP_TRUE
+      TransactionOutputEx strange = output(0, new byte[]{0x51});
+      TransactionOutputEx standard = output(1, new ScriptOutputStandard(ADDRESS.getTypeSpecificBytes()).getScriptBytes());
+      backing.putUnspentOutput(strange);
+      backing.putUnspentOutput(standard);
+
+      Collection<Address> nullAddress = Collections.singletonList(Address.getNullAddress(NETWORK));
+      assertEquals(Collections.singletonList(strange), backing.getUnspentOutputs(nullAddress));
+      assertEquals(Collections.singletonList(standard), backing.getUnspentOutputs(Collections.singletonList(ADDRESS)));
+      backing.deleteUnspentOutput(strange.outPoint);
+      assertTrue(backing.getUnspentOutputs(nullAddress).isEmpty());
+      assertEquals(Collections.singletonList(standard), backing.getAllUnspentOutputs());
+   }
+
+   private static TransactionOutputEx output(int index, byte[] script) {
+      return new TransactionOutputEx(new OutPoint(Sha256Hash.ZERO_HASH, index), 100, 1000, script, false);
+   }
+}
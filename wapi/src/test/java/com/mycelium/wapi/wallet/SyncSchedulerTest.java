@@ -0,0 +1,205 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+public class SyncSchedulerTest {
+   private static final Address ADDRESS = Address.fromString("mfd7QG4vn2U4U5BgnTuw7dmjKsutDxkK6b", NetworkParameters.testNetwork);
+   private static final UUID ACCOUNT = UUID.randomUUID();
+   private static final UUID OTHER_ACCOUNT = UUID.randomUUID();
+
+   private final List<SyncRequest> executed = Collections.synchronizedList(new ArrayList<SyncRequest>());
+   private final List<SyncRequest> changes = Collections.synchronizedList(new ArrayList<SyncRequest>());
+   private volatile CountDownLatch blocker = new CountDownLatch(0);
+   private volatile boolean succeed = true;
+   private SyncScheduler scheduler;
+
+   @Before
+   public void setup() {
+      scheduler = new SyncScheduler(new SyncScheduler.Synchronizer() {
+         @Override
+         public boolean synchronize(SyncRequest request) {
+            executed.add(request);
+            try {
+               blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+            }
+            return succeed;
+         }
+      }, new SyncScheduler.Listener() {
+         @Override
+         public void onSyncRequestChanged(SyncRequest request) {
+            changes.add(request);
+         }
+      }, 100);
+   }
+
+   @After
+   public void tearDown() {
+      scheduler.shutdown();
+   }
+
+   @Test
+   public void testOneAddressMergedIntoNormal() throws Exception {
+      SyncRequest oneAddress = scheduler.submit(new SyncMode(ADDRESS), ACCOUNT);
+      SyncRequest normal = scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      SyncRequest fast = scheduler.submit(SyncMode.FAST_SYNC_CURRENT_ACCOUNT, ACCOUNT);
+      waitUntilIdle();
+
+      assertEquals(1, executed.size());
+      SyncRequest run = executed.get(0);
+      assertSame(run, oneAddress.getEffectiveRequest());
+      assertSame(run, normal.getEffectiveRequest());
+      assertSame(run, fast.getEffectiveRequest());
+      assertEquals(SyncMode.Mode.NORMAL_SYNC, run.mode.mode);
+      assertTrue(run.mode.onlyActiveAccount);
+      // NORMAL wants the history and the fees, so the merged one does too
+      assertFalse(run.mode.ignoreTransactionHistory);
+      assertFalse(run.mode.ignoreMinerFeeFetch);
+      // the address might be due while the normal sync is not
+      assertTrue(run.mode.ignoreSyncInterval);
+      assertEquals(ACCOUNT, run.accountId);
+      assertEquals(SyncRequest.Status.DONE, run.getStatus());
+      assertEquals(SyncRequest.Status.MERGED, oneAddress.getStatus());
+   }
+
+   @Test
+   public void testMergedSyncIsNotSkippedByItsInterval() throws Exception {
+      final SynchronizeAbleWalletAccount account = mock(SynchronizeAbleWalletAccount.class,
+            withSettings().useConstructor().defaultAnswer(CALLS_REAL_METHODS));
+      doReturn(true).when(account).doSynchronization(any(SyncMode.class));
+      // a normal sync ran 10s ago, so a normal sync is not due for another 20s
+      account._lastSync.put(SyncMode.Mode.NORMAL_SYNC, new Date(System.currentTimeMillis() - 10 * 1000));
+      assertFalse(account.needsSynchronization(SyncMode.NORMAL));
+
+      scheduler.shutdown();
+      scheduler = new SyncScheduler(new SyncScheduler.Synchronizer() {
+         @Override
+         public boolean synchronize(SyncRequest request) {
+            executed.add(request);
+            return account.synchronize(request.mode);
+         }
+      }, new SyncScheduler.Listener() {
+         @Override
+         public void onSyncRequestChanged(SyncRequest request) {
+         }
+      }, 100);
+      scheduler.submit(new SyncMode(ADDRESS), ACCOUNT);
+      scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      waitUntilIdle();
+
+      assertEquals(1, executed.size());
+      assertEquals(SyncMode.Mode.NORMAL_SYNC, executed.get(0).mode.mode);
+      // the address was due, so the merged sync has to run
+      verify(account).doSynchronization(executed.get(0).mode);
+   }
+
+   @Test
+   public void testSameModeKeepsInterval() throws Exception {
+      scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      scheduler.submit(SyncMode.NORMAL_WITHOUT_TX_LOOKUP, ACCOUNT);
+      waitUntilIdle();
+      assertEquals(1, executed.size());
+      assertFalse(executed.get(0).mode.ignoreSyncInterval);
+   }
+
+   @Test
+   public void testFailureIsReportedToMergedRequests() throws Exception {
+      succeed = false;
+      SyncRequest oneAddress = scheduler.submit(new SyncMode(ADDRESS), ACCOUNT);
+      SyncRequest normal = scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      waitUntilIdle();
+
+      assertEquals(1, executed.size());
+      assertEquals(SyncRequest.Status.FAILED, executed.get(0).getStatus());
+      assertEquals(SyncRequest.Status.FAILED, oneAddress.getEffectiveRequest().getStatus());
+      // the callers that got merged hear about the end of their sync too
+      long deadline = System.currentTimeMillis() + 5000;
+      while (Collections.frequency(changes, normal) < 2 && System.currentTimeMillis() < deadline) {
+         Thread.sleep(10);
+      }
+      assertEquals(2, Collections.frequency(changes, normal));
+      assertEquals(3, Collections.frequency(changes, oneAddress));
+   }
+
+   @Test
+   public void testDifferentAccountsAreNotMerged() throws Exception {
+      scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      scheduler.submit(SyncMode.NORMAL, OTHER_ACCOUNT);
+      waitUntilIdle();
+      assertEquals(2, executed.size());
+   }
+
+   @Test
+   public void testAllAccountsCoversSingleAccount() throws Exception {
+      scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      scheduler.submit(SyncMode.NORMAL, OTHER_ACCOUNT);
+      scheduler.submit(SyncMode.FULL_SYNC_ALL_ACCOUNTS, null);
+      waitUntilIdle();
+      assertEquals(1, executed.size());
+      assertEquals(SyncMode.Mode.FULL_SYNC, executed.get(0).mode.mode);
+      assertFalse(executed.get(0).mode.onlyActiveAccount);
+      assertNull(executed.get(0).accountId);
+   }
+
+   @Test
+   public void testRequestsWhileRunningAreQueuedNotDropped() throws Exception {
+      blocker = new CountDownLatch(1);
+      scheduler.submit(SyncMode.FULL_SYNC_ALL_ACCOUNTS, null);
+      while (executed.isEmpty()) {
+         Thread.sleep(10);
+      }
+      // this used to be dropped while another sync was running
+      scheduler.submit(SyncMode.NORMAL, OTHER_ACCOUNT);
+      scheduler.submit(new SyncMode(ADDRESS), ACCOUNT);
+      assertEquals(2, scheduler.getQueueSize());
+      blocker.countDown();
+      waitUntilIdle();
+      assertEquals(3, executed.size());
+      // the small sync runs first
+      assertEquals(SyncMode.Mode.ONE_ADDRESS, executed.get(1).mode.mode);
+   }
+
+   @Test
+   public void testCancel() throws Exception {
+      SyncRequest request = scheduler.submit(SyncMode.NORMAL, ACCOUNT);
+      assertTrue(scheduler.cancel(request));
+      assertFalse(scheduler.cancel(request));
+      Thread.sleep(300);
+      assertTrue(executed.isEmpty());
+      assertEquals(SyncRequest.Status.CANCELLED, request.getStatus());
+      assertTrue(changes.contains(request));
+   }
+
+   private void waitUntilIdle() throws InterruptedException {
+      Thread.sleep(150);
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!scheduler.isIdle() && System.currentTimeMillis() < deadline) {
+         Thread.sleep(10);
+      }
+      assertTrue(scheduler.isIdle());
+   }
+}
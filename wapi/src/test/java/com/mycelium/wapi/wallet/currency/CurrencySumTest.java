@@ -6,7 +6,12 @@ import com.mycelium.wapi.wallet.currency.test.AssertHelper;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -126,4 +131,101 @@ public class CurrencySumTest {
       AssertHelper.assertRoundedEqualValue(BigDecimal.valueOf(56), sumAsCurrencyUSD.getValue(), 7);
       assertEquals("USD", sumAsCurrencyUSD.getCurrency());
    }
+
+   /**
+    * Random sums must come out exactly like adding up the values with {@link CurrencyValue#add}, which
+    * CurrencySum did before it kept fixed point sums
+    */
+   @Test
+   public void testMatchesCurrencyValueAddition() throws Exception {
+      Random random = new Random(4);
+      String[] currencies = {CurrencyValue.BTC, "USD", "EUR", "XYZ"};
+      for (int run = 0; run < 2000; run++) {
+         final Map<String, Double> prices = new HashMap<String, Double>();
+         prices.put("USD", FixedPointSumTest.randomPrice(random));
+         prices.put("EUR", FixedPointSumTest.randomPrice(random));
+         // no rate for XYZ
+         ExchangeRateProvider provider = new ExchangeRateProvider() {
+            public ExchangeRate getExchangeRate(String currency) {
+               Double price = prices.get(currency);
+               return price == null ? null : new ExchangeRate("TEST", 1000L, price, currency);
+            }
+         };
+
+         List<CurrencyValue> values = new ArrayList<CurrencyValue>();
+         int count = random.nextInt(12);
+         for (int i = 0; i < count; i++) {
+            values.add(randomValue(random, currencies[random.nextInt(currencies.length)], provider));
+         }
+         CurrencySum currencySum = new CurrencySum();
+         for (CurrencyValue value : values) {
+            currencySum.add(value);
+         }
+         Map<String, CurrencyValue> expected = legacyBuckets(values);
+         Map<String, CurrencyValue> actual = currencySum.getAllValues();
+         assertEquals(expected.keySet(), actual.keySet());
+         for (String currency : expected.keySet()) {
+            assertSameValue(expected.get(currency), actual.get(currency));
+         }
+         for (String target : currencies) {
+            assertSameValue(legacySum(expected, target, provider), currencySum.getSumAsCurrency(target, provider));
+         }
+      }
+   }
+
+   private static CurrencyValue randomValue(Random random, String currency, ExchangeRateProvider provider) {
+      BigDecimal amount;
+      if (currency.equals(CurrencyValue.BTC)) {
+         amount = BigDecimal.valueOf((long) (random.nextDouble() * 1e13), 8);
+      } else if (random.nextInt(4) == 0) {
+         // many decimals, the unscaled value does not fit a long
+         amount = new BigDecimal(new BigInteger(70, random), 18);
+      } else {
+         amount = BigDecimal.valueOf(random.nextInt(100000000), random.nextInt(5));
+      }
+      switch (random.nextInt(8)) {
+         case 0:
+            // converted, keeping the exact value
+            String other = currency.equals("USD") ? "EUR" : "USD";
+            return ExchangeBasedCurrencyValue.fromExactValue(ExactCurrencyValue.from(amount, currency), other, provider);
+         case 1:
+            // no exact value
+            return ExchangeBasedCurrencyValue.from(amount, currency);
+         case 2:
+            if (random.nextInt(4) == 0) {
+               return ExactCurrencyValue.from(null, currency);
+            }
+         default:
+            return ExactCurrencyValue.from(amount, currency);
+      }
+   }
+
+   private static Map<String, CurrencyValue> legacyBuckets(List<CurrencyValue> values) {
+      Map<String, CurrencyValue> buckets = new HashMap<String, CurrencyValue>();
+      for (CurrencyValue valueToAdd : values) {
+         CurrencyValue exactValue = valueToAdd.getExactValueIfPossible();
+         CurrencyValue existing = buckets.get(exactValue.getCurrency());
+         buckets.put(exactValue.getCurrency(), existing == null ? exactValue : existing.add(exactValue, null));
+      }
+      return buckets;
+   }
+
+   private static CurrencyValue legacySum(Map<String, CurrencyValue> buckets, String targetCurrency,
+                                          ExchangeRateProvider provider) {
+      CurrencyValue sum = ExactCurrencyValue.from(BigDecimal.ZERO, targetCurrency);
+      for (CurrencyValue value : buckets.values()) {
+         CurrencyValue sumLocal = sum.add(value, provider);
+         if (sumLocal.getValue() != null) {
+            sum = sumLocal;
+         }
+      }
+      return sum;
+   }
+
+   private static void assertSameValue(CurrencyValue expected, CurrencyValue actual) {
+      assertEquals(expected.getClass(), actual.getClass());
+      assertEquals(expected.getCurrency(), actual.getCurrency());
+      // BigDecimal equality, the scale has to match as well
+      assertEquals(expected.getValue(), actual.getValue());
+   }
 }
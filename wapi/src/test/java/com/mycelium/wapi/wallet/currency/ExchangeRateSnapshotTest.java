@@ -0,0 +1,114 @@
+package com.mycelium.wapi.wallet.currency;
+
+import com.mycelium.WapiLogger;
+import com.mycelium.net.HttpEndpoint;
+import com.mycelium.net.ServerEndpoints;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiClient;
+import com.mycelium.wapi.api.WapiConst;
+import com.mycelium.wapi.api.request.QueryExchangeRatesMultiRequest;
+import com.mycelium.wapi.api.request.QueryExchangeRatesRequest;
+import com.mycelium.wapi.api.response.QueryExchangeRatesMultiResponse;
+import com.mycelium.wapi.api.response.QueryExchangeRatesResponse;
+import com.mycelium.wapi.model.ExchangeRate;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExchangeRateSnapshotTest {
+   private static final ExchangeRate BITSTAMP_USD = new ExchangeRate("Bitstamp", 1000L, 6500.5, "USD");
+   private static final ExchangeRate COINBASE_USD = new ExchangeRate("Coinbase", 1000L, 6510.0, "USD");
+   private static final ExchangeRate BITSTAMP_EUR = new ExchangeRate("Bitstamp", 1000L, 5600.25, "EUR");
+
+   @Test
+   public void testAllCurrenciesInOneRequest() throws Exception {
+      LocalWapiServer server = new LocalWapiServer(100);
+      try {
+         server.setExchangeRates("USD", BITSTAMP_USD, COINBASE_USD);
+         server.setExchangeRates("EUR", BITSTAMP_EUR);
+         WapiClient client = server.createClient();
+         QueryExchangeRatesMultiResponse response = client.queryExchangeRatesMulti(
+               new QueryExchangeRatesMultiRequest(Wapi.VERSION, Arrays.asList("USD", "EUR", "CHF"))).getResult();
+         assertEquals(1, server.getRequestCount());
+         assertEquals(3, response.rates.size());
+         assertEquals("USD", response.rates.get(0).currency);
+         assertEquals(2, response.rates.get(0).exchangeRates.length);
+         assertEquals("EUR", response.rates.get(1).currency);
+         assertEquals(0, response.rates.get(2).exchangeRates.length);
+
+         ExchangeRateSnapshot snapshot = ExchangeRateSnapshot.fromResponses(response.rates, 5000L);
+         assertEquals(6510.0, snapshot.get("USD", "Coinbase").price, 0);
+         assertEquals(5600.25, snapshot.get("EUR", "Bitstamp").price, 0);
+         assertNull(snapshot.get("EUR", "Coinbase"));
+         // the server answered for CHF, without any rates
+         assertTrue(snapshot.hasCurrency("CHF"));
+         assertNull(snapshot.get("CHF", "Bitstamp"));
+         assertFalse(snapshot.hasCurrency("GBP"));
+         assertEquals(Arrays.asList("Bitstamp", "Coinbase"), snapshot.getSourceNames());
+         assertEquals(5000L, snapshot.getTime());
+      } finally {
+         server.stop();
+      }
+   }
+
+   @Test
+   public void testServerWithoutMultiQuery() throws Exception {
+      LocalWapiServer server = new LocalWapiServer(100);
+      try {
+         server.removeHandler(WapiConst.Function.QUERY_EXCHANGE_RATES_MULTI);
+         server.setExchangeRates("USD", BITSTAMP_USD);
+         ServerEndpoints endpoints = server.createEndpoints();
+         HttpEndpoint endpoint = endpoints.getCurrentEndpoint();
+         double cost = endpoints.getScorer().getCost(endpoint);
+         WapiClient client = new WapiClient(endpoints, WapiLogger.NULL_LOGGER, "test");
+         QueryExchangeRatesMultiRequest request = new QueryExchangeRatesMultiRequest(Wapi.VERSION, Arrays.asList("USD"));
+
+         assertEquals(Wapi.ERROR_CODE_UNSUPPORTED_FUNCTION, client.queryExchangeRatesMulti(request).getErrorCode());
+         assertEquals(1, server.getRequestCount());
+         // the 404 does not count against the server
+         assertEquals(cost, endpoints.getScorer().getCost(endpoint), 0);
+         // and it is not asked again
+         assertEquals(Wapi.ERROR_CODE_UNSUPPORTED_FUNCTION, client.queryExchangeRatesMulti(request).getErrorCode());
+         assertEquals(1, server.getRequestCount());
+         // the single currency query still works
+         assertEquals(1, client.queryExchangeRates(new QueryExchangeRatesRequest(Wapi.VERSION, "USD")).getResult()
+               .exchangeRates.length);
+      } finally {
+         server.stop();
+      }
+   }
+
+   @Test
+   public void testLookupMatchesLinearScan() {
+      ExchangeRate duplicate = new ExchangeRate("Bitstamp", 2000L, 1.0, "USD");
+      List<QueryExchangeRatesResponse> responses = Arrays.asList(
+            new QueryExchangeRatesResponse("USD", new ExchangeRate[]{BITSTAMP_USD, COINBASE_USD, duplicate}),
+            new QueryExchangeRatesResponse("EUR", new ExchangeRate[]{BITSTAMP_EUR}));
+      ExchangeRateSnapshot snapshot = ExchangeRateSnapshot.fromResponses(responses, 1L);
+      for (QueryExchangeRatesResponse response : responses) {
+         assertTrue(snapshot.hasCurrency(response.currency));
+         for (String source : Arrays.asList("Bitstamp", "Coinbase", "Kraken")) {
+            ExchangeRate expected = null;
+            for (ExchangeRate rate : response.exchangeRates) {
+               if (rate.name.equals(source)) {
+                  expected = rate;
+                  break;
+               }
+            }
+            assertEquals(expected == null ? null : expected.price, snapshot.get(response.currency, source) == null
+                  ? null : snapshot.get(response.currency, source).price);
+         }
+      }
+      assertNull(snapshot.get("USD", null));
+      assertTrue(ExchangeRateSnapshot.EMPTY.isEmpty());
+      assertTrue(ExchangeRateSnapshot.fromResponses(Collections.<QueryExchangeRatesResponse>emptyList(), 0).isEmpty());
+   }
+}
@@ -0,0 +1,198 @@
+package com.mycelium.wapi.wallet.currency;
+
+import com.megiontechnologies.Bitcoins;
+import com.mycelium.wapi.model.ExchangeRate;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Property tests comparing the fixed point arithmetic to the BigDecimal code it replaces, on random values that
+ * include values near and beyond the range of a long
+ */
+public class FixedPointSumTest {
+   private static final int RUNS = 20000;
+
+   @Test
+   public void testSumMatchesBigDecimal() {
+      Random random = new Random(1);
+      for (int run = 0; run < RUNS / 10; run++) {
+         FixedPointSum sum = new FixedPointSum();
+         BigDecimal expected = BigDecimal.ZERO;
+         if (random.nextBoolean()) {
+            BigDecimal first = randomDecimal(random);
+            sum.set(first);
+            expected = first;
+         }
+         int count = random.nextInt(20);
+         for (int i = 0; i < count; i++) {
+            BigDecimal value = randomDecimal(random);
+            if (random.nextBoolean()) {
+               sum.add(value);
+            } else {
+               FixedPointSum other = new FixedPointSum();
+               other.set(value);
+               sum.add(other);
+            }
+            expected = expected.add(value);
+            assertEquals(expected, sum.toBigDecimal());
+            assertEquals(expected.scale(), sum.getScale());
+            assertEquals(expected.signum() == 0, sum.isZero());
+         }
+      }
+   }
+
+   @Test
+   public void testOverflowChecks() {
+      long[] values = {0, 1, -1, 7, -7, 3037000499L, 3037000500L, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Long.MAX_VALUE / 10, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+      for (long a : values) {
+         for (long b : values) {
+            BigInteger exactSum = BigInteger.valueOf(a).add(BigInteger.valueOf(b));
+            BigInteger exactProduct = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b));
+            assertExact(exactSum, a, b, true);
+            assertExact(exactProduct, a, b, false);
+         }
+      }
+   }
+
+   @Test
+   public void testDivideHalfUpMatchesBigDecimal() {
+      Random random = new Random(2);
+      for (int run = 0; run < RUNS; run++) {
+         long dividend = random.nextLong() >> random.nextInt(64);
+         int exponent = random.nextInt(19);
+         BigDecimal expected = new BigDecimal(BigInteger.valueOf(dividend), exponent)
+               .setScale(0, RoundingMode.HALF_UP);
+         assertEquals(expected.longValueExact(), FixedPoint.divideHalfUp(dividend, FixedPoint.pow10(exponent)));
+      }
+   }
+
+   @Test
+   public void testConversionMatchesExchangeBasedValue() {
+      Random random = new Random(3);
+      for (int run = 0; run < RUNS; run++) {
+         ExchangeRateProvider provider = fixedProvider(randomPrice(random), randomPrice(random));
+         BigDecimal value = randomDecimal(random).abs();
+         ExactCurrencyValue exact = new ExactFiatValue(value, "USD");
+
+         // fiat to fiat
+         RateMultiplier rate = RateMultiplier.of("USD", "EUR", provider);
+         CurrencyValue expected = ExchangeBasedCurrencyValue.fromExactValue(exact, "EUR", provider);
+         FixedPointSum converted = new FixedPointSum();
+         FixedPointSum fixedValue = new FixedPointSum();
+         fixedValue.set(value);
+         rate.convertInto(converted, fixedValue);
+         assertEquals(expected.getValue(), converted.toBigDecimal());
+
+         // fiat to bitcoin, the old code fails for amounts that are not valid bitcoin values
+         RateMultiplier toBitcoin = RateMultiplier.of("USD", "BTC", provider);
+         try {
+            CurrencyValue bitcoins = ExchangeBasedCurrencyValue.fromExactValue(exact, "BTC", provider);
+            assertEquals(((BitcoinValue) bitcoins).getLongValue(), toBitcoin.toSatoshis(fixedValue));
+         } catch (IllegalArgumentException e) {
+            long satoshis = toBitcoin.toSatoshis(fixedValue);
+            assertTrue(satoshis < 0 || satoshis >= Bitcoins.MAX_VALUE);
+         } catch (ArithmeticException e) {
+            // more satoshis than a long holds
+            try {
+               toBitcoin.toSatoshis(fixedValue);
+               fail();
+            } catch (ArithmeticException tooLarge) {
+               // like the old code
+            }
+         }
+
+         // bitcoin to fiat, from the BigDecimal form of the bitcoin value
+         long amount = random.nextBoolean() ? random.nextInt(1000) * 1000000L : (long) (random.nextDouble() * 1e15);
+         ExactBitcoinValue bitcoinValue = ExactBitcoinValue.from(amount);
+         BigDecimal asDecimal = bitcoinValue.getValue();
+         assertEquals(asDecimal.scale(), FixedPoint.bitcoinScale(amount));
+         FixedPointSum fromBitcoin = new FixedPointSum();
+         RateMultiplier.of("BTC", "USD", provider).convertInto(fromBitcoin, asDecimal.unscaledValue().longValue(),
+               asDecimal.scale());
+         assertEquals(ExchangeBasedCurrencyValue.fromExactValue(bitcoinValue, "USD", provider).getValue(),
+               fromBitcoin.toBigDecimal());
+      }
+   }
+
+   @Test
+   public void testMissingRate() {
+      ExchangeRateProvider provider = new ExchangeRateProvider() {
+         @Override
+         public ExchangeRate getExchangeRate(String currency) {
+            return currency.equals("USD") ? ExchangeRate.missingRate("TEST", 0, currency) : null;
+         }
+      };
+      assertEquals(null, RateMultiplier.of("USD", "BTC", provider));
+      assertEquals(null, RateMultiplier.of("BTC", "EUR", provider));
+   }
+
+   private static void assertExact(BigInteger exact, long a, long b, boolean add) {
+      boolean fits = exact.bitLength() < 64;
+      try {
+         long result = add ? FixedPoint.add(a, b) : FixedPoint.multiply(a, b);
+         if (!fits) {
+            fail(a + (add ? " + " : " * ") + b + " overflowed to " + result);
+         }
+         assertEquals(exact.longValue(), result);
+      } catch (ArithmeticException e) {
+         if (fits) {
+            fail(a + (add ? " + " : " * ") + b + " does fit a long");
+         }
+      }
+   }
+
+   private static ExchangeRateProvider fixedProvider(final double usd, final double eur) {
+      return new ExchangeRateProvider() {
+         @Override
+         public ExchangeRate getExchangeRate(String currency) {
+            return new ExchangeRate("TEST", 0, currency.equals("USD") ? usd : eur, currency);
+         }
+      };
+   }
+
+   /**
+    * Prices like exchanges report them, and some with all the digits a double has
+    */
+   static double randomPrice(Random random) {
+      double price = 0.01 + random.nextDouble() * 20000;
+      if (random.nextInt(4) == 0) {
+         return price;
+      }
+      double factor = Math.pow(10, random.nextInt(6));
+      return Math.max(0.01, Math.round(price * factor) / factor);
+   }
+
+   /**
+    * Decimals of every size, most of them fitting a long, some of them close to the limit and some beyond
+    */
+   static BigDecimal randomDecimal(Random random) {
+      int scale = random.nextInt(25) - 3;
+      BigInteger unscaled;
+      switch (random.nextInt(5)) {
+         case 0:
+            unscaled = BigInteger.valueOf(random.nextInt(1000));
+            break;
+         case 1:
+            unscaled = BigInteger.valueOf(random.nextLong());
+            break;
+         case 2:
+            unscaled = BigInteger.valueOf(Long.MAX_VALUE - random.nextInt(1000));
+            break;
+         case 3:
+            unscaled = new BigInteger(64 + random.nextInt(40), random);
+            break;
+         default:
+            unscaled = BigInteger.valueOf(random.nextLong() >> random.nextInt(64));
+      }
+      return new BigDecimal(random.nextInt(4) == 0 ? unscaled.negate() : unscaled, scale);
+   }
+}
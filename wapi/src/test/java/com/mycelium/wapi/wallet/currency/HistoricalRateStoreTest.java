@@ -0,0 +1,143 @@
+package com.mycelium.wapi.wallet.currency;
+
+import com.mycelium.wapi.model.ExchangeRate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.mycelium.wapi.wallet.currency.HistoricalRateStore.BUCKET_MS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistoricalRateStoreTest {
+   private static final long START = 1500000000000L - 1500000000000L % BUCKET_MS;
+   private static final int HOURS = 24 * 365;
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /**
+    * Hourly rates for a year with a gap of ten days, and several rates per hour of which the last one counts
+    */
+   private static class StandInRateSource implements HistoricalRateSource {
+      int requests;
+
+      static double price(int hour) {
+         return 1000 + hour % 500;
+      }
+
+      @Override
+      public List<ExchangeRate> getRates(String currency, long from, long to) {
+         requests++;
+         List<ExchangeRate> rates = new ArrayList<>();
+         for (int hour = 0; hour < HOURS; hour++) {
+            long time = START + hour * BUCKET_MS;
+            if (time < from || time >= to || (hour >= 1000 && hour < 1240)) {
+               continue;
+            }
+            rates.add(new ExchangeRate("Bitstamp", time + 60000, 1, currency));
+            rates.add(new ExchangeRate("Bitstamp", time + 120000, price(hour), currency));
+         }
+         Collections.shuffle(rates, new Random(rates.size()));
+         return rates;
+      }
+   }
+
+   @Test
+   public void testInterpolation() throws Exception {
+      HistoricalRateStore store = new HistoricalRateStore();
+      store.update(new StandInRateSource(), "USD", START, START + HOURS * BUCKET_MS);
+      // within a bucket the last rate counts
+      assertEquals(StandInRateSource.price(10), store.priceAt("USD", START + 10 * BUCKET_MS + 5), 0);
+      assertEquals(StandInRateSource.price(10), store.priceAt("USD", START + 11 * BUCKET_MS - 1), 0);
+      // between buckets interpolate, 1499 -> 1000 wraps around
+      assertEquals(1499, store.priceAt("USD", START + 499 * BUCKET_MS), 0);
+      assertEquals(1000, store.priceAt("USD", START + 500 * BUCKET_MS), 0);
+      // before the first, after the last and across the gap there is no rate
+      assertTrue(Double.isNaN(store.priceAt("USD", START - 1)));
+      assertTrue(Double.isNaN(store.priceAt("USD", START + HOURS * BUCKET_MS)));
+      assertTrue(Double.isNaN(store.priceAt("USD", START + 1100 * BUCKET_MS)));
+      assertTrue(Double.isNaN(store.priceAt("EUR", START)));
+
+      // a single missing bucket is bridged
+      store.record("CHF", START, 100);
+      store.record("CHF", START + 2 * BUCKET_MS, 200);
+      assertEquals(150, store.priceAt("CHF", START + BUCKET_MS), 1e-9);
+      assertEquals(175, store.priceAt("CHF", START + 3 * BUCKET_MS / 2), 1e-9);
+   }
+
+   @Test
+   public void testBulkLookupMatchesSingleLookups() throws Exception {
+      HistoricalRateStore store = new HistoricalRateStore();
+      store.update(new StandInRateSource(), "USD", START, START + HOURS * BUCKET_MS);
+      Random random = new Random(42);
+      long[] timestamps = new long[50000];
+      for (int i = 0; i < timestamps.length; i++) {
+         timestamps[i] = START - BUCKET_MS + (long) (random.nextDouble() * (HOURS + 2) * BUCKET_MS);
+      }
+      double[] prices = store.valueAt("USD", timestamps);
+      int known = 0;
+      for (int i = 0; i < timestamps.length; i++) {
+         assertEquals(store.priceAt("USD", timestamps[i]), prices[i], 0);
+         if (!Double.isNaN(prices[i])) {
+            known++;
+         }
+      }
+      assertTrue(known > timestamps.length * 9 / 10);
+   }
+
+   @Test
+   public void testRange() throws Exception {
+      HistoricalRateStore store = new HistoricalRateStore();
+      store.update(new StandInRateSource(), "USD", START + 990 * BUCKET_MS, START + 1250 * BUCKET_MS);
+      List<HistoricalRateStore.Point> points = store.getRange("USD", START + 995 * BUCKET_MS + 1,
+            START + 1245 * BUCKET_MS);
+      // 995 to 999 and 1240 to 1244, the bucket of from counts
+      assertEquals(10, points.size());
+      assertEquals(START + 995 * BUCKET_MS, points.get(0).time);
+      assertEquals(START + 1240 * BUCKET_MS, points.get(5).time);
+      assertEquals(StandInRateSource.price(1244), points.get(9).price, 0);
+      assertTrue(store.getRange("USD", START, START + 990 * BUCKET_MS).isEmpty());
+   }
+
+   @Test
+   public void testPersistence() throws Exception {
+      File directory = folder.newFolder("rates");
+      StandInRateSource source = new StandInRateSource();
+      HistoricalRateStore store = new HistoricalRateStore(directory);
+      store.update(source, "USD", START, START + 100 * BUCKET_MS);
+      store.update(source, "USD", START + 100 * BUCKET_MS, START + 200 * BUCKET_MS);
+      // replace the rate of one bucket many times, like the wallet does on every refresh
+      for (int i = 0; i < 500; i++) {
+         store.record("USD", START + 300 * BUCKET_MS + i, i + 1);
+      }
+      store.record("EUR", START, 900);
+      assertEquals(2, source.requests);
+
+      HistoricalRateStore reloaded = new HistoricalRateStore(directory);
+      long[] timestamps = new long[400];
+      for (int i = 0; i < timestamps.length; i++) {
+         timestamps[i] = START + i * BUCKET_MS + 1234;
+      }
+      double[] expected = store.valueAt("USD", timestamps);
+      double[] actual = reloaded.valueAt("USD", timestamps);
+      for (int i = 0; i < timestamps.length; i++) {
+         assertEquals(expected[i], actual[i], 0);
+      }
+      assertEquals(500, reloaded.priceAt("USD", START + 300 * BUCKET_MS), 0);
+      assertEquals(900, reloaded.priceAt("EUR", START), 0);
+      // the replaced rates did not pile up in the file
+      assertTrue(new File(directory, "USD.rates").length() <= 2 * 201 * 16);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testRejectsInvalidCurrency() throws Exception {
+      new HistoricalRateStore().record("../USD", START, 1);
+   }
+}